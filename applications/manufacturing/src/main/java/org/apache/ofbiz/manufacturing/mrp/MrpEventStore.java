@@ -0,0 +1,225 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+
+package org.apache.ofbiz.manufacturing.mrp;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericPK;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.util.EntityListIterator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+
+/**
+ * The MrpEvent records of an MRP run.
+ * <p>
+ * By default the events are read from MrpEventView level by level and every change is written
+ * to the database immediately. In memory mode all the events of the run are loaded once, with the
+ * bill of material level of their products, the planning works on these values and the new and
+ * changed events are written back in batches by {@link #flush()}.
+ */
+public class MrpEventStore {
+
+    public static final String module = MrpEventStore.class.getName();
+
+    private static final int FLUSH_BATCH_SIZE = 1000;
+
+    protected final Delegator delegator;
+    protected final boolean inMemory;
+
+    // the in memory events by bill of material level, a null level is planned with level 0
+    private final Map<Long, Map<GenericPK, GenericValue>> eventsByLevel = new TreeMap<>();
+    private final Map<String, Long> productLevels = new HashMap<>();
+    private final Map<GenericPK, GenericValue> createdEvents = new LinkedHashMap<>();
+    private final Map<GenericPK, GenericValue> changedEvents = new LinkedHashMap<>();
+
+    private MrpEventStore(Delegator delegator, boolean inMemory) {
+        this.delegator = delegator;
+        this.inMemory = inMemory;
+    }
+
+    /** Returns a store writing every change through to the database. */
+    public static MrpEventStore getDatabaseStore(Delegator delegator) {
+        return new MrpEventStore(delegator, false);
+    }
+
+    /** Returns a store holding all the current MrpEvent records in memory. */
+    public static MrpEventStore loadInMemoryStore(Delegator delegator) throws GenericEntityException {
+        MrpEventStore store = new MrpEventStore(delegator, true);
+        long startTime = System.currentTimeMillis();
+        int count = 0;
+        try (EntityListIterator eli = EntityQuery.use(delegator).from("MrpEventView").queryIterator()) {
+            GenericValue eventView;
+            while ((eventView = eli.next()) != null) {
+                GenericValue mrpEvent = delegator.makeValue("MrpEvent");
+                mrpEvent.setNonPKFields(eventView);
+                mrpEvent.setPKFields(eventView);
+                Long bomLevel = eventView.getLong("billOfMaterialLevel");
+                store.productLevels.put(mrpEvent.getString("productId"), bomLevel != null ? bomLevel : 0L);
+                store.getLevelEvents(mrpEvent.getString("productId")).put(mrpEvent.getPrimaryKey(), mrpEvent);
+                count++;
+            }
+        }
+        if (Debug.infoOn()) {
+            Debug.logInfo("Loaded " + count + " MRP events in memory in " + (System.currentTimeMillis() - startTime) + "ms", module);
+        }
+        return store;
+    }
+
+    public boolean isInMemory() {
+        return inMemory;
+    }
+
+    /**
+     * Returns the events of the products at the given bill of material level, ordered by product and event date;
+     * the level 0 includes the products without level.
+     * The values returned in memory mode are copies, changing them does not change the events.
+     */
+    public List<GenericValue> getEvents(long bomLevel) throws GenericEntityException {
+        if (!inMemory) {
+            EntityCondition filterByConditions = null;
+            if (bomLevel == 0) {
+                filterByConditions = EntityCondition.makeCondition(EntityCondition.makeCondition("billOfMaterialLevel", EntityOperator.EQUALS, null),
+                                            EntityOperator.OR,
+                                            EntityCondition.makeCondition("billOfMaterialLevel", EntityOperator.EQUALS, bomLevel));
+            } else {
+                filterByConditions = EntityCondition.makeCondition("billOfMaterialLevel", EntityOperator.EQUALS, bomLevel);
+            }
+            return EntityQuery.use(delegator).from("MrpEventView")
+                    .where(filterByConditions)
+                    .orderBy("productId", "eventDate")
+                    .queryList();
+        }
+        Map<GenericPK, GenericValue> levelEvents = eventsByLevel.get(bomLevel);
+        if (levelEvents == null) {
+            return new LinkedList<>();
+        }
+        List<GenericValue> events = new ArrayList<>(levelEvents.size());
+        for (GenericValue mrpEvent : levelEvents.values()) {
+            events.add(GenericValue.create(mrpEvent));
+        }
+        events.sort(Comparator.<GenericValue, String>comparing(event -> event.getString("productId"))
+                .thenComparing(event -> event.getTimestamp("eventDate"))
+                .thenComparing(event -> event.getString("mrpEventTypeId")));
+        return events;
+    }
+
+    /**
+     * Creates an MrpEvent, or adds the quantity to the existing one with the same key,
+     * see {@link InventoryEventPlannedServices#createOrUpdateMrpEvent}.
+     */
+    public void createOrUpdateMrpEvent(Map<String, Object> mrpEventKeyMap, BigDecimal newQuantity, String facilityId,
+            String eventName, boolean isLate) throws GenericEntityException {
+        if (!inMemory) {
+            InventoryEventPlannedServices.createOrUpdateMrpEvent(mrpEventKeyMap, newQuantity, facilityId, eventName, isLate, delegator);
+            return;
+        }
+        GenericPK mrpEventPK = delegator.makePK("MrpEvent", mrpEventKeyMap);
+        Map<GenericPK, GenericValue> levelEvents = getLevelEvents(mrpEventPK.getString("productId"));
+        GenericValue mrpEvent = levelEvents.get(mrpEventPK);
+        if (mrpEvent == null) {
+            mrpEvent = delegator.makeValue("MrpEvent", mrpEventKeyMap);
+            mrpEvent.put("quantity", newQuantity.doubleValue());
+            mrpEvent.put("eventName", eventName);
+            mrpEvent.put("facilityId", facilityId);
+            mrpEvent.put("isLate", (isLate? "Y": "N"));
+            levelEvents.put(mrpEventPK, mrpEvent);
+            createdEvents.put(mrpEventPK, mrpEvent);
+        } else {
+            BigDecimal qties = newQuantity.add(mrpEvent.getBigDecimal("quantity"));
+            mrpEvent.put("quantity", qties.doubleValue());
+            if (UtilValidate.isNotEmpty(eventName)) {
+                String existingEventName = mrpEvent.getString("eventName");
+                mrpEvent.put("eventName", (UtilValidate.isEmpty(existingEventName)? eventName: existingEventName + ", " + eventName));
+            }
+            if (isLate) {
+                mrpEvent.put("isLate", "Y");
+            }
+            if (!createdEvents.containsKey(mrpEventPK)) {
+                changedEvents.put(mrpEventPK, mrpEvent);
+            }
+        }
+    }
+
+    /** Writes the events created and changed in memory to the database; does nothing when not in memory mode. */
+    public void flush() throws GenericEntityException {
+        if (!inMemory) {
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        int created = createdEvents.size();
+        int changed = changedEvents.size();
+        List<GenericValue> batch = new ArrayList<>(FLUSH_BATCH_SIZE);
+        for (GenericValue mrpEvent : createdEvents.values()) {
+            batch.add(mrpEvent);
+            if (batch.size() == FLUSH_BATCH_SIZE) {
+                delegator.createAll(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            delegator.createAll(batch);
+            batch.clear();
+        }
+        for (GenericValue mrpEvent : changedEvents.values()) {
+            batch.add(mrpEvent);
+            if (batch.size() == FLUSH_BATCH_SIZE) {
+                delegator.storeAll(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            delegator.storeAll(batch);
+        }
+        createdEvents.clear();
+        changedEvents.clear();
+        if (Debug.infoOn()) {
+            Debug.logInfo("Wrote " + created + " new and " + changed + " changed MRP events in " + (System.currentTimeMillis() - startTime) + "ms", module);
+        }
+    }
+
+    private Map<GenericPK, GenericValue> getLevelEvents(String productId) throws GenericEntityException {
+        Long bomLevel = productLevels.get(productId);
+        if (bomLevel == null) {
+            GenericValue product = EntityQuery.use(delegator).from("Product").where("productId", productId).cache().queryOne();
+            bomLevel = product != null && product.getLong("billOfMaterialLevel") != null ? product.getLong("billOfMaterialLevel") : 0L;
+            productLevels.put(productId, bomLevel);
+        }
+        Map<GenericPK, GenericValue> levelEvents = eventsByLevel.get(bomLevel);
+        if (levelEvents == null) {
+            levelEvents = new HashMap<>();
+            eventsByLevel.put(bomLevel, levelEvents);
+        }
+        return levelEvents;
+    }
+}
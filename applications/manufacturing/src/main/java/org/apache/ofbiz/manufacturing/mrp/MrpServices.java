@@ -40,6 +40,7 @@ import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.GenericValue;
 import org.apache.ofbiz.entity.condition.EntityCondition;
 import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.util.EntityListIterator;
 import org.apache.ofbiz.entity.util.EntityQuery;
 import org.apache.ofbiz.entity.util.EntityUtil;
 import org.apache.ofbiz.manufacturing.bom.BOMNode;
@@ -521,6 +522,35 @@ public class MrpServices {
         return ((BigDecimal)resultMap.get("quantityOnHandTotal"));
     }
 
+    /**
+     * Finds the quantity on hand of all the products of a facility with a single pass on the inventory items,
+     * summing the same inventory items as the getInventoryAvailableByFacility service used by {@link #findProductMrpQoh}.
+     * @param facilityId the facility id
+     * @param delegator the delegator
+     * @return a Map of the quantity on hand by product id, products without inventory are not in the Map
+     * @throws GenericEntityException
+     */
+    public static Map<String, BigDecimal> findProductsMrpQoh(String facilityId, Delegator delegator) throws GenericEntityException {
+        Map<String, BigDecimal> productsQoh = new HashMap<String, BigDecimal>();
+        try (EntityListIterator eli = EntityQuery.use(delegator).select("productId", "statusId", "inventoryItemTypeId", "quantityOnHandTotal")
+                .from("InventoryItem").where("facilityId", facilityId).queryIterator()) {
+            GenericValue inventoryItem;
+            while ((inventoryItem = eli.next()) != null) {
+                String statusId = inventoryItem.getString("statusId");
+                BigDecimal quantityOnHandTotal = inventoryItem.getBigDecimal("quantityOnHandTotal");
+                if (quantityOnHandTotal == null || inventoryItem.getString("productId") == null) {
+                    continue;
+                }
+                if (UtilValidate.isEmpty(statusId) || "INV_AVAILABLE".equals(statusId) || "INV_NS_RETURNED".equals(statusId)
+                        || "SERIALIZED_INV_ITEM".equals(inventoryItem.getString("inventoryItemTypeId"))) {
+                    BigDecimal productQoh = productsQoh.get(inventoryItem.getString("productId"));
+                    productsQoh.put(inventoryItem.getString("productId"), productQoh == null ? quantityOnHandTotal : productQoh.add(quantityOnHandTotal));
+                }
+            }
+        }
+        return productsQoh;
+    }
+
     public static void logMrpError(String mrpId, String productId, String errorMessage, Delegator delegator) {
         logMrpError(mrpId, productId, UtilDateTime.nowTimestamp(), errorMessage, delegator);
     }
@@ -551,6 +581,15 @@ public class MrpServices {
      */
 
     public static void processBomComponent(String mrpId, GenericValue product, BigDecimal eventQuantity, Timestamp startDate, Map<String, Object> routingTaskStartDate, List<BOMNode> listComponent) {
+        processBomComponent(mrpId, product, eventQuantity, startDate, routingTaskStartDate, listComponent, MrpEventStore.getDatabaseStore(product.getDelegator()));
+    }
+
+    /**
+     * Process the bill of material (bom) of the product to add the requirements of the components to the events of the store.
+     * @see #processBomComponent(String, GenericValue, BigDecimal, Timestamp, Map, List)
+     */
+    public static void processBomComponent(String mrpId, GenericValue product, BigDecimal eventQuantity, Timestamp startDate, Map<String, Object> routingTaskStartDate, List<BOMNode> listComponent,
+            MrpEventStore mrpEventStore) {
         // TODO : change the return type to boolean to be able to test if all is ok or if it have had a exception
         Delegator delegator = product.getDelegator();
 
@@ -568,7 +607,7 @@ public class MrpServices {
                     parameters.put("mrpEventTypeId", "MRP_REQUIREMENT");
                     BigDecimal componentEventQuantity = node.getQuantity();
                     try {
-                        InventoryEventPlannedServices.createOrUpdateMrpEvent(parameters, componentEventQuantity.negate(), null, product.get("productId") + ": " + eventDate, false, delegator);
+                        mrpEventStore.createOrUpdateMrpEvent(parameters, componentEventQuantity.negate(), null, product.get("productId") + ": " + eventDate, false);
                     } catch (GenericEntityException e) {
                         Debug.logError("Error : findOne(\"MrpEvent\", parameters) ="+parameters+"--"+e.getMessage(), module);
                         logMrpError(mrpId, node.getProduct().getString("productId"), "Unable to create event (processBomComponent)", delegator);
@@ -583,7 +622,8 @@ public class MrpServices {
      * <ul>
      * <li>PreConditions : none</li>
      * <li>Result : The date when we must order or begin to build the products and subproducts we need are calculated</li>
-     * <li>INPUT : parameters to get from the context: <ul><li>String mrpName</li></ul></li>
+     * <li>INPUT : parameters to get from the context: <ul><li>String mrpName</li><li>Boolean inMemory: if true the MrpEvent records,
+     * the quantities on hand and the ProductFacility records are loaded once and the events are written back at the end of the run</li></ul></li>
      * <li>OUTPUT : Result to put in the map : <ul><li>none</li></ul></li>
      * </ul>
      *
@@ -602,6 +642,7 @@ public class MrpServices {
         Integer defaultYearsOffset = (Integer)context.get("defaultYearsOffset");
         String facilityGroupId = (String)context.get("facilityGroupId");
         String facilityId = (String)context.get("facilityId");
+        boolean inMemory = Boolean.TRUE.equals(context.get("inMemory"));
         String manufacturingFacilityId = null;
         if (UtilValidate.isEmpty(facilityId) && UtilValidate.isEmpty(facilityGroupId)) {
             return ServiceUtil.returnError(UtilProperties.getMessage(resource, "ManufacturingMrpFacilityNotAvailable", locale));
@@ -670,22 +711,31 @@ public class MrpServices {
         } catch (GenericServiceException e) {
             return ServiceUtil.returnError(UtilProperties.getMessage(resource, "ManufacturingMrpErrorRunningInitMrpEvents", UtilMisc.toMap("errorString", e.getMessage()), locale));
         }
+
+        // In memory mode, load the events, the stocks and the product facility parameters once instead of for each level and product
+        MrpEventStore mrpEventStore = null;
+        Map<String, BigDecimal> productsQoh = null;
+        Map<String, GenericValue> productFacilities = null;
+        try {
+            if (inMemory) {
+                mrpEventStore = MrpEventStore.loadInMemoryStore(delegator);
+                productsQoh = findProductsMrpQoh(facilityId, delegator);
+                productFacilities = new HashMap<String, GenericValue>();
+                for (GenericValue facilityProduct : EntityQuery.use(delegator).from("ProductFacility").where("facilityId", facilityId).queryList()) {
+                    productFacilities.put(facilityProduct.getString("productId"), facilityProduct);
+                }
+            } else {
+                mrpEventStore = MrpEventStore.getDatabaseStore(delegator);
+            }
+        } catch (GenericEntityException e) {
+            return ServiceUtil.returnError(UtilProperties.getMessage(resource, "ManufacturingMrpEventFindError", locale));
+        }
+
         long bomLevel = 0;
         do {
             // Find all products in MrpEventView, ordered by bom and eventDate
-            EntityCondition filterByConditions = null;
-            if (bomLevel == 0) {
-                filterByConditions = EntityCondition.makeCondition(EntityCondition.makeCondition("billOfMaterialLevel", EntityOperator.EQUALS, null),
-                                            EntityOperator.OR,
-                                            EntityCondition.makeCondition("billOfMaterialLevel", EntityOperator.EQUALS, bomLevel));
-            } else {
-                filterByConditions = EntityCondition.makeCondition("billOfMaterialLevel", EntityOperator.EQUALS, bomLevel);
-            }
             try {
-                listInventoryEventForMRP = EntityQuery.use(delegator).from("MrpEventView")
-                        .where(filterByConditions)
-                        .orderBy("productId", "eventDate")
-                        .queryList();
+                listInventoryEventForMRP = mrpEventStore.getEvents(bomLevel);
             } catch (GenericEntityException e) {
                 Long bomLevelToString = bomLevel;
                 return ServiceUtil.returnError(UtilProperties.getMessage(resource, "ManufacturingMrpErrorForBomLevel", UtilMisc.toMap("bomLevel", bomLevelToString.toString(), "errorString", e.getMessage()), locale));
@@ -708,16 +758,24 @@ public class MrpServices {
                         // It's a new product, so it's necessary to  read the MrpQoh
                         try {
                             product = inventoryEventForMRP.getRelatedOne("Product", true);
-                            productFacility = EntityUtil.getFirst(product.getRelated("ProductFacility", UtilMisc.toMap("facilityId", facilityId), null, true));
+                            if (inMemory) {
+                                productFacility = productFacilities.get(productId);
+                            } else {
+                                productFacility = EntityUtil.getFirst(product.getRelated("ProductFacility", UtilMisc.toMap("facilityId", facilityId), null, true));
+                            }
                         } catch (GenericEntityException e) {
                             return ServiceUtil.returnError(UtilProperties.getMessage(resource, "ManufacturingMrpCannotFindProductForEvent", locale));
                         }
-                        stockTmp = findProductMrpQoh(mrpId, product, facilityId, dispatcher, delegator);
+                        if (inMemory) {
+                            stockTmp = productsQoh.containsKey(productId) ? productsQoh.get(productId) : BigDecimal.ZERO;
+                        } else {
+                            stockTmp = findProductMrpQoh(mrpId, product, facilityId, dispatcher, delegator);
+                        }
                         try {
-                            InventoryEventPlannedServices.createOrUpdateMrpEvent(UtilMisc.<String, Object>toMap("mrpId", mrpId,
+                            mrpEventStore.createOrUpdateMrpEvent(UtilMisc.<String, Object>toMap("mrpId", mrpId,
                                     "productId", product.getString("productId"), 
                                     "mrpEventTypeId", "INITIAL_QOH", "eventDate", now), 
-                                    stockTmp, facilityId, null, false, delegator);
+                                    stockTmp, facilityId, null, false);
                         } catch (GenericEntityException e) {
                             return ServiceUtil.returnError(UtilProperties.getMessage(resource, "ManufacturingMrpCreateOrUpdateEvent", UtilMisc.toMap("parameters", parameters), locale));
                         }
@@ -807,7 +865,7 @@ public class MrpServices {
                         Map<String, Object> routingTaskStartDate = proposedOrder.calculateStartDate(daysToShip, routing, delegator, dispatcher, userLogin);
                         if (isBuilt) {
                             // process the product components
-                            processBomComponent(mrpId, product, proposedOrder.getQuantity(), proposedOrder.getRequirementStartDate(), routingTaskStartDate, components);
+                            processBomComponent(mrpId, product, proposedOrder.getQuantity(), proposedOrder.getRequirementStartDate(), routingTaskStartDate, components, mrpEventStore);
                         }
                         // create the  ProposedOrder (only if the product is warehouse managed), and the MrpEvent associated
                         String requirementId = null;
@@ -826,7 +884,7 @@ public class MrpServices {
                                                       "eventDate", eventDate,
                                                       "mrpEventTypeId", (isBuilt? "PROP_MANUF_O_RECP" : "PROP_PUR_O_RECP"));
                         try {
-                            InventoryEventPlannedServices.createOrUpdateMrpEvent(eventMap, proposedOrder.getQuantity(), null, eventName, (proposedOrder.getRequirementStartDate().compareTo(now) < 0), delegator);
+                            mrpEventStore.createOrUpdateMrpEvent(eventMap, proposedOrder.getQuantity(), null, eventName, (proposedOrder.getRequirementStartDate().compareTo(now) < 0));
                         } catch (GenericEntityException e) {
                             return ServiceUtil.returnError(UtilProperties.getMessage(resource, "ManufacturingMrpCreateOrUpdateEvent", UtilMisc.toMap("parameters", parameters), locale));
                         }
@@ -842,6 +900,12 @@ public class MrpServices {
             // if there are 3 levels with no inventoryEvenPanned we stop
         } while (bomLevelWithNoEvent < 3);
 
+        try {
+            mrpEventStore.flush();
+        } catch (GenericEntityException e) {
+            return ServiceUtil.returnError(UtilProperties.getMessage(resource, "ManufacturingMrpCreateOrUpdateEvent", UtilMisc.toMap("parameters", e.getMessage()), locale));
+        }
+
         result = new HashMap<String, Object>();
         List<Object> msgResult = new LinkedList<Object>();
         result.put("msgResult", msgResult);
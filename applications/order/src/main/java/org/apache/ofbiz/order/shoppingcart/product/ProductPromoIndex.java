@@ -0,0 +1,526 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.order.shoppingcart.product;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilDateTime;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntity;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.cache.Cache;
+import org.apache.ofbiz.entity.cache.EntityChangeListener;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.entity.util.EntityUtil;
+import org.apache.ofbiz.order.shoppingcart.ShoppingCart;
+import org.apache.ofbiz.order.shoppingcart.ShoppingCartItem;
+
+/**
+ * ProductPromoIndex - Compiled form of the product promotions used by the promotion engine.
+ * <p>
+ * Each promotion is compiled once into its rules, conditions and actions, with the product id
+ * sets of the conditions and actions pre-expanded from the promotion categories and products.
+ * The sets are bit sets over a shared product id dictionary, so the products of a cart can be
+ * matched against a condition with a single intersection; this lets
+ * {@link ProductPromoWorker#doPromotions} skip the rules and promotions that can not apply to the
+ * products in the cart without running their condition services.
+ * <p>
+ * A compiled promotion is dropped when the promotion data or the category membership it was built
+ * from changes, and is rebuilt when a from or thru date of that membership is crossed.
+ */
+public final class ProductPromoIndex {
+
+    public static final String module = ProductPromoIndex.class.getName();
+
+    private static final UtilCache<String, CompiledPromo> compiledPromoCache = UtilCache.createUtilCache("order.promo.compiled", true);
+    private static final ProductIdDictionary productIdDictionary = new ProductIdDictionary();
+    /** Incremented on each invalidation, so a promotion compiled while its data changed is not cached. */
+    private static final AtomicLong invalidationCount = new AtomicLong();
+
+    private static final Set<String> promoEntityNames = UtilMisc.toSet("ProductPromo", "ProductPromoRule", "ProductPromoCond",
+            "ProductPromoAction", "ProductPromoCategory", "ProductPromoProduct");
+    private static final Set<String> categoryEntityNames = UtilMisc.toSet("ProductCategoryMember", "ProductCategoryRollup");
+    // the condition services are resolved through these
+    private static final Set<String> methodEntityNames = UtilMisc.toSet("CustomMethod", "Enumeration");
+
+    static {
+        Cache.addEntityChangeListener(new PromoInvalidator());
+    }
+
+    private ProductPromoIndex() {}
+
+    /**
+     * Returns the compiled promotion, compiling it if it is not cached or if the cached one was
+     * built for category memberships that are not effective at <code>nowTimestamp</code>.
+     */
+    public static CompiledPromo getCompiledPromo(Delegator delegator, String productPromoId, Timestamp nowTimestamp) throws GenericEntityException {
+        if (nowTimestamp == null) {
+            nowTimestamp = UtilDateTime.nowTimestamp();
+        }
+        String cacheKey = delegator.getDelegatorName() + "::" + productPromoId;
+        CompiledPromo compiledPromo = compiledPromoCache.get(cacheKey);
+        if (compiledPromo == null || !compiledPromo.isValidAt(nowTimestamp)) {
+            long invalidations = invalidationCount.get();
+            compiledPromo = compile(delegator, productPromoId, nowTimestamp);
+            if (invalidations == invalidationCount.get()) {
+                compiledPromoCache.put(cacheKey, compiledPromo);
+            }
+        }
+        return compiledPromo;
+    }
+
+    /** Returns the product and parent product ids of the cart items as a bit set over the product id dictionary. */
+    public static BitSet getCartProductIds(ShoppingCart cart) {
+        BitSet cartProductIds = new BitSet();
+        for (ShoppingCartItem cartItem : cart) {
+            addProductId(cartProductIds, cartItem.getProductId());
+            addProductId(cartProductIds, cartItem.getParentProductId());
+        }
+        return cartProductIds;
+    }
+
+    private static void addProductId(BitSet productIdBits, String productId) {
+        if (productId != null) {
+            int index = productIdDictionary.indexOf(productId);
+            // a product that is not in the dictionary is not in any promotion
+            if (index >= 0) {
+                productIdBits.set(index);
+            }
+        }
+    }
+
+    private static CompiledPromo compile(Delegator delegator, String productPromoId, Timestamp nowTimestamp) throws GenericEntityException {
+        if (Debug.verboseOn()) {
+            Debug.logVerbose("Compiling promotion [" + productPromoId + "]", module);
+        }
+        Dependencies dependencies = new Dependencies(nowTimestamp);
+
+        // use the same cached queries as the rest of the promotion code to share the cache entries
+        List<GenericValue> productPromoRules = EntityQuery.use(delegator).from("ProductPromoRule").where("productPromoId", productPromoId).cache(true).queryList();
+        List<GenericValue> productPromoConds = EntityQuery.use(delegator).from("ProductPromoCond").where("productPromoId", productPromoId).orderBy("productPromoCondSeqId").cache(true).queryList();
+        List<GenericValue> productPromoActions = EntityQuery.use(delegator).from("ProductPromoAction").where("productPromoId", productPromoId).orderBy("productPromoActionSeqId").cache(true).queryList();
+        List<GenericValue> productPromoCategoriesAll = EntityQuery.use(delegator).from("ProductPromoCategory").where("productPromoId", productPromoId).cache(true).queryList();
+        List<GenericValue> productPromoProductsAll = EntityQuery.use(delegator).from("ProductPromoProduct").where("productPromoId", productPromoId).cache(true).queryList();
+
+        List<CompiledRule> rules = new ArrayList<>(productPromoRules.size());
+        Map<String, ProductIdSet> condProductIds = new HashMap<>();
+        Map<String, ProductIdSet> actionProductIds = new HashMap<>();
+        boolean hasOrderTotalCondition = false;
+        for (GenericValue productPromoRule : productPromoRules) {
+            String productPromoRuleId = productPromoRule.getString("productPromoRuleId");
+
+            List<CompiledCond> conds = new ArrayList<>();
+            for (GenericValue productPromoCond : EntityUtil.filterByAnd(productPromoConds, UtilMisc.toMap("productPromoRuleId", productPromoRuleId))) {
+                String productPromoCondSeqId = productPromoCond.getString("productPromoCondSeqId");
+                ProductIdSet productIds = makeProductIdSet(productPromoCategoriesAll, productPromoProductsAll, productPromoRuleId,
+                        "productPromoCondSeqId", productPromoCondSeqId, delegator, dependencies);
+                condProductIds.put(productPromoRuleId + "::" + productPromoCondSeqId, productIds);
+                conds.add(new CompiledCond(productPromoCond, productIds, ProductPromoWorker.getCondServiceName(productPromoCond, delegator)));
+
+                if ("PPIP_ORDER_TOTAL".equals(productPromoCond.getString("inputParamEnumId")) || "PPC_ORDER_TOTAL".equals(productPromoCond.getString("customMethodId"))) {
+                    hasOrderTotalCondition = true;
+                }
+            }
+
+            List<GenericValue> actions = EntityUtil.filterByAnd(productPromoActions, UtilMisc.toMap("productPromoRuleId", productPromoRuleId));
+            for (GenericValue productPromoAction : actions) {
+                String productPromoActionSeqId = productPromoAction.getString("productPromoActionSeqId");
+                ProductIdSet productIds = makeProductIdSet(productPromoCategoriesAll, productPromoProductsAll, productPromoRuleId,
+                        "productPromoActionSeqId", productPromoActionSeqId, delegator, dependencies);
+                actionProductIds.put(productPromoRuleId + "::" + productPromoActionSeqId, productIds);
+            }
+
+            rules.add(new CompiledRule(productPromoRule, conds, actions));
+        }
+        return new CompiledPromo(productPromoId, rules, condProductIds, actionProductIds, hasOrderTotalCondition, dependencies);
+    }
+
+    private static ProductIdSet makeProductIdSet(List<GenericValue> productPromoCategoriesAll, List<GenericValue> productPromoProductsAll, String productPromoRuleId,
+            String seqIdFieldName, String seqId, Delegator delegator, Dependencies dependencies) throws GenericEntityException {
+        // the promotion wide entries apply to all conditions and actions
+        List<GenericValue> productPromoCategories = EntityUtil.filterByAnd(productPromoCategoriesAll, UtilMisc.toMap("productPromoRuleId", "_NA_", seqIdFieldName, "_NA_"));
+        productPromoCategories.addAll(EntityUtil.filterByAnd(productPromoCategoriesAll, UtilMisc.toMap("productPromoRuleId", productPromoRuleId, seqIdFieldName, seqId)));
+        List<GenericValue> productPromoProducts = EntityUtil.filterByAnd(productPromoProductsAll, UtilMisc.toMap("productPromoRuleId", "_NA_", seqIdFieldName, "_NA_"));
+        productPromoProducts.addAll(EntityUtil.filterByAnd(productPromoProductsAll, UtilMisc.toMap("productPromoRuleId", productPromoRuleId, seqIdFieldName, seqId)));
+
+        Set<String> productIds = new HashSet<>();
+        ProductPromoWorker.makeProductPromoIdSet(productIds, productPromoCategories, productPromoProducts, delegator, dependencies);
+        return new ProductIdSet(productIds);
+    }
+
+    private static boolean operatorAccepts(String operatorEnumId, int compareBase) {
+        if ("PPC_EQ".equals(operatorEnumId)) {
+            return compareBase == 0;
+        } else if ("PPC_NEQ".equals(operatorEnumId)) {
+            return compareBase != 0;
+        } else if ("PPC_LT".equals(operatorEnumId)) {
+            return compareBase < 0;
+        } else if ("PPC_LTE".equals(operatorEnumId)) {
+            return compareBase <= 0;
+        } else if ("PPC_GT".equals(operatorEnumId)) {
+            return compareBase > 0;
+        } else if ("PPC_GTE".equals(operatorEnumId)) {
+            return compareBase >= 0;
+        }
+        return false;
+    }
+
+    /** A compiled promotion: its rules in evaluation order and the product id sets of its conditions and actions. */
+    public static final class CompiledPromo {
+        private final String productPromoId;
+        private final List<CompiledRule> rules;
+        private final Map<String, ProductIdSet> condProductIds;
+        private final Map<String, ProductIdSet> actionProductIds;
+        private final boolean hasOrderTotalCondition;
+        private final Set<String> productCategoryIds;
+        private final long validFrom;
+        private final long validThru;
+
+        private CompiledPromo(String productPromoId, List<CompiledRule> rules, Map<String, ProductIdSet> condProductIds, Map<String, ProductIdSet> actionProductIds,
+                boolean hasOrderTotalCondition, Dependencies dependencies) {
+            this.productPromoId = productPromoId;
+            this.rules = Collections.unmodifiableList(rules);
+            this.condProductIds = condProductIds;
+            this.actionProductIds = actionProductIds;
+            this.hasOrderTotalCondition = hasOrderTotalCondition;
+            this.productCategoryIds = dependencies.productCategoryIds;
+            this.validFrom = dependencies.validFrom;
+            this.validThru = dependencies.validThru;
+        }
+
+        public String getProductPromoId() {
+            return productPromoId;
+        }
+
+        public List<CompiledRule> getRules() {
+            return rules;
+        }
+
+        public boolean hasOrderTotalCondition() {
+            return hasOrderTotalCondition;
+        }
+
+        /** Returns the read-only product id set of the condition, or <code>null</code> if the condition is not part of this promotion. */
+        public Set<String> getCondProductIds(String productPromoRuleId, String productPromoCondSeqId) {
+            return condProductIds.get(productPromoRuleId + "::" + productPromoCondSeqId);
+        }
+
+        /** Returns the read-only product id set of the action, or <code>null</code> if the action is not part of this promotion. */
+        public Set<String> getActionProductIds(String productPromoRuleId, String productPromoActionSeqId) {
+            return actionProductIds.get(productPromoRuleId + "::" + productPromoActionSeqId);
+        }
+
+        /** Returns true if at least one rule is not ruled out by the products of the cart, see {@link CompiledRule#isUnsatisfiable}. */
+        public boolean hasApplicableRule(BitSet cartProductIds) {
+            for (CompiledRule rule : rules) {
+                if (!rule.isUnsatisfiable(cartProductIds)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean isValidAt(Timestamp nowTimestamp) {
+            long now = nowTimestamp.getTime();
+            return validFrom <= now && now < validThru;
+        }
+
+        private boolean dependsOnAny(Set<String> changedProductCategoryIds) {
+            for (String productCategoryId : changedProductCategoryIds) {
+                if (productCategoryIds.contains(productCategoryId)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /** A compiled promotion rule: its conditions and actions in sequence order. */
+    public static final class CompiledRule {
+        private final GenericValue productPromoRule;
+        private final List<CompiledCond> conds;
+        private final List<GenericValue> actions;
+
+        private CompiledRule(GenericValue productPromoRule, List<CompiledCond> conds, List<GenericValue> actions) {
+            this.productPromoRule = productPromoRule;
+            this.conds = Collections.unmodifiableList(conds);
+            this.actions = Collections.unmodifiableList(actions);
+        }
+
+        public GenericValue getProductPromoRule() {
+            return productPromoRule;
+        }
+
+        public List<CompiledCond> getConds() {
+            return conds;
+        }
+
+        public List<GenericValue> getActions() {
+            return actions;
+        }
+
+        /**
+         * Returns true if the first condition of the rule can not be met by the products of the cart;
+         * the conditions before an unsatisfiable one are always evaluated, so later ones are not considered here.
+         */
+        public boolean isUnsatisfiable(BitSet cartProductIds) {
+            return !conds.isEmpty() && conds.get(0).isUnsatisfiable(cartProductIds);
+        }
+    }
+
+    /** A compiled promotion condition with the outcome of its product condition service for a cart without its products. */
+    public static final class CompiledCond {
+        private final GenericValue productPromoCond;
+        private final ProductIdSet productIds;
+        private final boolean failsWithoutProduct;
+        private final boolean resetsRuleUse;
+
+        private CompiledCond(GenericValue productPromoCond, ProductIdSet productIds, String serviceName) {
+            this.productPromoCond = productPromoCond;
+            this.productIds = productIds;
+            boolean failsWithoutProduct = false;
+            boolean resetsRuleUse = false;
+            // mirror the productPromoCondProduct* services when no cart item is in the product id set
+            String condValue = productPromoCond.getString("condValue");
+            String operatorEnumId = productPromoCond.getString("operatorEnumId");
+            try {
+                if ("productPromoCondProductAmount".equals(serviceName)) {
+                    BigDecimal amountNeeded = UtilValidate.isNotEmpty(condValue) ? new BigDecimal(condValue) : BigDecimal.ZERO;
+                    failsWithoutProduct = amountNeeded.compareTo(BigDecimal.ZERO) > 0;
+                    resetsRuleUse = true;
+                } else if ("productPromoCondProductQuant".equals(serviceName)) {
+                    BigDecimal quantityNeeded = UtilValidate.isNotEmpty(condValue) ? new BigDecimal(condValue) : BigDecimal.ONE;
+                    failsWithoutProduct = quantityNeeded.compareTo(BigDecimal.ZERO) > 0 && !operatorAccepts(operatorEnumId, -1);
+                    resetsRuleUse = true;
+                } else if ("productPromoCondProductTotal".equals(serviceName)) {
+                    int compareBase = UtilValidate.isNotEmpty(condValue) ? BigDecimal.ZERO.compareTo(new BigDecimal(condValue)) : -1;
+                    failsWithoutProduct = !operatorAccepts(operatorEnumId, compareBase);
+                }
+            } catch (NumberFormatException e) {
+                // leave it to the service to report the bad value
+                failsWithoutProduct = false;
+            }
+            this.failsWithoutProduct = failsWithoutProduct;
+            this.resetsRuleUse = resetsRuleUse;
+        }
+
+        public GenericValue getProductPromoCond() {
+            return productPromoCond;
+        }
+
+        public Set<String> getProductIds() {
+            return productIds;
+        }
+
+        /** Returns true if the condition is known to be false because none of its products are in the cart. */
+        public boolean isUnsatisfiable(BitSet cartProductIds) {
+            return failsWithoutProduct && !productIds.intersects(cartProductIds);
+        }
+
+        /** Returns true if the condition service resets the candidate uses of its rule when it fails. */
+        public boolean resetsRuleUse() {
+            return resetsRuleUse;
+        }
+    }
+
+    /** Collects what a compiled promotion depends on: the categories it was expanded from and the dates of their memberships. */
+    static final class Dependencies {
+        private final Timestamp nowTimestamp;
+        private final Set<String> productCategoryIds = new HashSet<>();
+        private long validFrom = Long.MIN_VALUE;
+        private long validThru = Long.MAX_VALUE;
+
+        Dependencies(Timestamp nowTimestamp) {
+            this.nowTimestamp = nowTimestamp;
+        }
+
+        Timestamp getNowTimestamp() {
+            return nowTimestamp;
+        }
+
+        void addProductCategoryId(String productCategoryId) {
+            productCategoryIds.add(productCategoryId);
+        }
+
+        /** Same as {@link EntityUtil#isValueActive(GenericValue, Timestamp)}, narrowing the validity to the dates of the value. */
+        boolean isValueActive(GenericValue datedValue) {
+            trackDate(datedValue.getTimestamp("fromDate"));
+            trackDate(datedValue.getTimestamp("thruDate"));
+            return EntityUtil.isValueActive(datedValue, nowTimestamp);
+        }
+
+        private void trackDate(Timestamp date) {
+            if (date != null) {
+                long time = date.getTime();
+                if (time <= nowTimestamp.getTime()) {
+                    validFrom = Math.max(validFrom, time);
+                } else {
+                    validThru = Math.min(validThru, time);
+                }
+            }
+        }
+    }
+
+    /** Read-only set of product ids kept as a bit set over the product id dictionary. */
+    private static final class ProductIdSet extends AbstractSet<String> {
+        private final BitSet productIdBits = new BitSet();
+        private final int size;
+
+        private ProductIdSet(Set<String> productIds) {
+            for (String productId : productIds) {
+                productIdBits.set(productIdDictionary.add(productId));
+            }
+            this.size = productIds.size();
+        }
+
+        private boolean intersects(BitSet cartProductIds) {
+            return productIdBits.intersects(cartProductIds);
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof String)) {
+                return false;
+            }
+            int index = productIdDictionary.indexOf((String) o);
+            return index >= 0 && productIdBits.get(index);
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            final PrimitiveIterator.OfInt indexes = productIdBits.stream().iterator();
+            return new Iterator<String>() {
+                @Override
+                public boolean hasNext() {
+                    return indexes.hasNext();
+                }
+
+                @Override
+                public String next() {
+                    return productIdDictionary.getProductId(indexes.nextInt());
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /** Assigns a stable bit index to each product id used in a promotion; ids are never removed. */
+    private static final class ProductIdDictionary {
+        private final Map<String, Integer> indexes = new ConcurrentHashMap<>();
+        private volatile String[] productIds = new String[1024];
+        private int size = 0;
+
+        private int indexOf(String productId) {
+            Integer index = indexes.get(productId);
+            return index != null ? index : -1;
+        }
+
+        private synchronized int add(String productId) {
+            Integer index = indexes.get(productId);
+            if (index != null) {
+                return index;
+            }
+            String[] productIds = this.productIds;
+            if (size == productIds.length) {
+                String[] newProductIds = new String[size * 2];
+                System.arraycopy(productIds, 0, newProductIds, 0, size);
+                productIds = newProductIds;
+            }
+            productIds[size] = productId;
+            this.productIds = productIds;
+            indexes.put(productId, size);
+            return size++;
+        }
+
+        private String getProductId(int index) {
+            return productIds[index];
+        }
+    }
+
+    /** Drops the compiled promotions affected by a change of the promotion or category data. */
+    private static final class PromoInvalidator implements EntityChangeListener {
+        @Override
+        public void entityChanged(String delegatorName, String entityName) {
+            if (entityName == null || promoEntityNames.contains(entityName) || categoryEntityNames.contains(entityName) || methodEntityNames.contains(entityName)) {
+                invalidationCount.incrementAndGet();
+                String keyPrefix = delegatorName + "::";
+                for (String cacheKey : compiledPromoCache.getCacheLineKeys()) {
+                    if (cacheKey.startsWith(keyPrefix)) {
+                        compiledPromoCache.remove(cacheKey);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void entityValueChanged(String delegatorName, GenericEntity entity) {
+            String entityName = entity.getEntityName();
+            if (promoEntityNames.contains(entityName)) {
+                String productPromoId = entity.getString("productPromoId");
+                if (productPromoId == null) {
+                    entityChanged(delegatorName, entityName);
+                    return;
+                }
+                invalidationCount.incrementAndGet();
+                compiledPromoCache.remove(delegatorName + "::" + productPromoId);
+            } else if (categoryEntityNames.contains(entityName)) {
+                Set<String> changedProductCategoryIds = new HashSet<>();
+                changedProductCategoryIds.add(entity.getString("productCategoryId"));
+                if ("ProductCategoryRollup".equals(entityName)) {
+                    changedProductCategoryIds.add(entity.getString("parentProductCategoryId"));
+                }
+                invalidationCount.incrementAndGet();
+                String keyPrefix = delegatorName + "::";
+                for (String cacheKey : compiledPromoCache.getCacheLineKeys()) {
+                    if (cacheKey.startsWith(keyPrefix)) {
+                        CompiledPromo compiledPromo = compiledPromoCache.get(cacheKey);
+                        if (compiledPromo != null && compiledPromo.dependsOnAny(changedProductCategoryIds)) {
+                            compiledPromoCache.remove(cacheKey);
+                        }
+                    }
+                }
+            } else {
+                entityChanged(delegatorName, entityName);
+            }
+        }
+    }
+}
@@ -23,6 +23,7 @@ import java.math.MathContext;
 import java.math.RoundingMode;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -57,7 +58,6 @@ import org.apache.ofbiz.order.shoppingcart.ShoppingCart.ProductPromoUseInfo;
 import org.apache.ofbiz.order.shoppingcart.ShoppingCartEvents;
 import org.apache.ofbiz.order.shoppingcart.ShoppingCartItem;
 import org.apache.ofbiz.product.product.ProductContentWrapper;
-import org.apache.ofbiz.product.product.ProductSearch;
 import org.apache.ofbiz.service.GenericServiceException;
 import org.apache.ofbiz.service.LocalDispatcher;
 import org.apache.ofbiz.service.ServiceUtil;
@@ -362,7 +362,7 @@ public final class ProductPromoWorker {
             }
 
             for (GenericValue productPromo : productPromoList) {
-                if (hasOrderTotalCondition(productPromo, delegator)) {
+                if (ProductPromoIndex.getCompiledPromo(delegator, productPromo.getString("productPromoId"), nowTimestamp).hasOrderTotalCondition()) {
                     if (!usesPerPromo.containsKey(productPromo.getString("productPromoId"))) {
                         sortedExplodedProductPromoList.add(productPromo);
                     }
@@ -389,24 +389,6 @@ public final class ProductPromoWorker {
         }
     }
 
-    private static boolean hasOrderTotalCondition(GenericValue productPromo, Delegator delegator) throws GenericEntityException {
-        // REFACTOR to stream(), anyMatch
-        boolean hasOtCond = false;
-        List<GenericValue> productPromoConds = EntityQuery.use(delegator).from("ProductPromoCond")
-                .where("productPromoId", productPromo.get("productPromoId"))
-                .orderBy("productPromoCondSeqId")
-                .cache(true).queryList();
-        for (GenericValue productPromoCond : productPromoConds) {
-            String inputParamEnumId = productPromoCond.getString("inputParamEnumId");
-            String customMethodId = productPromoCond.getString("customMethodId");
-            if ("PPIP_ORDER_TOTAL".equals(inputParamEnumId) || "PPC_ORDER_TOTAL".equals(customMethodId)) {
-                hasOtCond = true;
-                break;
-            }
-        }
-        return hasOtCond;
-    }
-
     private static void runProductPromos(List<GenericValue> productPromoList, ShoppingCart cart, Delegator delegator, LocalDispatcher dispatcher, Timestamp nowTimestamp, boolean isolatedTestRun) throws GeneralException {
         String partyId = cart.getPartyId();
 
@@ -434,8 +416,20 @@ public final class ProductPromoWorker {
                 for (GenericValue productPromo : productPromoList) {
                     String productPromoId = productPromo.getString("productPromoId");
 
-                    List<GenericValue> productPromoRules = productPromo.getRelated("ProductPromoRule", null, null, true);
-                    if (UtilValidate.isNotEmpty(productPromoRules)) {
+                    ProductPromoIndex.CompiledPromo compiledPromo = ProductPromoIndex.getCompiledPromo(delegator, productPromoId, nowTimestamp);
+                    List<ProductPromoIndex.CompiledRule> productPromoRules = compiledPromo.getRules();
+                    if (UtilValidate.isNotEmpty(productPromoRules) && !compiledPromo.hasApplicableRule(ProductPromoIndex.getCartProductIds(cart))) {
+                        // none of the rules can apply to the products in the cart, so don't bother with the use limits and codes;
+                        // only reset the rule uses as the product condition services would have done
+                        if (Debug.verboseOn()) {
+                            Debug.logVerbose("Skipping promotion [" + productPromoId + "], no rule matches the products in the cart", module);
+                        }
+                        for (ProductPromoIndex.CompiledRule compiledRule : productPromoRules) {
+                            if (compiledRule.getConds().get(0).resetsRuleUse()) {
+                                cart.resetPromoRuleUse(productPromoId, compiledRule.getProductPromoRule().getString("productPromoRuleId"));
+                            }
+                        }
+                    } else if (UtilValidate.isNotEmpty(productPromoRules)) {
                         // always have a useLimit to avoid unlimited looping, default to 1 if no other is specified
                         Long candidateUseLimit = getProductPromoUseLimit(productPromo, partyId, delegator);
                         Long useLimit = candidateUseLimit;
@@ -814,9 +808,10 @@ public final class ProductPromoWorker {
     }
 
     private static boolean runProductPromoRules(ShoppingCart cart, Long useLimit, boolean requireCode, String productPromoCodeId, Long codeUseLimit, long maxUseLimit,
-        GenericValue productPromo, List<GenericValue> productPromoRules, LocalDispatcher dispatcher, Delegator delegator, Timestamp nowTimestamp) throws GenericEntityException, UseLimitException {
+        GenericValue productPromo, List<ProductPromoIndex.CompiledRule> productPromoRules, LocalDispatcher dispatcher, Delegator delegator, Timestamp nowTimestamp) throws GenericEntityException, UseLimitException {
         boolean cartChanged = false;
         Map<ShoppingCartItem,BigDecimal> usageInfoMap = prepareProductUsageInfoMap(cart);
+        BitSet cartProductIds = ProductPromoIndex.getCartProductIds(cart);
         String productPromoId = productPromo.getString("productPromoId");
         while ((useLimit == null || useLimit > cart.getProductPromoUseCount(productPromoId)) &&
                 (!requireCode || UtilValidate.isNotEmpty(productPromoCodeId)) &&
@@ -825,26 +820,29 @@ public final class ProductPromoWorker {
             BigDecimal totalDiscountAmount = BigDecimal.ZERO;
             BigDecimal quantityLeftInActions = BigDecimal.ZERO;
 
-            Iterator<GenericValue> promoRulesIter = productPromoRules.iterator();
-            while (promoRulesIter != null && promoRulesIter.hasNext()) {
-                GenericValue productPromoRule = promoRulesIter.next();
+            for (ProductPromoIndex.CompiledRule compiledRule : productPromoRules) {
+                GenericValue productPromoRule = compiledRule.getProductPromoRule();
 
                 // if apply then performActions when no conditions are false, so default to true
                 boolean performActions = true;
 
                 // loop through conditions for rule, if any false, set allConditionsTrue to false
-                List<GenericValue> productPromoConds = EntityQuery.use(delegator).from("ProductPromoCond").where("productPromoId", productPromo.get("productPromoId")).orderBy("productPromoCondSeqId").cache(true).queryList();
-                productPromoConds = EntityUtil.filterByAnd(productPromoConds, UtilMisc.toMap("productPromoRuleId", productPromoRule.get("productPromoRuleId")));
-                // using the other method to consolidate cache entries because the same cache is used elsewhere: List productPromoConds = productPromoRule.getRelated("ProductPromoCond", null, UtilMisc.toList("productPromoCondSeqId"), true);
+                List<ProductPromoIndex.CompiledCond> productPromoConds = compiledRule.getConds();
                 if (Debug.verboseOn()) {
                     Debug.logVerbose("Checking " + productPromoConds.size() + " conditions for rule " + productPromoRule, module);
                 }
 
-                Iterator<GenericValue> productPromoCondIter = UtilMisc.toIterator(productPromoConds);
-                while (productPromoCondIter != null && productPromoCondIter.hasNext()) {
-                    GenericValue productPromoCond = productPromoCondIter.next();
-
-                    boolean conditionSatisfied = checkCondition(productPromoCond, cart, delegator, dispatcher, nowTimestamp);
+                for (ProductPromoIndex.CompiledCond compiledCond : productPromoConds) {
+                    boolean conditionSatisfied;
+                    if (compiledCond.isUnsatisfiable(cartProductIds)) {
+                        // none of the condition products are in the cart, so skip the service and just do what it would have done
+                        if (compiledCond.resetsRuleUse()) {
+                            cart.resetPromoRuleUse(productPromoId, productPromoRule.getString("productPromoRuleId"));
+                        }
+                        conditionSatisfied = false;
+                    } else {
+                        conditionSatisfied = checkCondition(compiledCond.getProductPromoCond(), cart, delegator, dispatcher, nowTimestamp);
+                    }
 
                     // any false condition will cause it to NOT perform the action
                     if (!conditionSatisfied) {
@@ -856,10 +854,7 @@ public final class ProductPromoWorker {
                 if (performActions) {
                     // perform all actions, either apply or unapply
 
-                    List<GenericValue> productPromoActions = productPromoRule.getRelated("ProductPromoAction", null, UtilMisc.toList("productPromoActionSeqId"), true);
-                    Iterator<GenericValue> productPromoActionIter = UtilMisc.toIterator(productPromoActions);
-                    while (productPromoActionIter != null && productPromoActionIter.hasNext()) {
-                        GenericValue productPromoAction = productPromoActionIter.next();
+                    for (GenericValue productPromoAction : compiledRule.getActions()) {
                         try {
                             ActionResultInfo actionResultInfo = performAction(productPromoAction, cart, delegator, dispatcher, nowTimestamp);
                             totalDiscountAmount = totalDiscountAmount.add(actionResultInfo.totalDiscountAmount);
@@ -870,6 +865,8 @@ public final class ProductPromoWorker {
                             if (actionChangedCart) {
                                 promoUsed = true;
                                 cartChanged = true;
+                                // the action may have added items, eg gift with purchase
+                                cartProductIds = ProductPromoIndex.getCartProductIds(cart);
                             }
                         } catch (CartItemModifyException e) {
                             Debug.logError(e, "Error modifying the cart while performing promotion action [" + productPromoAction.getPrimaryKey() + "]", module);
@@ -926,9 +923,7 @@ public final class ProductPromoWorker {
     }
 
     private static boolean checkCondition(GenericValue productPromoCond, ShoppingCart cart, Delegator delegator, LocalDispatcher dispatcher, Timestamp nowTimestamp) throws GenericEntityException {
-        String condValue = productPromoCond.getString("condValue");
         String otherValue = productPromoCond.getString("otherValue");
-        String inputParamEnumId = productPromoCond.getString("inputParamEnumId");
         String operatorEnumId = productPromoCond.getString("operatorEnumId");
         if (otherValue != null && otherValue.contains("@")) {
             otherValue = "";
@@ -944,27 +939,7 @@ public final class ProductPromoWorker {
         Integer compareBase = null;
 
         //resolve the service name to use
-        String serviceName = null;
-        GenericValue customMethod = productPromoCond.getRelatedOne("CustomMethod", true);
-        if (customMethod != null) {
-            serviceName = customMethod.getString("customMethodName");
-        } else {
-            if ("PPIP_SERVICE".equals(inputParamEnumId)) {
-                serviceName = condValue;
-            } else {
-                //for backward compatibility resolve customMethodId from enumCode
-                GenericValue condEnum = EntityQuery.use(delegator).from("Enumeration").where("enumId", inputParamEnumId).cache().queryOne();
-                if (condEnum != null) {
-                    customMethod = EntityQuery.use(delegator).from("CustomMethod").where("customMethodId", condEnum.get("enumCode")).cache().queryOne();
-                    if (customMethod == null) {
-                        Debug.logWarning("The oldest enumeration " + inputParamEnumId + " for promo " + productPromoCond.getPkShortValueString()
-                                + " haven't the new customMethod to use, please check your data or load seed data", module);
-                        return false;
-                    }
-                    serviceName = customMethod.getString("customMethodName");
-                }
-            }
-        }
+        String serviceName = getCondServiceName(productPromoCond, delegator);
         
         if (serviceName != null) {
             Map<String, Object> serviceCtx = UtilMisc.<String, Object>toMap("productPromoCond", productPromoCond, "shoppingCart", cart, "nowTimestamp", nowTimestamp);
@@ -1005,6 +980,30 @@ public final class ProductPromoWorker {
         return false;
     }
 
+    /** Resolves the name of the service checking the condition, from its custom method or for backward compatibility from its input parameter. */
+    static String getCondServiceName(GenericValue productPromoCond, Delegator delegator) throws GenericEntityException {
+        String inputParamEnumId = productPromoCond.getString("inputParamEnumId");
+        GenericValue customMethod = productPromoCond.getRelatedOne("CustomMethod", true);
+        if (customMethod != null) {
+            return customMethod.getString("customMethodName");
+        }
+        if ("PPIP_SERVICE".equals(inputParamEnumId)) {
+            return productPromoCond.getString("condValue");
+        }
+        //for backward compatibility resolve customMethodId from enumCode
+        GenericValue condEnum = EntityQuery.use(delegator).from("Enumeration").where("enumId", inputParamEnumId).cache().queryOne();
+        if (condEnum != null) {
+            customMethod = EntityQuery.use(delegator).from("CustomMethod").where("customMethodId", condEnum.get("enumCode")).cache().queryOne();
+            if (customMethod == null) {
+                Debug.logWarning("The oldest enumeration " + inputParamEnumId + " for promo " + productPromoCond.getPkShortValueString()
+                        + " haven't the new customMethod to use, please check your data or load seed data", module);
+                return null;
+            }
+            return customMethod.getString("customMethodName");
+        }
+        return null;
+    }
+
     public static boolean checkConditionsForItem(GenericValue productPromoActionOrCond, ShoppingCart cart, ShoppingCartItem cartItem, Delegator delegator, LocalDispatcher dispatcher, Timestamp nowTimestamp) throws GenericEntityException {
         GenericValue productPromoRule = productPromoActionOrCond.getRelatedOne("ProductPromoRule", true);
 
@@ -1289,46 +1288,38 @@ public final class ProductPromoWorker {
         return null;
     }
 
+    /** Returns the read-only set of the product ids of the condition, see {@link ProductPromoIndex}. */
     public static Set<String> getPromoRuleCondProductIds(GenericValue productPromoCond, Delegator delegator, Timestamp nowTimestamp) throws GenericEntityException {
-        // get a cached list for the whole promo and filter it as needed, this for better efficiency in caching
-        List<GenericValue> productPromoCategoriesAll = EntityQuery.use(delegator).from("ProductPromoCategory").where("productPromoId", productPromoCond.get("productPromoId")).cache(true).queryList();
-        List<GenericValue> productPromoCategories = EntityUtil.filterByAnd(productPromoCategoriesAll, UtilMisc.toMap("productPromoRuleId", "_NA_", "productPromoCondSeqId", "_NA_"));
-        productPromoCategories.addAll(EntityUtil.filterByAnd(productPromoCategoriesAll, UtilMisc.toMap("productPromoRuleId", productPromoCond.get("productPromoRuleId"), "productPromoCondSeqId", productPromoCond.get("productPromoCondSeqId"))));
-        List<GenericValue> productPromoProductsAll = EntityQuery.use(delegator).from("ProductPromoProduct").where("productPromoId", productPromoCond.get("productPromoId")).cache(true).queryList();
-        List<GenericValue> productPromoProducts = EntityUtil.filterByAnd(productPromoProductsAll, UtilMisc.toMap("productPromoRuleId", "_NA_", "productPromoCondSeqId", "_NA_"));
-        productPromoProducts.addAll(EntityUtil.filterByAnd(productPromoProductsAll, UtilMisc.toMap("productPromoRuleId", productPromoCond.get("productPromoRuleId"), "productPromoCondSeqId", productPromoCond.get("productPromoCondSeqId"))));
-
-        Set<String> productIds = new HashSet<>();
-        makeProductPromoIdSet(productIds, productPromoCategories, productPromoProducts, delegator, nowTimestamp, false);
-        return productIds;
+        ProductPromoIndex.CompiledPromo compiledPromo = ProductPromoIndex.getCompiledPromo(delegator, productPromoCond.getString("productPromoId"), nowTimestamp);
+        Set<String> productIds = compiledPromo.getCondProductIds(productPromoCond.getString("productPromoRuleId"), productPromoCond.getString("productPromoCondSeqId"));
+        return productIds != null ? productIds : Collections.<String>emptySet();
     }
 
+    /** Returns the read-only set of the product ids of the action, see {@link ProductPromoIndex}. */
     public static Set<String> getPromoRuleActionProductIds(GenericValue productPromoAction, Delegator delegator, Timestamp nowTimestamp) throws GenericEntityException {
-        // get a cached list for the whole promo and filter it as needed, this for better efficiency in caching
-        List<GenericValue> productPromoCategoriesAll = EntityQuery.use(delegator).from("ProductPromoCategory").where("productPromoId", productPromoAction.get("productPromoId")).cache(true).queryList();
-        List<GenericValue> productPromoCategories = EntityUtil.filterByAnd(productPromoCategoriesAll, UtilMisc.toMap("productPromoRuleId", "_NA_", "productPromoActionSeqId", "_NA_"));
-        productPromoCategories.addAll(EntityUtil.filterByAnd(productPromoCategoriesAll, UtilMisc.toMap("productPromoRuleId", productPromoAction.get("productPromoRuleId"), "productPromoActionSeqId", productPromoAction.get("productPromoActionSeqId"))));
-
-        List<GenericValue> productPromoProductsAll = EntityQuery.use(delegator).from("ProductPromoProduct").where("productPromoId", productPromoAction.get("productPromoId")).cache(true).queryList();
-        List<GenericValue> productPromoProducts = EntityUtil.filterByAnd(productPromoProductsAll, UtilMisc.toMap("productPromoRuleId", "_NA_", "productPromoActionSeqId", "_NA_"));
-        productPromoProducts.addAll(EntityUtil.filterByAnd(productPromoProductsAll, UtilMisc.toMap("productPromoRuleId", productPromoAction.get("productPromoRuleId"), "productPromoActionSeqId", productPromoAction.get("productPromoActionSeqId"))));
-
-        Set<String> productIds = new HashSet<>();
-        makeProductPromoIdSet(productIds, productPromoCategories, productPromoProducts, delegator, nowTimestamp, false);
-        return productIds;
+        ProductPromoIndex.CompiledPromo compiledPromo = ProductPromoIndex.getCompiledPromo(delegator, productPromoAction.getString("productPromoId"), nowTimestamp);
+        Set<String> productIds = compiledPromo.getActionProductIds(productPromoAction.getString("productPromoRuleId"), productPromoAction.getString("productPromoActionSeqId"));
+        return productIds != null ? productIds : Collections.<String>emptySet();
     }
 
     public static void makeProductPromoIdSet(Set<String> productIds, List<GenericValue> productPromoCategories, List<GenericValue> productPromoProducts, Delegator delegator, Timestamp nowTimestamp, boolean filterOldProducts) throws GenericEntityException {
+        if (nowTimestamp == null) {
+            nowTimestamp = UtilDateTime.nowTimestamp();
+        }
+        makeProductPromoIdSet(productIds, productPromoCategories, productPromoProducts, delegator, new ProductPromoIndex.Dependencies(nowTimestamp));
+    }
+
+    static void makeProductPromoIdSet(Set<String> productIds, List<GenericValue> productPromoCategories, List<GenericValue> productPromoProducts, Delegator delegator, ProductPromoIndex.Dependencies dependencies) throws GenericEntityException {
         // do the includes
-        handleProductPromoCategories(productIds, productPromoCategories, "PPPA_INCLUDE", delegator, nowTimestamp);
+        handleProductPromoCategories(productIds, productPromoCategories, "PPPA_INCLUDE", delegator, dependencies);
         handleProductPromoProducts(productIds, productPromoProducts, "PPPA_INCLUDE");
 
         // do the excludes
-        handleProductPromoCategories(productIds, productPromoCategories, "PPPA_EXCLUDE", delegator, nowTimestamp);
+        handleProductPromoCategories(productIds, productPromoCategories, "PPPA_EXCLUDE", delegator, dependencies);
         handleProductPromoProducts(productIds, productPromoProducts, "PPPA_EXCLUDE");
 
         // do the always includes
-        handleProductPromoCategories(productIds, productPromoCategories, "PPPA_ALWAYS", delegator, nowTimestamp);
+        handleProductPromoCategories(productIds, productPromoCategories, "PPPA_ALWAYS", delegator, dependencies);
         handleProductPromoProducts(productIds, productPromoProducts, "PPPA_ALWAYS");
     }
 
@@ -1400,7 +1391,7 @@ public final class ProductPromoWorker {
         return false;
     }
 
-    private static void handleProductPromoCategories(Set<String> productIds, List<GenericValue> productPromoCategories, String productPromoApplEnumId, Delegator delegator, Timestamp nowTimestamp) throws GenericEntityException {
+    private static void handleProductPromoCategories(Set<String> productIds, List<GenericValue> productPromoCategories, String productPromoApplEnumId, Delegator delegator, ProductPromoIndex.Dependencies dependencies) throws GenericEntityException {
         boolean include = !"PPPA_EXCLUDE".equals(productPromoApplEnumId);
         Set<String> productCategoryIds = new HashSet<>();
         Map<String, List<Set<String>>> productCategoryGroupSetListMap = new HashMap<>();
@@ -1409,7 +1400,7 @@ public final class ProductPromoWorker {
             if (productPromoApplEnumId.equals(productPromoCategory.getString("productPromoApplEnumId"))) {
                 Set<String> tempCatIdSet = new HashSet<>();
                 if ("Y".equals(productPromoCategory.getString("includeSubCategories"))) {
-                    ProductSearch.getAllSubCategoryIds(productPromoCategory.getString("productCategoryId"), tempCatIdSet, delegator, nowTimestamp);
+                    getAllSubCategoryIds(productPromoCategory.getString("productCategoryId"), tempCatIdSet, delegator, dependencies);
                 } else {
                     tempCatIdSet.add(productPromoCategory.getString("productCategoryId"));
                 }
@@ -1442,7 +1433,7 @@ public final class ProductPromoWorker {
         }
 
         // now that the category Set and Map are setup, take care of the productCategoryIds Set first
-        getAllProductIds(productCategoryIds, productIds, delegator, nowTimestamp, include);
+        getAllProductIds(productCategoryIds, productIds, delegator, dependencies, include);
 
         // now handle the productCategoryGroupSetListMap
         // if a set has more than one category (because of an include sub-cats) then do an or
@@ -1455,7 +1446,7 @@ public final class ProductPromoWorker {
             for (Set<String> catIdSet : catIdSetList) {
                 // make a Set of productIds including all ids from all categories
                 Set<String> groupProductIdSet = new HashSet<>();
-                getAllProductIds(catIdSet, groupProductIdSet, delegator, nowTimestamp, true);
+                getAllProductIds(catIdSet, groupProductIdSet, delegator, dependencies, true);
                 productIdSetList.add(groupProductIdSet);
             }
 
@@ -1476,11 +1467,33 @@ public final class ProductPromoWorker {
         }
     }
 
-    private static void getAllProductIds(Set<String> productCategoryIdSet, Set<String> productIdSet, Delegator delegator, Timestamp nowTimestamp, boolean include) throws GenericEntityException {
+    /** Same as ProductSearch.getAllSubCategoryIds, keeping track of the rollups used. */
+    private static void getAllSubCategoryIds(String productCategoryId, Set<String> productCategoryIdSet, Delegator delegator, ProductPromoIndex.Dependencies dependencies) throws GenericEntityException {
+        productCategoryIdSet.add(productCategoryId);
+        dependencies.addProductCategoryId(productCategoryId);
+
+        List<GenericValue> productCategoryRollupList = EntityQuery.use(delegator).from("ProductCategoryRollup").where("parentProductCategoryId", productCategoryId).cache(true).queryList();
+        for (GenericValue productCategoryRollup : productCategoryRollupList) {
+            String subProductCategoryId = productCategoryRollup.getString("productCategoryId");
+            if (productCategoryIdSet.contains(subProductCategoryId)) {
+                // if this category has already been traversed, no use doing it again; this will also avoid infinite loops
+                continue;
+            }
+            if (dependencies.isValueActive(productCategoryRollup)) {
+                getAllSubCategoryIds(subProductCategoryId, productCategoryIdSet, delegator, dependencies);
+            }
+        }
+    }
+
+    private static void getAllProductIds(Set<String> productCategoryIdSet, Set<String> productIdSet, Delegator delegator, ProductPromoIndex.Dependencies dependencies, boolean include) throws GenericEntityException {
         for (String productCategoryId : productCategoryIdSet) {
+            dependencies.addProductCategoryId(productCategoryId);
             // get all product category memebers, filter by date
-            List<GenericValue> productCategoryMembers = EntityQuery.use(delegator).from("ProductCategoryMember").where("productCategoryId", productCategoryId).cache(true).filterByDate(nowTimestamp).queryList();
+            List<GenericValue> productCategoryMembers = EntityQuery.use(delegator).from("ProductCategoryMember").where("productCategoryId", productCategoryId).cache(true).queryList();
             for (GenericValue productCategoryMember : productCategoryMembers) {
+                if (!dependencies.isValueActive(productCategoryMember)) {
+                    continue;
+                }
                 String productId = productCategoryMember.getString("productId");
                 if (include) {
                     productIdSet.add(productId);
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License") you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+import java.sql.Timestamp
+
+import org.apache.ofbiz.entity.GenericValue
+import org.apache.ofbiz.entity.util.EntityQuery
+import org.apache.ofbiz.service.ServiceUtil
+import org.apache.ofbiz.testtools.GroovyScriptTestCase
+
+/**
+ * Checks that the calculateProductPrices service, which reads the product data for the whole list and takes the
+ * price rules from the ProductPriceRuleIndex, returns the same prices as calculateProductPrice for each product.
+ */
+class ProductPricesTests extends GroovyScriptTestCase {
+
+    Timestamp fromDate = Timestamp.valueOf("2001-01-01 00:00:00")
+
+    void createPriceRule(String productPriceRuleId, List<Map> conds, Map action) {
+        delegator.createOrStore(delegator.makeValue("ProductPriceRule", [productPriceRuleId: productPriceRuleId, ruleName: productPriceRuleId,
+                isSale: 'N', fromDate: fromDate]))
+        conds.eachWithIndex { Map cond, int index ->
+            delegator.createOrStore(delegator.makeValue("ProductPriceCond", [productPriceRuleId: productPriceRuleId,
+                    productPriceCondSeqId: String.format("%02d", index + 1), inputParamEnumId: cond.inputParamEnumId,
+                    operatorEnumId: cond.operatorEnumId ?: 'PRC_EQ', condValue: cond.condValue]))
+        }
+        delegator.createOrStore(delegator.makeValue("ProductPriceAction", [productPriceRuleId: productPriceRuleId,
+                productPriceActionSeqId: '01', productPriceActionTypeId: action.productPriceActionTypeId, amount: action.amount]))
+    }
+
+    void removePriceRule(String productPriceRuleId) {
+        delegator.removeByAnd("ProductPriceAction", [productPriceRuleId: productPriceRuleId])
+        delegator.removeByAnd("ProductPriceCond", [productPriceRuleId: productPriceRuleId])
+        delegator.removeByAnd("ProductPriceRule", [productPriceRuleId: productPriceRuleId])
+    }
+
+    /**
+     * Prices the products with calculateProductPrice one by one and with calculateProductPrices for the whole list,
+     * asserts the results are the same and returns them by productId.
+     */
+    Map<String, Map> comparePrices(List<String> productIds, Map priceContext) {
+        Map<String, Object> bulkResult = dispatcher.runSync("calculateProductPrices", [productIds: productIds] + priceContext)
+        assert ServiceUtil.isSuccess(bulkResult)
+        Map<String, Map> bulkPrices = bulkResult.productPrices
+        Map<String, Map> prices = [:]
+        for (String productId : productIds) {
+            GenericValue product = EntityQuery.use(delegator).from("Product").where("productId", productId).queryOne()
+            Map<String, Object> result = dispatcher.runSync("calculateProductPrice", [product: product] + priceContext)
+            assert ServiceUtil.isSuccess(result)
+            Map<String, Object> bulkPrice = bulkPrices[productId]
+            assert bulkPrice != null
+            for (String name : ['price', 'basePrice', 'defaultPrice', 'listPrice', 'competitivePrice', 'averageCost', 'promoPrice',
+                    'specialPromoPrice', 'isSale', 'validPriceFound', 'currencyUsed']) {
+                assert bulkPrice[name] == result[name] : "[${name}] of product [${productId}]"
+            }
+            assert bulkPrice.orderItemPriceInfos*.productPriceRuleId == result.orderItemPriceInfos*.productPriceRuleId : "rules applied to product [${productId}]"
+            prices[productId] = result
+        }
+        return prices
+    }
+
+    /**
+     * This test check the prices of virtual products and variants
+     *  1. a virtual product without a price takes the lowest price of its variants that are still sold
+     *  2. a variant without a price takes the price of its virtual product
+     */
+    void testCalculateProductPricesOfVirtualProduct() {
+        Map<String, Map> prices = comparePrices(['DemoProduct', 'DemoProduct-1', 'GZ-1006', 'GZ-1006-3', 'GZ-2002'], [productStoreId: '9000', currencyUomId: 'USD'])
+        assert prices['DemoProduct'].defaultPrice == 10
+        assert prices['GZ-1006-3'].defaultPrice == 1.99
+    }
+
+    /**
+     * This test check a price rule on a category that only has the virtual product as member
+     *  1. the rule applies to the variant through its virtual product, in both services
+     *  2. the rule does not apply to a product outside of the category
+     */
+    void testCalculateProductPricesWithVirtualProductCategoryRule() {
+        delegator.createOrStore(delegator.makeValue("ProductCategory", [productCategoryId: 'PRICE_IDX_CAT', productCategoryTypeId: 'CATALOG_CATEGORY']))
+        delegator.createOrStore(delegator.makeValue("ProductCategoryMember", [productCategoryId: 'PRICE_IDX_CAT', productId: 'GZ-1006', fromDate: fromDate]))
+        createPriceRule('PRICE_IDX_CAT', [[inputParamEnumId: 'PRIP_PROD_CAT_ID', condValue: 'PRICE_IDX_CAT']],
+                [productPriceActionTypeId: 'PRICE_POD', amount: -10])
+        try {
+            Map<String, Map> prices = comparePrices(['GZ-1006-3', 'GZ-2002'], [productStoreId: '9000', currencyUomId: 'USD'])
+            assert prices['GZ-1006-3'].orderItemPriceInfos*.productPriceRuleId.contains('PRICE_IDX_CAT')
+            assert !prices['GZ-2002'].orderItemPriceInfos*.productPriceRuleId.contains('PRICE_IDX_CAT')
+        } finally {
+            removePriceRule('PRICE_IDX_CAT')
+        }
+    }
+
+    /**
+     * This test check price rules with conditions on the price context
+     *  1. a quantity condition, evaluated for each call, only applies from the given quantity
+     *  2. a party condition, evaluated for each call, only applies to the given party
+     *  3. a currency condition, evaluated when the rule index of the context is built, only applies to its currency
+     */
+    void testCalculateProductPricesWithContextConditions() {
+        createPriceRule('PRICE_IDX_QTY', [[inputParamEnumId: 'PRIP_PRODUCT_ID', condValue: 'GZ-2002'],
+                [inputParamEnumId: 'PRIP_QUANTITY', operatorEnumId: 'PRC_GTE', condValue: '10']],
+                [productPriceActionTypeId: 'PRICE_FLAT', amount: 20])
+        createPriceRule('PRICE_IDX_PARTY', [[inputParamEnumId: 'PRIP_PARTY_ID', condValue: 'DemoCustomer'],
+                [inputParamEnumId: 'PRIP_CURRENCY_UOMID', condValue: 'USD']],
+                [productPriceActionTypeId: 'PRICE_POD', amount: -5])
+        try {
+            Map<String, Map> prices = comparePrices(['GZ-2002', 'GZ-1006-3'], [productStoreId: '9000', currencyUomId: 'USD', quantity: BigDecimal.ONE])
+            assert prices['GZ-2002'].price != 20
+            assert !prices['GZ-2002'].orderItemPriceInfos*.productPriceRuleId.contains('PRICE_IDX_PARTY')
+
+            prices = comparePrices(['GZ-2002', 'GZ-1006-3'], [productStoreId: '9000', currencyUomId: 'USD', quantity: BigDecimal.TEN])
+            assert prices['GZ-2002'].price == 20
+            assert prices['GZ-1006-3'].price != 20
+
+            prices = comparePrices(['GZ-2002', 'GZ-1006-3'], [productStoreId: '9000', currencyUomId: 'USD', partyId: 'DemoCustomer'])
+            assert prices['GZ-2002'].orderItemPriceInfos*.productPriceRuleId.contains('PRICE_IDX_PARTY')
+            assert prices['GZ-1006-3'].orderItemPriceInfos*.productPriceRuleId.contains('PRICE_IDX_PARTY')
+
+            prices = comparePrices(['GZ-2002', 'GZ-1006-3'], [productStoreId: '9000', currencyUomId: 'EUR', partyId: 'DemoCustomer'])
+            assert !prices['GZ-2002'].orderItemPriceInfos*.productPriceRuleId.contains('PRICE_IDX_PARTY')
+        } finally {
+            removePriceRule('PRICE_IDX_QTY')
+            removePriceRule('PRICE_IDX_PARTY')
+        }
+    }
+}
@@ -22,6 +22,8 @@ import org.apache.ofbiz.base.util.UtilMisc
 import org.apache.ofbiz.entity.GenericValue
 import org.apache.ofbiz.entity.util.EntityQuery
 import org.apache.ofbiz.order.shoppingcart.ShoppingCart
+import org.apache.ofbiz.order.shoppingcart.ShoppingCartItem
+import org.apache.ofbiz.order.shoppingcart.product.ProductPromoIndex
 import org.apache.ofbiz.testtools.GroovyScriptTestCase
 import org.apache.ofbiz.service.ServiceUtil
 
@@ -374,4 +376,202 @@ class ProductPromoCondTest extends GroovyScriptTestCase {
         assert ServiceUtil.isSuccess(serviceResult)
         assert serviceResult.compareBase < 0
     }
+
+    /**
+     * Creates a promotion with a single rule '01' and the given product conditions, each one with
+     * its own ProductPromoProduct, and returns the conditions.
+     */
+    List<GenericValue> createIndexTestPromo(String productPromoId, List<Map> conds) {
+        delegator.createOrStore(delegator.makeValue("ProductPromo", [productPromoId: productPromoId]))
+        delegator.createOrStore(delegator.makeValue("ProductPromoRule", [productPromoId: productPromoId, productPromoRuleId: '01']))
+        delegator.removeByAnd("ProductPromoProduct", [productPromoId: productPromoId])
+        delegator.removeByAnd("ProductPromoCond", [productPromoId: productPromoId])
+        List<GenericValue> productPromoConds = []
+        conds.eachWithIndex { Map cond, int index ->
+            String productPromoCondSeqId = String.format("%02d", index + 1)
+            GenericValue productPromoCond = delegator.makeValue("ProductPromoCond", [productPromoId: productPromoId, productPromoRuleId: '01',
+                    productPromoCondSeqId: productPromoCondSeqId, customMethodId: cond.customMethodId, condValue: cond.condValue,
+                    operatorEnumId: cond.operatorEnumId])
+            delegator.create(productPromoCond)
+            delegator.create(delegator.makeValue("ProductPromoProduct", [productPromoId: productPromoId, productPromoRuleId: '01',
+                    productPromoCondSeqId: productPromoCondSeqId, productPromoActionSeqId: '_NA_', productId: cond.productId,
+                    productPromoApplEnumId: 'PPPA_INCLUDE']))
+            productPromoConds << productPromoCond
+        }
+        return productPromoConds
+    }
+
+    // Same operator check as ProductPromoWorker.checkCondition
+    boolean conditionMet(Integer compareBase, String operatorEnumId) {
+        if (compareBase == null) {
+            return false
+        }
+        switch (operatorEnumId) {
+            case "PPC_EQ": return compareBase == 0
+            case "PPC_NEQ": return compareBase != 0
+            case "PPC_LT": return compareBase < 0
+            case "PPC_LTE": return compareBase <= 0
+            case "PPC_GT": return compareBase > 0
+            case "PPC_GTE": return compareBase >= 0
+        }
+        return false
+    }
+
+    boolean runCondService(GenericValue productPromoCond, ShoppingCart cart, Timestamp nowTimestamp) {
+        String serviceName = productPromoCond.getRelatedOne("CustomMethod", true).customMethodName
+        Map<String, Object> serviceResult = dispatcher.runSync(serviceName,
+                [productPromoCond: productPromoCond, shoppingCart: cart, nowTimestamp: nowTimestamp])
+        assert ServiceUtil.isSuccess(serviceResult)
+        return conditionMet(serviceResult.compareBase, serviceResult.operatorEnumId ?: productPromoCond.operatorEnumId)
+    }
+
+    /**
+     * Checks a single product condition of the ProductPromoIndex against its service on a cart where the first
+     * item already holds a candidate use of the rule: when the index rules the condition out, the service must
+     * not meet it either and must release the candidate use exactly when the index says it resets the rule use.
+     * Returns [unsatisfiable: the index short-circuit, conditionMet: the service outcome].
+     */
+    Map checkIndexAgainstService(ShoppingCart cart, String customMethodId, String condValue, String operatorEnumId, String productId) {
+        GenericValue productPromoCond = createIndexTestPromo('TESTIDX', [[customMethodId: customMethodId, condValue: condValue,
+                operatorEnumId: operatorEnumId, productId: productId]])[0]
+        Timestamp nowTimestamp = UtilDateTime.nowTimestamp()
+        ProductPromoIndex.CompiledCond compiledCond = ProductPromoIndex.getCompiledPromo(delegator, 'TESTIDX', nowTimestamp).getRules()[0].getConds()[0]
+        assert compiledCond.getProductPromoCond().getPrimaryKey() == productPromoCond.getPrimaryKey()
+        boolean unsatisfiable = compiledCond.isUnsatisfiable(ProductPromoIndex.getCartProductIds(cart))
+
+        ShoppingCartItem cartItem = cart.findCartItem(0)
+        cartItem.clearPromoRuleUseInfo()
+        GenericValue earlierCond = delegator.makeValue("ProductPromoCond", [productPromoId: 'TESTIDX', productPromoRuleId: '01', productPromoCondSeqId: '00'])
+        cartItem.addPromoQuantityCandidateUse(BigDecimal.ONE, earlierCond, false)
+
+        boolean conditionMet = runCondService(productPromoCond, cart, nowTimestamp)
+        if (unsatisfiable) {
+            assert !conditionMet
+            boolean ruleUseReset = cartItem.getPromoQuantityCandidateUse(earlierCond).compareTo(BigDecimal.ZERO) == 0
+            assert ruleUseReset == compiledCond.resetsRuleUse()
+        }
+        cartItem.clearPromoRuleUseInfo()
+        return [unsatisfiable: unsatisfiable, conditionMet: conditionMet]
+    }
+
+    /**
+     * This test check that the ProductPromoIndex short-circuit of the productAmount condition gives the service result
+     *  1. the condition product is not in the cart, the index rules it out and the service fails and resets the rule use
+     *  2. the condition product is in the cart, the index lets the service decide
+     *  3. no amount is needed, the index lets the service decide
+     */
+    void testProductAmountPromoIndex() {
+        ShoppingCart cart = loadOrder("DEMO10090")
+
+        Map result = checkIndexAgainstService(cart, "PPC_PRODUCT_AMOUNT", "30", null, "WG-1111")
+        assert result.unsatisfiable
+        assert !result.conditionMet
+
+        result = checkIndexAgainstService(cart, "PPC_PRODUCT_AMOUNT", "30", null, "GZ-2644")
+        assert !result.unsatisfiable
+        assert result.conditionMet
+
+        result = checkIndexAgainstService(cart, "PPC_PRODUCT_AMOUNT", "0", null, "WG-1111")
+        assert !result.unsatisfiable
+        assert result.conditionMet
+    }
+
+    /**
+     * This test check that the ProductPromoIndex short-circuit of the productQuant condition gives the service result
+     *  1. the condition product is not in the cart, the index rules it out and the service fails and resets the rule use
+     *  2. with a less than operator a missing product meets the condition, the index lets the service decide
+     *  3. the condition product is in the cart, the index lets the service decide
+     */
+    void testProductQuantPromoIndex() {
+        ShoppingCart cart = loadOrder("DEMO10090")
+
+        Map result = checkIndexAgainstService(cart, "PPC_PRODUCT_QUANT", "1", "PPC_EQ", "WG-1111")
+        assert result.unsatisfiable
+        assert !result.conditionMet
+
+        result = checkIndexAgainstService(cart, "PPC_PRODUCT_QUANT", "1", "PPC_LT", "WG-1111")
+        assert !result.unsatisfiable
+        assert result.conditionMet
+
+        // one of the two items is held by the earlier condition
+        result = checkIndexAgainstService(cart, "PPC_PRODUCT_QUANT", "1", "PPC_EQ", "GZ-2644")
+        assert !result.unsatisfiable
+        assert result.conditionMet
+    }
+
+    /**
+     * This test check that the ProductPromoIndex short-circuit of the productTotal condition gives the service result
+     *  1. the condition product is not in the cart, the index rules it out and the service fails without resetting the rule use
+     *  2. with a less than operator a missing product meets the condition, the index lets the service decide
+     *  3. the condition product is in the cart, the index lets the service decide
+     */
+    void testProductTotalPromoIndex() {
+        ShoppingCart cart = loadOrder("DEMO10090")
+
+        Map result = checkIndexAgainstService(cart, "PPC_PRODUCT_TOTAL", "50", "PPC_GTE", "WG-1111")
+        assert result.unsatisfiable
+        assert !result.conditionMet
+
+        result = checkIndexAgainstService(cart, "PPC_PRODUCT_TOTAL", "50", "PPC_LT", "WG-1111")
+        assert !result.unsatisfiable
+        assert result.conditionMet
+
+        result = checkIndexAgainstService(cart, "PPC_PRODUCT_TOTAL", "50", "PPC_GTE", "GZ-2644")
+        assert !result.unsatisfiable
+        assert result.conditionMet
+    }
+
+    /**
+     * Evaluates the conditions of the first rule of the promotion like ProductPromoWorker.runProductPromoRules does,
+     * either with the ProductPromoIndex short-circuit or by running every condition service.
+     */
+    boolean evaluateIndexTestRule(ShoppingCart cart, String productPromoId, boolean useIndex) {
+        Timestamp nowTimestamp = UtilDateTime.nowTimestamp()
+        ProductPromoIndex.CompiledRule compiledRule = ProductPromoIndex.getCompiledPromo(delegator, productPromoId, nowTimestamp).getRules()[0]
+        BitSet cartProductIds = ProductPromoIndex.getCartProductIds(cart)
+        for (ProductPromoIndex.CompiledCond compiledCond : compiledRule.getConds()) {
+            boolean conditionSatisfied
+            if (useIndex && compiledCond.isUnsatisfiable(cartProductIds)) {
+                if (compiledCond.resetsRuleUse()) {
+                    cart.resetPromoRuleUse(productPromoId, compiledRule.getProductPromoRule().productPromoRuleId)
+                }
+                conditionSatisfied = false
+            } else {
+                conditionSatisfied = runCondService(compiledCond.getProductPromoCond(), cart, nowTimestamp)
+            }
+            if (!conditionSatisfied) {
+                return false
+            }
+        }
+        return true
+    }
+
+    /**
+     * This test check that a rule whose first condition takes a candidate use and whose second condition is ruled out
+     * by the ProductPromoIndex leaves the cart as the full evaluation does, each time the rule is evaluated again after
+     * its use has been reset
+     */
+    void testPromoRuleReuseWithIndex() {
+        List<GenericValue> productPromoConds = createIndexTestPromo('TESTIDX2', [
+                [customMethodId: "PPC_PRODUCT_QUANT", condValue: "1", operatorEnumId: "PPC_EQ", productId: "GZ-2644"],
+                [customMethodId: "PPC_PRODUCT_AMOUNT", condValue: "30", operatorEnumId: null, productId: "WG-1111"]])
+        ShoppingCart indexCart = loadOrder("DEMO10090")
+        ShoppingCart fullCart = loadOrder("DEMO10090")
+        ShoppingCartItem indexItem = indexCart.findCartItem(0)
+        ShoppingCartItem fullItem = fullCart.findCartItem(0)
+        indexItem.clearPromoRuleUseInfo()
+        fullItem.clearPromoRuleUseInfo()
+
+        for (int pass = 0; pass < 2; pass++) {
+            boolean indexResult = evaluateIndexTestRule(indexCart, 'TESTIDX2', true)
+            boolean fullResult = evaluateIndexTestRule(fullCart, 'TESTIDX2', false)
+            assert !indexResult
+            assert indexResult == fullResult
+            // the failing second condition released the quantity the first one took
+            assert indexItem.getPromoQuantityUsed().compareTo(BigDecimal.ZERO) == 0
+            assert indexItem.getPromoQuantityUsed().compareTo(fullItem.getPromoQuantityUsed()) == 0
+            assert indexItem.getPromoQuantityCandidateUse(productPromoConds[0]).compareTo(fullItem.getPromoQuantityCandidateUse(productPromoConds[0])) == 0
+            assert indexItem.getQuantityUsedPerPromoFailedIter().collect { it.key } == fullItem.getQuantityUsedPerPromoFailedIter().collect { it.key }
+        }
+    }
 }
@@ -21,12 +21,17 @@ package org.apache.ofbiz.product.price;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeSet;
 
 import org.apache.ofbiz.base.util.Debug;
@@ -81,6 +86,15 @@ public class PriceServices {
      * </ul>
      */
     public static Map<String, Object> calculateProductPrice(DispatchContext dctx, Map<String, ? extends Object> context) {
+        return calculateProductPrice(dctx, context, null);
+    }
+
+    /**
+     * Calculates the price of a product; when <code>prefetchedPrices</code> is not null the virtual product id,
+     * the ProductPrice records and the candidate price rules of the product are taken from it instead of being
+     * read one product at a time.
+     */
+    private static Map<String, Object> calculateProductPrice(DispatchContext dctx, Map<String, ? extends Object> context, PrefetchedPrices prefetchedPrices) {
         Delegator delegator = dctx.getDelegator();
         LocalDispatcher dispatcher = dctx.getDispatcher();
         Map<String, Object> result = new HashMap<String, Object>();
@@ -114,29 +128,12 @@ public class PriceServices {
                     "ProductPriceCannotRetrieveProductStore", UtilMisc.toMap("errorString", e.toString()) , locale));
         }
         if (UtilValidate.isEmpty(productStoreGroupId)) {
-            if (productStore != null) {
-                try {
-                    if (UtilValidate.isNotEmpty(productStore.getString("primaryStoreGroupId"))) {
-                        productStoreGroupId = productStore.getString("primaryStoreGroupId");
-                    } else {
-                        // no ProductStore.primaryStoreGroupId, try ProductStoreGroupMember
-                        List<GenericValue> productStoreGroupMemberList = EntityQuery.use(delegator).from("ProductStoreGroupMember").where("productStoreId", productStoreId).orderBy("sequenceNum", "-fromDate").cache(true).queryList();
-                        productStoreGroupMemberList = EntityUtil.filterByDate(productStoreGroupMemberList, true);
-                        if (productStoreGroupMemberList.size() > 0) {
-                            GenericValue productStoreGroupMember = EntityUtil.getFirst(productStoreGroupMemberList);
-                            productStoreGroupId = productStoreGroupMember.getString("productStoreGroupId");
-                        }
-                    }
-                } catch (GenericEntityException e) {
-                    Debug.logError(e, "Error getting product store info from the database while calculating price" + e.toString(), module);
-                    return ServiceUtil.returnError(UtilProperties.getMessage(resource, 
-                            "ProductPriceCannotRetrieveProductStore", UtilMisc.toMap("errorString", e.toString()) , locale));
-                }
-            }
-
-            // still empty, default to _NA_
-            if (UtilValidate.isEmpty(productStoreGroupId)) {
-                productStoreGroupId = "_NA_";
+            try {
+                productStoreGroupId = getProductStoreGroupId(delegator, productStore);
+            } catch (GenericEntityException e) {
+                Debug.logError(e, "Error getting product store info from the database while calculating price" + e.toString(), module);
+                return ServiceUtil.returnError(UtilProperties.getMessage(resource, 
+                        "ProductPriceCannotRetrieveProductStore", UtilMisc.toMap("errorString", e.toString()) , locale));
             }
         }
 
@@ -144,11 +141,7 @@ public class PriceServices {
         String currencyDefaultUomId = (String) context.get("currencyUomId");
         String currencyUomIdTo = (String) context.get("currencyUomIdTo"); 
         if (UtilValidate.isEmpty(currencyDefaultUomId)) {
-            if (productStore != null && UtilValidate.isNotEmpty(productStore.getString("defaultCurrencyUomId"))) {
-                currencyDefaultUomId = productStore.getString("defaultCurrencyUomId");
-            } else {
-                currencyDefaultUomId = EntityUtilProperties.getPropertyValue("general", "currency.uom.id.default", "USD", delegator);
-            }
+            currencyDefaultUomId = getDefaultCurrencyUomId(delegator, productStore);
         }
 
         // productPricePurposeId is null assume "PURCHASE", which is equivalent to what prices were before the purpose concept
@@ -163,7 +156,9 @@ public class PriceServices {
 
         // if this product is variant, find the virtual product and apply checks to it as well
         String virtualProductId = null;
-        if ("Y".equals(product.getString("isVariant"))) {
+        if (prefetchedPrices != null) {
+            virtualProductId = prefetchedPrices.virtualProductIds.get(productId);
+        } else if ("Y".equals(product.getString("isVariant"))) {
             try {
                 virtualProductId = ProductWorker.getVariantVirtualId(product);
             } catch (GenericEntityException e) {
@@ -175,7 +170,9 @@ public class PriceServices {
 
         // get prices for virtual product if one is found; get all ProductPrice entities for this productId and currencyUomId
         List<GenericValue> virtualProductPrices = null;
-        if (virtualProductId != null) {
+        if (virtualProductId != null && prefetchedPrices != null) {
+            virtualProductPrices = prefetchedPrices.getProductPrices(virtualProductId);
+        } else if (virtualProductId != null) {
             try {
                 virtualProductPrices = EntityQuery.use(delegator).from("ProductPrice").where("productId", virtualProductId, "currencyUomId", currencyDefaultUomId, "productStoreGroupId", productStoreGroupId).orderBy("-fromDate").cache(true).queryList();
             } catch (GenericEntityException e) {
@@ -222,12 +219,16 @@ public class PriceServices {
 
         // for prices, get all ProductPrice entities for this productId and currencyUomId
         List<GenericValue> productPrices = null;
-        try {
-            productPrices = EntityQuery.use(delegator).from("ProductPrice").where(productPriceEc).orderBy("-fromDate").cache(true).queryList();
-        } catch (GenericEntityException e) {
-            Debug.logError(e, "An error occurred while getting the product prices", module);
+        if (prefetchedPrices != null) {
+            productPrices = EntityUtil.filterByCondition(prefetchedPrices.getProductPrices(productId), productPriceEc);
+        } else {
+            try {
+                productPrices = EntityQuery.use(delegator).from("ProductPrice").where(productPriceEc).orderBy("-fromDate").cache(true).queryList();
+            } catch (GenericEntityException e) {
+                Debug.logError(e, "An error occurred while getting the product prices", module);
+            }
+            productPrices = EntityUtil.filterByDate(productPrices, true);
         }
-        productPrices = EntityUtil.filterByDate(productPrices, true);
 
         // ===== get the prices we need: list, default, average cost, promo, min, max =====
         // if any of these prices is missing and this product is a variant, default to the corresponding price on the virtual product
@@ -411,7 +412,12 @@ public class PriceServices {
             if (errorResult != null) return errorResult;
         } else {
             try {
-                List<GenericValue> allProductPriceRules = makeProducePriceRuleList(delegator, optimizeForLargeRuleSet, productId, virtualProductId, prodCatalogId, productStoreGroupId, webSiteId, partyId, currencyDefaultUomId);
+                List<GenericValue> allProductPriceRules;
+                if (prefetchedPrices != null && prefetchedPrices.productPriceRules != null) {
+                    allProductPriceRules = prefetchedPrices.productPriceRules.get(productId);
+                } else {
+                    allProductPriceRules = makeProducePriceRuleList(delegator, optimizeForLargeRuleSet, productId, virtualProductId, prodCatalogId, productStoreGroupId, webSiteId, partyId, currencyDefaultUomId);
+                }
                 allProductPriceRules = EntityUtil.filterByDate(allProductPriceRules, true);
 
                 List<GenericValue> quantityProductPriceRules = null;
@@ -421,7 +427,7 @@ public class PriceServices {
                     quantityProductPriceRules = new LinkedList<GenericValue>();
                     nonQuantityProductPriceRules = new LinkedList<GenericValue>();
                     for (GenericValue productPriceRule: allProductPriceRules) {
-                        List<GenericValue> productPriceCondList = EntityQuery.use(delegator).from("ProductPriceCond").where("productPriceRuleId", productPriceRule.get("productPriceRuleId")).cache(true).queryList();
+                        List<GenericValue> productPriceCondList = ProductPriceRuleIndex.getProductPriceConds(delegator, productPriceRule.getString("productPriceRuleId"));
 
                         boolean foundQuantityInputParam = false;
                         // only consider a rule if all conditions except the quantity condition are true
@@ -562,6 +568,181 @@ public class PriceServices {
         return result;
     }
 
+    /**
+     * Calculates the prices of a list of products sharing the same store, currency, party and quantity.
+     * <p>The Product, variant ProductAssoc and ProductPrice records of all the products are read with a few
+     * set based queries and the price rules are resolved once through the {@link ProductPriceRuleIndex};
+     * each product is then priced exactly as the calculateProductPrice service would price it.</p>
+     */
+    public static Map<String, Object> calculateProductPrices(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        Locale locale = (Locale) context.get("locale");
+        List<String> productIds = UtilGenerics.checkList(context.get("productIds"));
+        String productStoreId = (String) context.get("productStoreId");
+        String productStoreGroupId = (String) context.get("productStoreGroupId");
+        String currencyUomId = (String) context.get("currencyUomId");
+        boolean optimizeForLargeRuleSet = "Y".equals(context.get("optimizeForLargeRuleSet"));
+
+        PrefetchedPrices prefetchedPrices;
+        try {
+            GenericValue productStore = EntityQuery.use(delegator).from("ProductStore").where("productStoreId", productStoreId).cache().queryOne();
+            if (UtilValidate.isEmpty(productStoreGroupId)) {
+                productStoreGroupId = getProductStoreGroupId(delegator, productStore);
+            }
+            if (UtilValidate.isEmpty(currencyUomId)) {
+                currencyUomId = getDefaultCurrencyUomId(delegator, productStore);
+            }
+            ProductPriceRuleIndex productPriceRuleIndex = null;
+            if (!optimizeForLargeRuleSet) {
+                productPriceRuleIndex = ProductPriceRuleIndex.getInstance(delegator, (String) context.get("prodCatalogId"), productStoreGroupId,
+                        (String) context.get("webSiteId"), currencyUomId);
+            }
+            prefetchedPrices = new PrefetchedPrices(delegator, productIds, productStoreGroupId, currencyUomId, productPriceRuleIndex);
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error getting product prices from the database while calculating prices", module);
+            return ServiceUtil.returnError(UtilProperties.getMessage(resource, 
+                    "ProductPriceCannotRetrievePriceRules", UtilMisc.toMap("errorString", e.toString()) , locale));
+        }
+
+        // the resolved store group and currency are passed on, so they are not looked up again for each product
+        Map<String, Object> priceContext = new HashMap<String, Object>(context);
+        priceContext.remove("productIds");
+        priceContext.put("productStoreGroupId", productStoreGroupId);
+        priceContext.put("currencyUomId", currencyUomId);
+
+        Map<String, Map<String, Object>> productPrices = new LinkedHashMap<String, Map<String, Object>>();
+        for (GenericValue product : prefetchedPrices.products) {
+            priceContext.put("product", product);
+            Map<String, Object> priceResult = calculateProductPrice(dctx, priceContext, prefetchedPrices);
+            if (ServiceUtil.isError(priceResult)) {
+                Debug.logWarning("Could not calculate the price of product [" + product.getString("productId") + "]: " + ServiceUtil.getErrorMessage(priceResult), module);
+                continue;
+            }
+            productPrices.put(product.getString("productId"), priceResult);
+        }
+
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        result.put("productPrices", productPrices);
+        return result;
+    }
+
+    private static String getProductStoreGroupId(Delegator delegator, GenericValue productStore) throws GenericEntityException {
+        String productStoreGroupId = null;
+        if (productStore != null) {
+            if (UtilValidate.isNotEmpty(productStore.getString("primaryStoreGroupId"))) {
+                productStoreGroupId = productStore.getString("primaryStoreGroupId");
+            } else {
+                // no ProductStore.primaryStoreGroupId, try ProductStoreGroupMember
+                List<GenericValue> productStoreGroupMemberList = EntityQuery.use(delegator).from("ProductStoreGroupMember").where("productStoreId", productStore.get("productStoreId")).orderBy("sequenceNum", "-fromDate").cache(true).queryList();
+                productStoreGroupMemberList = EntityUtil.filterByDate(productStoreGroupMemberList, true);
+                if (productStoreGroupMemberList.size() > 0) {
+                    GenericValue productStoreGroupMember = EntityUtil.getFirst(productStoreGroupMemberList);
+                    productStoreGroupId = productStoreGroupMember.getString("productStoreGroupId");
+                }
+            }
+        }
+
+        // still empty, default to _NA_
+        if (UtilValidate.isEmpty(productStoreGroupId)) {
+            productStoreGroupId = "_NA_";
+        }
+        return productStoreGroupId;
+    }
+
+    private static String getDefaultCurrencyUomId(Delegator delegator, GenericValue productStore) {
+        if (productStore != null && UtilValidate.isNotEmpty(productStore.getString("defaultCurrencyUomId"))) {
+            return productStore.getString("defaultCurrencyUomId");
+        }
+        return EntityUtilProperties.getPropertyValue("general", "currency.uom.id.default", "USD", delegator);
+    }
+
+    /** The price data of a list of products, read with set based queries for the calculateProductPrices service. */
+    private static final class PrefetchedPrices {
+        // number of product ids in one IN condition
+        private static final int PRODUCT_ID_CHUNK_SIZE = 500;
+
+        private final List<GenericValue> products = new LinkedList<GenericValue>();
+        private final Map<String, String> virtualProductIds = new HashMap<String, String>();
+        private final Map<String, List<GenericValue>> productPrices = new HashMap<String, List<GenericValue>>();
+        private final Map<String, List<GenericValue>> productPriceRules;
+
+        private PrefetchedPrices(Delegator delegator, List<String> productIds, String productStoreGroupId, String currencyUomId,
+                ProductPriceRuleIndex productPriceRuleIndex) throws GenericEntityException {
+            Timestamp nowTimestamp = UtilDateTime.nowTimestamp();
+            List<String> distinctProductIds = new ArrayList<String>(new LinkedHashSet<String>(productIds));
+
+            Map<String, GenericValue> productsById = new HashMap<String, GenericValue>();
+            List<String> variantProductIds = new LinkedList<String>();
+            for (GenericValue product : findByProductIds(delegator, "Product", "productId", distinctProductIds, null)) {
+                productsById.put(product.getString("productId"), product);
+                if ("Y".equals(product.getString("isVariant"))) {
+                    variantProductIds.add(product.getString("productId"));
+                }
+            }
+            for (String productId : distinctProductIds) {
+                GenericValue product = productsById.get(productId);
+                if (product != null) {
+                    products.add(product);
+                    virtualProductIds.put(productId, null);
+                } else {
+                    Debug.logWarning("Product [" + productId + "] not found, not calculating its price", module);
+                }
+            }
+
+            // same as ProductWorker.getVariantVirtualId: the first active PRODUCT_VARIANT association to the variant
+            EntityCondition variantCondition = EntityCondition.makeCondition("productAssocTypeId", "PRODUCT_VARIANT");
+            List<GenericValue> variantAssocs = EntityUtil.filterByDate(findByProductIds(delegator, "ProductAssoc", "productIdTo", variantProductIds, variantCondition), nowTimestamp);
+            for (GenericValue variantAssoc : variantAssocs) {
+                String productId = variantAssoc.getString("productIdTo");
+                if (virtualProductIds.get(productId) == null) {
+                    virtualProductIds.put(productId, variantAssoc.getString("productId"));
+                }
+            }
+
+            Set<String> priceProductIds = new HashSet<String>(virtualProductIds.keySet());
+            for (String virtualProductId : virtualProductIds.values()) {
+                if (virtualProductId != null) {
+                    priceProductIds.add(virtualProductId);
+                }
+            }
+            EntityCondition priceCondition = EntityCondition.makeCondition(UtilMisc.toMap("currencyUomId", currencyUomId, "productStoreGroupId", productStoreGroupId));
+            List<GenericValue> prices = EntityUtil.filterByDate(findByProductIds(delegator, "ProductPrice", "productId", new ArrayList<String>(priceProductIds), priceCondition, "-fromDate"), nowTimestamp);
+            for (GenericValue price : prices) {
+                List<GenericValue> pricesOfProduct = productPrices.get(price.getString("productId"));
+                if (pricesOfProduct == null) {
+                    pricesOfProduct = new LinkedList<GenericValue>();
+                    productPrices.put(price.getString("productId"), pricesOfProduct);
+                }
+                pricesOfProduct.add(price);
+            }
+
+            if (productPriceRuleIndex != null) {
+                productPriceRules = productPriceRuleIndex.getProductPriceRules(delegator, virtualProductIds, nowTimestamp);
+            } else {
+                productPriceRules = null;
+            }
+        }
+
+        private List<GenericValue> getProductPrices(String productId) {
+            List<GenericValue> pricesOfProduct = productPrices.get(productId);
+            return pricesOfProduct != null ? pricesOfProduct : new LinkedList<GenericValue>();
+        }
+
+        private static List<GenericValue> findByProductIds(Delegator delegator, String entityName, String fieldName, List<String> productIds,
+                EntityCondition condition, String... orderBy) throws GenericEntityException {
+            List<GenericValue> values = new LinkedList<GenericValue>();
+            for (int start = 0; start < productIds.size(); start += PRODUCT_ID_CHUNK_SIZE) {
+                List<String> chunk = productIds.subList(start, Math.min(start + PRODUCT_ID_CHUNK_SIZE, productIds.size()));
+                EntityCondition chunkCondition = EntityCondition.makeCondition(fieldName, EntityOperator.IN, chunk);
+                if (condition != null) {
+                    chunkCondition = EntityCondition.makeCondition(chunkCondition, EntityOperator.AND, condition);
+                }
+                values.addAll(EntityQuery.use(delegator).from(entityName).where(chunkCondition).orderBy(orderBy).queryList());
+            }
+            return values;
+        }
+    }
+
     private static GenericValue getPriceValueForType(String productPriceTypeId, List<GenericValue> productPriceList, List<GenericValue> secondaryPriceList) {
         List<GenericValue> filteredPrices = EntityUtil.filterByAnd(productPriceList, UtilMisc.toMap("productPriceTypeId", productPriceTypeId));
         GenericValue priceValue = EntityUtil.getFirst(filteredPrices);
@@ -762,8 +943,9 @@ public class PriceServices {
                 productPriceRules.add(productPriceRule);
             }
         } else {
-            productPriceRules = EntityQuery.use(delegator).from("ProductPriceRule").cache(true).queryList();
-            if (productPriceRules == null) productPriceRules = new LinkedList<GenericValue>();
+            // the compiled rule index leaves out the rules that can not apply to this product in this price context
+            ProductPriceRuleIndex productPriceRuleIndex = ProductPriceRuleIndex.getInstance(delegator, prodCatalogId, productStoreGroupId, webSiteId, currencyUomId);
+            productPriceRules = productPriceRuleIndex.getProductPriceRules(delegator, productId, virtualProductId, null);
         }
 
         return productPriceRules;
@@ -811,7 +993,7 @@ public class PriceServices {
             // check all conditions
             boolean allTrue = true;
             StringBuilder condsDescription = new StringBuilder();
-            List<GenericValue> productPriceConds = EntityQuery.use(delegator).from("ProductPriceCond").where("productPriceRuleId", productPriceRuleId).cache(true).queryList();
+            List<GenericValue> productPriceConds = ProductPriceRuleIndex.getProductPriceConds(delegator, productPriceRuleId);
             for (GenericValue productPriceCond: productPriceConds) {
 
                 totalConds++;
@@ -853,7 +1035,7 @@ public class PriceServices {
                     isSale = true;
                 }
 
-                List<GenericValue> productPriceActions = EntityQuery.use(delegator).from("ProductPriceAction").where("productPriceRuleId", productPriceRuleId).cache(true).queryList();
+                List<GenericValue> productPriceActions = ProductPriceRuleIndex.getProductPriceActions(delegator, productPriceRuleId);
                 for (GenericValue productPriceAction: productPriceActions) {
 
                     totalActions++;
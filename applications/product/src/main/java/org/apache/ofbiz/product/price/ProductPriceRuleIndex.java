@@ -0,0 +1,393 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.product.price;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilDateTime;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntity;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.cache.Cache;
+import org.apache.ofbiz.entity.cache.EntityChangeListener;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.entity.util.EntityUtil;
+
+/**
+ * ProductPriceRuleIndex - Compiled form of the product price rules used by {@link PriceServices}.
+ * <p>
+ * Each price rule is compiled once with its conditions and actions. For a price context (catalog,
+ * store group, web site and currency) the conditions that only depend on that context are evaluated
+ * up front, the rules they exclude are dropped, and the remaining rules are indexed by the product
+ * or category of their first product id or category equality condition. A product then only has to
+ * evaluate the rules indexed under itself, its virtual product or one of their categories, plus the
+ * rules without such a condition. The rules keep the order of the full rule list, so the price
+ * calculated from them is the same as the one calculated from all rules.
+ * <p>
+ * A compiled rule is dropped when the rule, one of its conditions or one of its actions changes;
+ * the context indexes are dropped when a rule or a condition changes.
+ */
+public final class ProductPriceRuleIndex {
+
+    public static final String module = ProductPriceRuleIndex.class.getName();
+
+    private static final UtilCache<String, CompiledPriceRule> compiledRuleCache = UtilCache.createUtilCache("product.price.compiledRule", true);
+    private static final UtilCache<String, ProductPriceRuleIndex> ruleIndexCache = UtilCache.createUtilCache("product.price.ruleIndex", true);
+    /** Incremented on each invalidation, so a rule or an index built while its data changed is not cached. */
+    private static final AtomicLong invalidationCount = new AtomicLong();
+
+    private static final Set<String> ruleEntityNames = UtilMisc.toSet("ProductPriceRule", "ProductPriceCond");
+    // these conditions only depend on the price context, so they can be evaluated when the index is built
+    private static final Set<String> contextInputParamEnumIds = UtilMisc.toSet("PRIP_PROD_CLG_ID", "PRIP_PROD_SGRP_ID", "PRIP_WEBSITE_ID", "PRIP_CURRENCY_UOMID");
+    // number of product ids in one category member query
+    private static final int PRODUCT_ID_CHUNK_SIZE = 500;
+
+    static {
+        Cache.addEntityChangeListener(new PriceRuleInvalidator());
+    }
+
+    private final List<String> productPriceRuleIds;
+    private final BitSet unindexedRules;
+    private final Map<String, BitSet> productRules;
+    private final Map<String, BitSet> categoryRules;
+
+    private ProductPriceRuleIndex(List<String> productPriceRuleIds, BitSet unindexedRules, Map<String, BitSet> productRules, Map<String, BitSet> categoryRules) {
+        this.productPriceRuleIds = productPriceRuleIds;
+        this.unindexedRules = unindexedRules;
+        this.productRules = productRules;
+        this.categoryRules = categoryRules;
+    }
+
+    /** Returns the price rule index of the given price context, building it if it is not cached. */
+    public static ProductPriceRuleIndex getInstance(Delegator delegator, String prodCatalogId, String productStoreGroupId, String webSiteId,
+            String currencyUomId) throws GenericEntityException {
+        String cacheKey = delegator.getDelegatorName() + "::" + prodCatalogId + "::" + productStoreGroupId + "::" + webSiteId + "::" + currencyUomId;
+        ProductPriceRuleIndex ruleIndex = ruleIndexCache.get(cacheKey);
+        if (ruleIndex == null) {
+            long invalidations = invalidationCount.get();
+            ruleIndex = build(delegator, prodCatalogId, productStoreGroupId, webSiteId, currencyUomId);
+            if (invalidations == invalidationCount.get()) {
+                ruleIndex = ruleIndexCache.putIfAbsentAndGet(cacheKey, ruleIndex);
+            }
+        }
+        return ruleIndex;
+    }
+
+    /** Returns the compiled price rule, compiling it if it is not cached; returns null if the rule does not exist. */
+    public static CompiledPriceRule getCompiledRule(Delegator delegator, String productPriceRuleId) throws GenericEntityException {
+        String cacheKey = delegator.getDelegatorName() + "::" + productPriceRuleId;
+        CompiledPriceRule compiledRule = compiledRuleCache.get(cacheKey);
+        if (compiledRule == null) {
+            long invalidations = invalidationCount.get();
+            GenericValue productPriceRule = EntityQuery.use(delegator).from("ProductPriceRule").where("productPriceRuleId", productPriceRuleId).cache(true).queryOne();
+            if (productPriceRule == null) {
+                return null;
+            }
+            compiledRule = compile(delegator, productPriceRule);
+            if (invalidations == invalidationCount.get()) {
+                compiledRuleCache.put(cacheKey, compiledRule);
+            }
+        }
+        return compiledRule;
+    }
+
+    /** Returns the conditions of the price rule, in the order they are evaluated. */
+    public static List<GenericValue> getProductPriceConds(Delegator delegator, String productPriceRuleId) throws GenericEntityException {
+        CompiledPriceRule compiledRule = getCompiledRule(delegator, productPriceRuleId);
+        return compiledRule != null ? compiledRule.getConds() : Collections.<GenericValue>emptyList();
+    }
+
+    /** Returns the actions of the price rule, in the order they are performed. */
+    public static List<GenericValue> getProductPriceActions(Delegator delegator, String productPriceRuleId) throws GenericEntityException {
+        CompiledPriceRule compiledRule = getCompiledRule(delegator, productPriceRuleId);
+        return compiledRule != null ? compiledRule.getActions() : Collections.<GenericValue>emptyList();
+    }
+
+    private static CompiledPriceRule compile(Delegator delegator, GenericValue productPriceRule) throws GenericEntityException {
+        String productPriceRuleId = productPriceRule.getString("productPriceRuleId");
+        List<GenericValue> productPriceConds = EntityQuery.use(delegator).from("ProductPriceCond").where("productPriceRuleId", productPriceRuleId).cache(true).queryList();
+        List<GenericValue> productPriceActions = EntityQuery.use(delegator).from("ProductPriceAction").where("productPriceRuleId", productPriceRuleId).cache(true).queryList();
+        return new CompiledPriceRule(productPriceRule, productPriceConds, productPriceActions);
+    }
+
+    private static ProductPriceRuleIndex build(Delegator delegator, String prodCatalogId, String productStoreGroupId, String webSiteId,
+            String currencyUomId) throws GenericEntityException {
+        if (Debug.verboseOn()) {
+            Debug.logVerbose("Building price rule index for catalog [" + prodCatalogId + "], store group [" + productStoreGroupId + "], web site [" + webSiteId
+                    + "] and currency [" + currencyUomId + "]", module);
+        }
+        List<GenericValue> productPriceRules = EntityQuery.use(delegator).from("ProductPriceRule").cache(true).queryList();
+        List<String> productPriceRuleIds = new ArrayList<String>();
+        BitSet unindexedRules = new BitSet();
+        Map<String, BitSet> productRules = new HashMap<String, BitSet>();
+        Map<String, BitSet> categoryRules = new HashMap<String, BitSet>();
+        for (GenericValue productPriceRule : productPriceRules) {
+            CompiledPriceRule compiledRule = getCompiledRule(delegator, productPriceRule.getString("productPriceRuleId"));
+            if (compiledRule == null || !compiledRule.matchesContext(delegator, prodCatalogId, productStoreGroupId, webSiteId, currencyUomId)) {
+                continue;
+            }
+            int ruleIndex = productPriceRuleIds.size();
+            productPriceRuleIds.add(compiledRule.getProductPriceRuleId());
+            if (compiledRule.getProductId() != null) {
+                addRule(productRules, compiledRule.getProductId(), ruleIndex);
+            } else if (compiledRule.getProductCategoryId() != null) {
+                addRule(categoryRules, compiledRule.getProductCategoryId(), ruleIndex);
+            } else {
+                unindexedRules.set(ruleIndex);
+            }
+        }
+        return new ProductPriceRuleIndex(Collections.unmodifiableList(productPriceRuleIds), unindexedRules, productRules, categoryRules);
+    }
+
+    private static void addRule(Map<String, BitSet> rulesByKey, String key, int ruleIndex) {
+        BitSet rules = rulesByKey.get(key);
+        if (rules == null) {
+            rules = new BitSet();
+            rulesByKey.put(key, rules);
+        }
+        rules.set(ruleIndex);
+    }
+
+    /**
+     * Returns the price rules that may apply to the product, in the order of the full rule list.
+     * The conditions of the returned rules still have to be evaluated.
+     */
+    public List<GenericValue> getProductPriceRules(Delegator delegator, String productId, String virtualProductId, Timestamp nowTimestamp) throws GenericEntityException {
+        List<String> productIds = UtilMisc.toList(productId);
+        if (virtualProductId != null) {
+            productIds.add(virtualProductId);
+        }
+        Map<String, List<String>> productCategoryIds = getProductCategoryIds(delegator, productIds, nowTimestamp);
+        return getProductPriceRules(delegator, productId, virtualProductId, productCategoryIds);
+    }
+
+    /**
+     * Returns the price rules that may apply to each of the products, in the order of the full rule list.
+     * The category memberships of all the products are read with a few set based queries.
+     *
+     * @param virtualProductIds the products mapped to their virtual product id, or to null if they are not variants
+     */
+    public Map<String, List<GenericValue>> getProductPriceRules(Delegator delegator, Map<String, String> virtualProductIds, Timestamp nowTimestamp) throws GenericEntityException {
+        List<String> productIds = new ArrayList<String>(virtualProductIds.keySet());
+        for (String virtualProductId : virtualProductIds.values()) {
+            if (virtualProductId != null && !virtualProductIds.containsKey(virtualProductId)) {
+                productIds.add(virtualProductId);
+            }
+        }
+        Map<String, List<String>> productCategoryIds = getProductCategoryIds(delegator, productIds, nowTimestamp);
+        Map<String, List<GenericValue>> productPriceRules = new HashMap<String, List<GenericValue>>();
+        for (Map.Entry<String, String> entry : virtualProductIds.entrySet()) {
+            productPriceRules.put(entry.getKey(), getProductPriceRules(delegator, entry.getKey(), entry.getValue(), productCategoryIds));
+        }
+        return productPriceRules;
+    }
+
+    private List<GenericValue> getProductPriceRules(Delegator delegator, String productId, String virtualProductId, Map<String, List<String>> productCategoryIds)
+            throws GenericEntityException {
+        BitSet rules = (BitSet) unindexedRules.clone();
+        addRules(rules, productRules, productId);
+        addRules(rules, productRules, virtualProductId);
+        if (!categoryRules.isEmpty()) {
+            addCategoryRules(rules, productCategoryIds.get(productId));
+            if (virtualProductId != null) {
+                addCategoryRules(rules, productCategoryIds.get(virtualProductId));
+            }
+        }
+        List<GenericValue> productPriceRules = new LinkedList<GenericValue>();
+        for (int i = rules.nextSetBit(0); i >= 0; i = rules.nextSetBit(i + 1)) {
+            CompiledPriceRule compiledRule = getCompiledRule(delegator, productPriceRuleIds.get(i));
+            if (compiledRule != null) {
+                productPriceRules.add(compiledRule.getProductPriceRule());
+            }
+        }
+        return productPriceRules;
+    }
+
+    private void addCategoryRules(BitSet rules, List<String> productCategoryIds) {
+        if (productCategoryIds != null) {
+            for (String productCategoryId : productCategoryIds) {
+                addRules(rules, categoryRules, productCategoryId);
+            }
+        }
+    }
+
+    private static void addRules(BitSet rules, Map<String, BitSet> rulesByKey, String key) {
+        if (key != null) {
+            BitSet keyRules = rulesByKey.get(key);
+            if (keyRules != null) {
+                rules.or(keyRules);
+            }
+        }
+    }
+
+    private Map<String, List<String>> getProductCategoryIds(Delegator delegator, List<String> productIds, Timestamp nowTimestamp) throws GenericEntityException {
+        Map<String, List<String>> productCategoryIds = new HashMap<String, List<String>>();
+        if (categoryRules.isEmpty()) {
+            return productCategoryIds;
+        }
+        if (nowTimestamp == null) {
+            nowTimestamp = UtilDateTime.nowTimestamp();
+        }
+        List<GenericValue> productCategoryMembers;
+        if (productIds.size() == 1) {
+            productCategoryMembers = EntityQuery.use(delegator).from("ProductCategoryMember").where("productId", productIds.get(0)).cache(true).queryList();
+        } else {
+            productCategoryMembers = new LinkedList<GenericValue>();
+            for (int start = 0; start < productIds.size(); start += PRODUCT_ID_CHUNK_SIZE) {
+                Collection<String> chunk = productIds.subList(start, Math.min(start + PRODUCT_ID_CHUNK_SIZE, productIds.size()));
+                productCategoryMembers.addAll(EntityQuery.use(delegator).select("productId", "productCategoryId", "fromDate", "thruDate")
+                        .from("ProductCategoryMember").where(EntityCondition.makeCondition("productId", EntityOperator.IN, chunk)).queryList());
+            }
+        }
+        for (GenericValue productCategoryMember : EntityUtil.filterByDate(productCategoryMembers, nowTimestamp)) {
+            String productId = productCategoryMember.getString("productId");
+            List<String> categoryIds = productCategoryIds.get(productId);
+            if (categoryIds == null) {
+                categoryIds = new LinkedList<String>();
+                productCategoryIds.put(productId, categoryIds);
+            }
+            categoryIds.add(productCategoryMember.getString("productCategoryId"));
+        }
+        return productCategoryIds;
+    }
+
+    /** A price rule with its conditions and actions, and the product or category it is indexed by. */
+    public static final class CompiledPriceRule {
+        private final GenericValue productPriceRule;
+        private final List<GenericValue> conds;
+        private final List<GenericValue> actions;
+        private final String productId;
+        private final String productCategoryId;
+
+        private CompiledPriceRule(GenericValue productPriceRule, List<GenericValue> conds, List<GenericValue> actions) {
+            this.productPriceRule = productPriceRule;
+            this.conds = Collections.unmodifiableList(new ArrayList<GenericValue>(conds));
+            this.actions = Collections.unmodifiableList(new ArrayList<GenericValue>(actions));
+            String productId = null;
+            String productCategoryId = null;
+            for (GenericValue cond : conds) {
+                if (!"PRC_EQ".equals(cond.getString("operatorEnumId")) || UtilValidate.isEmpty(cond.getString("condValue"))) {
+                    continue;
+                }
+                // the rule can only apply to this product or to the members of this category, so it is indexed by it
+                String inputParamEnumId = cond.getString("inputParamEnumId");
+                if ("PRIP_PRODUCT_ID".equals(inputParamEnumId)) {
+                    productId = cond.getString("condValue");
+                    productCategoryId = null;
+                    break;
+                } else if ("PRIP_PROD_CAT_ID".equals(inputParamEnumId) && productCategoryId == null) {
+                    productCategoryId = cond.getString("condValue");
+                }
+            }
+            this.productId = productId;
+            this.productCategoryId = productCategoryId;
+        }
+
+        private boolean matchesContext(Delegator delegator, String prodCatalogId, String productStoreGroupId, String webSiteId, String currencyUomId)
+                throws GenericEntityException {
+            for (GenericValue cond : conds) {
+                if (contextInputParamEnumIds.contains(cond.getString("inputParamEnumId"))
+                        && !PriceServices.checkPriceCondition(cond, null, null, prodCatalogId, productStoreGroupId, webSiteId, null, null, null, currencyUomId, delegator, null)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public String getProductPriceRuleId() {
+            return productPriceRule.getString("productPriceRuleId");
+        }
+
+        public GenericValue getProductPriceRule() {
+            return productPriceRule;
+        }
+
+        public List<GenericValue> getConds() {
+            return conds;
+        }
+
+        public List<GenericValue> getActions() {
+            return actions;
+        }
+
+        public String getProductId() {
+            return productId;
+        }
+
+        public String getProductCategoryId() {
+            return productCategoryId;
+        }
+    }
+
+    /** Drops the compiled rules and the indexes affected by a change of the price rule data. */
+    private static final class PriceRuleInvalidator implements EntityChangeListener {
+        @Override
+        public void entityChanged(String delegatorName, String entityName) {
+            if (entityName == null || ruleEntityNames.contains(entityName) || "ProductPriceAction".equals(entityName)) {
+                invalidationCount.incrementAndGet();
+                String keyPrefix = delegatorName + "::";
+                removeAll(compiledRuleCache, keyPrefix);
+                removeAll(ruleIndexCache, keyPrefix);
+            }
+        }
+
+        @Override
+        public void entityValueChanged(String delegatorName, GenericEntity entity) {
+            String entityName = entity.getEntityName();
+            if (ruleEntityNames.contains(entityName) || "ProductPriceAction".equals(entityName)) {
+                String productPriceRuleId = entity.getString("productPriceRuleId");
+                if (productPriceRuleId == null) {
+                    entityChanged(delegatorName, entityName);
+                    return;
+                }
+                invalidationCount.incrementAndGet();
+                compiledRuleCache.remove(delegatorName + "::" + productPriceRuleId);
+                // the actions are read from the compiled rule, so the indexes only depend on the rules and conditions
+                if (ruleEntityNames.contains(entityName)) {
+                    removeAll(ruleIndexCache, delegatorName + "::");
+                }
+            }
+        }
+
+        private static void removeAll(UtilCache<String, ?> cache, String keyPrefix) {
+            for (String cacheKey : cache.getCacheLineKeys()) {
+                if (cacheKey.startsWith(keyPrefix)) {
+                    cache.remove(cacheKey);
+                }
+            }
+        }
+    }
+}
@@ -41,7 +41,7 @@ import org.apache.ofbiz.base.util.Debug;
 @SourceMonitored
 public final class ExecutionPool {
     public static final String module = ExecutionPool.class.getName();
-    public static final ExecutorService GLOBAL_BATCH = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 5, TimeUnit.SECONDS, new SynchronousQueue<>(), new ExecutionPoolThreadFactory(null, "OFBiz-batch"));
+    public static final ExecutorService GLOBAL_BATCH = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 5, TimeUnit.SECONDS, new SynchronousQueue<>(), getBatchThreadFactory());
     public static final ForkJoinPool GLOBAL_FORK_JOIN = new ForkJoinPool();
     private static final ExecutorService pulseExecutionPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ExecutionPoolThreadFactory(null, "OFBiz-ExecutionPoolPulseWorker"));
 
@@ -64,6 +64,38 @@ public final class ExecutionPool {
         }
     }
 
+    // Batch tasks run on virtual threads when the ofbiz.batch.virtualThreads system property is "true"
+    // and the JVM supports them. Do not log here - Debug depends on classes that use this class.
+    private static ThreadFactory getBatchThreadFactory() {
+        ThreadFactory threadFactory = null;
+        if (Boolean.getBoolean("ofbiz.batch.virtualThreads")) {
+            threadFactory = getVirtualThreadFactory("OFBiz-batch");
+        }
+        if (threadFactory == null) {
+            threadFactory = new ExecutionPoolThreadFactory(null, "OFBiz-batch");
+        }
+        return threadFactory;
+    }
+
+    /**
+     * Returns a <code>ThreadFactory</code> that creates virtual threads, or <code>null</code>
+     * if the JVM does not support virtual threads (they are available from Java 21).
+     * The threads are named <code>namePrefix-1</code>, <code>namePrefix-2</code>, ...
+     * <p>Virtual threads are cheap to create and park, so tasks that spend most of their
+     * time blocked on I/O do not tie up a platform thread each.</p>
+     */
+    public static ThreadFactory getVirtualThreadFactory(String namePrefix) {
+        try {
+            // Looked up reflectively, the code base is compiled for Java 8
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix + "-", 1L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            return null;
+        }
+    }
+
     public static ScheduledExecutorService getScheduledExecutor(ThreadGroup group, String namePrefix, int threadCount, long keepAliveSeconds, boolean preStart) {
         ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(threadCount, new ExecutionPoolThreadFactory(group, namePrefix));
         if (keepAliveSeconds > 0) {
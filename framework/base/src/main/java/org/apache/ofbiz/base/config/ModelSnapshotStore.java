@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.base.config;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.SafeObjectInputStream;
+import org.apache.ofbiz.base.util.StringUtil;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.base.util.UtilTimer;
+
+/**
+ * Stores models compiled from XML resources as serialized snapshots on disk, so they can be loaded at
+ * startup instead of parsing the resources again.
+ * <p>
+ * A snapshot is keyed by a hash of the content of all the resources it was built from and of the code
+ * that built it; when any of them changed the snapshot is ignored and the caller does a full parse.
+ * Snapshots are disabled unless <code>model.snapshot.enable=true</code> is set in cache.properties.
+ */
+public final class ModelSnapshotStore {
+
+    public static final String module = ModelSnapshotStore.class.getName();
+
+    private ModelSnapshotStore() {}
+
+    public static boolean isEnabled() {
+        return UtilProperties.propertyValueEqualsIgnoreCase("cache", "model.snapshot.enable", "true");
+    }
+
+    /**
+     * Returns a hash of the content of the resources and of the code location of <code>modelClass</code>.
+     */
+    public static String getContentHash(Collection<ResourceHandler> resourceHandlers, Class<?> modelClass) throws GenericConfigException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new GenericConfigException("Could not create a model snapshot hash", e);
+        }
+        // the serialized form depends on the classes, so a new build invalidates the snapshots too
+        CodeSource codeSource = modelClass.getProtectionDomain().getCodeSource();
+        if (codeSource != null && codeSource.getLocation() != null) {
+            digest.update(codeSource.getLocation().toExternalForm().getBytes(StandardCharsets.UTF_8));
+            File codeFile = toFile(codeSource.getLocation());
+            if (codeFile != null) {
+                digest.update(Long.toString(codeFile.lastModified()).getBytes(StandardCharsets.UTF_8));
+                digest.update(Long.toString(codeFile.length()).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        byte[] buffer = new byte[8192];
+        for (ResourceHandler resourceHandler : resourceHandlers) {
+            URL resourceUrl = resourceHandler.getURL();
+            digest.update(resourceUrl.toExternalForm().getBytes(StandardCharsets.UTF_8));
+            try (InputStream in = resourceUrl.openStream()) {
+                int count;
+                while ((count = in.read(buffer)) > 0) {
+                    digest.update(buffer, 0, count);
+                }
+            } catch (IOException e) {
+                throw new GenericConfigException("Could not read " + resourceUrl + " for the model snapshot hash", e);
+            }
+        }
+        return StringUtil.toHexString(digest.digest());
+    }
+
+    /**
+     * Reads the snapshot with the given name; returns null if there is no snapshot, if it was written for
+     * another content hash or if it can not be read.
+     */
+    public static <T extends Serializable> T read(String snapshotName, String contentHash, Class<T> modelClass) {
+        File snapshotFile = getSnapshotFile(snapshotName);
+        if (!snapshotFile.isFile()) {
+            return null;
+        }
+        UtilTimer utilTimer = new UtilTimer();
+        try (SafeObjectInputStream in = new SafeObjectInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile.toPath())))) {
+            if (!contentHash.equals(in.readUTF())) {
+                Debug.logInfo("Model snapshot [" + snapshotName + "] is out of date, doing a full parse", module);
+                return null;
+            }
+            T model = modelClass.cast(in.readObject());
+            Debug.logInfo("Loaded model snapshot [" + snapshotName + "] in " + utilTimer.timeSinceStart() + "ms", module);
+            return model;
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            Debug.logWarning(e, "Could not read model snapshot [" + snapshotName + "], doing a full parse", module);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the snapshot with the given name; the file is replaced atomically, so a concurrent reader
+     * sees either the old or the new snapshot. Failures are logged, as the snapshot is only an optimization.
+     */
+    public static void write(String snapshotName, String contentHash, Serializable model) {
+        File snapshotFile = getSnapshotFile(snapshotName);
+        File snapshotDir = snapshotFile.getParentFile();
+        if (!snapshotDir.isDirectory() && !snapshotDir.mkdirs()) {
+            Debug.logWarning("Could not create the model snapshot directory " + snapshotDir, module);
+            return;
+        }
+        Path tempPath = null;
+        try {
+            tempPath = Files.createTempFile(snapshotDir.toPath(), snapshotName, ".tmp");
+            try (OutputStream fileOut = Files.newOutputStream(tempPath);
+                    ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(fileOut))) {
+                out.writeUTF(contentHash);
+                out.writeObject(model);
+            }
+            try {
+                Files.move(tempPath, snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempPath, snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            if (Debug.infoOn()) {
+                Debug.logInfo("Wrote model snapshot [" + snapshotName + "] to " + snapshotFile, module);
+            }
+        } catch (IOException e) {
+            Debug.logWarning(e, "Could not write model snapshot [" + snapshotName + "]", module);
+            if (tempPath != null) {
+                try {
+                    Files.deleteIfExists(tempPath);
+                } catch (IOException e2) {
+                    Debug.logWarning(e2, module);
+                }
+            }
+        }
+    }
+
+    private static File getSnapshotFile(String snapshotName) {
+        String snapshotDir = UtilProperties.getPropertyValue("cache", "model.snapshot.dir", "runtime/snapshots");
+        File dir = new File(snapshotDir);
+        if (!dir.isAbsolute()) {
+            String ofbizHome = System.getProperty("ofbiz.home");
+            if (ofbizHome != null) {
+                dir = new File(ofbizHome, snapshotDir);
+            }
+        }
+        return new File(dir, snapshotName + ".ser");
+    }
+
+    private static File toFile(URL url) {
+        if (!"file".equals(url.getProtocol())) {
+            return null;
+        }
+        try {
+            return new File(url.toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.base.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.ofbiz.base.lang.ThreadSafe;
+
+/**
+ * A lock-free latency histogram over a sliding time window.
+ * <p>Values are counted in log-linear buckets: values below 16 get one bucket each,
+ * larger values get eight buckets per power of two, so a reported percentile is at most
+ * 12.5% above the actual value. The sliding window is made of <code>windowCount</code>
+ * windows of <code>windowMillis</code> milliseconds each - the oldest window is cleared
+ * and reused when time moves on.</p>
+ * <p>Recording a value never blocks. A value recorded while its window is being cleared
+ * can be lost, which is acceptable for monitoring purposes.</p>
+ */
+@ThreadSafe
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;
+    private static final int LINEAR_LIMIT_EXPONENT = SUB_BUCKET_BITS + 1;
+    private static final int MAX_EXPONENT = 40; // About 35 years in milliseconds
+    static final int BUCKET_COUNT = LINEAR_LIMIT + (MAX_EXPONENT - LINEAR_LIMIT_EXPONENT + 1) * SUB_BUCKETS;
+    /** A snapshot with no recorded values. */
+    public static final Snapshot EMPTY_SNAPSHOT = new Snapshot(new long[BUCKET_COUNT], 0, 0, 0);
+
+    /** Returns the index of the bucket that counts <code>value</code>. */
+    static int bucketIndex(long value) {
+        if (value < LINEAR_LIMIT) {
+            return value < 0 ? 0 : (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_LIMIT + (exponent - LINEAR_LIMIT_EXPONENT) * SUB_BUCKETS + subBucket;
+    }
+
+    /** Returns the highest value counted by the bucket at <code>index</code>. */
+    static long bucketUpperBound(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int exponent = LINEAR_LIMIT_EXPONENT + (index - LINEAR_LIMIT) / SUB_BUCKETS;
+        int subBucket = (index - LINEAR_LIMIT) % SUB_BUCKETS;
+        long lowerBound = (long) (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+        return lowerBound + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    private final Window[] windows;
+    private final long windowMillis;
+
+    /**
+     * Creates a histogram covering the last <code>windowCount * windowMillis</code> milliseconds.
+     * @throws IllegalArgumentException if <code>windowCount</code> or <code>windowMillis</code> is less than one
+     */
+    public LatencyHistogram(int windowCount, long windowMillis) {
+        if (windowCount < 1 || windowMillis < 1) {
+            throw new IllegalArgumentException("windowCount and windowMillis must be positive");
+        }
+        this.windowMillis = windowMillis;
+        this.windows = new Window[windowCount];
+        for (int i = 0; i < windowCount; i++) {
+            this.windows[i] = new Window();
+        }
+    }
+
+    /** Records <code>count</code> occurrences of <code>value</code>. */
+    public void record(long value, int count) {
+        record(value, count, System.currentTimeMillis());
+    }
+
+    void record(long value, int count, long now) {
+        if (count < 1) {
+            return;
+        }
+        long epoch = now / windowMillis;
+        Window window = windows[(int) (epoch % windows.length)];
+        window.roll(epoch);
+        window.counts.addAndGet(bucketIndex(value), count);
+        window.count.add(count);
+        window.sum.add(value * count);
+        window.max.accumulateAndGet(value, Math::max);
+    }
+
+    /** Clears all recorded values. */
+    public void reset() {
+        for (Window window : windows) {
+            window.clear();
+        }
+    }
+
+    /** Returns the statistics of the values recorded in the sliding window. */
+    public Snapshot getSnapshot() {
+        return getSnapshot(System.currentTimeMillis());
+    }
+
+    Snapshot getSnapshot(long now) {
+        long oldestEpoch = now / windowMillis - windows.length + 1;
+        long[] counts = new long[BUCKET_COUNT];
+        long count = 0;
+        long sum = 0;
+        long max = 0;
+        for (Window window : windows) {
+            if (window.epoch.get() < oldestEpoch) {
+                continue;
+            }
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts[i] += window.counts.get(i);
+            }
+            count += window.count.sum();
+            sum += window.sum.sum();
+            max = Math.max(max, window.max.get());
+        }
+        return new Snapshot(counts, count, sum, max);
+    }
+
+    private static final class Window {
+        private final AtomicLong epoch = new AtomicLong(-1);
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        private void roll(long newEpoch) {
+            long currentEpoch = epoch.get();
+            if (currentEpoch < newEpoch && epoch.compareAndSet(currentEpoch, newEpoch)) {
+                clearValues();
+            }
+        }
+
+        private void clear() {
+            epoch.set(-1);
+            clearValues();
+        }
+
+        private void clearValues() {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts.set(i, 0);
+            }
+            count.reset();
+            sum.reset();
+            max.set(0);
+        }
+    }
+
+    /**
+     * An immutable view of the values recorded in a histogram's sliding window.
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /** Returns the number of recorded values. */
+        public long getCount() {
+            return count;
+        }
+
+        /** Returns the largest recorded value, or zero if no values were recorded. */
+        public long getMax() {
+            return max;
+        }
+
+        /** Returns the mean of the recorded values, or zero if no values were recorded. */
+        public double getMean() {
+            return count == 0 ? 0.0 : sum / (double) count;
+        }
+
+        /**
+         * Returns the value below which <code>quantile</code> of the recorded values fall,
+         * or zero if no values were recorded.
+         * @param quantile A number between 0 and 1, for example 0.99 for the 99th percentile
+         */
+        public long getValueAtQuantile(double quantile) {
+            long total = 0;
+            for (long bucketCount : counts) {
+                total += bucketCount;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * total));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(bucketUpperBound(i), max);
+                }
+            }
+            return max;
+        }
+    }
+}
@@ -59,6 +59,15 @@ public interface Metrics {
     /** Returns the total number of processed events. */
     long getTotalEvents();
 
+    /** Returns the total service time of all processed events in milliseconds. */
+    long getTotalServiceTime();
+
+    /**
+     * Returns the service time distribution of the events processed during
+     * the last few seconds. The default implementation covers the last minute.
+     */
+    LatencyHistogram.Snapshot getLatencySnapshot();
+
     /** 
      * Records the service time for <code>numEvents</code> taking
      * <code>time</code> milliseconds to be processed.
@@ -30,6 +30,9 @@ package org.apache.ofbiz.base.metrics;
 
 import java.util.Collection;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.ofbiz.base.lang.ThreadSafe;
 import org.apache.ofbiz.base.util.Assert;
@@ -115,13 +118,19 @@ public final class MetricsFactory {
             if (!attributeValue.isEmpty()) {
                 threshold = Double.parseDouble(attributeValue);
             }
-            result = new MetricsImpl(name, estimationSize, estimationTime, smoothing, threshold);
+            result = new MetricsImpl(name, estimationSize, estimationTime, smoothing, threshold, createLatencyHistogram());
             METRICS_CACHE.putIfAbsent(name, result);
             result = METRICS_CACHE.get(name);
         }
         return result;
     }
 
+    private static LatencyHistogram createLatencyHistogram() {
+        int windowCount = UtilProperties.getPropertyAsInteger("serverstats", "metrics.histogram.window.count", 6);
+        long windowTime = UtilProperties.getPropertyAsLong("serverstats", "metrics.histogram.window.time", 10000);
+        return new LatencyHistogram(windowCount, windowTime);
+    }
+
     /**
      * Creates a <code>Metrics</code> instance.
      * If an instance with the same name already exists, it will be returned.
@@ -135,7 +144,7 @@ public final class MetricsFactory {
         Assert.notNull("name", name);
         Metrics result = METRICS_CACHE.get(name);
         if (result == null) {
-            result = new MetricsImpl(name, estimationSize, estimationTime, smoothing, threshold);
+            result = new MetricsImpl(name, estimationSize, estimationTime, smoothing, threshold, createLatencyHistogram());
             METRICS_CACHE.putIfAbsent(name, result);
             result = METRICS_CACHE.get(name);
         }
@@ -159,25 +168,31 @@ public final class MetricsFactory {
         return new TreeSet<>(METRICS_CACHE.values());
     }
 
+    // Lock-free: request threads only add to striped counters, and one thread at a time
+    // recalculates the moving average when the estimation size or time is reached.
     private static final class MetricsImpl implements Metrics, Comparable<Metrics> {
-        private int count = 0;
-        private long lastTime = System.currentTimeMillis();
-        private double serviceRate = 0.0;
-        private long totalServiceTime = 0;
-        private long totalEvents = 0;
-        private long cumulativeEvents = 0;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalEvents = new LongAdder();
+        private final LongAdder totalServiceTime = new LongAdder();
+        private final LongAdder cumulativeEvents = new LongAdder();
+        private final LongAdder cumulativeServiceTime = new LongAdder();
+        private final AtomicLong lastTime = new AtomicLong(System.currentTimeMillis());
+        private final AtomicBoolean calculating = new AtomicBoolean();
+        private volatile double serviceRate = 0.0;
+        private final LatencyHistogram latencyHistogram;
         private final String name;
         private final int estimationSize;
         private final long estimationTime;
         private final double smoothing;
         private final double threshold;
 
-        private MetricsImpl(String name, int estimationSize, long estimationTime, double smoothing, double threshold) {
+        private MetricsImpl(String name, int estimationSize, long estimationTime, double smoothing, double threshold, LatencyHistogram latencyHistogram) {
             this.name = name;
             this.estimationSize = estimationSize;
             this.estimationTime = estimationTime;
             this.smoothing = smoothing;
             this.threshold = threshold;
+            this.latencyHistogram = latencyHistogram;
         }
 
         @Override
@@ -197,13 +212,18 @@ public final class MetricsFactory {
             return false;
         }
 
+        @Override
+        public LatencyHistogram.Snapshot getLatencySnapshot() {
+            return latencyHistogram.getSnapshot();
+        }
+
         @Override
         public String getName() {
             return name;
         }
 
         @Override
-        public synchronized double getServiceRate() {
+        public double getServiceRate() {
             return serviceRate;
         }
 
@@ -213,8 +233,13 @@ public final class MetricsFactory {
         }
 
         @Override
-        public synchronized long getTotalEvents() {
-            return cumulativeEvents;
+        public long getTotalEvents() {
+            return cumulativeEvents.sum();
+        }
+
+        @Override
+        public long getTotalServiceTime() {
+            return cumulativeServiceTime.sum();
         }
 
         @Override
@@ -223,30 +248,49 @@ public final class MetricsFactory {
         }
 
         @Override
-        public synchronized void recordServiceRate(int numEvents, long time) {
-            totalEvents += numEvents;
-            cumulativeEvents += numEvents;
-            totalServiceTime += time;
-            count++;
-            long curTime = System.currentTimeMillis();
-            if ((count == estimationSize) || (curTime - lastTime >= estimationTime)) {
-                if (totalEvents == 0) {
-                    totalEvents = 1;
+        public void recordServiceRate(int numEvents, long time) {
+            totalEvents.add(numEvents);
+            cumulativeEvents.add(numEvents);
+            totalServiceTime.add(time);
+            cumulativeServiceTime.add(time);
+            count.increment();
+            if (numEvents > 0) {
+                latencyHistogram.record(time / numEvents, numEvents);
+            }
+            if (isEstimationDue() && calculating.compareAndSet(false, true)) {
+                try {
+                    // Another thread might have just recalculated
+                    if (isEstimationDue()) {
+                        long events = totalEvents.sumThenReset();
+                        long serviceTime = totalServiceTime.sumThenReset();
+                        count.reset();
+                        if (events == 0) {
+                            events = 1;
+                        }
+                        double rate = serviceTime / (double) events;
+                        serviceRate = (rate * smoothing) + (serviceRate * (1.0 - smoothing));
+                        lastTime.set(System.currentTimeMillis());
+                    }
+                } finally {
+                    calculating.set(false);
                 }
-                double rate = totalServiceTime / (double) totalEvents;
-                serviceRate = (rate * smoothing) + (serviceRate * (1.0 - smoothing));
-                count = 0;
-                lastTime = curTime;
-                totalEvents = totalServiceTime = 0;
             }
         }
 
+        private boolean isEstimationDue() {
+            return System.currentTimeMillis() - lastTime.get() >= estimationTime || count.sum() >= estimationSize;
+        }
+
         @Override
-        public synchronized void reset() {
+        public void reset() {
             serviceRate = 0.0;
-            count = 0;
-            lastTime = System.currentTimeMillis();
-            totalEvents = totalServiceTime = cumulativeEvents = 0;
+            count.reset();
+            lastTime.set(System.currentTimeMillis());
+            totalEvents.reset();
+            totalServiceTime.reset();
+            cumulativeEvents.reset();
+            cumulativeServiceTime.reset();
+            latencyHistogram.reset();
         }
 
         @Override
@@ -277,6 +321,16 @@ public final class MetricsFactory {
             return 0;
         }
 
+        @Override
+        public long getTotalServiceTime() {
+            return 0;
+        }
+
+        @Override
+        public LatencyHistogram.Snapshot getLatencySnapshot() {
+            return LatencyHistogram.EMPTY_SNAPSHOT;
+        }
+
         @Override
         public void recordServiceRate(int numEvents, long time) {
         }
@@ -149,28 +149,23 @@ public class GroovyUtil {
 
     public static Class<?> getScriptClassFromLocation(String location) throws GeneralException {
         try {
-            Class<?> scriptClass = parsedScripts.get(location);
-            if (scriptClass == null) {
-                URL scriptUrl = FlexibleLocation.resolveLocation(location);
+            // concurrent callers wait for a single parse of the script
+            return parsedScripts.get(location, key -> {
+                URL scriptUrl = FlexibleLocation.resolveLocation(key);
                 if (scriptUrl == null) {
-                    throw new GeneralException("Script not found at location [" + location + "]");
+                    throw new GeneralException("Script not found at location [" + key + "]");
                 }
+                Class<?> scriptClass;
                 if (groovyScriptClassLoader != null) {
-                    scriptClass = parseClass(scriptUrl.openStream(), location, groovyScriptClassLoader);
+                    scriptClass = parseClass(scriptUrl.openStream(), key, groovyScriptClassLoader);
                 } else {
-                    scriptClass = parseClass(scriptUrl.openStream(), location);
+                    scriptClass = parseClass(scriptUrl.openStream(), key);
                 }
-                Class<?> scriptClassCached = parsedScripts.putIfAbsent(location, scriptClass);
-                if (scriptClassCached == null) { // putIfAbsent returns null if the class is added to the cache
-                    if (Debug.verboseOn()) {
-                        Debug.logVerbose("Cached Groovy script at: " + location, module);
-                    }
-                } else {
-                    // the newly parsed script is discarded and the one found in the cache (that has been created by a concurrent thread in the meantime) is used
-                    scriptClass = scriptClassCached;
+                if (Debug.verboseOn()) {
+                    Debug.logVerbose("Cached Groovy script at: " + key, module);
                 }
-            }
-            return scriptClass;
+                return scriptClass;
+            });
         } catch (RuntimeException e) {
             throw e;
         } catch (Exception e) {
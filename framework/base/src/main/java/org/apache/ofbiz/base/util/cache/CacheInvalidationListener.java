@@ -0,0 +1,34 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.base.util.cache;
+
+/**
+ * Receives the deliberate invalidations of a cache, see {@link UtilCache#addInvalidationListener(CacheInvalidationListener)}.
+ * Unlike the {@link CacheListener} removal events, the elements dropped by the LRU policy, by expiration
+ * or by the garbage collection of soft references are not reported: only an explicit remove of a key and
+ * the clear of the whole cache are.
+ */
+public interface CacheInvalidationListener<K> {
+
+    /** Called when the key is removed from the cache, whether the cache held it or not */
+    public void noteKeyInvalidation(UtilCache<K, ?> cache, K key);
+
+    /** Called when all the elements of the cache are removed */
+    public void noteCacheInvalidation(UtilCache<K, ?> cache);
+}
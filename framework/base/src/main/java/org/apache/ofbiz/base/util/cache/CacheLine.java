@@ -21,10 +21,17 @@ package org.apache.ofbiz.base.util.cache;
 import org.apache.ofbiz.base.concurrent.ExecutionPool;
 
 public abstract class CacheLine<V> extends ExecutionPool.Pulse {
+    /** the estimated size in bytes of the line, set by the cache before the line is stored */
+    long weight;
+
     protected CacheLine(long loadTimeNanos, long expireTimeNanos) {
         super(loadTimeNanos, expireTimeNanos);
     }
 
+    public long getWeight() {
+        return weight;
+    }
+
     abstract CacheLine<V> changeLine(boolean useSoftReference, long expireTimeNanos);
     abstract void remove();
     boolean differentExpireTime(long expireTimeNanos) {
@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.base.util.cache;
+
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.ofbiz.base.util.UtilGenerics;
+
+/**
+ * The default cache weigher: estimates the size of strings, arrays, boxed primitives, collections and maps from
+ * their length, without serializing them. Weighers for other types, like the entity values, can be registered
+ * with {@link #registerWeigher(Class, CacheWeigher)}; the objects of any other type count for a fixed size.
+ */
+public final class ObjectWeigher implements CacheWeigher<Object> {
+
+    public static final String module = ObjectWeigher.class.getName();
+    public static final ObjectWeigher INSTANCE = new ObjectWeigher();
+
+    private static final long OBJECT_SIZE = 16;
+    private static final long REFERENCE_SIZE = 8;
+    private static final long UNKNOWN_OBJECT_SIZE = 64;
+    /** the collections nested deeper are counted as unknown objects, this also stops on cyclic structures */
+    private static final int MAX_DEPTH = 8;
+
+    private static final Map<Class<?>, CacheWeigher<Object>> weighers = new ConcurrentHashMap<>();
+    /** the registered weigher found for each class, or the instance itself when there is none */
+    private static final Map<Class<?>, CacheWeigher<Object>> resolvedWeighers = new ConcurrentHashMap<>();
+
+    private ObjectWeigher() {
+    }
+
+    /** Registers the weigher to use for the objects of the class and of its subclasses. */
+    public static <T> void registerWeigher(Class<T> objectClass, CacheWeigher<? super T> weigher) {
+        weighers.put(objectClass, UtilGenerics.cast(weigher));
+        resolvedWeighers.clear();
+    }
+
+    @Override
+    public long weigh(Object value) {
+        return weigh(value, 0);
+    }
+
+    /**
+     * Returns the estimated size of a map entry, as counted in the size of the map: the size of a map is the sum
+     * of the sizes of its entries and of the empty map, so a map changed in place can be weighed by the difference.
+     */
+    public long weighMapEntry(Object key, Object value) {
+        return 4 * REFERENCE_SIZE + weigh(key, 1) + weigh(value, 1);
+    }
+
+    private long weigh(Object value, int depth) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof String) {
+            return OBJECT_SIZE + 24 + 2 * ((String) value).length();
+        }
+        if (value instanceof Number || value instanceof Boolean || value instanceof Character) {
+            return value instanceof BigDecimal ? OBJECT_SIZE + 48 : OBJECT_SIZE + 8;
+        }
+        if (value instanceof java.util.Date) {
+            return OBJECT_SIZE + 16;
+        }
+        CacheWeigher<Object> weigher = getRegisteredWeigher(value.getClass());
+        if (weigher != this) {
+            return weigher.weigh(value);
+        }
+        if (depth >= MAX_DEPTH) {
+            return UNKNOWN_OBJECT_SIZE;
+        }
+        if (value instanceof Collection<?>) {
+            Collection<?> collection = (Collection<?>) value;
+            long size = OBJECT_SIZE + 32 + collection.size() * 2 * REFERENCE_SIZE;
+            for (Object element : collection) {
+                size += weigh(element, depth + 1);
+            }
+            return size;
+        }
+        if (value instanceof Map<?, ?>) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            long size = OBJECT_SIZE + 48 + map.size() * 4 * REFERENCE_SIZE;
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                size += weigh(entry.getKey(), depth + 1) + weigh(entry.getValue(), depth + 1);
+            }
+            return size;
+        }
+        if (value.getClass().isArray()) {
+            int length = Array.getLength(value);
+            Class<?> componentType = value.getClass().getComponentType();
+            if (componentType == byte.class || componentType == boolean.class) {
+                return OBJECT_SIZE + length;
+            }
+            if (componentType == char.class || componentType == short.class) {
+                return OBJECT_SIZE + 2L * length;
+            }
+            if (componentType.isPrimitive()) {
+                return OBJECT_SIZE + 8L * length;
+            }
+            long size = OBJECT_SIZE + length * REFERENCE_SIZE;
+            for (Object element : (Object[]) value) {
+                size += weigh(element, depth + 1);
+            }
+            return size;
+        }
+        return UNKNOWN_OBJECT_SIZE;
+    }
+
+    private CacheWeigher<Object> getRegisteredWeigher(Class<?> valueClass) {
+        if (weighers.isEmpty()) {
+            return this;
+        }
+        CacheWeigher<Object> weigher = resolvedWeighers.get(valueClass);
+        if (weigher == null) {
+            weigher = this;
+            for (Map.Entry<Class<?>, CacheWeigher<Object>> entry : weighers.entrySet()) {
+                if (entry.getKey().isAssignableFrom(valueClass)) {
+                    weigher = entry.getValue();
+                    break;
+                }
+            }
+            resolvedWeighers.put(valueClass, weigher);
+        }
+        return weigher;
+    }
+}
@@ -18,7 +18,6 @@
  *******************************************************************************/
 package org.apache.ofbiz.base.util.cache;
 
-import java.io.NotSerializableException;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Collection;
@@ -32,9 +31,12 @@ import java.util.Map;
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -43,7 +45,6 @@ import org.apache.ofbiz.base.concurrent.ExecutionPool;
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.ObjectType;
 import org.apache.ofbiz.base.util.UtilGenerics;
-import org.apache.ofbiz.base.util.UtilObject;
 import org.apache.ofbiz.base.util.UtilValidate;
 
 import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
@@ -66,6 +67,9 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
 
     public static final String module = UtilCache.class.getName();
 
+    /** The estimated size of a cache line and of its entry in the table, added to the weight of the value */
+    private static final long LINE_OVERHEAD = 64;
+
     /** A static Map to keep track of all of the UtilCache instances. */
     private static final ConcurrentHashMap<String, UtilCache<?, ?>> utilCacheTable = new ConcurrentHashMap<>();
 
@@ -90,12 +94,30 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
     /** A count of the number of cache misses on removes */
     protected AtomicLong removeMissCount = new AtomicLong(0);
 
+    /** A count of the number of values computed by the loaders passed to get(key, loader) */
+    protected AtomicLong loadCount = new AtomicLong(0);
+    /** A count of the number of loads that threw an exception */
+    protected AtomicLong loadExceptionCount = new AtomicLong(0);
+    /** The total time spent in the loads */
+    protected AtomicLong totalLoadTimeNanos = new AtomicLong(0);
+
     /** The maximum number of elements in the cache.
      * If set to 0, there will be no limit on the number of elements in the cache.
      */
     protected int sizeLimit = 0;
     protected int maxInMemory = 0;
 
+    /** The maximum estimated size in bytes of the elements in the cache, as computed by the weigher.
+     * If set to 0, the size of the cache is only limited by the number of elements.
+     */
+    protected long maxBytes = 0;
+
+    /** Estimates the size of the values put in the cache */
+    protected CacheWeigher<? super V> weigher = ObjectWeigher.INSTANCE;
+
+    /** The estimated size in bytes of the elements currently in the cache */
+    private final AtomicLong totalWeight = new AtomicLong(0);
+
     /** Specifies the amount of time since initial loading before an element will be reported as expired.
      * If set to 0, elements will never expire.
      */
@@ -104,9 +126,20 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
     /** Specifies whether or not to use soft references for this cache, defaults to false */
     protected boolean useSoftReference = false;
 
+    /** The fraction of the expire time after which a hit through get(key, loader) reloads the element in the background.
+     * If set to 0, elements are only loaded again once expired.
+     */
+    protected double refreshAheadRatio = 0;
+
+    /** The loads in progress through get(key, loader), so that only one load of a key runs at a time */
+    private final ConcurrentMap<Object, Load<V>> loadsInFlight = new ConcurrentHashMap<>();
+
     /** The set of listeners to receive notifications when items are modified (either deliberately or because they were expired). */
     protected Set<CacheListener<K, V>> listeners = new CopyOnWriteArraySet<>();
 
+    /** The set of listeners to receive notifications when items are deliberately removed or the cache is cleared. */
+    protected Set<CacheInvalidationListener<K>> invalidationListeners = new CopyOnWriteArraySet<>();
+
     protected ConcurrentMap<Object, CacheLine<V>> memoryTable = null;
 
     /** Constructor which specifies the cacheName as well as the sizeLimit, expireTime and useSoftReference.
@@ -124,18 +157,30 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
         this.useSoftReference = useSoftReference;
         setPropertiesParams(propName);
         setPropertiesParams(propNames);
-        int maxMemSize = this.maxInMemory;
-        if (maxMemSize == 0) {
-            maxMemSize = sizeLimit;
+        memoryTable = createMemoryTable();
+    }
+
+    private int getMaxMemSize() {
+        return this.maxInMemory != 0 ? this.maxInMemory : this.sizeLimit;
+    }
+
+    private ConcurrentMap<Object, CacheLine<V>> createMemoryTable() {
+        if (maxBytes > 0) {
+            // the LRU policy is bounded by the weights of the lines, the number of lines is then checked on put
+            return new Builder<Object, CacheLine<V>>()
+                    .maximumWeightedCapacity(maxBytes)
+                    .weigher((CacheLine<V> line) -> (int) Math.max(1, Math.min(line.getWeight(), Integer.MAX_VALUE)))
+                    .listener(this)
+                    .build();
         }
+        int maxMemSize = getMaxMemSize();
         if (maxMemSize == 0) {
-            memoryTable = new ConcurrentHashMap<>();
-        } else {
-            memoryTable = new Builder<Object, CacheLine<V>>()
-            .maximumWeightedCapacity(maxMemSize)
-            .listener(this)
-            .build();
+            return new ConcurrentHashMap<>();
         }
+        return new Builder<Object, CacheLine<V>>()
+                .maximumWeightedCapacity(maxMemSize)
+                .listener(this)
+                .build();
     }
 
     private static String getNextDefaultIndex(String cacheName) {
@@ -193,6 +238,22 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
             if (value != null) {
                 useSoftReference = "true".equals(value);
             }
+            value = getPropertyParam(res, propNames, "maxBytes");
+            if (UtilValidate.isNotEmpty(value)) {
+                this.maxBytes = Long.parseLong(value);
+            }
+            value = getPropertyParam(res, propNames, "weigher");
+            if (UtilValidate.isNotEmpty(value)) {
+                try {
+                    this.weigher = UtilGenerics.cast(ObjectType.loadClass(value).getDeclaredConstructor().newInstance());
+                } catch (Exception e) {
+                    Debug.logError(e, "Could not create the weigher [" + value + "] of cache [" + name + "], using the default one", module);
+                }
+            }
+            value = getPropertyParam(res, propNames, "refreshAhead");
+            if (UtilValidate.isNotEmpty(value)) {
+                this.refreshAheadRatio = Double.parseDouble(value);
+            }
         }
     }
 
@@ -230,17 +291,17 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
         return (cachedValue != null? cachedValue: value);
     }
 
-    CacheLine<V> createSoftRefCacheLine(final Object key, V value, long loadTimeNanos, long expireTimeNanos) {
-        return tryRegister(loadTimeNanos, new SoftRefCacheLine<V>(value, loadTimeNanos, expireTimeNanos) {
+    CacheLine<V> createSoftRefCacheLine(final Object key, V value, long weight, long loadTimeNanos, long expireTimeNanos) {
+        return tryRegister(weight, loadTimeNanos, new SoftRefCacheLine<V>(value, loadTimeNanos, expireTimeNanos) {
             @Override
             CacheLine<V> changeLine(boolean useSoftReference, long expireTimeNanos) {
                 if (useSoftReference) {
                     if (differentExpireTime(expireTimeNanos)) {
                         return this;
                     }
-                    return createSoftRefCacheLine(key, getValue(), loadTimeNanos, expireTimeNanos);
+                    return createSoftRefCacheLine(key, getValue(), weight, loadTimeNanos, expireTimeNanos);
                 }
-                return createHardRefCacheLine(key, getValue(), loadTimeNanos, expireTimeNanos);
+                return createHardRefCacheLine(key, getValue(), weight, loadTimeNanos, expireTimeNanos);
             }
 
             @Override
@@ -250,17 +311,17 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
         });
     }
 
-    CacheLine<V> createHardRefCacheLine(final Object key, V value, long loadTimeNanos, long expireTimeNanos) {
-        return tryRegister(loadTimeNanos, new HardRefCacheLine<V>(value, loadTimeNanos, expireTimeNanos) {
+    CacheLine<V> createHardRefCacheLine(final Object key, V value, long weight, long loadTimeNanos, long expireTimeNanos) {
+        return tryRegister(weight, loadTimeNanos, new HardRefCacheLine<V>(value, loadTimeNanos, expireTimeNanos) {
             @Override
             CacheLine<V> changeLine(boolean useSoftReference, long expireTimeNanos) {
                 if (useSoftReference) {
-                    return createSoftRefCacheLine(key, getValue(), loadTimeNanos, expireTimeNanos);
+                    return createSoftRefCacheLine(key, getValue(), weight, loadTimeNanos, expireTimeNanos);
                 }
                 if (differentExpireTime(expireTimeNanos)) {
                     return this;
                 }
-                return createHardRefCacheLine(key, getValue(), loadTimeNanos, expireTimeNanos);
+                return createHardRefCacheLine(key, getValue(), weight, loadTimeNanos, expireTimeNanos);
             }
 
             @Override
@@ -270,7 +331,8 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
         });
     }
 
-    private CacheLine<V> tryRegister(long loadTimeNanos, CacheLine<V> line) {
+    private CacheLine<V> tryRegister(long weight, long loadTimeNanos, CacheLine<V> line) {
+        line.weight = weight;
         if (loadTimeNanos > 0) {
             ExecutionPool.addPulse(line);
         }
@@ -279,10 +341,101 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
 
     private CacheLine<V> createCacheLine(K key, V value, long expireTimeNanos) {
         long loadTimeNanos = expireTimeNanos > 0 ? System.nanoTime() : 0;
+        long weight = weigh(value);
         if (useSoftReference) {
-            return createSoftRefCacheLine(key, value, loadTimeNanos, expireTimeNanos);
+            return createSoftRefCacheLine(key, value, weight, loadTimeNanos, expireTimeNanos);
+        }
+        return createHardRefCacheLine(key, value, weight, loadTimeNanos, expireTimeNanos);
+    }
+
+    /** The estimated size of a line: the value as estimated by the weigher and the line itself */
+    private long weigh(V value) {
+        try {
+            return LINE_OVERHEAD + weigher.weigh(value);
+        } catch (RuntimeException e) {
+            Debug.logWarning(e, "Unable to weigh a value of cache [" + getName() + "]", module);
+            return LINE_OVERHEAD;
+        }
+    }
+
+    /** Weighs again the element of the key, for the values that are modified in place once cached.
+     * @param key The key for the element
+     */
+    public void reweigh(K key) {
+        Object nulledKey = fromKey(key);
+        CacheLine<V> line = memoryTable.get(nulledKey);
+        V value = line != null ? line.getValue() : null;
+        if (value == null) {
+            return;
+        }
+        long weight = weigh(value);
+        if (weight == line.getWeight()) {
+            return;
+        }
+        replaceWeight(key, nulledKey, line, value, weight);
+    }
+
+    /** Adds to the estimated size of the element of the key, for the values that are modified in place once cached
+     * when the weight of the change is known: unlike reweigh, the value is not weighed again.
+     * @param key The key for the element
+     * @param delta The estimated size in bytes added to the element, negative when removed from it
+     */
+    public void addWeight(K key, long delta) {
+        if (delta == 0) {
+            return;
+        }
+        Object nulledKey = fromKey(key);
+        while (true) {
+            CacheLine<V> line = memoryTable.get(nulledKey);
+            V value = line != null ? line.getValue() : null;
+            if (value == null) {
+                return;
+            }
+            // retried when the line was replaced meanwhile, so that concurrent changes all count
+            if (replaceWeight(key, nulledKey, line, value, Math.max(LINE_OVERHEAD, line.getWeight() + delta))) {
+                return;
+            }
+        }
+    }
+
+    private boolean replaceWeight(K key, Object nulledKey, CacheLine<V> line, V value, long weight) {
+        long loadTimeNanos = line.getLoadTimeNanos();
+        long delayNanos = line.getExpireTimeNanos() - loadTimeNanos;
+        CacheLine<V> newLine;
+        if (line instanceof SoftRefCacheLine<?>) {
+            newLine = createSoftRefCacheLine(key, value, weight, loadTimeNanos, delayNanos);
+        } else {
+            newLine = createHardRefCacheLine(key, value, weight, loadTimeNanos, delayNanos);
+        }
+        // replacing the line makes the LRU policy account for the new weight
+        if (memoryTable.replace(nulledKey, line, newLine)) {
+            totalWeight.addAndGet(weight - line.getWeight());
+            cancel(line);
+            trimToMaxInMemory();
+            return true;
+        }
+        cancel(newLine);
+        return false;
+    }
+
+    /** When the cache is bounded by its size in bytes, the number of lines is bounded here */
+    private void trimToMaxInMemory() {
+        int maxMemSize = getMaxMemSize();
+        if (maxBytes <= 0 || maxMemSize <= 0 || !(memoryTable instanceof ConcurrentLinkedHashMap<?, ?>)) {
+            return;
+        }
+        ConcurrentLinkedHashMap<Object, CacheLine<V>> lruTable = UtilGenerics.cast(memoryTable);
+        while (lruTable.size() > maxMemSize) {
+            Set<Object> eldestKeys = lruTable.ascendingKeySetWithLimit(1);
+            if (eldestKeys.isEmpty()) {
+                return;
+            }
+            Object eldestKey = eldestKeys.iterator().next();
+            CacheLine<V> eldestLine = lruTable.remove(eldestKey);
+            if (eldestLine != null) {
+                onEviction(eldestKey, eldestLine);
+            }
         }
-        return createHardRefCacheLine(key, value, loadTimeNanos, expireTimeNanos);
     }
     private V cancel(CacheLine<V> line) {
         // FIXME: this is a race condition, the item could expire
@@ -308,7 +461,10 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
 
     V putInternal(K key, V value, long expireTimeNanos) {
         Object nulledKey = fromKey(key);
-        CacheLine<V> oldCacheLine = memoryTable.put(nulledKey, createCacheLine(key, value, expireTimeNanos));
+        CacheLine<V> newCacheLine = createCacheLine(key, value, expireTimeNanos);
+        CacheLine<V> oldCacheLine = memoryTable.put(nulledKey, newCacheLine);
+        totalWeight.addAndGet(oldCacheLine == null ? newCacheLine.getWeight() : newCacheLine.getWeight() - oldCacheLine.getWeight());
+        trimToMaxInMemory();
         V oldValue = oldCacheLine == null ? null : cancel(oldCacheLine);
         if (oldValue == null) {
             noteAddition(key, value);
@@ -325,6 +481,8 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
         CacheLine<V> oldCacheLine = memoryTable.putIfAbsent(nulledKey, newCacheLine);
         if (oldCacheLine == null) {
             oldValue = null;
+            totalWeight.addAndGet(newCacheLine.getWeight());
+            trimToMaxInMemory();
         } else {
             oldValue = oldCacheLine.getValue();
             cancel(newCacheLine);
@@ -354,50 +512,139 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
         return line != null ? line.getValue() : null;
     }
 
-    public Collection<V> values() {
-        // REFACTOR to use stream(), map(), collect() and Collectors.toCollection()
-        List<V> valuesList = new LinkedList<>();
-        for (CacheLine<V> line: memoryTable.values()) {
-            valuesList.add(line.getValue());
+    /** Gets an element from the cache, computing it with {@code loader} on a miss.
+     * Concurrent misses on the same key wait for a single load instead of all computing the value. When the
+     * refreshAhead setting is used, a hit on an element close to its expiration reloads it in the background.
+     * @param key The key for the element
+     * @param loader Computes the value of the element when it is not in the cache; a null value is not cached
+     * @return The value of the element specified by the key
+     * @throws E The exception thrown by the loader
+     */
+    public <E extends Exception> V get(K key, CacheLoader<? super K, ? extends V, E> loader) throws E {
+        Object nulledKey = fromKey(key);
+        CacheLine<V> line = memoryTable.get(nulledKey);
+        V value = line != null ? line.getValue() : null;
+        if (value != null) {
+            hitCount.incrementAndGet();
+            if (refreshAheadRatio > 0 && isRefreshDue(line)) {
+                refreshAhead(key, nulledKey, loader);
+            }
+            return value;
         }
-        return valuesList;
-    }
-
-    private long findSizeInBytes(Object o) {
-        if (o == null) {
-            if (Debug.verboseOn()) {
-                Debug.logVerbose("Found null object in cache: " + getName(), module);
+        if (line == null) {
+            missCountNotFound.incrementAndGet();
+        } else {
+            missCountSoftRef.incrementAndGet();
+        }
+        Load<V> load = new Load<>();
+        Load<V> inFlight = loadsInFlight.putIfAbsent(nulledKey, load);
+        if (inFlight != null) {
+            try {
+                return inFlight.get();
+            } catch (ExecutionException e) {
+                // the concurrent load failed, run this loader so that the caller gets its own exception
+                return runLoad(key, nulledKey, null, loader);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return runLoad(key, nulledKey, null, loader);
             }
-            return 0;
         }
+        // the element may have been stored by a load that ended after the lookup above
+        line = memoryTable.get(nulledKey);
+        value = line != null ? line.getValue() : null;
+        if (value != null) {
+            loadsInFlight.remove(nulledKey, load);
+            load.complete(value);
+            return value;
+        }
+        return runLoad(key, nulledKey, load, loader);
+    }
+
+    private <E extends Exception> V runLoad(K key, Object nulledKey, Load<V> load, CacheLoader<? super K, ? extends V, E> loader) throws E {
+        long startNanos = System.nanoTime();
         try {
-            if (o instanceof Serializable) {
-                return UtilObject.getByteCount(o);
+            V value = loader.load(key);
+            if (value != null) {
+                // synchronized with the removes, so that a value loaded before a remove of its key is not cached
+                synchronized (this) {
+                    if (load == null || !load.invalidated) {
+                        putInternal(key, value, expireTimeNanos);
+                    }
+                }
             }
-            if (Debug.verboseOn()) {
-                Debug.logVerbose("Unable to compute memory size for non serializable object; returning 0 byte size for object of " + o.getClass(), module);
+            if (load != null) {
+                load.complete(value);
             }
-            return 0;
-        } catch (NotSerializableException e) {
-            // this happens when we try to get the byte count for an object which itself is
-            // serializable, but fails to be serialized, such as a map holding unserializable objects
-            if (Debug.warningOn()) {
-                Debug.logWarning("NotSerializableException while computing memory size; returning 0 byte size for object of " + e.getMessage(), module);
+            return value;
+        } catch (Throwable t) {
+            loadExceptionCount.incrementAndGet();
+            if (load != null) {
+                load.completeExceptionally(t);
+            }
+            throw t;
+        } finally {
+            loadCount.incrementAndGet();
+            totalLoadTimeNanos.addAndGet(System.nanoTime() - startNanos);
+            if (load != null) {
+                loadsInFlight.remove(nulledKey, load);
             }
-            return 0;
-        } catch (Exception e) {
-            Debug.logWarning(e, "Unable to compute memory size for object of " + o.getClass(), module);
-            return 0;
         }
     }
 
-    public long getSizeInBytes() {
-        // REFACTOR to use stream(), map(), sum().  Added bonus: use only method references without writing new methods
-        long totalSize = 0;
+    private boolean isRefreshDue(CacheLine<V> line) {
+        long loadTimeNanos = line.getLoadTimeNanos();
+        if (loadTimeNanos == 0) {
+            return false;
+        }
+        return System.nanoTime() - loadTimeNanos > (line.getExpireTimeNanos() - loadTimeNanos) * refreshAheadRatio;
+    }
+
+    private void refreshAhead(K key, Object nulledKey, CacheLoader<? super K, ? extends V, ?> loader) {
+        Load<V> load = new Load<>();
+        if (loadsInFlight.putIfAbsent(nulledKey, load) != null) {
+            // already being loaded
+            return;
+        }
+        try {
+            ExecutionPool.GLOBAL_BATCH.submit(() -> {
+                try {
+                    runLoad(key, nulledKey, load, loader);
+                } catch (Throwable t) {
+                    Debug.logWarning(t, "Error refreshing element [" + key + "] of cache [" + getName() + "]", module);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            loadsInFlight.remove(nulledKey, load);
+            load.complete(null);
+        }
+    }
+
+    /** A load in progress; it is invalidated when its key is removed from the cache meanwhile */
+    private static final class Load<V> extends CompletableFuture<V> {
+        private volatile boolean invalidated = false;
+    }
+
+    private void invalidateLoad(Object nulledKey) {
+        Load<V> load = loadsInFlight.get(nulledKey);
+        if (load != null) {
+            load.invalidated = true;
+        }
+    }
+
+    public Collection<V> values() {
+        // REFACTOR to use stream(), map(), collect() and Collectors.toCollection()
+        List<V> valuesList = new LinkedList<>();
         for (CacheLine<V> line: memoryTable.values()) {
-            totalSize += findSizeInBytes(line.getValue());
+            valuesList.add(line.getValue());
         }
-        return totalSize;
+        return valuesList;
+    }
+
+    /** Returns the estimated size in bytes of the elements in the cache, as computed by the weigher when they were put.
+     * @return The estimated size of the cache
+     */
+    public long getSizeInBytes() {
+        return totalWeight.get();
     }
 
     /** Removes an element from the cache according to the specified key
@@ -419,9 +666,12 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
         Object nulledKey = fromKey(key);
         CacheLine<V> oldCacheLine;
         V oldValue;
+        invalidateLoad(nulledKey);
+        noteInvalidation((K) key);
         oldCacheLine = memoryTable.remove(nulledKey);
         oldValue = oldCacheLine != null ? oldCacheLine.getValue() : null;
         if (oldCacheLine != null) {
+            totalWeight.addAndGet(-oldCacheLine.getWeight());
             cancel(oldCacheLine);
         }
         if (oldValue != null) {
@@ -443,16 +693,24 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
         if (!memoryTable.remove(nulledKey, existingCacheLine)) {
             return;
         }
+        totalWeight.addAndGet(-existingCacheLine.getWeight());
         noteRemoval(UtilGenerics.<K>cast(key), existingCacheLine.getValue());
     }
 
     /** Removes all elements from this cache */
     public synchronized void erase() {
+        for (Load<V> load : loadsInFlight.values()) {
+            load.invalidated = true;
+        }
+        for (CacheInvalidationListener<K> listener: invalidationListeners) {
+            listener.noteCacheInvalidation(this);
+        }
         Iterator<Map.Entry<Object, CacheLine<V>>> it = memoryTable.entrySet().iterator();
         while (it.hasNext()) {
             Map.Entry<Object, CacheLine<V>> entry = it.next();
             noteRemoval(toKey(entry.getKey()), entry.getValue().getValue());
             removeHitCount.incrementAndGet();
+            totalWeight.addAndGet(-entry.getValue().getWeight());
             it.remove();
         }
     }
@@ -526,6 +784,35 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
         return this.removeMissCount.get();
     }
 
+    /** Returns the number of elements computed by the loaders passed to get(key, loader), including the failed loads
+     * @return The number of loads
+     */
+    public long getLoadCount() {
+        return this.loadCount.get();
+    }
+
+    /** Returns the number of loads that threw an exception
+     * @return The number of failed loads
+     */
+    public long getLoadExceptionCount() {
+        return this.loadExceptionCount.get();
+    }
+
+    /** Returns the total time spent in the loads
+     * @return The total load time in milliseconds
+     */
+    public long getTotalLoadTime() {
+        return TimeUnit.MILLISECONDS.convert(this.totalLoadTimeNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /** Returns the average time of a load
+     * @return The average load time in milliseconds, 0 if there was no load
+     */
+    public long getAverageLoadTime() {
+        long loads = getLoadCount();
+        return loads == 0 ? 0 : getTotalLoadTime() / loads;
+    }
+
     /** Clears the hit and miss counters
      */
     public void clearCounters() {
@@ -535,19 +822,29 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
         this.missCountSoftRef.set(0);
         this.removeHitCount.set(0);
         this.removeMissCount.set(0);
+        this.loadCount.set(0);
+        this.loadExceptionCount.set(0);
+        this.totalLoadTimeNanos.set(0);
     }
 
     public void setMaxInMemory(int newInMemory) {
         this.maxInMemory = newInMemory;
         Map<Object, CacheLine<V>> oldmap = this.memoryTable;
 
+        if (maxBytes > 0) {
+            // the table stays bounded by the weights
+            trimToMaxInMemory();
+            return;
+        }
         if (newInMemory > 0) {
             if (this.memoryTable instanceof ConcurrentLinkedHashMap<?, ?>) {
                 ((ConcurrentLinkedHashMap<?, ?>) this.memoryTable).setCapacity(newInMemory);
                 return;
             }
+            // the listener keeps the size in bytes accurate when the new table evicts
             this.memoryTable =new Builder<Object, CacheLine<V>>()
                     .maximumWeightedCapacity(newInMemory)
+                    .listener(this)
                     .build();
         } else {
             this.memoryTable = new ConcurrentHashMap<>();
@@ -560,6 +857,41 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
         return maxInMemory;
     }
 
+    /** Sets the maximum estimated size in bytes of the cache, the least recently used elements are evicted above it.
+     * If 0, the size of the cache is only limited by the number of elements.
+     * @param maxBytes The maximum size in bytes
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        if (this.maxBytes == maxBytes) {
+            return;
+        }
+        if (this.maxBytes > 0 && maxBytes > 0) {
+            this.maxBytes = maxBytes;
+            ((ConcurrentLinkedHashMap<?, ?>) this.memoryTable).setCapacity(maxBytes);
+            return;
+        }
+        this.maxBytes = maxBytes;
+        Map<Object, CacheLine<V>> oldmap = this.memoryTable;
+        this.memoryTable = createMemoryTable();
+        this.memoryTable.putAll(oldmap);
+        trimToMaxInMemory();
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /** Sets the weigher used to estimate the size of the values put from now on in the cache.
+     * @param weigher The weigher
+     */
+    public void setWeigher(CacheWeigher<? super V> weigher) {
+        this.weigher = weigher;
+    }
+
+    public CacheWeigher<? super V> getWeigher() {
+        return weigher;
+    }
+
     public void setSizeLimit(int newSizeLimit) {
         this.sizeLimit = newSizeLimit;
     }
@@ -655,7 +987,7 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
         if (line.getLoadTimeNanos() > 0) {
             lineInfo.put("expireTimeMillis", TimeUnit.MILLISECONDS.convert(line.getExpireTimeNanos() - System.nanoTime(), TimeUnit.NANOSECONDS));
         }
-        lineInfo.put("lineSize", findSizeInBytes(line.getValue()));
+        lineInfo.put("lineSize", line.getWeight());
         lineInfo.put("keyNum", keyNum);
         return lineInfo;
     }
@@ -695,6 +1027,13 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
         }
     }
 
+    /** Send a key invalidation event to all registered invalidation listeners */
+    protected void noteInvalidation(K key) {
+        for (CacheInvalidationListener<K> listener: invalidationListeners) {
+            listener.noteKeyInvalidation(this, key);
+        }
+    }
+
     /** Adds an event listener for key removals */
     public void addListener(CacheListener<K, V> listener) {
         listeners.add(listener);
@@ -705,6 +1044,16 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
         listeners.remove(listener);
     }
 
+    /** Adds a listener for the explicit removals and clears, adding a registered listener again has no effect */
+    public void addInvalidationListener(CacheInvalidationListener<K> listener) {
+        invalidationListeners.add(listener);
+    }
+
+    /** Removes a listener for the explicit removals and clears */
+    public void removeInvalidationListener(CacheInvalidationListener<K> listener) {
+        invalidationListeners.remove(listener);
+    }
+
     /** Checks for a non-expired key in a specific cache */
     public static boolean validKey(String cacheName, Object key) {
         UtilCache<?, ?> cache = findCache(cacheName);
@@ -799,5 +1148,8 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
     @Override
     public void onEviction(Object key, CacheLine<V> value) {
         ExecutionPool.removePulse(value);
+        totalWeight.addAndGet(-value.getWeight());
+        // listeners must also hear about the lines dropped by the LRU policy
+        noteRemoval(toKey(key), value.getValue());
     }
 }
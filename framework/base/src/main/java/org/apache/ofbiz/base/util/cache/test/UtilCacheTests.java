@@ -20,18 +20,30 @@ package org.apache.ofbiz.base.util.cache.test;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.ofbiz.base.test.GenericTestCaseBase;
+import org.apache.ofbiz.base.util.GeneralException;
 import org.apache.ofbiz.base.util.UtilMisc;
 import org.apache.ofbiz.base.util.UtilObject;
+import org.apache.ofbiz.base.util.cache.CacheInvalidationListener;
 import org.apache.ofbiz.base.util.cache.CacheListener;
+import org.apache.ofbiz.base.util.cache.CacheLoader;
+import org.apache.ofbiz.base.util.cache.ObjectWeigher;
 import org.apache.ofbiz.base.util.cache.UtilCache;
 
 @SuppressWarnings("serial")
@@ -363,6 +375,66 @@ public class UtilCacheTests extends GenericTestCaseBase implements Serializable
         assertEquals("listener", wantedListener, gotListener);
     }
 
+    public void testGetWithLoader() throws Exception {
+        UtilCache<String, String> cache = createUtilCache(5, 5, 2000, false);
+        AtomicInteger loads = new AtomicInteger();
+        assertEquals("load", "value", cache.get("key", key -> {
+            loads.incrementAndGet();
+            return "value";
+        }));
+        assertHasSingleKey(cache, "key", "value");
+        assertEquals("cached", "value", cache.get("key", key -> {
+            loads.incrementAndGet();
+            return "newValue";
+        }));
+        assertEquals("loads", 1, loads.get());
+        assertEquals("load-count", 1, cache.getLoadCount());
+        try {
+            cache.get("failed", key -> {
+                throw new GeneralException("load failed");
+            });
+            fail("loader exception");
+        } catch (GeneralException e) {
+            assertEquals("loader exception", "load failed", e.getMessage());
+        }
+        assertFalse("failed not cached", cache.containsKey("failed"));
+        assertEquals("load-exception-count", 1, cache.getLoadExceptionCount());
+        assertNull("null load", cache.get("null", key -> null));
+        assertFalse("null not cached", cache.containsKey("null"));
+    }
+
+    public void testGetWithLoaderSingleFlight() throws Exception {
+        final UtilCache<String, String> cache = createUtilCache(5, 5, 2000, false);
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        CacheLoader<String, String, InterruptedException> loader = key -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            release.await();
+            return "value";
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            futures.add(executor.submit(() -> cache.get("key", loader)));
+            loading.await();
+            for (int i = 0; i < 3; i++) {
+                futures.add(executor.submit(() -> cache.get("key", loader)));
+            }
+            // give the other threads the time to miss and wait for the load in progress
+            Thread.sleep(200);
+            release.countDown();
+            for (Future<String> future : futures) {
+                assertEquals("value", "value", future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals("loads", 1, loads.get());
+        assertHasSingleKey(cache, "key", "value");
+    }
+
     public void testChangeMemSize() throws Exception {
         int size = 5;
         long ttl = 2000;
@@ -394,6 +466,93 @@ public class UtilCacheTests extends GenericTestCaseBase implements Serializable
         assertEquals("map-values", map.values().size(), cache.values().size());
     }
 
+    public void testMaxBytes() throws Exception {
+        UtilCache<String, String> cache = createUtilCache(0, 0, 0, false);
+        assertNull("put", cache.put("0", "value0"));
+        long lineSize = cache.getSizeInBytes();
+        assertThat(lineSize, greaterThan(0L));
+        cache.setMaxBytes(lineSize * 5 / 2);
+        assertEquals("maxBytes", lineSize * 5 / 2, cache.getMaxBytes());
+        for (int i = 1; i < 5; i++) {
+            assertNull("put", cache.put(Integer.toString(i), "value" + i));
+            assertThat(cache.getSizeInBytes(), lessThanOrEqualTo(cache.getMaxBytes()));
+        }
+        assertEquals("cache.size", 2, cache.size());
+        assertEquals("sizeInBytes", lineSize * 2, cache.getSizeInBytes());
+        assertEquals("least recently used evicted", UtilMisc.toSet("3", "4"), cache.getCacheLineKeys());
+        cache.setMaxBytes(0);
+        for (int i = 5; i < 10; i++) {
+            assertNull("put", cache.put(Integer.toString(i), "value" + i));
+        }
+        assertEquals("cache.size", 7, cache.size());
+        assertEquals("sizeInBytes", lineSize * 7, cache.getSizeInBytes());
+        cache.erase();
+        assertEquals("sizeInBytes", 0, cache.getSizeInBytes());
+    }
+
+    public void testAddWeight() throws Exception {
+        UtilCache<String, Map<String, String>> cache = createUtilCache(0, 0, 0, false);
+        Map<String, String> map = new HashMap<>();
+        cache.put("map", map);
+        long emptySize = cache.getSizeInBytes();
+        // the map is changed in place, the cache is told the weight of the change
+        map.put("a", "value a");
+        cache.addWeight("map", ObjectWeigher.INSTANCE.weighMapEntry("a", "value a"));
+        long addedSize = cache.getSizeInBytes();
+        assertThat(addedSize, greaterThan(emptySize));
+        cache.reweigh("map");
+        assertEquals("added weight as weighed again", addedSize, cache.getSizeInBytes());
+        map.put("b", "value b");
+        cache.addWeight("map", ObjectWeigher.INSTANCE.weighMapEntry("b", "value b"));
+        map.remove("a");
+        cache.addWeight("map", -ObjectWeigher.INSTANCE.weighMapEntry("a", "value a"));
+        assertEquals("replaced entry", addedSize, cache.getSizeInBytes());
+        map.remove("b");
+        cache.addWeight("map", -ObjectWeigher.INSTANCE.weighMapEntry("b", "value b"));
+        assertEquals("removed entries", emptySize, cache.getSizeInBytes());
+        cache.addWeight("missing", 100);
+        assertEquals("missing element", emptySize, cache.getSizeInBytes());
+    }
+
+    public void testInvalidationListener() throws Exception {
+        UtilCache<String, String> cache = createUtilCache(2, 0, 0, false);
+        List<String> invalidations = new ArrayList<>();
+        CacheInvalidationListener<String> listener = new CacheInvalidationListener<String>() {
+            @Override
+            public void noteKeyInvalidation(UtilCache<String, ?> invalidatedCache, String key) {
+                invalidations.add(key);
+            }
+
+            @Override
+            public void noteCacheInvalidation(UtilCache<String, ?> invalidatedCache) {
+                invalidations.add("*");
+            }
+        };
+        cache.addInvalidationListener(listener);
+        cache.addInvalidationListener(listener);
+        for (int i = 0; i < 5; i++) {
+            cache.put(Integer.toString(i), "value" + i);
+        }
+        assertEquals("cache.size", 2, cache.size());
+        assertEquals("evictions are not invalidations", Collections.emptyList(), invalidations);
+        cache.remove("4");
+        cache.remove("0");
+        cache.clear();
+        assertEquals("invalidations", UtilMisc.toList("4", "0", "*"), invalidations);
+        UtilCache.clearCache(cache.getName());
+        assertEquals("invalidations", UtilMisc.toList("4", "0", "*", "*"), invalidations);
+        cache.removeInvalidationListener(listener);
+        cache.remove("3");
+        assertEquals("invalidations", 4, invalidations.size());
+
+        UtilCache<String, String> expiringCache = createUtilCache(5, 0, 100, false);
+        expiringCache.addInvalidationListener(listener);
+        expiringCache.put("0", "value0");
+        Thread.sleep(500);
+        assertNull("expired", expiringCache.get("0"));
+        assertEquals("expirations are not invalidations", 4, invalidations.size());
+    }
+
     private void expireTest(UtilCache<String, Serializable> cache, int size, long ttl) throws Exception {
         Map<String, Serializable> map = new HashMap<>();
         assertKeyLoop(size, cache, map);
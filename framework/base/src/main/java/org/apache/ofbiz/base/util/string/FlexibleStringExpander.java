@@ -230,12 +230,7 @@ public abstract class FlexibleStringExpander implements Serializable, IsEmpty {
             }
         }
         Key key = chars.length == length ? new SimpleKey(chars) : new OffsetKey(chars, offset, length);
-        FlexibleStringExpander fse = exprCache.get(key);
-        if (fse == null) {
-            exprCache.put(key, parse(chars, offset, length));
-            fse = exprCache.get(key);
-        }
-        return fse;
+        return exprCache.get(key, k -> parse(chars, offset, length));
     }
 
     private static abstract class Key {
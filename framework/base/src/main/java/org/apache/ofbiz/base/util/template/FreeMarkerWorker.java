@@ -270,12 +270,7 @@ public final class FreeMarkerWorker {
     }
 
     public static Template getTemplate(String templateLocation, UtilCache<String, Template> cache, Configuration config) throws IOException {
-        Template template = cache.get(templateLocation);
-        if (template == null) {
-            template = config.getTemplate(templateLocation);
-            template = cache.putIfAbsentAndGet(templateLocation, template);
-        }
-        return template;
+        return cache.get(templateLocation, config::getTemplate);
     }
 
     public static String getArg(Map<String, ? extends Object> args, String key, Environment env) {
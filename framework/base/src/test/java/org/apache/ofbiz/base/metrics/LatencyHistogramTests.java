@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.base.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTests {
+
+    @Test
+    public void bucketsCoverValuesWithoutGaps() {
+        long previousUpperBound = -1;
+        for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+            long upperBound = LatencyHistogram.bucketUpperBound(i);
+            assertEquals("bucket " + i + " lower bound", i, LatencyHistogram.bucketIndex(previousUpperBound + 1));
+            assertEquals("bucket " + i + " upper bound", i, LatencyHistogram.bucketIndex(upperBound));
+            previousUpperBound = upperBound;
+        }
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+        assertEquals(0, LatencyHistogram.bucketIndex(-5));
+    }
+
+    @Test
+    public void percentilesAreWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram(6, 10000);
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value, 1, 5000);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.getSnapshot(5000);
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(1000, snapshot.getMax());
+        assertEquals(500.5, snapshot.getMean(), 0.001);
+        assertWithinPrecision(500, snapshot.getValueAtQuantile(0.5));
+        assertWithinPrecision(950, snapshot.getValueAtQuantile(0.95));
+        assertWithinPrecision(990, snapshot.getValueAtQuantile(0.99));
+        assertEquals(1000, snapshot.getValueAtQuantile(1.0));
+    }
+
+    @Test
+    public void oldWindowsExpire() {
+        LatencyHistogram histogram = new LatencyHistogram(3, 1000);
+        histogram.record(5000, 10, 500);
+        histogram.record(10, 10, 2500);
+        assertEquals(20, histogram.getSnapshot(2500).getCount());
+        assertEquals(5000, histogram.getSnapshot(2500).getMax());
+        // The first window is now outside the sliding window
+        LatencyHistogram.Snapshot snapshot = histogram.getSnapshot(3500);
+        assertEquals(10, snapshot.getCount());
+        assertEquals(10, snapshot.getMax());
+        // Recording into a reused window clears its old values
+        histogram.record(20, 1, 3500);
+        assertEquals(11, histogram.getSnapshot(3500).getCount());
+    }
+
+    @Test
+    public void emptyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram(1, 1000);
+        assertEquals(0, histogram.getSnapshot().getValueAtQuantile(0.99));
+        assertEquals(0.0, histogram.getSnapshot().getMean(), 0.0);
+        assertEquals(0, LatencyHistogram.EMPTY_SNAPSHOT.getCount());
+    }
+
+    private static void assertWithinPrecision(long expected, long actual) {
+        assertTrue("expected about " + expected + " but was " + actual, actual >= expected && actual <= expected * 1.125);
+    }
+}
@@ -32,6 +32,7 @@ import java.io.Writer;
 import java.nio.ByteBuffer;
 import java.sql.Timestamp;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -42,6 +43,7 @@ import java.util.TreeSet;
 
 import javax.mail.internet.MimeMessage;
 
+import org.apache.ofbiz.base.metrics.LatencyHistogram;
 import org.apache.ofbiz.base.metrics.Metrics;
 import org.apache.ofbiz.base.metrics.MetricsFactory;
 import org.apache.ofbiz.base.util.Debug;
@@ -61,6 +63,7 @@ import org.apache.ofbiz.service.DispatchContext;
 import org.apache.ofbiz.service.GenericServiceException;
 import org.apache.ofbiz.service.LocalDispatcher;
 import org.apache.ofbiz.service.ModelService;
+import org.apache.ofbiz.service.ServicePhaseMetrics;
 import org.apache.ofbiz.service.ServiceSynchronization;
 import org.apache.ofbiz.service.ServiceUtil;
 import org.apache.ofbiz.service.mail.MimeMessageWrapper;
@@ -521,6 +524,11 @@ public class CommonServices {
             metricsMap.put("serviceRate", metrics.getServiceRate());
             metricsMap.put("threshold", metrics.getThreshold());
             metricsMap.put("totalEvents", metrics.getTotalEvents());
+            LatencyHistogram.Snapshot latency = metrics.getLatencySnapshot();
+            metricsMap.put("p50", latency.getValueAtQuantile(0.5));
+            metricsMap.put("p95", latency.getValueAtQuantile(0.95));
+            metricsMap.put("p99", latency.getValueAtQuantile(0.99));
+            metricsMap.put("max", latency.getMax());
             metricsMapList.add(metricsMap);
         }
         Map<String, Object> result = ServiceUtil.returnSuccess();
@@ -528,6 +536,30 @@ public class CommonServices {
         return result;
     }
 
+    public static Map<String, Object> getServicePhaseMetrics(DispatchContext dctx, Map<String, ?> context) {
+        String serviceName = (String) context.get("serviceName");
+        Collection<String> serviceNames = serviceName != null ? Collections.singletonList(serviceName) : ServicePhaseMetrics.getServiceNames();
+        List<Map<String, Object>> phaseMetricsList = new LinkedList<>();
+        for (String name : serviceNames) {
+            for (Map.Entry<String, LatencyHistogram.Snapshot> entry : ServicePhaseMetrics.getPhaseSnapshots(name).entrySet()) {
+                LatencyHistogram.Snapshot snapshot = entry.getValue();
+                Map<String, Object> phaseMetricsMap = new LinkedHashMap<>();
+                phaseMetricsMap.put("serviceName", name);
+                phaseMetricsMap.put("phase", entry.getKey());
+                phaseMetricsMap.put("count", snapshot.getCount());
+                phaseMetricsMap.put("mean", snapshot.getMean());
+                phaseMetricsMap.put("p50", snapshot.getValueAtQuantile(0.5));
+                phaseMetricsMap.put("p95", snapshot.getValueAtQuantile(0.95));
+                phaseMetricsMap.put("p99", snapshot.getValueAtQuantile(0.99));
+                phaseMetricsMap.put("max", snapshot.getMax());
+                phaseMetricsList.add(phaseMetricsMap);
+            }
+        }
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        result.put("phaseMetricsList", phaseMetricsList);
+        return result;
+    }
+
     public static Map<String, Object> resetMetric(DispatchContext dctx, Map<String, ?> context) {
         String originalName = (String) context.get("name");
         Locale locale = (Locale)context.get("locale");
@@ -180,6 +180,25 @@ public interface Delegator {
      */
     GenericValue create(String entityName, Object... fields) throws GenericEntityException;
 
+    /**
+     * <p>Creates the Entities from the List of GenericValue instances in the
+     * datasource.</p>
+     * <p>This is different than calling create for each value in that the rows
+     * are written in JDBC batches, consecutive values of the same entity being
+     * sent together up to the batch-size of the datasource. The entity ECA
+     * rules, audit logging and cache clearing are still done for each value,
+     * but the validate and run events of all values fire before any of them is
+     * written, and the return events fire after all of them are written.</p>
+     * <p>These creates all happen in one transaction, so they will either all
+     * succeed or all fail, if the data source supports transactions.</p>
+     *
+     * @param values
+     *            List of GenericValue instances containing the entities to
+     *            create
+     * @return int representing number of rows effected by this operation
+     */
+    int createAll(List<GenericValue> values) throws GenericEntityException;
+
     /**
      * Creates or stores an Entity
      *
@@ -610,6 +629,20 @@ public interface Delegator {
      */
     Long getNextSeqIdLong(String seqName, long staggerMax);
 
+    /**
+     * Reserves <code>count</code> consecutive seq ids from the sequence with
+     * the given sequence name in one call, for example for bulk imports; if
+     * the named sequence doesn't exist, it will be created
+     *
+     * @param seqName
+     *            The name of the sequence to get the seq ids from
+     * @param count
+     *            The number of seq ids to reserve
+     * @return Long with the first of the reserved seq ids, the reserved seq
+     *         ids go from this value to this value + count - 1
+     */
+    Long getNextSeqIdRange(String seqName, long count);
+
     /**
      * Gets the name of the server configuration that corresponds to this
      * delegator
@@ -757,6 +790,10 @@ public interface Delegator {
      * is like a removeByPrimary Key.</p>
      * <p>On the other hand, if a certain entity is an incomplete or non
      * primary key, if will behave like the removeByAnd method. </p>
+     * <p>Consecutive entities with a complete primary key are removed in JDBC
+     * batches when their entity has no entity ECA rules; entities with ECA
+     * rules are removed one by one like removeByPrimaryKey, so the validate,
+     * run and return events keep firing per row in list order.</p>
      * <p>These updates all happen in one transaction, so they will either
      * all succeed or all fail, if the data source supports transactions.</p>
      *
@@ -875,6 +912,15 @@ public interface Delegator {
      * store method only does an update, while the storeAll method checks to see
      * if each entity exists, then either does an insert or an update as
      * appropriate.</p>
+     * <p>The existing rows are looked up with a few queries per entity rather
+     * than one per value, only the fields that differ are updated, and the
+     * inserts and updates are written in JDBC batches.</p>
+     * <p>The values are not written in the order of the list: all the inserts
+     * run before all the updates, so an update never sees the row of a value
+     * placed after it in the list as missing, and the database triggers and
+     * constraints checked on each statement see the inserts first. With the
+     * createDummyFks store option the values are still written one by one, in
+     * the order of the list.</p>
      * <p>These updates all happen in one transaction, so they
      * will either all succeed or all fail, if the data source supports
      * transactions. This is just like to othersToStore feature of the
@@ -894,6 +940,15 @@ public interface Delegator {
      * store method only does an update, while the storeAll method checks to see
      * if each entity exists, then either does an insert or an update as
      * appropriate.</p>
+     * <p>The existing rows are looked up with a few queries per entity rather
+     * than one per value, only the fields that differ are updated, and the
+     * inserts and updates are written in JDBC batches.</p>
+     * <p>The values are not written in the order of the list: all the inserts
+     * run before all the updates, so an update never sees the row of a value
+     * placed after it in the list as missing, and the database triggers and
+     * constraints checked on each statement see the inserts first. With the
+     * createDummyFks store option the values are still written one by one, in
+     * the order of the list.</p>
      * <p>These updates all happen in one transaction, so they
      * will either all succeed or all fail, if the data source supports
      * transactions. This is just like to othersToStore feature of the
@@ -25,7 +25,9 @@ import java.sql.Timestamp;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -54,6 +56,7 @@ import org.apache.ofbiz.base.util.UtilValidate;
 import org.apache.ofbiz.base.util.UtilXml;
 import org.apache.ofbiz.entity.cache.Cache;
 import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
 import org.apache.ofbiz.entity.config.model.Datasource;
 import org.apache.ofbiz.entity.config.model.DelegatorElement;
 import org.apache.ofbiz.entity.config.model.EntityConfig;
@@ -103,6 +106,8 @@ public class GenericDelegator implements Delegator {
     public static final boolean alwaysUseTransaction = true;
     // TODO should this is be handled by tenant?
     public static final boolean saveEntitySyncRemoveInfo = UtilProperties.getPropertyAsBoolean("general", "saveEntitySyncRemove", false);
+    /** Number of primary keys storeAll looks up per query, kept well below the IN list limits of the supported databases */
+    private static final int STORE_ALL_FIND_CHUNK_SIZE = 200;
 
     protected String delegatorBaseName = null;
     protected String delegatorFullName = null;
@@ -898,6 +903,70 @@ public class GenericDelegator implements Delegator {
         }
     }
 
+    /* (non-Javadoc)
+     * @see org.apache.ofbiz.entity.Delegator#createAll(java.util.List)
+     */
+    @Override
+    public int createAll(List<GenericValue> values) throws GenericEntityException {
+        if (UtilValidate.isEmpty(values)) {
+            return 0;
+        }
+
+        boolean beganTransaction = false;
+        try {
+            beganTransaction = TransactionUtil.begin();
+
+            Map<GenericHelper, List<GenericValue>> valuesByHelper = new LinkedHashMap<>();
+            for (GenericValue value: values) {
+                if (value == null) {
+                    throw new GenericEntityException("Cannot create a null value");
+                }
+                EntityEcaRuleRunner<?> ecaRunner = this.getEcaRuleRunner(value.getEntityName());
+                ecaRunner.evalRules(EntityEcaHandler.EV_VALIDATE, EntityEcaHandler.OP_CREATE, value, false);
+
+                GenericHelper helper = getEntityHelper(value.getEntityName());
+
+                ecaRunner.evalRules(EntityEcaHandler.EV_RUN, EntityEcaHandler.OP_CREATE, value, false);
+
+                value.setDelegator(this);
+
+                // if audit log on for any fields, save new value with no old value because it's a create
+                if (value.getModelEntity().getHasFieldWithAuditLog()) {
+                    createEntityAuditLogAll(value, false, false);
+                }
+                valuesByHelper.computeIfAbsent(helper, k -> new LinkedList<>()).add(value);
+            }
+
+            int numberCreated = 0;
+            for (Map.Entry<GenericHelper, List<GenericValue>> entry: valuesByHelper.entrySet()) {
+                numberCreated += entry.getKey().createAll(entry.getValue());
+            }
+
+            for (GenericValue value: values) {
+                if (testMode) {
+                    storeForTestRollback(new TestOperation(OperationType.INSERT, value));
+                }
+                EntityEcaRuleRunner<?> ecaRunner = this.getEcaRuleRunner(value.getEntityName());
+                if (value.lockEnabled()) {
+                    refresh(value);
+                } else {
+                    // doCacheClear
+                    ecaRunner.evalRules(EntityEcaHandler.EV_CACHE_CLEAR, EntityEcaHandler.OP_CREATE, value, false);
+                    this.clearCacheLine(value);
+                }
+                ecaRunner.evalRules(EntityEcaHandler.EV_RETURN, EntityEcaHandler.OP_CREATE, value, false);
+            }
+
+            TransactionUtil.commit(beganTransaction);
+            return numberCreated;
+        } catch (IllegalStateException | GenericEntityException e) {
+            String errMsg = "Failure in createAll operation: " + e.toString() + ". Rolling back transaction.";
+            Debug.logError(errMsg, module);
+            TransactionUtil.rollback(beganTransaction, errMsg, e);
+            throw new GenericEntityException(e);
+        }
+    }
+
     /* (non-Javadoc)
      * @see org.apache.ofbiz.entity.Delegator#createOrStore(org.apache.ofbiz.entity.GenericValue)
      */
@@ -1299,33 +1368,32 @@ public class GenericDelegator implements Delegator {
         try {
             beganTransaction = TransactionUtil.begin();
 
+            if (storeOptions.isCreateDummyFks()) {
+                // the dummy rows created for missing foreign keys must not take the place of values created
+                // further in the list, so the values are checked and written one by one, in order
+                numberChanged = storeAllInOrder(values);
+                TransactionUtil.commit(beganTransaction);
+                return numberChanged;
+            }
+
+            // exists? look up the existing rows of each entity with a few queries instead of one per value
+            // NOTE: don't use findByPrimaryKey because we don't want to the ECA events to fire and such
+            Map<GenericPK, GenericValue> existingValues = findExistingForStoreAll(values);
+
+            List<GenericValue> toCreate = new LinkedList<>();
+            List<GenericValue> toStore = new LinkedList<>();
             for (GenericValue value: values) {
-                String entityName = value.getEntityName();
                 GenericPK primaryKey = value.getPrimaryKey();
-                GenericHelper helper = getEntityHelper(entityName);
-
-                // exists?
-                // NOTE: don't use findByPrimaryKey because we don't want to the ECA events to fire and such
-                if (!primaryKey.isPrimaryKey()) {
-                    throw new GenericModelException("[GenericDelegator.storeAll] One of the passed primary keys is not a valid primary key: " + primaryKey);
-                }
-                GenericValue existing = null;
-                try {
-                    existing = helper.findByPrimaryKey(primaryKey);
-                } catch (GenericEntityNotFoundException e) {
-                    existing = null;
-                }
+                GenericValue existing = existingValues.get(primaryKey);
 
                 if (existing == null) {
-                    if (storeOptions.isCreateDummyFks()) {
-                        value.checkFks(true);
-                    }
-                    this.create(value);
-                    numberChanged++;
+                    toCreate.add(value);
+                    // a later value with the same primary key must be diffed against this one, just as if it was already there
+                    existingValues.put(primaryKey, GenericValue.create(value));
                 } else {
                     // don't send fields that are the same, and if no fields have changed, update nothing
                     ModelEntity modelEntity = value.getModelEntity();
-                    GenericValue toStore = GenericValue.create(this, modelEntity, value.getPrimaryKey());
+                    GenericValue changedValue = GenericValue.create(this, modelEntity, value.getPrimaryKey());
                     boolean atLeastOneField = false;
                     Iterator<ModelField> nonPksIter = modelEntity.getNopksIterator();
                     while (nonPksIter.hasNext()) {
@@ -1335,20 +1403,23 @@ public class GenericDelegator implements Delegator {
                             Object fieldValue = value.get(fieldName);
                             Object oldValue = existing.get(fieldName);
                             if (!UtilObject.equalsHelper(oldValue, fieldValue)) {
-                                toStore.put(fieldName, fieldValue);
+                                changedValue.put(fieldName, fieldValue);
+                                existing.put(fieldName, fieldValue);
                                 atLeastOneField = true;
                             }
                         }
                     }
 
                     if (atLeastOneField) {
-                        if (storeOptions.isCreateDummyFks()) {
-                            value.checkFks(true);
-                        }
-                        numberChanged += this.store(toStore);
+                        toStore.add(changedValue);
                     }
                 }
             }
+
+            // all creates go first so that stored values may refer to newly created ones
+            numberChanged += this.createAll(toCreate);
+            numberChanged += this.storeAllExisting(toStore);
+
             TransactionUtil.commit(beganTransaction);
             return numberChanged;
         } catch (GenericEntityException e) {
@@ -1359,6 +1430,212 @@ public class GenericDelegator implements Delegator {
         }
     }
 
+    /**
+     * Stores the values one by one, creating the dummy rows of their missing foreign keys first,
+     * so that each value sees the rows written for the values before it.
+     */
+    private int storeAllInOrder(List<GenericValue> values) throws GenericEntityException {
+        int numberChanged = 0;
+        for (GenericValue value: values) {
+            GenericPK primaryKey = value.getPrimaryKey();
+            GenericHelper helper = getEntityHelper(value.getEntityName());
+
+            // exists?
+            // NOTE: don't use findByPrimaryKey because we don't want to the ECA events to fire and such
+            if (!primaryKey.isPrimaryKey()) {
+                throw new GenericModelException("[GenericDelegator.storeAll] One of the passed primary keys is not a valid primary key: " + primaryKey);
+            }
+            GenericValue existing = null;
+            try {
+                existing = helper.findByPrimaryKey(primaryKey);
+            } catch (GenericEntityNotFoundException e) {
+                existing = null;
+            }
+
+            if (existing == null) {
+                value.checkFks(true);
+                this.create(value);
+                numberChanged++;
+            } else {
+                // don't send fields that are the same, and if no fields have changed, update nothing
+                ModelEntity modelEntity = value.getModelEntity();
+                GenericValue toStore = GenericValue.create(this, modelEntity, value.getPrimaryKey());
+                boolean atLeastOneField = false;
+                Iterator<ModelField> nonPksIter = modelEntity.getNopksIterator();
+                while (nonPksIter.hasNext()) {
+                    ModelField modelField = nonPksIter.next();
+                    String fieldName = modelField.getName();
+                    if (value.containsKey(fieldName)) {
+                        Object fieldValue = value.get(fieldName);
+                        Object oldValue = existing.get(fieldName);
+                        if (!UtilObject.equalsHelper(oldValue, fieldValue)) {
+                            toStore.put(fieldName, fieldValue);
+                            atLeastOneField = true;
+                        }
+                    }
+                }
+
+                if (atLeastOneField) {
+                    value.checkFks(true);
+                    numberChanged += this.store(toStore);
+                }
+            }
+        }
+        return numberChanged;
+    }
+
+    /**
+     * Finds the rows already in the datasource for the given values, using one query per entity
+     * and chunk of {@link #STORE_ALL_FIND_CHUNK_SIZE} primary keys. View entities and entities with
+     * date or time primary key fields, whose database values may not compare equal to the passed
+     * ones, are looked up one by one, as are the keys of a chunk when the query returned rows that
+     * do not equal any passed key. The returned map is mutable and keyed by the passed primary keys.
+     */
+    private Map<GenericPK, GenericValue> findExistingForStoreAll(List<GenericValue> values) throws GenericEntityException {
+        Map<GenericPK, GenericValue> existingValues = new HashMap<>();
+        Map<String, List<GenericPK>> primaryKeysByEntity = new LinkedHashMap<>();
+        for (GenericValue value: values) {
+            GenericPK primaryKey = value.getPrimaryKey();
+            if (!primaryKey.isPrimaryKey()) {
+                throw new GenericModelException("[GenericDelegator.storeAll] One of the passed primary keys is not a valid primary key: " + primaryKey);
+            }
+            primaryKeysByEntity.computeIfAbsent(value.getEntityName(), k -> new LinkedList<>()).add(primaryKey);
+        }
+
+        for (Map.Entry<String, List<GenericPK>> entry: primaryKeysByEntity.entrySet()) {
+            ModelEntity modelEntity = getModelEntity(entry.getKey());
+            GenericHelper helper = getEntityHelper(modelEntity);
+            if (modelEntity instanceof ModelViewEntity || hasTemporalPkField(modelEntity)) {
+                for (GenericPK primaryKey: entry.getValue()) {
+                    try {
+                        existingValues.put(primaryKey, helper.findByPrimaryKey(primaryKey));
+                    } catch (GenericEntityNotFoundException e) {
+                        // not there yet, will be created
+                    }
+                }
+                continue;
+            }
+
+            List<GenericPK> primaryKeys = entry.getValue();
+            for (int start = 0; start < primaryKeys.size(); start += STORE_ALL_FIND_CHUNK_SIZE) {
+                List<GenericPK> chunk = primaryKeys.subList(start, Math.min(start + STORE_ALL_FIND_CHUNK_SIZE, primaryKeys.size()));
+                EntityCondition condition;
+                if (modelEntity.getPksSize() == 1) {
+                    String pkFieldName = modelEntity.getOnlyPk().getName();
+                    Set<Object> pkValues = new HashSet<>();
+                    for (GenericPK primaryKey: chunk) {
+                        pkValues.add(primaryKey.get(pkFieldName));
+                    }
+                    condition = EntityCondition.makeCondition(pkFieldName, EntityOperator.IN, pkValues);
+                } else {
+                    List<EntityCondition> pkConditions = new LinkedList<>();
+                    for (GenericPK primaryKey: chunk) {
+                        pkConditions.add(EntityCondition.makeCondition(primaryKey.getAllFields()));
+                    }
+                    condition = EntityCondition.makeCondition(pkConditions, EntityOperator.OR);
+                }
+                Set<GenericPK> chunkKeys = new HashSet<>(chunk);
+                boolean unmatchedRows = false;
+                try (EntityListIterator eli = helper.findListIteratorByCondition(this, modelEntity, condition, null, null, null, null)) {
+                    GenericValue existing;
+                    while ((existing = eli.next()) != null) {
+                        GenericPK existingKey = existing.getPrimaryKey();
+                        if (chunkKeys.contains(existingKey)) {
+                            existingValues.put(existingKey, existing);
+                        } else {
+                            unmatchedRows = true;
+                        }
+                    }
+                }
+                if (unmatchedRows) {
+                    // the database matched some keys with different values: a number of another type or scale,
+                    // a case insensitive or padded collation; look up the keys left one by one, as SQL compares them
+                    for (GenericPK primaryKey: chunk) {
+                        if (existingValues.containsKey(primaryKey)) {
+                            continue;
+                        }
+                        try {
+                            GenericValue existing = helper.findByPrimaryKey(primaryKey);
+                            if (existing != null) {
+                                existingValues.put(primaryKey, existing);
+                            }
+                        } catch (GenericEntityNotFoundException e) {
+                            // not there yet, will be created
+                        }
+                    }
+                }
+            }
+        }
+        return existingValues;
+    }
+
+    private static boolean hasTemporalPkField(ModelEntity modelEntity) {
+        for (ModelField pkField: modelEntity.getPkFieldsUnmodifiable()) {
+            String type = pkField.getType();
+            if ("date-time".equals(type) || "date".equals(type) || "time".equals(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stores the given values like store does, but writes the rows in batches. All the values
+     * must already exist. Must be called inside a transaction.
+     */
+    private int storeAllExisting(List<GenericValue> values) throws GenericEntityException {
+        if (values.isEmpty()) {
+            return 0;
+        }
+
+        Map<GenericHelper, List<GenericValue>> valuesByHelper = new LinkedHashMap<>();
+        List<GenericValue> updatedValues = testMode ? new LinkedList<>() : null;
+        for (GenericValue value: values) {
+            EntityEcaRuleRunner<?> ecaRunner = this.getEcaRuleRunner(value.getEntityName());
+            ecaRunner.evalRules(EntityEcaHandler.EV_VALIDATE, EntityEcaHandler.OP_STORE, value, false);
+            GenericHelper helper = getEntityHelper(value.getEntityName());
+
+            ecaRunner.evalRules(EntityEcaHandler.EV_RUN, EntityEcaHandler.OP_STORE, value, false);
+
+            // if audit log on for any fields, save old value before the update so we still have both
+            if (value.getModelEntity().getHasFieldWithAuditLog()) {
+                createEntityAuditLogAll(value, true, false);
+            }
+
+            if (testMode) {
+                updatedValues.add(this.findOne(value.getEntityName(), value.getPrimaryKey(), false));
+            }
+            valuesByHelper.computeIfAbsent(helper, k -> new LinkedList<>()).add(value);
+        }
+
+        int numberStored = 0;
+        for (Map.Entry<GenericHelper, List<GenericValue>> entry: valuesByHelper.entrySet()) {
+            numberStored += entry.getKey().storeAll(entry.getValue());
+        }
+
+        for (GenericValue value: values) {
+            EntityEcaRuleRunner<?> ecaRunner = this.getEcaRuleRunner(value.getEntityName());
+
+            // doCacheClear
+            ecaRunner.evalRules(EntityEcaHandler.EV_CACHE_CLEAR, EntityEcaHandler.OP_STORE, value, false);
+            this.clearCacheLine(value);
+
+            // refresh the valueObject to get the new version
+            if (value.lockEnabled()) {
+                refresh(value);
+            }
+
+            ecaRunner.evalRules(EntityEcaHandler.EV_RETURN, EntityEcaHandler.OP_STORE, value, false);
+        }
+
+        if (testMode) {
+            for (GenericValue updatedValue: updatedValues) {
+                storeForTestRollback(new TestOperation(OperationType.UPDATE, updatedValue));
+            }
+        }
+        return numberStored;
+    }
+
     /* (non-Javadoc)
      * @see org.apache.ofbiz.entity.Delegator#removeAll(java.lang.String)
      */
@@ -1380,13 +1657,26 @@ public class GenericDelegator implements Delegator {
         int numRemoved = 0;
 
         try {
+            beganTransaction = TransactionUtil.begin();
+
+            // consecutive complete primary keys of entities without ECA rules are removed together in batches,
+            // anything else flushes them first to keep the order and is removed on its own so the ECA rules
+            // keep firing row by row
+            List<GenericPK> primaryKeys = new LinkedList<>();
             for (GenericEntity value: dummyPKs) {
+                if (value.containsPrimaryKey() && !this.getEcaRuleRunner(value.getEntityName()).hasRules()) {
+                    primaryKeys.add(value.getPrimaryKey());
+                    continue;
+                }
+                numRemoved += this.removeAllByPrimaryKeys(primaryKeys);
+                primaryKeys.clear();
                 if (value.containsPrimaryKey()) {
                     numRemoved += this.removeByPrimaryKey(value.getPrimaryKey());
                 } else {
                     numRemoved += this.removeByAnd(value.getEntityName(), value.getAllFields());
                 }
             }
+            numRemoved += this.removeAllByPrimaryKeys(primaryKeys);
             TransactionUtil.commit(beganTransaction);
             return numRemoved;
         } catch (GenericEntityException e) {
@@ -1397,6 +1687,67 @@ public class GenericDelegator implements Delegator {
         }
     }
 
+    /**
+     * Removes the given primary keys like removeByPrimaryKey does, but deletes the rows in
+     * batches. The ECA events are grouped around the batch, so only pass keys of entities
+     * without ECA rules. Must be called inside a transaction.
+     */
+    private int removeAllByPrimaryKeys(List<GenericPK> primaryKeys) throws GenericEntityException {
+        if (primaryKeys.isEmpty()) {
+            return 0;
+        }
+
+        Map<GenericHelper, List<GenericPK>> primaryKeysByHelper = new LinkedHashMap<>();
+        List<GenericValue> removedValues = testMode ? new LinkedList<>() : null;
+        for (GenericPK primaryKey: primaryKeys) {
+            EntityEcaRuleRunner<?> ecaRunner = this.getEcaRuleRunner(primaryKey.getEntityName());
+            ecaRunner.evalRules(EntityEcaHandler.EV_VALIDATE, EntityEcaHandler.OP_REMOVE, primaryKey, false);
+
+            GenericHelper helper = getEntityHelper(primaryKey.getEntityName());
+
+            ecaRunner.evalRules(EntityEcaHandler.EV_RUN, EntityEcaHandler.OP_REMOVE, primaryKey, false);
+
+            // if audit log on for any fields, save old value before removing so it's still there
+            if (primaryKey.getModelEntity().getHasFieldWithAuditLog()) {
+                createEntityAuditLogAll(this.findOne(primaryKey.getEntityName(), primaryKey, false), true, true);
+            }
+
+            if (testMode) {
+                GenericValue removedEntity = this.findOne(primaryKey.getEntityName(), primaryKey, false);
+                if (removedEntity != null) {
+                    removedValues.add(removedEntity);
+                }
+            }
+            primaryKeysByHelper.computeIfAbsent(helper, k -> new LinkedList<>()).add(primaryKey);
+        }
+
+        int numRemoved = 0;
+        for (Map.Entry<GenericHelper, List<GenericPK>> entry: primaryKeysByHelper.entrySet()) {
+            numRemoved += entry.getKey().removeAllByPrimaryKeys(entry.getValue());
+        }
+
+        for (GenericPK primaryKey: primaryKeys) {
+            EntityEcaRuleRunner<?> ecaRunner = this.getEcaRuleRunner(primaryKey.getEntityName());
+
+            // doCacheClear
+            ecaRunner.evalRules(EntityEcaHandler.EV_CACHE_CLEAR, EntityEcaHandler.OP_REMOVE, primaryKey, false);
+            this.clearCacheLine(primaryKey);
+
+            if (saveEntitySyncRemoveInfo) {
+                this.saveEntitySyncRemoveInfo(primaryKey);
+            }
+
+            ecaRunner.evalRules(EntityEcaHandler.EV_RETURN, EntityEcaHandler.OP_REMOVE, primaryKey, false);
+        }
+
+        if (testMode) {
+            for (GenericValue removedValue: removedValues) {
+                storeForTestRollback(new TestOperation(OperationType.DELETE, removedValue));
+            }
+        }
+        return numRemoved;
+    }
+
     // ======================================
     // ======= Find Methods =================
     // ======================================
@@ -2221,6 +2572,10 @@ public class GenericDelegator implements Delegator {
             }
             entityEcaHandler.evalRules(currentOperation, eventMap, event, value, isError);
         }
+
+        protected boolean hasRules() {
+            return entityEcaHandler != null && UtilValidate.isNotEmpty(eventMap);
+        }
     }
 
     protected EntityEcaRuleRunner<?> getEcaRuleRunner(String entityName) {
@@ -2296,21 +2651,8 @@ public class GenericDelegator implements Delegator {
      */
     public Long getNextSeqIdLong(String seqName, long staggerMax) {
         try {
-            SequenceUtil sequencer = this.AtomicRefSequencer.get();
-            if (sequencer == null) {
-                ModelEntity seqEntity = this.getModelEntity("SequenceValueItem");
-                sequencer = new SequenceUtil(this.getEntityHelperInfo("SequenceValueItem"), seqEntity, "seqName", "seqId");
-                if (!AtomicRefSequencer.compareAndSet(null, sequencer)) {
-                    sequencer = this.AtomicRefSequencer.get();
-                }
-            }
-            ModelEntity seqModelEntity = null;
-            try {
-                seqModelEntity = getModelReader().getModelEntity(seqName);
-            } catch (GenericEntityException e) {
-                Debug.logInfo("Entity definition not found for sequence name " + seqName, module);
-            }
-            Long newSeqId = sequencer == null ? null : sequencer.getNextSeqId(seqName, staggerMax, seqModelEntity);
+            SequenceUtil sequencer = this.getSequencer();
+            Long newSeqId = sequencer == null ? null : sequencer.getNextSeqId(seqName, staggerMax, this.getSequenceModelEntity(seqName));
             return newSeqId;
         } catch (Exception e) {
             String errMsg = "Failure in getNextSeqIdLong operation for seqName [" + seqName + "]: " + e.toString() + ". Rolling back transaction.";
@@ -2319,6 +2661,49 @@ public class GenericDelegator implements Delegator {
         }
     }
 
+    /* (non-Javadoc)
+     * @see org.apache.ofbiz.entity.Delegator#getNextSeqIdRange(java.lang.String, long)
+     */
+    @Override
+    public Long getNextSeqIdRange(String seqName, long count) {
+        Long firstSeqId = null;
+        try {
+            SequenceUtil sequencer = this.getSequencer();
+            firstSeqId = sequencer == null ? null : sequencer.getNextSeqIdRange(seqName, count, this.getSequenceModelEntity(seqName));
+        } catch (Exception e) {
+            String errMsg = "Failure in getNextSeqIdRange operation for seqName [" + seqName + "]: " + e.toString() + ". Rolling back transaction.";
+            Debug.logError(e, errMsg, module);
+            throw new GeneralRuntimeException(errMsg, e);
+        }
+        if (firstSeqId == null) {
+            throw new GeneralRuntimeException("Could not reserve " + count + " sequenced IDs for sequence name: " + seqName);
+        }
+        return firstSeqId;
+    }
+
+    private SequenceUtil getSequencer() {
+        SequenceUtil sequencer = this.AtomicRefSequencer.get();
+        if (sequencer == null) {
+            ModelEntity seqEntity = this.getModelEntity("SequenceValueItem");
+            sequencer = new SequenceUtil(this.getEntityHelperInfo("SequenceValueItem"), seqEntity, "seqName", "seqId",
+                    this.delegatorInfo.getSequenceBankAdaptive(), this.delegatorInfo.getSequenceBankPrefetch());
+            if (!AtomicRefSequencer.compareAndSet(null, sequencer)) {
+                sequencer = this.AtomicRefSequencer.get();
+            }
+        }
+        return sequencer;
+    }
+
+    private ModelEntity getSequenceModelEntity(String seqName) {
+        ModelEntity seqModelEntity = null;
+        try {
+            seqModelEntity = getModelReader().getModelEntity(seqName);
+        } catch (GenericEntityException e) {
+            Debug.logInfo("Entity definition not found for sequence name " + seqName, module);
+        }
+        return seqModelEntity;
+    }
+
     /* (non-Javadoc)
      * @see org.apache.ofbiz.entity.Delegator#setSequencer(org.apache.ofbiz.entity.util.SequenceUtil)
      */
@@ -24,6 +24,10 @@ import org.apache.ofbiz.entity.DelegatorFactory;
 
 public abstract class AbstractCache<K, V> {
 
+    static {
+        GenericEntityWeigher.register();
+    }
+
     protected final String delegatorName, id, cacheNamePrefix;
 
     protected AbstractCache(String delegatorName, String id) {
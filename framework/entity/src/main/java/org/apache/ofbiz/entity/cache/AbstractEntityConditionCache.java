@@ -18,6 +18,8 @@
  *******************************************************************************/
 package org.apache.ofbiz.entity.cache;
 
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -26,6 +28,7 @@ import java.util.concurrent.ConcurrentMap;
 
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.cache.ObjectWeigher;
 import org.apache.ofbiz.base.util.cache.UtilCache;
 import org.apache.ofbiz.entity.GenericEntity;
 import org.apache.ofbiz.entity.GenericPK;
@@ -37,6 +40,9 @@ public abstract class AbstractEntityConditionCache<K, V> extends AbstractCache<E
 
     public static final String module = AbstractEntityConditionCache.class.getName();
 
+    // the invalidation indexes by cache name
+    private final ConcurrentMap<String, EntityConditionCacheIndex<ConcurrentMap<K, V>>> indexes = new ConcurrentHashMap<>();
+
     protected AbstractEntityConditionCache(String delegatorName, String id) {
         super(delegatorName, id);
     }
@@ -57,7 +63,9 @@ public abstract class AbstractEntityConditionCache<K, V> extends AbstractCache<E
         }
 
         Map<K, V> conditionCache = getOrCreateConditionCache(entityName, condition);
-        return conditionCache.put(key, value);
+        V oldValue = conditionCache.put(key, value);
+        updateWeight(entityName, condition, key, oldValue, value);
+        return oldValue;
     }
 
     /**
@@ -86,7 +94,11 @@ public abstract class AbstractEntityConditionCache<K, V> extends AbstractCache<E
         if (conditionCache == null) {
             return null;
         }
-        return conditionCache.remove(key);
+        V oldValue = conditionCache.remove(key);
+        if (oldValue != null) {
+            updateWeight(entityName, condition, key, oldValue, null);
+        }
+        return oldValue;
     }
 
     public static final EntityCondition getConditionKey(EntityCondition condition) {
@@ -108,6 +120,10 @@ public abstract class AbstractEntityConditionCache<K, V> extends AbstractCache<E
 
     protected Map<K, V> getOrCreateConditionCache(String entityName, EntityCondition condition) {
         UtilCache<EntityCondition, ConcurrentMap<K, V>> utilCache = getOrCreateCache(entityName);
+        if (!indexes.containsKey(utilCache.getName())) {
+            // only one index may listen to the cache
+            indexes.computeIfAbsent(utilCache.getName(), cacheName -> new EntityConditionCacheIndex<>(utilCache));
+        }
         EntityCondition conditionKey = getConditionKey(condition);
         ConcurrentMap<K, V> conditionCache = utilCache.get(conditionKey);
         if (conditionCache == null) {
@@ -117,6 +133,35 @@ public abstract class AbstractEntityConditionCache<K, V> extends AbstractCache<E
         return conditionCache;
     }
 
+    /**
+     * Updates the estimated size of a condition cache, which the entity cache doesn't see changing
+     * since the values are put in and removed from it in place. Only the entry replaced is weighed,
+     * not the whole condition cache.
+     * @param key the key of the entry in the condition cache
+     * @param oldValue the value replaced or removed, <code>null</code> if none
+     * @param newValue the value put, <code>null</code> if removed
+     */
+    protected void updateWeight(String entityName, EntityCondition condition, K key, V oldValue, V newValue) {
+        UtilCache<EntityCondition, ConcurrentMap<K, V>> utilCache = getCache(entityName);
+        if (utilCache == null) {
+            return;
+        }
+        EntityCondition conditionKey = getConditionKey(condition);
+        if (utilCache.getWeigher() != ObjectWeigher.INSTANCE) {
+            // another weigher may not weigh a map from its entries
+            utilCache.reweigh(conditionKey);
+            return;
+        }
+        long delta = 0;
+        if (newValue != null) {
+            delta += ObjectWeigher.INSTANCE.weighMapEntry(key, newValue);
+        }
+        if (oldValue != null) {
+            delta -= ObjectWeigher.INSTANCE.weighMapEntry(key, oldValue);
+        }
+        utilCache.addWeight(conditionKey, delta);
+    }
+
     protected static final <K,V> boolean isNull(Map<K,V> value) {
         return value == null || value == GenericEntity.NULL_ENTITY || value == GenericValue.NULL_VALUE;
     }
@@ -180,7 +225,16 @@ public abstract class AbstractEntityConditionCache<K, V> extends AbstractCache<E
         if (entityCache == null) {
             return;
         }
-        for (EntityCondition condition: entityCache.getCacheLineKeys()) {
+        // only evaluate the conditions that could match the values, unless a primary key
+        // removal, which removes the conditions that don't match the old value too
+        EntityConditionCacheIndex<?> index = indexes.get(entityCache.getName());
+        Collection<? extends EntityCondition> conditions;
+        if (isPK || index == null) {
+            conditions = entityCache.getCacheLineKeys();
+        } else {
+            conditions = index.getCandidates(entityCache, Arrays.asList(oldValues, newValues));
+        }
+        for (EntityCondition condition: conditions) {
             boolean shouldRemove = false;
             if (condition == null) {
                 shouldRemove = true;
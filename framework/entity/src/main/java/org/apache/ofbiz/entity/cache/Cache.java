@@ -19,6 +19,7 @@
 package org.apache.ofbiz.entity.cache;
 
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.UtilGenerics;
@@ -37,6 +38,36 @@ public class Cache {
 
     protected String delegatorName;
 
+    private static final List<EntityChangeListener> entityChangeListeners = new CopyOnWriteArrayList<>();
+
+    public static void addEntityChangeListener(EntityChangeListener listener) {
+        entityChangeListeners.add(listener);
+    }
+
+    public static void removeEntityChangeListener(EntityChangeListener listener) {
+        entityChangeListeners.remove(listener);
+    }
+
+    protected void notifyEntityChanged(String entityName) {
+        for (EntityChangeListener listener : entityChangeListeners) {
+            try {
+                listener.entityChanged(delegatorName, entityName);
+            } catch (RuntimeException e) {
+                Debug.logError(e, "Error notifying entity change listener for entity [" + entityName + "]", module);
+            }
+        }
+    }
+
+    protected void notifyEntityValueChanged(GenericEntity entity) {
+        for (EntityChangeListener listener : entityChangeListeners) {
+            try {
+                listener.entityValueChanged(delegatorName, entity);
+            } catch (RuntimeException e) {
+                Debug.logError(e, "Error notifying entity change listener for value [" + entity.getPrimaryKey() + "]", module);
+            }
+        }
+    }
+
     public Cache(String delegatorName) {
         this.delegatorName = delegatorName;
         entityCache = new EntityCache(delegatorName);
@@ -48,11 +79,13 @@ public class Cache {
         entityCache.clear();
         entityListCache.clear();
         entityObjectCache.clear();
+        notifyEntityChanged(null);
     }
 
     public void remove(String entityName) {
         entityCache.remove(entityName);
         entityListCache.remove(entityName);
+        notifyEntityChanged(entityName);
     }
 
     public GenericValue get(GenericPK pk) {
@@ -96,6 +129,7 @@ public class Cache {
     public List<GenericValue> remove(String entityName, EntityCondition condition, List<String> orderBy) {
         entityCache.remove(entityName, condition);
         entityObjectCache.remove(entityName, condition);
+        notifyEntityChanged(entityName);
         return entityListCache.remove(entityName, condition, orderBy);
     }
 
@@ -103,6 +137,7 @@ public class Cache {
         entityCache.remove(entityName, condition);
         entityListCache.remove(entityName, condition);
         entityObjectCache.remove(entityName, condition);
+        notifyEntityChanged(entityName);
     }
 
     public <T> T remove(String entityName, EntityCondition condition, String name) {
@@ -117,6 +152,7 @@ public class Cache {
         // Workaround because AbstractEntityConditionCache.storeHook doesn't work.
         entityListCache.remove(entity);
         entityObjectCache.remove(entity);
+        notifyEntityValueChanged(entity);
         return oldEntity;
     }
 
@@ -130,6 +166,7 @@ public class Cache {
         entityObjectCache.remove(pk);
         // entityListCache.storeHook(pk, null);
         // entityObjectCache.storeHook(pk, null);
+        notifyEntityValueChanged(pk);
         return oldEntity;
     }
 }
@@ -21,6 +21,7 @@ package org.apache.ofbiz.entity.cache;
 import java.util.Iterator;
 
 import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.cache.CacheInvalidationListener;
 import org.apache.ofbiz.base.util.cache.UtilCache;
 import org.apache.ofbiz.entity.GenericPK;
 import org.apache.ofbiz.entity.GenericValue;
@@ -30,16 +31,62 @@ import org.apache.ofbiz.entity.model.ModelEntity;
 public class EntityCache extends AbstractCache<GenericPK, GenericValue> {
     public static final String module = EntityCache.class.getName();
 
+    // the optional off-heap second tier, null when disabled
+    private final OffHeapEntityStore offHeapStore;
+    // applies to the off-heap tier the removals and clears made directly on the heap caches, e.g. from webtools
+    private final CacheInvalidationListener<GenericPK> offHeapInvalidator = new CacheInvalidationListener<GenericPK>() {
+        @Override
+        public void noteKeyInvalidation(UtilCache<GenericPK, ?> cache, GenericPK pk) {
+            offHeapStore.remove(pk);
+        }
+
+        @Override
+        public void noteCacheInvalidation(UtilCache<GenericPK, ?> cache) {
+            offHeapStore.remove(cache.getName().substring(getCacheNamePrefix().length()));
+        }
+    };
+
     public EntityCache(String delegatorName) {
         super(delegatorName, "entity");
+        this.offHeapStore = OffHeapEntityStore.create(delegatorName);
+    }
+
+    @Override
+    protected UtilCache<GenericPK, GenericValue> getOrCreateCache(String entityName) {
+        UtilCache<GenericPK, GenericValue> entityCache = super.getOrCreateCache(entityName);
+        if (offHeapStore != null) {
+            // no effect once registered
+            entityCache.addInvalidationListener(offHeapInvalidator);
+        }
+        return entityCache;
     }
 
     public GenericValue get(GenericPK pk) {
         UtilCache<GenericPK, GenericValue> entityCache = getCache(pk.getEntityName());
-        if (entityCache == null) {
+        GenericValue value = entityCache != null ? entityCache.get(pk) : null;
+        if (value == null && offHeapStore != null) {
+            value = getFromOffHeapStore(pk);
+        }
+        return value;
+    }
+
+    private GenericValue getFromOffHeapStore(GenericPK pk) {
+        long location = offHeapStore.getLocation(pk);
+        if (location < 0) {
+            return null;
+        }
+        UtilCache<GenericPK, GenericValue> entityCache = getOrCreateCache(pk.getEntityName());
+        GenericValue value = offHeapStore.read(getDelegator(), pk, location, entityCache.getExpireTime());
+        if (value == null) {
             return null;
         }
-        return entityCache.get(pk);
+        // back in the heap tier, the off-heap record stays for when it is evicted again
+        entityCache.put(pk, value);
+        if (offHeapStore.getLocation(pk) != location) {
+            // the value was changed or removed meanwhile, the copy put in the heap tier may be stale
+            entityCache.remove(pk);
+        }
+        return value;
     }
 
     public GenericValue put(GenericValue entity) {
@@ -62,10 +109,34 @@ public class EntityCache extends AbstractCache<GenericPK, GenericValue> {
             entity.setImmutable();
         }
         UtilCache<GenericPK, GenericValue> entityCache = getOrCreateCache(pk.getEntityName());
-        return entityCache.put(pk, entity);
+        GenericValue oldEntity = entityCache.put(pk, entity);
+        if (offHeapStore != null) {
+            offHeapStore.put(pk, entity);
+        }
+        return oldEntity;
+    }
+
+    @Override
+    public void remove(String entityName) {
+        super.remove(entityName);
+        if (offHeapStore != null) {
+            offHeapStore.remove(entityName);
+        }
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        if (offHeapStore != null) {
+            offHeapStore.clear();
+        }
     }
 
     public void remove(String entityName, EntityCondition condition) {
+        if (offHeapStore != null) {
+            // the off-heap values are not evaluated against the condition, they are all dropped
+            offHeapStore.remove(entityName);
+        }
         UtilCache<GenericPK, GenericValue> entityCache = getCache(entityName);
         if (entityCache == null) {
             return;
@@ -90,6 +161,9 @@ public class EntityCache extends AbstractCache<GenericPK, GenericValue> {
         if (Debug.verboseOn()) {
             Debug.logVerbose("Removing from EntityCache with PK [" + pk + "], will remove from this cache: " + (entityCache == null ? "[No cache found to remove from]" : entityCache.getName()), module);
         }
+        if (offHeapStore != null) {
+            offHeapStore.remove(pk);
+        }
         if (entityCache == null) {
             return null;
         }
@@ -100,6 +174,9 @@ public class EntityCache extends AbstractCache<GenericPK, GenericValue> {
             while (it.hasNext()) {
                 String targetEntityName = it.next();
                 UtilCache.clearCache(getCacheName(targetEntityName));
+                if (offHeapStore != null) {
+                    offHeapStore.remove(targetEntityName);
+                }
             }
         }
         if (Debug.verboseOn()) {
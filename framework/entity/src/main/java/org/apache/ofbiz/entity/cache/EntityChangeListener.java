@@ -0,0 +1,48 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.cache;
+
+import org.apache.ofbiz.entity.GenericEntity;
+
+/**
+ * Receives the entity cache clear events of all the delegators.
+ * <p>
+ * Cache lines are cleared every time a value of a cacheable entity is created, stored or
+ * removed, locally or through the distributed cache clear, so the events can be used to
+ * invalidate data derived from entity values. Entities marked as never-cache are not reported.
+ */
+public interface EntityChangeListener {
+
+    /**
+     * Called when cached values of an entity have been cleared.
+     * @param delegatorName the name of the delegator owning the cache
+     * @param entityName the name of the entity, or <code>null</code> if all the caches of the delegator were cleared
+     */
+    public void entityChanged(String delegatorName, String entityName);
+
+    /**
+     * Called when the cached lines of a single entity value have been cleared; by default this
+     * is reported as a change of the whole entity.
+     * @param delegatorName the name of the delegator owning the cache
+     * @param entity the value or primary key that was created, stored or removed
+     */
+    public default void entityValueChanged(String delegatorName, GenericEntity entity) {
+        entityChanged(delegatorName, entity.getEntityName());
+    }
+}
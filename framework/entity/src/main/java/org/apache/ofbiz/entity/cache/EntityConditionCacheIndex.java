@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.cache;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.ofbiz.base.util.cache.CacheListener;
+import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.entity.GenericEntity;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityConditionFunction;
+import org.apache.ofbiz.entity.condition.EntityConditionList;
+import org.apache.ofbiz.entity.condition.EntityConditionValue;
+import org.apache.ofbiz.entity.condition.EntityConditionVisitor;
+import org.apache.ofbiz.entity.condition.EntityDateFilterCondition;
+import org.apache.ofbiz.entity.condition.EntityExpr;
+import org.apache.ofbiz.entity.condition.EntityFieldMap;
+import org.apache.ofbiz.entity.condition.EntityFieldValue;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.condition.EntityWhereString;
+
+/**
+ * Index of the condition keys of an entity condition cache, used to find the conditions
+ * that a stored value could match without evaluating every cached condition.
+ * <p>A condition that can only match values whose field <code>f</code> equals <code>v</code> -
+ * an <code>f = v</code> expression, possibly inside an <code>AND</code> - is indexed under
+ * <code>(f, v)</code>. The other conditions can't be indexed and are always candidates.
+ * The index follows the cache through its {@link CacheListener} events.</p>
+ */
+final class EntityConditionCacheIndex<V> implements CacheListener<EntityCondition, V> {
+
+    // the indexed conditions by the name and then by the value of the field they require
+    private final ConcurrentMap<String, ConcurrentMap<Object, Set<EntityCondition>>> indexedConditions = new ConcurrentHashMap<>();
+    private final Set<EntityCondition> unindexedConditions = ConcurrentHashMap.newKeySet();
+
+    EntityConditionCacheIndex(UtilCache<EntityCondition, V> cache) {
+        // listen first so that no condition added meanwhile is missed, adding twice is harmless
+        cache.addListener(this);
+        for (EntityCondition condition : cache.getCacheLineKeys()) {
+            add(condition);
+        }
+    }
+
+    /**
+     * Returns the conditions that could match one of the values, plus the conditions that can't be indexed.
+     * May contain conditions that are no longer in the cache, and contains <code>null</code> if the
+     * cache holds the <code>null</code> condition.
+     */
+    Set<EntityCondition> getCandidates(UtilCache<EntityCondition, ?> cache, Collection<? extends List<? extends Map<String, Object>>> valueLists) {
+        Set<EntityCondition> candidates = new HashSet<>(unindexedConditions);
+        if (cache.containsKey(null)) {
+            candidates.add(null);
+        }
+        for (Map.Entry<String, ConcurrentMap<Object, Set<EntityCondition>>> entry : indexedConditions.entrySet()) {
+            String fieldName = entry.getKey();
+            ConcurrentMap<Object, Set<EntityCondition>> conditionsByValue = entry.getValue();
+            for (List<? extends Map<String, Object>> values : valueLists) {
+                if (values == null) {
+                    continue;
+                }
+                for (Map<String, Object> value : values) {
+                    if (value == null || value instanceof GenericEntity.NULL) {
+                        continue;
+                    }
+                    Object fieldValue = value.get(fieldName);
+                    if (fieldValue == EntityOperator.WILDCARD) {
+                        // matches any value
+                        for (Set<EntityCondition> conditions : conditionsByValue.values()) {
+                            candidates.addAll(conditions);
+                        }
+                    } else if (fieldValue != null) {
+                        Set<EntityCondition> conditions = conditionsByValue.get(fieldValue);
+                        if (conditions != null) {
+                            candidates.addAll(conditions);
+                        }
+                    }
+                }
+            }
+        }
+        return candidates;
+    }
+
+    private void add(EntityCondition condition) {
+        if (condition == null) {
+            return;
+        }
+        EntityExpr equality = findEquality(condition);
+        if (equality == null) {
+            unindexedConditions.add(condition);
+            return;
+        }
+        String fieldName = ((EntityFieldValue) equality.getLhs()).getFieldName();
+        ConcurrentMap<Object, Set<EntityCondition>> conditionsByValue = indexedConditions.get(fieldName);
+        if (conditionsByValue == null) {
+            indexedConditions.putIfAbsent(fieldName, new ConcurrentHashMap<>());
+            conditionsByValue = indexedConditions.get(fieldName);
+        }
+        // compute is atomic for a key, so a condition can't be added to a set that is being dropped
+        conditionsByValue.compute(equality.getRhs(), (value, conditions) -> {
+            if (conditions == null) {
+                conditions = ConcurrentHashMap.newKeySet();
+            }
+            conditions.add(condition);
+            return conditions;
+        });
+    }
+
+    private void remove(EntityCondition condition) {
+        if (condition == null) {
+            return;
+        }
+        EntityExpr equality = findEquality(condition);
+        if (equality == null) {
+            unindexedConditions.remove(condition);
+            return;
+        }
+        ConcurrentMap<Object, Set<EntityCondition>> conditionsByValue = indexedConditions.get(((EntityFieldValue) equality.getLhs()).getFieldName());
+        if (conditionsByValue == null) {
+            return;
+        }
+        conditionsByValue.computeIfPresent(equality.getRhs(), (value, conditions) -> {
+            conditions.remove(condition);
+            return conditions.isEmpty() ? null : conditions;
+        });
+    }
+
+    /** Returns an <code>f = v</code> expression that any value matching the condition must satisfy, or <code>null</code>. */
+    static EntityExpr findEquality(EntityCondition condition) {
+        EqualityFinder finder = new EqualityFinder();
+        condition.accept(finder);
+        return finder.equality;
+    }
+
+    @Override
+    public void noteKeyRemoval(UtilCache<EntityCondition, V> cache, EntityCondition key, V oldValue) {
+        remove(key);
+    }
+
+    @Override
+    public void noteKeyAddition(UtilCache<EntityCondition, V> cache, EntityCondition key, V newValue) {
+        add(key);
+    }
+
+    @Override
+    public void noteKeyUpdate(UtilCache<EntityCondition, V> cache, EntityCondition key, V newValue, V oldValue) {
+        add(key);
+    }
+
+    private static final class EqualityFinder implements EntityConditionVisitor {
+        private EntityExpr equality;
+
+        @Override
+        public void visit(EntityConditionFunction func) {
+        }
+
+        @Override
+        public <T extends EntityCondition> void visit(EntityConditionList<T> l) {
+            if (l.getOperator() != EntityOperator.AND) {
+                return;
+            }
+            Iterator<T> it = l.getConditionIterator();
+            while (equality == null && it.hasNext()) {
+                it.next().accept(this);
+            }
+        }
+
+        @Override
+        public void visit(EntityFieldMap m) {
+            if (m.getOperator() != EntityOperator.AND || !m.getFieldKeyIterator().hasNext()) {
+                return;
+            }
+            m.getCondition(0).accept(this);
+        }
+
+        @Override
+        public void visit(EntityDateFilterCondition df) {
+        }
+
+        @Override
+        public void visit(EntityExpr expr) {
+            Object lhs = expr.getLhs();
+            Object rhs = expr.getRhs();
+            if (EntityOperator.AND.equals(expr.getOperator())) {
+                ((EntityCondition) lhs).accept(this);
+                if (equality == null) {
+                    ((EntityCondition) rhs).accept(this);
+                }
+            } else if (EntityOperator.EQUALS.equals(expr.getOperator()) && lhs != null && lhs.getClass() == EntityFieldValue.class
+                    && rhs != null && rhs != GenericEntity.NULL_FIELD && rhs != EntityOperator.WILDCARD && !(rhs instanceof EntityConditionValue)) {
+                equality = expr;
+            }
+        }
+
+        @Override
+        public void visit(EntityWhereString ws) {
+        }
+    }
+}
@@ -61,7 +61,8 @@ public class EntityListCache extends AbstractEntityConditionCache<Object, List<G
                 // the result will be exactly the same, and won't actually cause any
                 // incorrect results.
                 valueList = EntityUtil.orderBy(valueList, orderBy);
-                conditionCache.put(orderByKey, valueList);
+                List<GenericValue> oldValueList = conditionCache.put(orderByKey, valueList);
+                updateWeight(entityName, condition, orderByKey, oldValueList, valueList);
             }
         }
         return valueList;
@@ -80,8 +81,12 @@ public class EntityListCache extends AbstractEntityConditionCache<Object, List<G
         for (GenericValue memberValue : entities) {
             memberValue.setImmutable();
         }
-        Map<Object, List<GenericValue>> conditionCache = getOrCreateConditionCache(entityName, getFrozenConditionKey(condition));
-        return conditionCache.put(getOrderByKey(orderBy), entities);
+        EntityCondition frozenCondition = getFrozenConditionKey(condition);
+        Map<Object, List<GenericValue>> conditionCache = getOrCreateConditionCache(entityName, frozenCondition);
+        Object orderByKey = getOrderByKey(orderBy);
+        List<GenericValue> oldEntities = conditionCache.put(orderByKey, entities);
+        updateWeight(entityName, frozenCondition, orderByKey, oldEntities, entities);
+        return oldEntities;
     }
 
     public List<GenericValue> remove(String entityName, EntityCondition condition, List<String> orderBy) {
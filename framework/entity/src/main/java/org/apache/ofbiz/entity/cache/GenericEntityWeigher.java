@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.cache;
+
+import org.apache.ofbiz.base.util.cache.CacheWeigher;
+import org.apache.ofbiz.base.util.cache.ObjectWeigher;
+import org.apache.ofbiz.entity.GenericEntity;
+
+/**
+ * Estimates the size of the cached entity values from their fields values only: the field names are shared by all
+ * the values of an entity, as is the model, so they are not counted.
+ */
+final class GenericEntityWeigher implements CacheWeigher<GenericEntity> {
+
+    private static final long ENTITY_SIZE = 64;
+    private static final long FIELD_SIZE = 32;
+
+    static void register() {
+        ObjectWeigher.registerWeigher(GenericEntity.class, new GenericEntityWeigher());
+    }
+
+    @Override
+    public long weigh(GenericEntity value) {
+        long size = ENTITY_SIZE + value.size() * FIELD_SIZE;
+        for (Object fieldValue : value.values()) {
+            size += ObjectWeigher.INSTANCE.weigh(fieldValue);
+        }
+        return size;
+    }
+}
@@ -0,0 +1,441 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.StringUtil;
+import org.apache.ofbiz.base.util.UtilObject;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericPK;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.model.ModelEntity;
+import org.apache.ofbiz.entity.model.ModelField;
+
+/**
+ * Off-heap second tier of the {@link EntityCache}: the cached values are also written, serialized field by field,
+ * to direct buffers allocated outside the heap, where they stay after the heap cache has evicted them.
+ * <p>The buffers form a log: the records are appended to the current buffer and, once all the buffers are full,
+ * the oldest one is reused, dropping the records it holds. A removed or replaced record is only dropped from the
+ * index, its space is reclaimed when its buffer is reused. Only the index, from the primary key values to the
+ * location of the records, lives in the heap.</p>
+ * <p>Configured by the <code>entitycache.offheap.*</code> properties of cache.properties, disabled by default.</p>
+ */
+final class OffHeapEntityStore {
+
+    public static final String module = OffHeapEntityStore.class.getName();
+
+    private static final String PROPERTIES = "cache";
+    private static final int DEFAULT_SEGMENT_BYTES = 64 * 1024 * 1024;
+
+    // the kinds of records
+    private static final byte NULL_VALUE_RECORD = 0;
+    private static final byte VALUE_RECORD = 1;
+
+    // the tags of the field values
+    private static final byte ABSENT = 0;
+    private static final byte NULL = 1;
+    private static final byte STRING = 2;
+    private static final byte LONG = 3;
+    private static final byte INTEGER = 4;
+    private static final byte BIG_DECIMAL = 5;
+    private static final byte DOUBLE = 6;
+    private static final byte FLOAT = 7;
+    private static final byte BOOLEAN = 8;
+    private static final byte TIMESTAMP = 9;
+    private static final byte DATE = 10;
+    private static final byte TIME = 11;
+    private static final byte BYTES = 12;
+    private static final byte SERIALIZED = 13;
+
+    private final String delegatorName;
+    private final Set<String> entityNames;
+    private final int segmentBytes;
+    private final ByteBuffer[] segments;
+    // guards the segments: reading a record while its segment is reused would return garbage
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // the number of segments started so far, the segment of a generation is generation % segments.length
+    private long generation = 0;
+    private ByteBuffer currentSegment = null;
+    private int position = 0;
+
+    // the location of the records by entity name and key, a location is (generation << 32 | offset)
+    private final ConcurrentMap<String, ConcurrentMap<String, Long>> indexes = new ConcurrentHashMap<>();
+
+    OffHeapEntityStore(String delegatorName, long maxBytes, int segmentBytes, Set<String> entityNames) {
+        this.delegatorName = delegatorName;
+        this.entityNames = entityNames;
+        this.segmentBytes = segmentBytes;
+        this.segments = new ByteBuffer[(int) Math.max(1, Math.min(maxBytes / segmentBytes, Integer.MAX_VALUE))];
+    }
+
+    /** Returns the store of the delegator, or null when the off-heap tier is disabled */
+    static OffHeapEntityStore create(String delegatorName) {
+        long maxBytes = UtilProperties.getPropertyAsLong(PROPERTIES, "entitycache.offheap.maxBytes", 0);
+        if (maxBytes <= 0) {
+            return null;
+        }
+        long segmentBytes = UtilProperties.getPropertyAsLong(PROPERTIES, "entitycache.offheap.segmentBytes", DEFAULT_SEGMENT_BYTES);
+        segmentBytes = Math.max(1024, Math.min(Math.min(segmentBytes, maxBytes), Integer.MAX_VALUE));
+        Set<String> entityNames = Collections.emptySet();
+        String entityNamesValue = UtilProperties.getPropertyValue(PROPERTIES, "entitycache.offheap.entities");
+        if (UtilValidate.isNotEmpty(entityNamesValue)) {
+            entityNames = new HashSet<>();
+            for (String entityName : StringUtil.split(entityNamesValue, ",")) {
+                entityNames.add(entityName.trim());
+            }
+        }
+        Debug.logInfo("Off-heap entity cache enabled for delegator [" + delegatorName + "] with " + maxBytes + " bytes"
+                + (entityNames.isEmpty() ? "" : " for the entities " + entityNames), module);
+        return new OffHeapEntityStore(delegatorName, maxBytes, (int) segmentBytes, entityNames);
+    }
+
+    boolean isStored(String entityName) {
+        return entityNames.isEmpty() || entityNames.contains(entityName);
+    }
+
+    /** Returns the location of the record of the primary key, or -1 when there is none */
+    long getLocation(GenericPK pk) {
+        ConcurrentMap<String, Long> index = indexes.get(pk.getEntityName());
+        Long location = index != null ? index.get(getKey(pk)) : null;
+        return location != null ? location : -1;
+    }
+
+    /**
+     * Reads the value at the location returned by {@link #getLocation(GenericPK)}.
+     * @return the value, {@link GenericValue#NULL_VALUE} for a cached absence, or null when the record is no more
+     * available or has expired
+     */
+    GenericValue read(Delegator delegator, GenericPK pk, long location, long expireTimeMillis) {
+        byte[] record = null;
+        long recordGeneration = location >>> 32;
+        int offset = (int) location;
+        lock.readLock().lock();
+        try {
+            if (generation - recordGeneration < segments.length) {
+                ByteBuffer segment = segments[(int) (recordGeneration % segments.length)].duplicate();
+                record = new byte[segment.getInt(offset)];
+                segment.position(offset + 4);
+                segment.get(record);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (record == null) {
+            removeLocation(pk.getEntityName(), getKey(pk), location);
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+            // skip the key of the record
+            readString(in);
+            readString(in);
+            long writeTimeMillis = in.readLong();
+            if (expireTimeMillis > 0 && System.currentTimeMillis() - writeTimeMillis > expireTimeMillis) {
+                removeLocation(pk.getEntityName(), getKey(pk), location);
+                return null;
+            }
+            if (in.readByte() == NULL_VALUE_RECORD) {
+                return GenericValue.NULL_VALUE;
+            }
+            ModelEntity modelEntity = pk.getModelEntity();
+            Map<String, Object> fields = new HashMap<>();
+            for (ModelField field : modelEntity.getFieldsUnmodifiable()) {
+                byte tag = in.readByte();
+                if (tag != ABSENT) {
+                    fields.put(field.getName(), readFieldValue(tag, in));
+                }
+            }
+            GenericValue value = GenericValue.create(delegator, modelEntity, fields);
+            value.synchronizedWithDatasource();
+            value.setImmutable();
+            return value;
+        } catch (IOException | ClassNotFoundException | RuntimeException e) {
+            Debug.logWarning(e, "Could not read the off-heap cached value of " + pk + ", removing it", module);
+            removeLocation(pk.getEntityName(), getKey(pk), location);
+            return null;
+        }
+    }
+
+    void put(GenericPK pk, GenericValue value) {
+        String entityName = pk.getEntityName();
+        if (!isStored(entityName)) {
+            return;
+        }
+        String key = getKey(pk);
+        byte[] record;
+        try {
+            record = write(entityName, key, value);
+        } catch (IOException e) {
+            // most likely a field value that can't be serialized, keep the value in the heap only
+            if (Debug.verboseOn()) {
+                Debug.logVerbose("Could not write the value of " + pk + " off-heap: " + e.getMessage(), module);
+            }
+            remove(pk);
+            return;
+        }
+        if (record.length + 4 > segmentBytes) {
+            remove(pk);
+            return;
+        }
+        ConcurrentMap<String, Long> index = indexes.computeIfAbsent(entityName, k -> new ConcurrentHashMap<>());
+        lock.writeLock().lock();
+        try {
+            if (currentSegment == null || position + 4 + record.length > segmentBytes) {
+                startSegment();
+            }
+            currentSegment.putInt(position, record.length);
+            currentSegment.position(position + 4);
+            currentSegment.put(record);
+            index.put(key, generation << 32 | position);
+            position += 4 + record.length;
+            if (position + 4 <= segmentBytes) {
+                // marks the end of the records for the reuse of the segment
+                currentSegment.putInt(position, 0);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void remove(GenericPK pk) {
+        ConcurrentMap<String, Long> index = indexes.get(pk.getEntityName());
+        if (index != null) {
+            index.remove(getKey(pk));
+        }
+    }
+
+    void remove(String entityName) {
+        indexes.remove(entityName);
+    }
+
+    void clear() {
+        indexes.clear();
+    }
+
+    private void removeLocation(String entityName, String key, long location) {
+        ConcurrentMap<String, Long> index = indexes.get(entityName);
+        if (index != null) {
+            index.remove(key, location);
+        }
+    }
+
+    // called with the write lock held
+    private void startSegment() {
+        if (currentSegment != null) {
+            generation++;
+        }
+        position = 0;
+        int slot = (int) (generation % segments.length);
+        ByteBuffer segment = segments[slot];
+        if (segment == null) {
+            segments[slot] = ByteBuffer.allocateDirect(segmentBytes);
+            currentSegment = segments[slot];
+            return;
+        }
+        currentSegment = segment;
+        // the segment is reused: drop the index entries of the records it still holds
+        long droppedGeneration = generation - segments.length;
+        int offset = 0;
+        segment = segment.duplicate();
+        while (offset + 4 <= segmentBytes) {
+            int length = segment.getInt(offset);
+            if (length <= 0 || offset + 4 + length > segmentBytes) {
+                break;
+            }
+            byte[] key = new byte[Math.min(length, 2048)];
+            segment.position(offset + 4);
+            segment.get(key);
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(key))) {
+                removeLocation(readString(in), readString(in), droppedGeneration << 32 | offset);
+            } catch (IOException e) {
+                // a key longer than the bytes read, the entry stays in the index until read
+            }
+            offset += 4 + length;
+        }
+    }
+
+    private static String getKey(GenericPK pk) {
+        StringBuilder sb = new StringBuilder();
+        for (ModelField pkField : pk.getModelEntity().getPkFieldsUnmodifiable()) {
+            if (sb.length() > 0) {
+                sb.append('\u0000');
+            }
+            sb.append(pk.get(pkField.getName()));
+        }
+        return sb.toString();
+    }
+
+    private static byte[] write(String entityName, String key, GenericValue value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeString(out, entityName);
+            writeString(out, key);
+            out.writeLong(System.currentTimeMillis());
+            if (value == GenericValue.NULL_VALUE) {
+                out.writeByte(NULL_VALUE_RECORD);
+            } else {
+                out.writeByte(VALUE_RECORD);
+                List<ModelField> fields = value.getModelEntity().getFieldsUnmodifiable();
+                for (ModelField field : fields) {
+                    String fieldName = field.getName();
+                    if (!value.containsKey(fieldName)) {
+                        out.writeByte(ABSENT);
+                    } else {
+                        writeFieldValue(out, value.get(fieldName));
+                    }
+                }
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeFieldValue(DataOutputStream out, Object fieldValue) throws IOException {
+        if (fieldValue == null) {
+            out.writeByte(NULL);
+        } else if (fieldValue instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) fieldValue);
+        } else if (fieldValue instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) fieldValue);
+        } else if (fieldValue instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) fieldValue);
+        } else if (fieldValue instanceof BigDecimal) {
+            BigDecimal decimal = (BigDecimal) fieldValue;
+            out.writeByte(BIG_DECIMAL);
+            out.writeInt(decimal.scale());
+            writeBytes(out, decimal.unscaledValue().toByteArray());
+        } else if (fieldValue instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) fieldValue);
+        } else if (fieldValue instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) fieldValue);
+        } else if (fieldValue instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) fieldValue);
+        } else if (fieldValue instanceof Timestamp) {
+            Timestamp timestamp = (Timestamp) fieldValue;
+            out.writeByte(TIMESTAMP);
+            out.writeLong(timestamp.getTime());
+            out.writeInt(timestamp.getNanos());
+        } else if (fieldValue instanceof java.sql.Date) {
+            out.writeByte(DATE);
+            out.writeLong(((java.sql.Date) fieldValue).getTime());
+        } else if (fieldValue instanceof java.sql.Time) {
+            out.writeByte(TIME);
+            out.writeLong(((java.sql.Time) fieldValue).getTime());
+        } else if (fieldValue instanceof byte[]) {
+            out.writeByte(BYTES);
+            writeBytes(out, (byte[]) fieldValue);
+        } else {
+            // throws a NotSerializableException for the values that can't be stored off-heap
+            ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+            try (ObjectOutputStream oos = new ObjectOutputStream(serialized)) {
+                oos.writeObject(fieldValue);
+            }
+            out.writeByte(SERIALIZED);
+            writeBytes(out, serialized.toByteArray());
+        }
+    }
+
+    private static Object readFieldValue(byte tag, DataInputStream in) throws IOException, ClassNotFoundException {
+        switch (tag) {
+        case NULL:
+            return null;
+        case STRING:
+            return readString(in);
+        case LONG:
+            return in.readLong();
+        case INTEGER:
+            return in.readInt();
+        case BIG_DECIMAL:
+            int scale = in.readInt();
+            return new BigDecimal(new BigInteger(readBytes(in)), scale);
+        case DOUBLE:
+            return in.readDouble();
+        case FLOAT:
+            return in.readFloat();
+        case BOOLEAN:
+            return in.readBoolean();
+        case TIMESTAMP:
+            Timestamp timestamp = new Timestamp(in.readLong());
+            timestamp.setNanos(in.readInt());
+            return timestamp;
+        case DATE:
+            return new java.sql.Date(in.readLong());
+        case TIME:
+            return new java.sql.Time(in.readLong());
+        case BYTES:
+            return readBytes(in);
+        case SERIALIZED:
+            return UtilObject.getObjectException(readBytes(in));
+        default:
+            throw new IOException("Unknown field value tag " + tag);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        writeBytes(out, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return new String(readBytes(in), StandardCharsets.UTF_8);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+        out.writeInt(value.length);
+        out.write(value);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] value = new byte[in.readInt()];
+        in.readFully(value);
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return "OffHeapEntityStore[" + delegatorName + "]";
+    }
+}
@@ -217,6 +217,16 @@ public abstract class EntityOperator<L, R, T> extends EntityConditionBase {
         return codeString;
     }
 
+    /** Resolves a deserialized operator to the registered instance, as operators are compared by identity. */
+    protected Object readResolve() {
+        for (EntityOperator<?,?,?> operator : registry.values()) {
+            if (operator.idInt == this.idInt) {
+                return operator;
+            }
+        }
+        return this;
+    }
+
     @Override
     public int hashCode() {
         return this.codeString.hashCode();
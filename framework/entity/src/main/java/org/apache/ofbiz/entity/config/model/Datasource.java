@@ -75,6 +75,7 @@ public final class Datasource {
     private final String characterSet; // type = xs:string
     private final String collate; // type = xs:string
     private final int maxWorkerPoolSize; // type = xs:integer
+    private final int batchSize; // type = xs:nonNegativeInteger
     private final List<SqlLoadPath> sqlLoadPathList; // <sql-load-path>
     private final List<ReadData> readDataList; // <read-data>
     private final InlineJdbc inlineJdbc; // <inline-jdbc>
@@ -177,6 +178,19 @@ public final class Datasource {
                 throw new GenericEntityConfException("<datasource> element max-worker-pool-size attribute is invalid" + lineNumberText);
             }
         }
+        String batchSize = element.getAttribute("batch-size");
+        if (batchSize.isEmpty()) {
+            this.batchSize = 500;
+        } else {
+            try {
+                this.batchSize = Integer.parseInt(batchSize);
+            } catch (NumberFormatException e) {
+                throw new GenericEntityConfException("<datasource> element batch-size attribute is invalid" + lineNumberText);
+            }
+            if (this.batchSize < 0) {
+                throw new GenericEntityConfException("<datasource> element batch-size attribute is invalid" + lineNumberText);
+            }
+        }
         List<? extends Element> sqlLoadPathElementList = UtilXml.childElementList(element, "sql-load-path");
         if (sqlLoadPathElementList.isEmpty()) {
             this.sqlLoadPathList = Collections.emptyList();
@@ -389,6 +403,11 @@ public final class Datasource {
         return this.maxWorkerPoolSize;
     }
 
+    /** Returns the value of the <code>batch-size</code> attribute. */
+    public int getBatchSize() {
+        return this.batchSize;
+    }
+
     /** Returns the <code>&lt;sql-load-path&gt;</code> child elements. */
     public List<SqlLoadPath> getSqlLoadPathList() {
         return this.sqlLoadPathList;
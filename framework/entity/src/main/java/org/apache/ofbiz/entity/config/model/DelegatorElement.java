@@ -47,6 +47,8 @@ public final class DelegatorElement {
     private final String distributedCacheClearClassName; // type = xs:string
     private final String distributedCacheClearUserLoginId; // type = xs:string
     private final String sequencedIdPrefix; // type = xs:string
+    private final boolean sequenceBankAdaptive;
+    private final boolean sequenceBankPrefetch;
     private final String defaultGroupName; // type = xs:string
     private final String keyEncryptingKey; // type = xs:string
     private final List<GroupMap> groupMapList; // <group-map>
@@ -88,6 +90,8 @@ public final class DelegatorElement {
         }
         this.distributedCacheClearUserLoginId = distributedCacheClearUserLoginId;
         this.sequencedIdPrefix = element.getAttribute("sequenced-id-prefix").intern();
+        this.sequenceBankAdaptive = !"false".equalsIgnoreCase(element.getAttribute("sequence-bank-adaptive"));
+        this.sequenceBankPrefetch = !"false".equalsIgnoreCase(element.getAttribute("sequence-bank-prefetch"));
         String defaultGroupName = element.getAttribute("default-group-name").intern();
         if (defaultGroupName.isEmpty()) {
             defaultGroupName = "org.apache.ofbiz";
@@ -160,6 +164,16 @@ public final class DelegatorElement {
         return this.sequencedIdPrefix;
     }
 
+    /** Returns the value of the <code>sequence-bank-adaptive</code> attribute. */
+    public boolean getSequenceBankAdaptive() {
+        return this.sequenceBankAdaptive;
+    }
+
+    /** Returns the value of the <code>sequence-bank-prefetch</code> attribute. */
+    public boolean getSequenceBankPrefetch() {
+        return this.sequenceBankPrefetch;
+    }
+
     /** Returns the value of the <code>default-group-name</code> attribute. */
     public String getDefaultGroupName() {
         return this.defaultGroupName;
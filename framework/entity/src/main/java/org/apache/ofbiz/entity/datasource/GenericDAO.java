@@ -20,6 +20,7 @@ package org.apache.ofbiz.entity.datasource;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.Collection;
 import java.util.Collections;
@@ -121,6 +122,22 @@ public class GenericDAO {
             return singleUpdateView(entity, (ModelViewEntity) modelEntity, fieldsToSave, sqlP);
         }
 
+        setCreateStamps(entity, modelEntity, fieldsToSave);
+        String sql = makeInsertSql(modelEntity, fieldsToSave);
+
+        try {
+            sqlP.prepareStatement(sql);
+            SqlJdbcUtil.setValues(sqlP, fieldsToSave, entity, modelFieldTypeReader);
+            int retVal = sqlP.executeUpdate();
+
+            entity.synchronizedWithDatasource();
+            return retVal;
+        } catch (GenericEntityException e) {
+            throw new GenericEntityException("Error while inserting: " + entity.toString(), e);
+        }
+    }
+
+    private void setCreateStamps(GenericEntity entity, ModelEntity modelEntity, List<ModelField> fieldsToSave) {
         // if we have a STAMP_TX_FIELD or CREATE_STAMP_TX_FIELD then set it with NOW, always do this before the STAMP_FIELD
         // NOTE: these fairly complicated if statements have a few objectives:
         //   1. don't run the TransationUtil.getTransaction*Stamp() methods when we don't need to
@@ -153,24 +170,15 @@ public class GenericDAO {
                 addFieldIfMissing(fieldsToSave, ModelEntity.CREATE_STAMP_FIELD, modelEntity);
             }
         }
+    }
 
+    private String makeInsertSql(ModelEntity modelEntity, List<ModelField> fieldsToSave) {
         StringBuilder sqlB = new StringBuilder("INSERT INTO ").append(modelEntity.getTableName(datasource)).append(" (");
 
         modelEntity.colNameString(fieldsToSave, sqlB, "");
         sqlB.append(") VALUES (");
         modelEntity.fieldsStringList(fieldsToSave, sqlB, "?", ", ");
-        String sql = sqlB.append(")").toString();
-
-        try {
-            sqlP.prepareStatement(sql);
-            SqlJdbcUtil.setValues(sqlP, fieldsToSave, entity, modelFieldTypeReader);
-            int retVal = sqlP.executeUpdate();
-
-            entity.synchronizedWithDatasource();
-            return retVal;
-        } catch (GenericEntityException e) {
-            throw new GenericEntityException("Error while inserting: " + entity.toString(), e);
-        }
+        return sqlB.append(")").toString();
     }
 
     public int updateAll(GenericEntity entity) throws GenericEntityException {
@@ -182,6 +190,10 @@ public class GenericDAO {
     public int update(GenericEntity entity) throws GenericEntityException {
         ModelEntity modelEntity = entity.getModelEntity();
 
+        return customUpdate(entity, modelEntity, getPartialFields(entity, modelEntity));
+    }
+
+    private List<ModelField> getPartialFields(GenericEntity entity, ModelEntity modelEntity) {
         // we don't want to update ALL fields, just the nonpk fields that are in the passed GenericEntity
         List<ModelField> partialFields = new LinkedList<ModelField>();
         Collection<String> keys = entity.getAllKeys();
@@ -193,8 +205,7 @@ public class GenericDAO {
                 partialFields.add(curField);
             }
         }
-
-        return customUpdate(entity, modelEntity, partialFields);
+        return partialFields;
     }
 
     private int customUpdate(GenericEntity entity, ModelEntity modelEntity, List<ModelField> fieldsToSave) throws GenericEntityException {
@@ -234,6 +245,28 @@ public class GenericDAO {
             }
         }
 
+        setUpdateStamps(entity, modelEntity, fieldsToSave);
+        String sql = makeUpdateSql(entity, modelEntity, fieldsToSave);
+
+        int retVal = 0;
+
+        try {
+            sqlP.prepareStatement(sql);
+            SqlJdbcUtil.setValues(sqlP, fieldsToSave, entity, modelFieldTypeReader);
+            SqlJdbcUtil.setPkValues(sqlP, modelEntity, entity, modelFieldTypeReader);
+            retVal = sqlP.executeUpdate();
+            entity.synchronizedWithDatasource();
+        } catch (GenericEntityException e) {
+            throw new GenericEntityException("Error while updating: " + entity.toString(), e);
+        }
+
+        if (retVal == 0) {
+            throw new GenericEntityNotFoundException("Tried to update an entity that does not exist, entity: " + entity.toString());
+        }
+        return retVal;
+    }
+
+    private void setUpdateStamps(GenericEntity entity, ModelEntity modelEntity, List<ModelField> fieldsToSave) {
         // if we have a STAMP_TX_FIELD then set it with NOW, always do this before the STAMP_FIELD
         // NOTE: these fairly complicated if statements have a few objectives:
         //   1. don't run the TransationUtil.getTransaction*Stamp() methods when we don't need to
@@ -248,28 +281,14 @@ public class GenericDAO {
             entity.set(ModelEntity.STAMP_FIELD, TransactionUtil.getTransactionUniqueNowStamp());
             addFieldIfMissing(fieldsToSave, ModelEntity.STAMP_FIELD, modelEntity);
         }
+    }
 
+    private String makeUpdateSql(GenericEntity entity, ModelEntity modelEntity, List<ModelField> fieldsToSave) {
         StringBuilder sql = new StringBuilder().append("UPDATE ").append(modelEntity.getTableName(datasource)).append(" SET ");
         modelEntity.colNameString(fieldsToSave, sql, "", "=?, ", "=?", false);
         sql.append(" WHERE ");
         SqlJdbcUtil.makeWhereStringFromFields(sql, modelEntity.getPkFieldsUnmodifiable(), entity, "AND");
-
-        int retVal = 0;
-
-        try {
-            sqlP.prepareStatement(sql.toString());
-            SqlJdbcUtil.setValues(sqlP, fieldsToSave, entity, modelFieldTypeReader);
-            SqlJdbcUtil.setPkValues(sqlP, modelEntity, entity, modelFieldTypeReader);
-            retVal = sqlP.executeUpdate();
-            entity.synchronizedWithDatasource();
-        } catch (GenericEntityException e) {
-            throw new GenericEntityException("Error while updating: " + entity.toString(), e);
-        }
-
-        if (retVal == 0) {
-            throw new GenericEntityNotFoundException("Tried to update an entity that does not exist, entity: " + entity.toString());
-        }
-        return retVal;
+        return sql.toString();
     }
 
     public int updateByCondition(Delegator delegator, ModelEntity modelEntity, Map<String, ? extends Object> fieldsToSet, EntityCondition condition) throws GenericEntityException {
@@ -1104,18 +1123,23 @@ public class GenericDAO {
             throw new org.apache.ofbiz.entity.GenericNotImplementedException("Operation delete not supported yet for view entities");
         }
 
-        StringBuilder sql = new StringBuilder().append("DELETE FROM ").append(modelEntity.getTableName(datasource)).append(" WHERE ");
-        SqlJdbcUtil.makeWhereStringFromFields(sql, modelEntity.getPkFieldsUnmodifiable(), entity, "AND");
+        String sql = makeDeleteSql(entity, modelEntity);
 
         int retVal;
 
-            sqlP.prepareStatement(sql.toString());
+            sqlP.prepareStatement(sql);
             SqlJdbcUtil.setPkValues(sqlP, modelEntity, entity, modelFieldTypeReader);
             retVal = sqlP.executeUpdate();
             entity.removedFromDatasource();
         return retVal;
     }
 
+    private String makeDeleteSql(GenericEntity entity, ModelEntity modelEntity) {
+        StringBuilder sql = new StringBuilder().append("DELETE FROM ").append(modelEntity.getTableName(datasource)).append(" WHERE ");
+        SqlJdbcUtil.makeWhereStringFromFields(sql, modelEntity.getPkFieldsUnmodifiable(), entity, "AND");
+        return sql.toString();
+    }
+
     public int deleteByCondition(Delegator delegator, ModelEntity modelEntity, EntityCondition condition) throws GenericEntityException {
         try (SQLProcessor sqlP = new SQLProcessor(delegator, helperInfo)) {
         try {
@@ -1148,6 +1172,201 @@ public class GenericDAO {
 
     /* ====================================================================== */
 
+    /**
+     * Inserts the given entities using JDBC batches. Consecutive rows of the same
+     * entity are sent together in batches of up to the <code>batch-size</code> of the
+     * datasource; rows that cannot be batched (view entities, or a batch size of 1 or
+     * less) are inserted one by one in the same connection.
+     *
+     * @param entities the entities to insert, in the order they are to be written
+     * @return the number of rows inserted
+     */
+    public int insertBatch(List<? extends GenericEntity> entities) throws GenericEntityException {
+        if (UtilValidate.isEmpty(entities)) {
+            return 0;
+        }
+        try (SQLProcessor sqlP = new SQLProcessor(entities.get(0).getDelegator(), helperInfo)) {
+            try {
+                BatchWriter batchWriter = new BatchWriter(sqlP, false, false);
+                int retVal = 0;
+                for (GenericEntity entity: entities) {
+                    ModelEntity modelEntity = entity.getModelEntity();
+                    if (!batchWriter.isEnabled() || modelEntity instanceof ModelViewEntity) {
+                        retVal += batchWriter.reset();
+                        retVal += singleInsert(entity, modelEntity, modelEntity.getFieldsUnmodifiable(), sqlP);
+                        continue;
+                    }
+                    List<ModelField> fieldsToSave = modelEntity.getFieldsUnmodifiable();
+                    setCreateStamps(entity, modelEntity, fieldsToSave);
+                    retVal += batchWriter.add(makeInsertSql(modelEntity, fieldsToSave), entity, fieldsToSave, false);
+                }
+                return retVal + batchWriter.reset();
+            } catch (GenericEntityException e) {
+                sqlP.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Updates the non primary key fields present in each of the given entities using
+     * JDBC batches. Rows are grouped by their UPDATE statement, so entities that set the
+     * same fields share a batch. Entities with optimistic locking enabled are updated one
+     * by one since each needs its own version check.
+     *
+     * @param entities the entities to update, in the order they are to be written
+     * @return the number of rows updated
+     * @throws GenericEntityNotFoundException if one of the rows does not exist
+     */
+    public int updateBatch(List<? extends GenericEntity> entities) throws GenericEntityException {
+        if (UtilValidate.isEmpty(entities)) {
+            return 0;
+        }
+        try (SQLProcessor sqlP = new SQLProcessor(entities.get(0).getDelegator(), helperInfo)) {
+            try {
+                BatchWriter batchWriter = new BatchWriter(sqlP, false, true);
+                int retVal = 0;
+                for (GenericEntity entity: entities) {
+                    ModelEntity modelEntity = entity.getModelEntity();
+                    List<ModelField> fieldsToSave = getPartialFields(entity, modelEntity);
+                    if (!batchWriter.isEnabled() || modelEntity instanceof ModelViewEntity || modelEntity.lock() || fieldsToSave.isEmpty()) {
+                        retVal += batchWriter.reset();
+                        retVal += singleUpdate(entity, modelEntity, fieldsToSave, sqlP);
+                        continue;
+                    }
+                    setUpdateStamps(entity, modelEntity, fieldsToSave);
+                    retVal += batchWriter.add(makeUpdateSql(entity, modelEntity, fieldsToSave), entity, fieldsToSave, true);
+                }
+                return retVal + batchWriter.reset();
+            } catch (GenericEntityException e) {
+                sqlP.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Deletes the given entities by primary key using JDBC batches.
+     *
+     * @param entities the entities to delete, in the order they are to be removed
+     * @return the number of rows deleted
+     */
+    public int deleteBatch(List<? extends GenericEntity> entities) throws GenericEntityException {
+        if (UtilValidate.isEmpty(entities)) {
+            return 0;
+        }
+        try (SQLProcessor sqlP = new SQLProcessor(entities.get(0).getDelegator(), helperInfo)) {
+            try {
+                BatchWriter batchWriter = new BatchWriter(sqlP, true, false);
+                int retVal = 0;
+                for (GenericEntity entity: entities) {
+                    ModelEntity modelEntity = entity.getModelEntity();
+                    if (!batchWriter.isEnabled() || modelEntity instanceof ModelViewEntity) {
+                        retVal += batchWriter.reset();
+                        retVal += delete(entity, sqlP);
+                        continue;
+                    }
+                    retVal += batchWriter.add(makeDeleteSql(entity, modelEntity), entity, null, true);
+                }
+                return retVal + batchWriter.reset();
+            } catch (GenericDataSourceException e) {
+                sqlP.rollback();
+                throw new GenericDataSourceException("Exception while deleting a batch of " + entities.size() + " entities", e);
+            }
+        }
+    }
+
+    /**
+     * Collects consecutive rows sharing the same SQL statement into JDBC batches on one
+     * SQLProcessor. A different statement flushes the pending rows first, so the rows
+     * reach the database in the order the caller passed them, which keeps foreign key
+     * dependencies between them intact.
+     */
+    private final class BatchWriter {
+        private final SQLProcessor sqlP;
+        private final int batchSize;
+        private final boolean isRemove;
+        private final boolean rowRequired;
+        private final List<GenericEntity> pending = new LinkedList<GenericEntity>();
+        private String currentSql = null;
+
+        private BatchWriter(SQLProcessor sqlP, boolean isRemove, boolean rowRequired) {
+            this.sqlP = sqlP;
+            this.batchSize = datasource.getBatchSize();
+            this.isRemove = isRemove;
+            this.rowRequired = rowRequired;
+        }
+
+        private boolean isEnabled() {
+            return batchSize > 1;
+        }
+
+        /** Binds the entity to the batch of the given statement, returns the rows written by any flush this caused. */
+        private int add(String sql, GenericEntity entity, List<ModelField> valueFields, boolean bindPks) throws GenericEntityException {
+            int retVal = 0;
+            if (!sql.equals(currentSql)) {
+                retVal += reset();
+                sqlP.prepareStatement(sql);
+                currentSql = sql;
+            }
+            if (valueFields != null) {
+                SqlJdbcUtil.setValues(sqlP, valueFields, entity, modelFieldTypeReader);
+            }
+            if (bindPks) {
+                SqlJdbcUtil.setPkValues(sqlP, entity.getModelEntity(), entity, modelFieldTypeReader);
+            }
+            sqlP.addBatch();
+            pending.add(entity);
+            if (pending.size() >= batchSize) {
+                retVal += flush();
+            }
+            return retVal;
+        }
+
+        private int flush() throws GenericEntityException {
+            if (pending.isEmpty()) {
+                return 0;
+            }
+            int[] updateCounts;
+            try {
+                updateCounts = sqlP.executeBatch();
+            } catch (GenericDataSourceException e) {
+                throw new GenericDataSourceException("Error while executing a batch of " + pending.size() + " rows starting with: " + pending.get(0), e);
+            }
+            int retVal = 0;
+            int idx = 0;
+            for (GenericEntity entity: pending) {
+                int count = idx < updateCounts.length ? updateCounts[idx] : Statement.SUCCESS_NO_INFO;
+                idx++;
+                if (count == Statement.SUCCESS_NO_INFO) {
+                    // the driver executed the row but did not report how many rows it touched
+                    count = 1;
+                }
+                if (count == 0 && rowRequired) {
+                    throw new GenericEntityNotFoundException("Tried to update an entity that does not exist, entity: " + entity.toString());
+                }
+                if (isRemove) {
+                    entity.removedFromDatasource();
+                } else {
+                    entity.synchronizedWithDatasource();
+                }
+                retVal += count;
+            }
+            pending.clear();
+            return retVal;
+        }
+
+        /** Flushes the pending rows and releases the statement so the SQLProcessor can be used for something else. */
+        private int reset() throws GenericEntityException {
+            int retVal = flush();
+            sqlP.closePreparedStatement();
+            currentSql = null;
+            return retVal;
+        }
+    }
+
+    /* ====================================================================== */
+
     public void checkDb(Map<String, ModelEntity> modelEntities, List<String> messages, boolean addMissing) {
         DatabaseUtil dbUtil = new DatabaseUtil(this.helperInfo);
         dbUtil.checkDb(modelEntities, messages, addMissing);
@@ -68,6 +68,19 @@ public class GenericHelperDAO implements GenericHelper {
         return value;
     }
 
+    /** Creates a number of Entities in the form of GenericValues and writes them to the database in batches
+     *@param values The GenericValue instances to create, in the order they are to be written
+     *@return int representing number of rows effected by this operation
+     */
+    public int createAll(List<GenericValue> values) throws GenericEntityException {
+        if (values == null) {
+            return 0;
+        }
+        int retVal = genericDAO.insertBatch(values);
+        if (Debug.verboseOn()) Debug.logVerbose("Insert Batch Return Value : " + retVal, module);
+        return retVal;
+    }
+
     /** Find a Generic Entity by its Primary Key
      *@param primaryKey The primary key to find by.
      *@return The GenericValue corresponding to the primaryKey
@@ -125,6 +138,16 @@ public class GenericHelperDAO implements GenericHelper {
         return genericDAO.delete(primaryKey);
     }
 
+    /** Remove a number of Generic Entities corresponding to the primaryKeys, in batches
+     *@param  primaryKeys  The primary keys of the entities to remove.
+     *@return int representing number of rows effected by this operation
+     */
+    public int removeAllByPrimaryKeys(List<GenericPK> primaryKeys) throws GenericEntityException {
+        if (primaryKeys == null) return 0;
+        if (Debug.verboseOn()) Debug.logVerbose("Removing " + primaryKeys.size() + " GenericPKs", module);
+        return genericDAO.deleteBatch(primaryKeys);
+    }
+
     /** Finds GenericValues by the conditions specified in the EntityCondition object, the the EntityCondition javadoc for more details.
      *@param modelEntity The ModelEntity of the Entity as defined in the entity XML file
      *@param whereEntityCondition The EntityCondition object that specifies how to constrain this query before any groupings are done (if this is a view entity with group-by aliases)
@@ -180,6 +203,17 @@ public class GenericHelperDAO implements GenericHelper {
         return genericDAO.update(value);
     }
 
+    /** Store the Entities from the GenericValues to the persistent store in batches; all values must already exist
+     *@param values The GenericValue instances containing the entities, in the order they are to be written
+     *@return int representing number of rows effected by this operation
+     */
+    public int storeAll(List<GenericValue> values) throws GenericEntityException {
+        if (values == null) {
+            return 0;
+        }
+        return genericDAO.updateBatch(values);
+    }
+
     /** Updates a group of values in a single pass.
      *@param modelEntity The ModelEntity of the Entity as defined in the entity XML file
      *@param fieldsToSet The fields of the named entity to set in the database
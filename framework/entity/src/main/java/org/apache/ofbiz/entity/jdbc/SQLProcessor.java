@@ -452,6 +452,55 @@ public class SQLProcessor implements AutoCloseable {
         }
     }
 
+    /**
+     * Add the values bound so far to the batch of the prepared statement and
+     * reset the binding index so the next row can be bound.
+     *
+     * @throws GenericDataSourceException
+     */
+    public void addBatch() throws GenericDataSourceException {
+        try {
+            _ps.addBatch();
+            _ind = 1;
+        } catch (SQLException sqle) {
+            throw new GenericDataSourceException("SQL Exception while adding to the batch of the following:" + _sql, sqle);
+        }
+    }
+
+    /**
+     * Execute the batch of the prepared statement
+     *
+     * @return  The update counts, one per batched row
+     * @throws GenericDataSourceException
+     */
+    public int[] executeBatch() throws GenericDataSourceException {
+        try {
+            return _ps.executeBatch();
+        } catch (SQLException sqle) {
+            this.checkLockWaitInfo(sqle);
+            if (sqle.getNextException() != null) {
+                // batch errors usually carry the actual cause as the next exception
+                Debug.logWarning(sqle.getNextException(), "Batch execution failed for: " + _sql, module);
+            }
+            throw new GenericDataSourceException("SQL Exception while executing the batch of the following:" + _sql, sqle);
+        }
+    }
+
+    /**
+     * Close the currently prepared statement, if any, so that another statement
+     * can be prepared on the same connection.
+     */
+    public void closePreparedStatement() {
+        if (_ps != null) {
+            try {
+                _ps.close();
+            } catch (SQLException sqle) {
+                Debug.logWarning(sqle.getMessage(), module);
+            }
+            _ps = null;
+        }
+    }
+
     /**
      * Test if there more records available
      *
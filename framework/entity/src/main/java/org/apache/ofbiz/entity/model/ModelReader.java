@@ -29,10 +29,16 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.ofbiz.base.component.ComponentConfig;
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
 import org.apache.ofbiz.base.config.GenericConfigException;
 import org.apache.ofbiz.base.config.MainResourceHandler;
+import org.apache.ofbiz.base.config.ModelSnapshotStore;
 import org.apache.ofbiz.base.config.ResourceHandler;
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.UtilTimer;
@@ -62,11 +68,12 @@ public class ModelReader implements Serializable {
 
     protected volatile Map<String, ModelEntity> entityCache = null;
 
-    protected int numEntities = 0;
-    protected int numViewEntities = 0;
-    protected int numFields = 0;
-    protected int numRelations = 0;
-    protected int numAutoRelations = 0;
+    // counted with atomics as the entities of the different resources are built in parallel
+    private final AtomicInteger numEntities = new AtomicInteger();
+    private final AtomicInteger numViewEntities = new AtomicInteger();
+    private final AtomicInteger numFields = new AtomicInteger();
+    private final AtomicInteger numRelations = new AtomicInteger();
+    private final AtomicInteger numAutoRelations = new AtomicInteger();
 
     protected String modelName;
 
@@ -95,13 +102,39 @@ public class ModelReader implements Serializable {
 
         if (reader == null) {
             reader = new ModelReader(tempModelName);
-            // preload caches...
-            reader.getEntityCache();
+            String contentHash = reader.getSnapshotContentHash();
+            ModelReader snapshotReader = contentHash != null ? ModelSnapshotStore.read(reader.getSnapshotName(), contentHash, ModelReader.class) : null;
+            if (snapshotReader != null) {
+                reader = snapshotReader;
+            } else {
+                // preload caches...
+                reader.getEntityCache();
+                if (contentHash != null) {
+                    ModelSnapshotStore.write(reader.getSnapshotName(), contentHash, reader);
+                }
+            }
             reader = readers.putIfAbsentAndGet(tempModelName, reader);
         }
         return reader;
     }
 
+    private String getSnapshotName() {
+        return "entitymodel-" + modelName;
+    }
+
+    /** Returns the hash of the entity model resources, or null if model snapshots are not enabled. */
+    private String getSnapshotContentHash() {
+        if (!ModelSnapshotStore.isEnabled()) {
+            return null;
+        }
+        try {
+            return ModelSnapshotStore.getContentHash(entityResourceHandlers, ModelReader.class);
+        } catch (GenericConfigException e) {
+            Debug.logWarning(e, "Could not hash the entity model resources, not using a model snapshot", module);
+            return null;
+        }
+    }
+
     private ModelReader(String modelName) throws GenericEntityException {
         this.modelName = modelName;
         entityResourceHandlers = new LinkedList<>();
@@ -129,36 +162,66 @@ public class ModelReader implements Serializable {
         }
     }
 
-    private ModelEntity buildEntity(ResourceHandler entityResourceHandler, Element curEntityElement, int i, ModelInfo def)
-            throws GenericEntityException {
-        boolean isEntity = "entity".equals(curEntityElement.getNodeName());
-        String entityName = UtilXml.checkEmpty(curEntityElement.getAttribute("entity-name")).intern();
-        boolean redefinedEntity = "true".equals(curEntityElement.getAttribute("redefinition"));
-
-        // add entityName to appropriate resourceHandlerEntities collection
-        Collection<String> resourceHandlerEntityNames = resourceHandlerEntities.get(entityResourceHandler);
+    /**
+     * Parses one entity model resource; this only builds the entities of the resource and does not touch
+     * the shared maps of this reader, so it is run in parallel for all resources.
+     */
+    private ParsedEntityResource parseEntityResource(ResourceHandler entityResourceHandler) throws GenericEntityException {
+        UtilTimer utilTimer = new UtilTimer();
+        Document document = null;
+        try {
+            document = entityResourceHandler.getDocument();
+        } catch (GenericConfigException e) {
+            throw new GenericEntityConfException("Error getting document from resource handler", e);
+        }
+        if (document == null) {
+            throw new GenericEntityConfException("Could not get document for " + entityResourceHandler.toString());
+        }
 
-        if (resourceHandlerEntityNames == null) {
-            resourceHandlerEntityNames = new LinkedList<>();
-            resourceHandlerEntities.put(entityResourceHandler, resourceHandlerEntityNames);
+        Element docElement = document.getDocumentElement();
+        if (docElement == null) {
+            return null;
         }
-        resourceHandlerEntityNames.add(entityName);
+        docElement.normalize();
 
-        // check to see if entity with same name has already been read
-        if (entityCache.containsKey(entityName) && !redefinedEntity) {
-            Debug.logWarning("Entity " + entityName +
-                    " is defined more than once, most recent will over-write " +
-                    "previous definition(s)", module);
-            Debug.logWarning("Entity " + entityName + " was found in " +
-                    entityResourceHandler + ", but was already defined in " +
-                    entityResourceHandlerMap.get(entityName).toString(), module);
+        String resourceLocation = entityResourceHandler.getLocation();
+        try {
+            resourceLocation = entityResourceHandler.getURL().toExternalForm();
+        } catch (GenericConfigException e) {
+            Debug.logError(e, "Could not get resource URL", module);
         }
 
-        // add entityName, entityFileName pair to entityResourceHandlerMap map
-        entityResourceHandlerMap.put(entityName, entityResourceHandler);
+        ParsedEntityResource parsedResource = new ParsedEntityResource(entityResourceHandler);
+        ModelInfo def = ModelInfo.createFromElements(ModelInfo.DEFAULT, docElement);
+        int i = 0;
+        Node curChild = docElement.getFirstChild();
+        if (curChild != null) {
+            do {
+                boolean isEntity = "entity".equals(curChild.getNodeName());
+                boolean isViewEntity = "view-entity".equals(curChild.getNodeName());
+                boolean isExtendEntity = "extend-entity".equals(curChild.getNodeName());
+
+                if ((isEntity || isViewEntity) && curChild.getNodeType() == Node.ELEMENT_NODE) {
+                    i++;
+                    ModelEntity modelEntity = buildEntity((Element) curChild, i, def, resourceLocation);
+                    parsedResource.entityElements.add((Element) curChild);
+                    parsedResource.entities.add(modelEntity);
+                } else if (isExtendEntity && curChild.getNodeType() == Node.ELEMENT_NODE) {
+                    parsedResource.extendEntityElements.add((Element) curChild);
+                }
+            } while ((curChild = curChild.getNextSibling()) != null);
+        } else {
+            Debug.logWarning("No child nodes found.", module);
+        }
+        if (Debug.timingOn()) {
+            Debug.logTiming("Parsed " + entityResourceHandler.toString() + " - Total Entities: " + i + " in " + utilTimer.timeSinceStart() + "ms", module);
+        }
+        return parsedResource;
+    }
 
-        // utilTimer.timerString(" After entityEntityName -- " + i + " --");
-        // ModelEntity entity = createModelEntity(curEntity, utilTimer);
+    private ModelEntity buildEntity(Element curEntityElement, int i, ModelInfo def, String resourceLocation) {
+        boolean isEntity = "entity".equals(curEntityElement.getNodeName());
+        String entityName = UtilXml.checkEmpty(curEntityElement.getAttribute("entity-name")).intern();
 
         ModelEntity modelEntity = null;
         if (isEntity) {
@@ -167,17 +230,8 @@ public class ModelReader implements Serializable {
             modelEntity = createModelViewEntity(curEntityElement, null, def);
         }
 
-        String resourceLocation = entityResourceHandler.getLocation();
-        try {
-            resourceLocation = entityResourceHandler.getURL().toExternalForm();
-        } catch (GenericConfigException e) {
-            Debug.logError(e, "Could not get resource URL", module);
-        }
-
-        // utilTimer.timerString(" After createModelEntity -- " + i + " --");
         if (modelEntity != null) {
             modelEntity.setLocation(resourceLocation);
-            // utilTimer.timerString(" After entityCache.put -- " + i + " --");
             if (isEntity) {
                 if (Debug.verboseOn()) {
                      Debug.logVerbose("-- [Entity]: #" + i + ": " + entityName, module);
@@ -194,16 +248,44 @@ public class ModelReader implements Serializable {
         return modelEntity;
     }
 
+    /** Registers an entity built by {@link #parseEntityResource}; called in resource order, so the last definition of an entity wins. */
+    private void registerEntity(ResourceHandler entityResourceHandler, Element curEntityElement) {
+        String entityName = UtilXml.checkEmpty(curEntityElement.getAttribute("entity-name")).intern();
+        boolean redefinedEntity = "true".equals(curEntityElement.getAttribute("redefinition"));
+
+        // add entityName to appropriate resourceHandlerEntities collection
+        Collection<String> resourceHandlerEntityNames = resourceHandlerEntities.get(entityResourceHandler);
+
+        if (resourceHandlerEntityNames == null) {
+            resourceHandlerEntityNames = new LinkedList<>();
+            resourceHandlerEntities.put(entityResourceHandler, resourceHandlerEntityNames);
+        }
+        resourceHandlerEntityNames.add(entityName);
+
+        // check to see if entity with same name has already been read
+        if (entityCache.containsKey(entityName) && !redefinedEntity) {
+            Debug.logWarning("Entity " + entityName +
+                    " is defined more than once, most recent will over-write " +
+                    "previous definition(s)", module);
+            Debug.logWarning("Entity " + entityName + " was found in " +
+                    entityResourceHandler + ", but was already defined in " +
+                    entityResourceHandlerMap.get(entityName).toString(), module);
+        }
+
+        // add entityName, entityFileName pair to entityResourceHandlerMap map
+        entityResourceHandlerMap.put(entityName, entityResourceHandler);
+    }
+
     public Map<String, ModelEntity> getEntityCache() throws GenericEntityException {
         if (entityCache == null) { // don't want to block here
             synchronized (ModelReader.class) {
                 // must check if null again as one of the blocked threads can still enter
                 if (entityCache == null) { // now it's safe
-                    numEntities = 0;
-                    numViewEntities = 0;
-                    numFields = 0;
-                    numRelations = 0;
-                    numAutoRelations = 0;
+                    numEntities.set(0);
+                    numViewEntities.set(0);
+                    numFields.set(0);
+                    numRelations.set(0);
+                    numAutoRelations.set(0);
 
                     entityCache = new HashMap<>();
                     List<ModelViewEntity> tempViewEntityList = new LinkedList<>();
@@ -211,58 +293,29 @@ public class ModelReader implements Serializable {
 
                     UtilTimer utilTimer = new UtilTimer();
 
+                    // parse all of the resources in parallel, then merge them in resource order so the result does not depend on the timing
+                    List<Future<ParsedEntityResource>> futures = new ArrayList<>(entityResourceHandlers.size());
                     for (ResourceHandler entityResourceHandler : entityResourceHandlers) {
-
-                        // utilTimer.timerString("Before getDocument in file " + entityFileName);
-                        Document document = null;
-
-                        try {
-                            document = entityResourceHandler.getDocument();
-                        } catch (GenericConfigException e) {
-                            throw new GenericEntityConfException("Error getting document from resource handler", e);
-                        }
-                        if (document == null) {
-                            throw new GenericEntityConfException("Could not get document for " + entityResourceHandler.toString());
-                        }
-
-                        // utilTimer.timerString("Before getDocumentElement in " +
-                        // entityResourceHandler.toString());
-                        Element docElement = document.getDocumentElement();
-
-                        if (docElement == null) {
+                        futures.add(ExecutionPool.GLOBAL_FORK_JOIN.submit(createEntityLoaderCallable(entityResourceHandler)));
+                    }
+                    for (Future<ParsedEntityResource> future : futures) {
+                        ParsedEntityResource parsedResource = getParsedEntityResource(future);
+                        if (parsedResource == null) {
                             return null;
                         }
-                        docElement.normalize();
-                        Node curChild = docElement.getFirstChild();
-
-                        ModelInfo def = ModelInfo.createFromElements(ModelInfo.DEFAULT, docElement);
-                        int i = 0;
-
-                        if (curChild != null) {
-                            utilTimer.timerString("Before start of entity loop in " + entityResourceHandler.toString());
-                            do {
-                                boolean isEntity = "entity".equals(curChild.getNodeName());
-                                boolean isViewEntity = "view-entity".equals(curChild.getNodeName());
-                                boolean isExtendEntity = "extend-entity".equals(curChild.getNodeName());
-
-                                if ((isEntity || isViewEntity) && curChild.getNodeType() == Node.ELEMENT_NODE) {
-                                    i++;
-                                    ModelEntity modelEntity = buildEntity(entityResourceHandler, (Element) curChild, i, def);
-                                    // put the view entity in a list to get ready for the second pass to populate fields...
-                                    if (isViewEntity) {
-                                        tempViewEntityList.add((ModelViewEntity) modelEntity);
-                                    } else {
-                                        entityCache.put(modelEntity.getEntityName(), modelEntity);
-                                    }
-                                } else if (isExtendEntity && curChild.getNodeType() == Node.ELEMENT_NODE) {
-                                    tempExtendEntityElementList.add((Element) curChild);
-                                }
-                            } while ((curChild = curChild.getNextSibling()) != null);
-                        } else {
-                            Debug.logWarning("No child nodes found.", module);
+                        Iterator<Element> entityElementIt = parsedResource.entityElements.iterator();
+                        for (ModelEntity modelEntity : parsedResource.entities) {
+                            registerEntity(parsedResource.entityResourceHandler, entityElementIt.next());
+                            // put the view entity in a list to get ready for the second pass to populate fields...
+                            if (modelEntity instanceof ModelViewEntity) {
+                                tempViewEntityList.add((ModelViewEntity) modelEntity);
+                            } else {
+                                entityCache.put(modelEntity.getEntityName(), modelEntity);
+                            }
                         }
-                        utilTimer.timerString("Finished " + entityResourceHandler.toString() + " - Total Entities: " + i + " FINISHED");
+                        tempExtendEntityElementList.addAll(parsedResource.extendEntityElements);
                     }
+                    utilTimer.timerString("Parsed " + entityResourceHandlers.size() + " entity model resources");
 
                     // all entity elements in, now go through extend-entity elements and add their stuff
                     for (Element extendEntityElement : tempExtendEntityElementList) {
@@ -272,6 +325,7 @@ public class ModelReader implements Serializable {
                             throw new GenericEntityConfException("Entity to extend does not exist: " + entityName);
                         modelEntity.addExtendEntity(this, extendEntityElement);
                     }
+                    utilTimer.timerString("Applied " + tempExtendEntityElementList.size() + " extend-entity elements");
 
                     // do a pass on all of the view entities now that all of the entities have loaded and populate the fields
                     while (!tempViewEntityList.isEmpty()) {
@@ -329,6 +383,7 @@ public class ModelReader implements Serializable {
                         }
                         throw new GenericEntityConfException(sb.toString());
                     }
+                    utilTimer.timerString("Populated the view entities");
 
                     // auto-create relationships
                     Set<String> orderedMessages = new TreeSet<>();
@@ -399,7 +454,7 @@ public class ModelReader implements Serializable {
 
                                     ModelRelation existingRelation = relatedEnt.getRelation(title + curModelEntity.getEntityName());
                                     if (existingRelation == null) {
-                                        numAutoRelations++;
+                                        numAutoRelations.incrementAndGet();
                                         if (curModelEntity.getEntityName().equals(relatedEnt.getEntityName())) {
                                             newSameEntityRelations.add(newRel);
                                         } else {
@@ -434,6 +489,7 @@ public class ModelReader implements Serializable {
                             }
                         }
                     }
+                    utilTimer.timerString("Created the automatic relationships");
                     if (Debug.infoOn()) {
                         for (String message : orderedMessages) {
                             Debug.logInfo(message, module);
@@ -448,6 +504,36 @@ public class ModelReader implements Serializable {
         return entityCache;
     }
 
+    private Callable<ParsedEntityResource> createEntityLoaderCallable(final ResourceHandler entityResourceHandler) {
+        return () -> parseEntityResource(entityResourceHandler);
+    }
+
+    private static ParsedEntityResource getParsedEntityResource(Future<ParsedEntityResource> future) throws GenericEntityException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof GenericEntityException) {
+                throw (GenericEntityException) e.getCause();
+            }
+            throw new GenericEntityConfException("Error loading entity model resource", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GenericEntityConfException("Interrupted while loading entity model resources", e);
+        }
+    }
+
+    /** The entities and extend-entity elements of one entity model resource, in document order. */
+    private static final class ParsedEntityResource {
+        private final ResourceHandler entityResourceHandler;
+        private final List<Element> entityElements = new ArrayList<>();
+        private final List<ModelEntity> entities = new ArrayList<>();
+        private final List<Element> extendEntityElements = new ArrayList<>();
+
+        private ParsedEntityResource(ResourceHandler entityResourceHandler) {
+            this.entityResourceHandler = entityResourceHandler;
+        }
+    }
+
     /**
      * rebuilds the resourceHandlerEntities Map of Collections based on the current
      * entityResourceHandlerMap Map, must be done whenever a manual change is made
@@ -624,7 +710,7 @@ public class ModelReader implements Serializable {
     ModelEntity createModelEntity(Element entityElement, UtilTimer utilTimer, ModelInfo def) {
         if (entityElement == null)
             return null;
-        this.numEntities++;
+        this.numEntities.incrementAndGet();
         ModelEntity entity = new ModelEntity(this, entityElement, utilTimer, def);
         return entity;
     }
@@ -632,18 +718,43 @@ public class ModelReader implements Serializable {
     ModelEntity createModelViewEntity(Element entityElement, UtilTimer utilTimer, ModelInfo def) {
         if (entityElement == null)
             return null;
-        this.numViewEntities++;
+        this.numViewEntities.incrementAndGet();
         ModelViewEntity entity = new ModelViewEntity(this, entityElement, utilTimer, def);
         return entity;
     }
 
     public ModelRelation createRelation(ModelEntity entity, Element relationElement) {
-        this.numRelations++;
+        this.numRelations.incrementAndGet();
         ModelRelation relation = ModelRelation.create(entity, relationElement, false);
         return relation;
     }
 
     public void incrementFieldCount(int amount) {
-        this.numFields += amount;
+        this.numFields.addAndGet(amount);
+    }
+
+    /** Returns the number of entities built by the last load of the entity model. */
+    public int getNumEntities() {
+        return this.numEntities.get();
+    }
+
+    /** Returns the number of view entities built by the last load of the entity model. */
+    public int getNumViewEntities() {
+        return this.numViewEntities.get();
+    }
+
+    /** Returns the number of fields built by the last load of the entity model. */
+    public int getNumFields() {
+        return this.numFields.get();
+    }
+
+    /** Returns the number of relations built by the last load of the entity model. */
+    public int getNumRelations() {
+        return this.numRelations.get();
+    }
+
+    /** Returns the number of relations created automatically by the last load of the entity model. */
+    public int getNumAutoRelations() {
+        return this.numAutoRelations.get();
     }
 }
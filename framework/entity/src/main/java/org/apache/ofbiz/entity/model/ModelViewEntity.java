@@ -1251,7 +1251,7 @@ public class ModelViewEntity extends ModelEntity {
         }
     }
 
-    public static final class ViewEntityCondition {
+    public static final class ViewEntityCondition implements Serializable {
         public final ModelViewEntity modelViewEntity;
         public final ModelViewLink modelViewLink;
         public final boolean filterByDate;
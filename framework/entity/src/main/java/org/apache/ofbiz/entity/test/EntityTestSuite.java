@@ -61,6 +61,7 @@ import org.apache.ofbiz.entity.transaction.TransactionUtil;
 import org.apache.ofbiz.entity.util.EntityListIterator;
 import org.apache.ofbiz.entity.util.EntityQuery;
 import org.apache.ofbiz.entity.util.EntitySaxReader;
+import org.apache.ofbiz.entity.util.EntityStoreOptions;
 import org.apache.ofbiz.entity.util.SequenceUtil;
 
 public class EntityTestSuite extends EntityTestCase {
@@ -708,6 +709,116 @@ public class EntityTestSuite extends EntityTestCase {
         }
     }
 
+    /*
+     * Tests storeAll with a mix of new values, changed values and unchanged values
+     */
+    public void testStoreAllCreatesAndUpdates() throws Exception {
+        try {
+            List<GenericValue> newValues = new LinkedList<>();
+            for (int i = 0; i < 10; i++) {
+                newValues.add(delegator.makeValue("Testing", "testingId", getTestId("T6-", i), "description", "original"));
+            }
+            assertEquals("storeAll created all values", 10, delegator.storeAll(newValues));
+
+            List<GenericValue> mixedValues = new LinkedList<>();
+            for (int i = 0; i < 15; i++) {
+                // the first five stay the same, the next five change and the last five are new
+                String description = i < 5 ? "original" : "changed";
+                mixedValues.add(delegator.makeValue("Testing", "testingId", getTestId("T6-", i), "description", description));
+            }
+            assertEquals("storeAll only wrote changed and new values", 10, delegator.storeAll(mixedValues));
+
+            List<GenericValue> changedValues = EntityQuery.use(delegator)
+                                                          .from("Testing")
+                                                          .where(EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "T6-%"),
+                                                                  EntityCondition.makeCondition("description", "changed"))
+                                                          .queryList();
+            assertEquals("Changed and new values have the new description", 10, changedValues.size());
+        } finally {
+            List<GenericValue> newlyCreatedValues = EntityQuery.use(delegator)
+                                                               .from("Testing")
+                                                               .where(EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "T6-%"))
+                                                               .queryList();
+            delegator.removeAll(newlyCreatedValues);
+        }
+    }
+
+    /*
+     * Tests storeAll with a key that the database matches with an existing row without being equal to it
+     */
+    public void testStoreAllWithPaddedKey() throws Exception {
+        try {
+            delegator.create("Testing", "testingId", "T8-0", "description", "original");
+            List<GenericValue> values = new LinkedList<>();
+            // databases comparing strings with the trailing spaces padded find the T8-0 row for this key
+            values.add(delegator.makeValue("Testing", "testingId", "T8-0 ", "description", "padded"));
+            values.add(delegator.makeValue("Testing", "testingId", "T8-1", "description", "new"));
+            delegator.storeAll(values);
+
+            GenericValue newValue = EntityQuery.use(delegator).from("Testing").where("testingId", "T8-1").queryOne();
+            assertNotNull("New value stored", newValue);
+            GenericValue paddedValue = EntityQuery.use(delegator).from("Testing").where("testingId", "T8-0 ").queryOne();
+            assertNotNull("Padded value stored", paddedValue);
+            assertEquals("Padded value has the new description", "padded", paddedValue.getString("description"));
+        } finally {
+            delegator.removeByCondition("Testing", EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "T8-%"));
+        }
+    }
+
+    /*
+     * Tests storeAll with dummy foreign keys, when parents and children are stored in the same call
+     */
+    public void testStoreAllWithDummyFks() throws Exception {
+        try {
+            List<GenericValue> values = new LinkedList<>();
+            // a child before its parent, then a parent before its child
+            values.add(delegator.makeValue("Testing", "testingId", "T7-0", "testingTypeId", "T7-TYPE-0"));
+            values.add(delegator.makeValue("TestingType", "testingTypeId", "T7-TYPE-0", "description", "storeAll dummy fks #0"));
+            values.add(delegator.makeValue("TestingType", "testingTypeId", "T7-TYPE-1", "description", "storeAll dummy fks #1"));
+            values.add(delegator.makeValue("Testing", "testingId", "T7-1", "testingTypeId", "T7-TYPE-1"));
+            delegator.storeAll(values, new EntityStoreOptions(true));
+
+            for (int i = 0; i < 2; i++) {
+                GenericValue testingType = EntityQuery.use(delegator).from("TestingType").where("testingTypeId", "T7-TYPE-" + i).queryOne();
+                assertNotNull("Parent T7-TYPE-" + i + " stored", testingType);
+                assertEquals("Parent T7-TYPE-" + i + " has its own values", "storeAll dummy fks #" + i, testingType.getString("description"));
+                GenericValue testing = EntityQuery.use(delegator).from("Testing").where("testingId", "T7-" + i).queryOne();
+                assertNotNull("Child T7-" + i + " stored", testing);
+            }
+        } finally {
+            delegator.removeByCondition("Testing", EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "T7-%"));
+            delegator.removeByCondition("TestingType", EntityCondition.makeCondition("testingTypeId", EntityOperator.LIKE, "T7-TYPE-%"));
+        }
+    }
+
+    /*
+     * This test will create a large number of unique items in JDBC batches and remove them the same way
+     */
+    public void testCreateManyInBatches() throws Exception {
+        try {
+            List<GenericValue> newValues = new LinkedList<>();
+            for (int i = 0; i < TEST_COUNT; i++) {
+                newValues.add(delegator.makeValue("Testing", "testingId", getTestId("T5-", i), "description", "batch"));
+            }
+            int created = delegator.createAll(newValues);
+            assertEquals("Rows reported by createAll", TEST_COUNT, created);
+            List<GenericValue> newlyCreatedValues = EntityQuery.use(delegator)
+                                                               .from("Testing")
+                                                               .where(EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "T5-%"))
+                                                               .orderBy("testingId")
+                                                               .queryList();
+            assertEquals("Test to create " + TEST_COUNT + " in batches", TEST_COUNT, newlyCreatedValues.size());
+            int removed = delegator.removeAll(newlyCreatedValues);
+            assertEquals("Rows reported by removeAll", TEST_COUNT, removed);
+        } finally {
+            List<GenericValue> newlyCreatedValues = EntityQuery.use(delegator)
+                                                               .from("Testing")
+                                                               .where(EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "T5-%"))
+                                                               .queryList();
+            delegator.removeAll(newlyCreatedValues);
+        }
+    }
+
     /*
      * This test will create a large number of unique items and add them to the delegator at once
      */
@@ -1226,6 +1337,72 @@ public class EntityTestSuite extends EntityTestCase {
         assertFalse("Duplicate sequence id returned", duplicateFound.get());
     }
 
+    public void testSequenceValueItemRange() {
+        SequenceUtil sequencer = new SequenceUtil(delegator.getGroupHelperInfo(delegator.getEntityGroupName("SequenceValueItem")),
+                                                  delegator.getModelEntity("SequenceValueItem"),
+                                                  "seqName", "seqId");
+        UUID id = UUID.randomUUID();
+        String sequenceName = "BogusSequence" + id.toString();
+        Long seqId = sequencer.getNextSeqId(sequenceName, 1, null);
+        assertEquals(10000, seqId.longValue());
+        // fits in the bank
+        Long firstSeqId = sequencer.getNextSeqIdRange(sequenceName, 5, null);
+        assertEquals(10001, firstSeqId.longValue());
+        // reserved after the bank
+        firstSeqId = sequencer.getNextSeqIdRange(sequenceName, 3000, null);
+        assertEquals(10010, firstSeqId.longValue());
+        seqId = sequencer.getNextSeqId(sequenceName, 1, null);
+        assertEquals(10006, seqId.longValue());
+        sequencer.forceBankRefresh(sequenceName, 1);
+        seqId = sequencer.getNextSeqId(sequenceName, 1, null);
+        assertEquals(13010, seqId.longValue());
+    }
+
+    public void testAdaptiveSequenceValueItemWithConcurrentThreads() {
+        final SequenceUtil sequencer = new SequenceUtil(delegator.getGroupHelperInfo(delegator.getEntityGroupName("SequenceValueItem")),
+                                                  delegator.getModelEntity("SequenceValueItem"),
+                                                  "seqName", "seqId", true, true);
+        UUID id = UUID.randomUUID();
+        final String sequenceName = "BogusSequence" + id.toString();
+        final ConcurrentMap<Long, Long> seqIds = new ConcurrentHashMap<>();
+        final AtomicBoolean duplicateFound = new AtomicBoolean(false);
+        final AtomicBoolean nullSeqIdReturned = new AtomicBoolean(false);
+
+        List<Future<Void>> futures = new ArrayList<>();
+        Callable<Void> getSeqIdTask = () -> {
+            Long seqId = sequencer.getNextSeqId(sequenceName, 1, null);
+            if (seqId == null) {
+                nullSeqIdReturned.set(true);
+                return null;
+            }
+            Long existingValue = seqIds.putIfAbsent(seqId, seqId);
+            if (existingValue != null) {
+                duplicateFound.set(true);
+            }
+            return null;
+        };
+        Callable<Void> getSeqIdRangeTask = () -> {
+            Long firstSeqId = sequencer.getNextSeqIdRange(sequenceName, 20, null);
+            if (firstSeqId == null) {
+                nullSeqIdReturned.set(true);
+                return null;
+            }
+            for (long seqId = firstSeqId; seqId < firstSeqId + 20; seqId++) {
+                if (seqIds.putIfAbsent(seqId, seqId) != null) {
+                    duplicateFound.set(true);
+                }
+            }
+            return null;
+        };
+        for (int i = 1; i <= 5000; i++) {
+            Callable<Void> randomTask = Math.random() < 0.05 ? getSeqIdRangeTask : getSeqIdTask;
+            futures.add(ExecutionPool.GLOBAL_FORK_JOIN.submit(randomTask));
+        }
+        ExecutionPool.getAllFutures(futures);
+        assertFalse("Null sequence id returned", nullSeqIdReturned.get());
+        assertFalse("Duplicate sequence id returned", duplicateFound.get());
+    }
+
     /*
         This test is useful to confirm that the default setting of use-transaction="true" for screen definitions is
         the best one for performance.
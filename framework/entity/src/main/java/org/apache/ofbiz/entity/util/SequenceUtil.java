@@ -24,9 +24,12 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.transaction.Transaction;
 
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.datasource.GenericHelperInfo;
@@ -38,18 +41,29 @@ import org.apache.ofbiz.entity.transaction.TransactionUtil;
 
 /**
  * Sequence Utility to get unique sequences from named sequence banks
+ * <p>When adaptive, the size of a bank grows while the banks are used up quickly and shrinks
+ * back when they last long. When prefetching, the next bank is fetched in the background once
+ * the current one runs low, so callers rarely wait for the sequence table.</p>
  */
 public class SequenceUtil {
 
     public static final String module = SequenceUtil.class.getName();
 
+    private static final ExecutorService prefetchExecutor = ExecutionPool.getScheduledExecutor(new ThreadGroup(module), "OFBiz-sequence-prefetch", 2, 60, false);
+
     private final ConcurrentMap<String, SequenceBank> sequences = new ConcurrentHashMap<String, SequenceBank>();
     private final GenericHelperInfo helperInfo;
     private final String tableName;
     private final String nameColName;
     private final String idColName;
+    private final boolean adaptive;
+    private final boolean prefetch;
 
     public SequenceUtil(GenericHelperInfo helperInfo, ModelEntity seqEntity, String nameFieldName, String idFieldName) {
+        this(helperInfo, seqEntity, nameFieldName, idFieldName, false, false);
+    }
+
+    public SequenceUtil(GenericHelperInfo helperInfo, ModelEntity seqEntity, String nameFieldName, String idFieldName, boolean adaptive, boolean prefetch) {
         this.helperInfo = helperInfo;
         if (seqEntity == null) {
             throw new IllegalArgumentException("The sequence model entity was null but is required.");
@@ -69,6 +83,8 @@ public class SequenceUtil {
             throw new IllegalArgumentException("Could not find the field definition for the sequence id field " + idFieldName);
         }
         this.idColName = idField.getColName();
+        this.adaptive = adaptive;
+        this.prefetch = prefetch;
     }
 
     public Long getNextSeqId(String seqName, long staggerMax, ModelEntity seqModelEntity) {
@@ -76,6 +92,19 @@ public class SequenceUtil {
         return bank.getNextSeqId(staggerMax);
     }
 
+    /**
+     * Reserves <code>count</code> consecutive sequence IDs and returns the first one, or
+     * <code>null</code> if the IDs could not be reserved. Large ranges are reserved directly
+     * in the sequence table, without going through the bank.
+     */
+    public Long getNextSeqIdRange(String seqName, long count, ModelEntity seqModelEntity) {
+        if (count < 1) {
+            throw new IllegalArgumentException("The number of sequence IDs to reserve must be positive, was " + count);
+        }
+        SequenceBank bank = this.getBank(seqName, seqModelEntity);
+        return bank.getNextSeqIdRange(count);
+    }
+
     public void forceBankRefresh(String seqName, long staggerMax) {
         // don't use the get method because we don't want to create if it fails
         SequenceBank bank = sequences.get(seqName);
@@ -107,19 +136,34 @@ public class SequenceUtil {
         public static final long defaultBankSize = 10;
         public static final long maxBankSize = 5000;
         public static final long startSeqId = 10000;
+        // adaptive sizing: the bank size doubles when a bank lasts less than fastBankMillis
+        // and halves, down to the configured size, when a bank lasts more than slowBankMillis
+        private static final long fastBankMillis = 1000;
+        private static final long slowBankMillis = 60000;
+        // prefetching starts when less than 1/lowWaterDivisor of the bank is left
+        private static final long lowWaterDivisor = 4;
 
         private final String seqName;
-        private final long bankSize;
+        private final long baseBankSize;
         private final String updateForLockStatement;
         private final String selectSequenceStatement;
 
+        private long bankSize;
+        private long lastFillTime;
         private long curSeqId;
         private long maxSeqId;
+        // the bank fetched in the background, empty when prefetchedSeqId == prefetchedMaxSeqId
+        private long prefetchedSeqId;
+        private long prefetchedMaxSeqId;
+        private boolean prefetching;
+        // incremented on refresh so that a prefetch started before is discarded
+        private long generation;
 
         private SequenceBank(String seqName, long bankSize) {
             this.seqName = seqName;
             curSeqId = 0;
             maxSeqId = 0;
+            this.baseBankSize = bankSize;
             this.bankSize = bankSize;
             updateForLockStatement = "UPDATE " + SequenceUtil.this.tableName + " SET " + SequenceUtil.this.idColName + "=" + SequenceUtil.this.idColName + " WHERE " + SequenceUtil.this.nameColName + "='" + this.seqName + "'";
             selectSequenceStatement = "SELECT " + SequenceUtil.this.idColName + " FROM " + SequenceUtil.this.tableName + " WHERE " + SequenceUtil.this.nameColName + "='" + this.seqName + "'";
@@ -132,44 +176,66 @@ public class SequenceUtil {
                 if (stagger == 0) stagger = 1;
             }
             synchronized (this) {
+                if ((curSeqId + stagger) > maxSeqId) {
+                    fillBank(stagger);
+                }
                 if ((curSeqId + stagger) <= maxSeqId) {
                     long retSeqId = curSeqId;
                     curSeqId += stagger;
+                    if (SequenceUtil.this.prefetch) {
+                        prefetchBank();
+                    }
                     return retSeqId;
                 } else {
-                    fillBank(stagger);
-                    if ((curSeqId + stagger) <= maxSeqId) {
-                        long retSeqId = curSeqId;
-                        curSeqId += stagger;
-                        return retSeqId;
-                    } else {
-                        Debug.logError("Fill bank failed, returning null", module);
-                        return null;
-                    }
+                    Debug.logError("Fill bank failed, returning null", module);
+                    return null;
                 }
             }
         }
 
+        private Long getNextSeqIdRange(long count) {
+            synchronized (this) {
+                if ((curSeqId + count) <= maxSeqId) {
+                    long retSeqId = curSeqId;
+                    curSeqId += count;
+                    return retSeqId;
+                }
+            }
+            // the range doesn't fit in the bank: reserve it in the sequence table, the row lock serializes with the bank fills
+            long retSeqId = reserve(count);
+            if (retSeqId < 0) {
+                Debug.logError("Reserving " + count + " sequenced IDs for [" + this.seqName + "] failed, returning null", module);
+                return null;
+            }
+            if (Debug.infoOn()) Debug.logInfo("Reserved range of sequenced IDs for [" + this.seqName + "]; firstSeqId=" + retSeqId + ", count=" + count, module);
+            return retSeqId;
+        }
+
         private synchronized void refresh(long staggerMax) {
+            this.generation++;
+            this.prefetchedSeqId = 0;
+            this.prefetchedMaxSeqId = 0;
             this.curSeqId = this.maxSeqId;
             this.fillBank(staggerMax);
         }
 
-        /*
-           The algorithm to get the new sequence id in a thread safe way is the following:
-           1 - run an update with no changes to get a lock on the record
-               1bis - if no record is found, try to create and update it to get the lock
-           2 - select the record (now locked) to get the curSeqId
-           3 - increment the sequence
-           The three steps are executed in one dedicated database transaction.
-         */
+        // must be called while holding the lock on this bank
         private void fillBank(long stagger) {
             // no need to get a new bank, SeqIds available
             if ((curSeqId + stagger) <= maxSeqId) {
                 return;
             }
 
-            long bankSize = this.bankSize;
+            // use the bank fetched in the background if there is one
+            if ((prefetchedSeqId + stagger) <= prefetchedMaxSeqId) {
+                curSeqId = prefetchedSeqId;
+                maxSeqId = prefetchedMaxSeqId;
+                prefetchedSeqId = 0;
+                prefetchedMaxSeqId = 0;
+                return;
+            }
+
+            long bankSize = nextBankSize();
             if (stagger > 1) {
                 // NOTE: could use staggerMax for this, but if that is done it would be easier to guess a valid next id without a brute force attack
                 bankSize = stagger * defaultBankSize;
@@ -179,6 +245,72 @@ public class SequenceUtil {
                 bankSize = maxBankSize;
             }
 
+            long seqId = reserve(bankSize);
+            if (seqId < 0) {
+                // reset the sequence fields and return (note: it would be better to throw an exception)
+                curSeqId = 0;
+                maxSeqId = 0;
+                return;
+            }
+            curSeqId = seqId;
+            maxSeqId = curSeqId + bankSize;
+            if (Debug.infoOn()) Debug.logInfo("Got bank of sequenced IDs for [" + this.seqName + "]; curSeqId=" + curSeqId + ", maxSeqId=" + maxSeqId + ", bankSize=" + bankSize, module);
+        }
+
+        // must be called while holding the lock on this bank
+        private void prefetchBank() {
+            if (prefetching || prefetchedSeqId < prefetchedMaxSeqId || (maxSeqId - curSeqId) * lowWaterDivisor > bankSize) {
+                return;
+            }
+            final long bankSize = Math.min(nextBankSize(), maxBankSize);
+            final long prefetchGeneration = generation;
+            prefetching = true;
+            try {
+                prefetchExecutor.execute(() -> {
+                    long seqId = reserve(bankSize);
+                    synchronized (SequenceBank.this) {
+                        prefetching = false;
+                        if (seqId >= 0 && prefetchGeneration == generation) {
+                            prefetchedSeqId = seqId;
+                            prefetchedMaxSeqId = seqId + bankSize;
+                            if (Debug.verboseOn()) Debug.logVerbose("Prefetched bank of sequenced IDs for [" + seqName + "]; curSeqId=" + prefetchedSeqId + ", maxSeqId=" + prefetchedMaxSeqId + ", bankSize=" + bankSize, module);
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                prefetching = false;
+                Debug.logWarning("Unable to prefetch sequenced IDs for [" + seqName + "]: " + e.toString(), module);
+            }
+        }
+
+        // must be called while holding the lock on this bank
+        private long nextBankSize() {
+            if (SequenceUtil.this.adaptive) {
+                long now = System.currentTimeMillis();
+                if (lastFillTime > 0) {
+                    long bankTime = now - lastFillTime;
+                    if (bankTime < fastBankMillis) {
+                        bankSize = Math.min(bankSize * 2, maxBankSize);
+                    } else if (bankTime > slowBankMillis) {
+                        bankSize = Math.max(bankSize / 2, baseBankSize);
+                    }
+                }
+                lastFillTime = now;
+            }
+            return bankSize;
+        }
+
+        /*
+           The algorithm to get the new sequence id in a thread safe way is the following:
+           1 - run an update with no changes to get a lock on the record
+               1bis - if no record is found, try to create and update it to get the lock
+           2 - select the record (now locked) to get the curSeqId
+           3 - increment the sequence
+           The three steps are executed in one dedicated database transaction.
+           Returns the first of the bankSize reserved IDs, or -1 if the IDs could not be reserved.
+         */
+        private long reserve(long bankSize) {
+            long seqId = -1;
             Transaction suspendedTransaction = null;
             try {
                 suspendedTransaction = TransactionUtil.suspend();
@@ -226,7 +358,7 @@ public class SequenceUtil {
                         rs = stmt.executeQuery(selectSequenceStatement);
                         boolean sequenceFound = rs.next();
                         if (sequenceFound) {
-                            curSeqId = rs.getLong(SequenceUtil.this.idColName);
+                            seqId = rs.getLong(SequenceUtil.this.idColName);
                         }
                         rs.close();
                         if (!sequenceFound) {
@@ -256,9 +388,7 @@ public class SequenceUtil {
                         }
                     }
                 } catch (SQLException | GenericEntityException  e) {
-                    // reset the sequence fields and return (note: it would be better to throw an exception)
-                    curSeqId = 0;
-                    maxSeqId = 0;
+                    seqId = -1;
                     String errMsg = "General error in getting a sequenced ID";
                     Debug.logError(e, errMsg, module);
                     try {
@@ -266,31 +396,21 @@ public class SequenceUtil {
                     } catch (GenericTransactionException gte2) {
                         Debug.logError(gte2, "Unable to rollback transaction", module);
                     }
-                    return;
                 }
             } catch (GenericTransactionException e) {
                 Debug.logError(e, "System Error suspending transaction in sequence util", module);
-                // reset the sequence fields and return (note: it would be better to throw an exception)
-                curSeqId = 0;
-                maxSeqId = 0;
-                return;
+                seqId = -1;
             } finally {
                 if (suspendedTransaction != null) {
                     try {
                         TransactionUtil.resume(suspendedTransaction);
                     } catch (GenericTransactionException e) {
                         Debug.logError(e, "Error resuming suspended transaction in sequence util", module);
-                        // reset the sequence fields and return (note: it would be better to throw an exception)
-                        curSeqId = 0;
-                        maxSeqId = 0;
-                        return;
+                        seqId = -1;
                     }
                 }
             }
-
-            maxSeqId = curSeqId + bankSize;
-            if (Debug.infoOn()) Debug.logInfo("Got bank of sequenced IDs for [" + this.seqName + "]; curSeqId=" + curSeqId + ", maxSeqId=" + maxSeqId + ", bankSize=" + bankSize, module);
+            return seqId;
         }
     }
 }
-
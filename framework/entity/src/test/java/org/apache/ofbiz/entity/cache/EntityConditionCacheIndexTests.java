@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ofbiz.entity.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityExpr;
+import org.apache.ofbiz.entity.condition.EntityFieldValue;
+import org.apache.ofbiz.entity.condition.EntityFunction;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.junit.Test;
+
+public class EntityConditionCacheIndexTests {
+
+    private static void assertEquality(String fieldName, Object value, EntityCondition condition) {
+        EntityExpr equality = EntityConditionCacheIndex.findEquality(condition);
+        assertEquals(fieldName, ((EntityFieldValue) equality.getLhs()).getFieldName());
+        assertEquals(value, equality.getRhs());
+    }
+
+    @Test
+    public void findsEquality() {
+        assertEquality("productId", "P1", EntityCondition.makeCondition("productId", "P1"));
+        assertEquality("productId", "P1", EntityCondition.makeCondition("productId", EntityOperator.EQUALS, "P1"));
+    }
+
+    @Test
+    public void findsEqualityInConjunctions() {
+        assertEquality("productId", "P1", EntityCondition.makeCondition(UtilMisc.toList(
+                EntityCondition.makeCondition("fromDate", EntityOperator.LESS_THAN, "2020"),
+                EntityCondition.makeCondition("productId", "P1")), EntityOperator.AND));
+        assertEquality("productId", "P1", EntityCondition.makeCondition(UtilMisc.toMap("productId", "P1")));
+        assertEquality("productId", "P1", EntityCondition.makeCondition(
+                EntityCondition.makeCondition("fromDate", EntityOperator.LESS_THAN, "2020"),
+                EntityOperator.AND,
+                EntityCondition.makeCondition("productId", "P1")));
+    }
+
+    @Test
+    public void ignoresConditionsWithoutEquality() {
+        assertNull(EntityConditionCacheIndex.findEquality(EntityCondition.makeCondition("productId", EntityOperator.NOT_EQUAL, "P1")));
+        assertNull(EntityConditionCacheIndex.findEquality(EntityCondition.makeCondition("productId", null)));
+        assertNull(EntityConditionCacheIndex.findEquality(EntityCondition.makeCondition(UtilMisc.toList(
+                EntityCondition.makeCondition("productId", "P1"),
+                EntityCondition.makeCondition("productId", "P2")), EntityOperator.OR)));
+        assertNull(EntityConditionCacheIndex.findEquality(EntityCondition.makeCondition(UtilMisc.toMap("productId", "P1"), EntityOperator.OR)));
+        assertNull(EntityConditionCacheIndex.findEquality(EntityCondition.makeCondition(
+                EntityFunction.UPPER_FIELD("productId"), EntityOperator.EQUALS, "P1")));
+        assertNull(EntityConditionCacheIndex.findEquality(EntityCondition.makeCondition(
+                "productId", EntityOperator.EQUALS, EntityFieldValue.makeFieldValue("parentProductId"))));
+        assertNull(EntityConditionCacheIndex.findEquality(EntityCondition.makeConditionWhere("PRODUCT_ID = 'P1'")));
+    }
+}
@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Collections;
+
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericPK;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.model.ModelEntity;
+import org.apache.ofbiz.entity.model.ModelField;
+import org.apache.ofbiz.entity.model.ModelFieldType;
+import org.junit.Before;
+import org.junit.Test;
+
+public class OffHeapEntityStoreTests {
+    private Delegator delegator;
+    private ModelEntity modelEntity;
+
+    @Before
+    public void initialize() throws Exception {
+        ModelFieldType fieldType = mock(ModelFieldType.class);
+        when(fieldType.getJavaType()).thenReturn("java.lang.Object");
+        delegator = mock(Delegator.class);
+        when(delegator.getDelegatorName()).thenReturn("default");
+        when(delegator.getEntityFieldType(any(ModelEntity.class), anyString())).thenReturn(fieldType);
+        modelEntity = new ModelEntity();
+        modelEntity.setEntityName("TestingOffHeap");
+        modelEntity.addField(ModelField.create(modelEntity, "testingId", "id", true));
+        modelEntity.addField(ModelField.create(modelEntity, "description", "description", false));
+        modelEntity.addField(ModelField.create(modelEntity, "amount", "fixed-point", false));
+        modelEntity.addField(ModelField.create(modelEntity, "fromDate", "date-time", false));
+    }
+
+    private GenericPK makePK(String testingId) {
+        return GenericPK.create(delegator, modelEntity, UtilMisc.toMap("testingId", testingId));
+    }
+
+    private GenericValue makeValue(String testingId, String description) {
+        return GenericValue.create(delegator, modelEntity, UtilMisc.toMap("testingId", testingId, "description", description));
+    }
+
+    private GenericValue read(OffHeapEntityStore store, GenericPK pk, long expireTimeMillis) {
+        long location = store.getLocation(pk);
+        return location < 0 ? null : store.read(delegator, pk, location, expireTimeMillis);
+    }
+
+    @Test
+    public void putGetRemove() {
+        OffHeapEntityStore store = new OffHeapEntityStore("default", 4096, 4096, Collections.<String>emptySet());
+        GenericValue value = makeValue("T1", "first");
+        Timestamp fromDate = new Timestamp(1000);
+        fromDate.setNanos(123456789);
+        value.set("amount", new BigDecimal("12.340"));
+        value.set("fromDate", fromDate);
+        value.set("description", null);
+        store.put(makePK("T1"), value);
+        GenericValue read = read(store, makePK("T1"), 0);
+        assertEquals("T1", read.getString("testingId"));
+        assertTrue("null field kept", read.containsKey("description"));
+        assertNull(read.get("description"));
+        assertEquals(new BigDecimal("12.340"), read.get("amount"));
+        assertEquals(fromDate, read.get("fromDate"));
+
+        store.put(makePK("T1"), makeValue("T1", "second"));
+        assertEquals("replaced value", "second", read(store, makePK("T1"), 0).getString("description"));
+        store.put(makePK("T2"), GenericValue.NULL_VALUE);
+        assertSame("cached absence", GenericValue.NULL_VALUE, read(store, makePK("T2"), 0));
+
+        store.remove(makePK("T1"));
+        assertEquals(-1, store.getLocation(makePK("T1")));
+        assertSame(GenericValue.NULL_VALUE, read(store, makePK("T2"), 0));
+        store.remove("TestingOffHeap");
+        assertEquals(-1, store.getLocation(makePK("T2")));
+
+        store.put(makePK("T3"), makeValue("T3", "third"));
+        store.clear();
+        assertEquals(-1, store.getLocation(makePK("T3")));
+    }
+
+    @Test
+    public void storedEntities() {
+        OffHeapEntityStore store = new OffHeapEntityStore("default", 4096, 4096, Collections.singleton("OtherEntity"));
+        store.put(makePK("T1"), makeValue("T1", "first"));
+        assertEquals("entity not stored off-heap", -1, store.getLocation(makePK("T1")));
+    }
+
+    @Test
+    public void segmentReuse() {
+        // two segments holding a few records each
+        OffHeapEntityStore store = new OffHeapEntityStore("default", 512, 256, Collections.<String>emptySet());
+        store.put(makePK("T0"), makeValue("T0", "value 0"));
+        long firstLocation = store.getLocation(makePK("T0"));
+        for (int i = 1; i < 20; i++) {
+            store.put(makePK("T" + i), makeValue("T" + i, "value " + i));
+        }
+        assertEquals("dropped when its segment was reused", -1, store.getLocation(makePK("T0")));
+        assertNull("stale location", store.read(delegator, makePK("T0"), firstLocation, 0));
+        assertEquals("value 19", read(store, makePK("T19"), 0).getString("description"));
+
+        // a record larger than a segment is not stored
+        store.put(makePK("T19"), makeValue("T19", new String(new char[300]).replace('\0', 'x')));
+        assertEquals(-1, store.getLocation(makePK("T19")));
+    }
+
+    @Test
+    public void expiry() throws Exception {
+        OffHeapEntityStore store = new OffHeapEntityStore("default", 4096, 4096, Collections.<String>emptySet());
+        store.put(makePK("T1"), makeValue("T1", "first"));
+        long location = store.getLocation(makePK("T1"));
+        Thread.sleep(50);
+        assertEquals("not expired", "first", store.read(delegator, makePK("T1"), location, 60000).getString("description"));
+        assertNull("expired", store.read(delegator, makePK("T1"), location, 10));
+        assertEquals("expired record dropped", -1, store.getLocation(makePK("T1")));
+
+        store.put(makePK("T1"), makeValue("T1", "second"));
+        assertNotEquals(location, store.getLocation(makePK("T1")));
+        assertEquals("second", read(store, makePK("T1"), 60000).getString("description"));
+    }
+}
@@ -19,23 +19,23 @@
 package org.apache.ofbiz.service;
 
 import java.io.Serializable;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.concurrent.Callable;
-import java.util.concurrent.Future;
 
 import javax.wsdl.WSDLException;
 
 import org.apache.ofbiz.base.component.ComponentConfig;
-import org.apache.ofbiz.base.concurrent.ExecutionPool;
 import org.apache.ofbiz.base.config.GenericConfigException;
 import org.apache.ofbiz.base.config.MainResourceHandler;
 import org.apache.ofbiz.base.config.ResourceHandler;
 import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.StringUtil;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.base.util.cache.CacheListener;
 import org.apache.ofbiz.base.util.cache.UtilCache;
 import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.GenericEntityConfException;
@@ -45,6 +45,7 @@ import org.apache.ofbiz.security.Security;
 import org.apache.ofbiz.service.config.ServiceConfigUtil;
 import org.apache.ofbiz.service.config.model.GlobalServices;
 import org.apache.ofbiz.service.eca.ServiceEcaUtil;
+import org.apache.ofbiz.service.engine.StandardJavaEngine;
 import org.w3c.dom.Document;
 
 /**
@@ -55,7 +56,26 @@ public class DispatchContext implements Serializable {
 
     public static final String module = DispatchContext.class.getName();
 
-    private static final UtilCache<String, Map<String, ModelService>> modelServiceMapByModel = UtilCache.createUtilCache("service.ModelServiceMapByModel", 0, 0, false);
+    private static final UtilCache<String, ModelServiceIndex> modelServiceMapByModel = UtilCache.createUtilCache("service.ModelServiceMapByModel", 0, 0, false);
+
+    static {
+        // the Java service methods resolved by the engine are cached by service definition, drop them with the definitions
+        modelServiceMapByModel.addListener(new CacheListener<String, ModelServiceIndex>() {
+            @Override
+            public void noteKeyRemoval(UtilCache<String, ModelServiceIndex> cache, String key, ModelServiceIndex oldValue) {
+                StandardJavaEngine.clearServiceInvokers();
+            }
+
+            @Override
+            public void noteKeyAddition(UtilCache<String, ModelServiceIndex> cache, String key, ModelServiceIndex newValue) {
+            }
+
+            @Override
+            public void noteKeyUpdate(UtilCache<String, ModelServiceIndex> cache, String key, ModelServiceIndex newValue, ModelServiceIndex oldValue) {
+                StandardJavaEngine.clearServiceInvokers();
+            }
+        });
+    }
 
     // these four fields represent the immutable state of a DispatchContext object
     private final String name;
@@ -98,7 +118,7 @@ public class DispatchContext implements Serializable {
             modelName = name;
         }
         this.model = modelName;
-        getGlobalServiceMap();
+        getGlobalServiceIndex();
     }
 
     /**
@@ -203,9 +223,7 @@ public class DispatchContext implements Serializable {
      * @return GenericServiceModel that corresponds to the serviceName
      */
     public ModelService getModelService(String serviceName) throws GenericServiceException {
-        Map<String, ModelService> serviceMap = getGlobalServiceMap();
-        ModelService retVal = null;
-        retVal = serviceMap.get(serviceName);
+        ModelService retVal = getGlobalServiceIndex().getModelService(serviceName);
         if (retVal != null && !retVal.inheritedParameters()) {
             retVal.interfaceUpdate(this);
         }
@@ -218,9 +236,9 @@ public class DispatchContext implements Serializable {
     public Set<String> getAllServiceNames() {
         Set<String> serviceNames = new TreeSet<>();
 
-        Map<String, ModelService> globalServices = modelServiceMapByModel.get(this.model);
+        ModelServiceIndex globalServices = modelServiceMapByModel.get(this.model);
         if (globalServices != null) {
-            serviceNames.addAll(globalServices.keySet());
+            serviceNames.addAll(globalServices.getServiceNames());
         }
         return serviceNames;
     }
@@ -230,16 +248,10 @@ public class DispatchContext implements Serializable {
         return model.toWSDL(locationURI);
     }
 
-    private Callable<Map<String, ModelService>> createServiceReaderCallable(final ResourceHandler handler) {
-        return () -> ModelServiceReader.getModelServiceMap(handler, DispatchContext.this.getDelegator());
-    }
-
-    private Map<String, ModelService> getGlobalServiceMap() {
-        Map<String, ModelService> serviceMap = modelServiceMapByModel.get(this.model);
-        if (serviceMap == null) {
-            serviceMap = new HashMap<>();
-
-            List<Future<Map<String, ModelService>>> futures = new LinkedList<>();
+    private ModelServiceIndex getGlobalServiceIndex() {
+        ModelServiceIndex serviceIndex = modelServiceMapByModel.get(this.model);
+        if (serviceIndex == null) {
+            List<ResourceHandler> handlers = new LinkedList<>();
             List<GlobalServices> globalServicesList = null;
             try {
                 globalServicesList = ServiceConfigUtil.getServiceEngine().getGlobalServices();
@@ -249,25 +261,43 @@ public class DispatchContext implements Serializable {
                 throw new RuntimeException(e.getMessage());
             }
             for (GlobalServices globalServices : globalServicesList) {
-                ResourceHandler handler = new MainResourceHandler(ServiceConfigUtil.getServiceEngineXmlFileName(), globalServices.getLoader(), globalServices.getLocation());
-                futures.add(ExecutionPool.GLOBAL_FORK_JOIN.submit(createServiceReaderCallable(handler)));
+                handlers.add(new MainResourceHandler(ServiceConfigUtil.getServiceEngineXmlFileName(), globalServices.getLoader(), globalServices.getLocation()));
             }
 
             // get all of the component resource model stuff, ie specified in each ofbiz-component.xml file
             for (ComponentConfig.ServiceResourceInfo componentResourceInfo: ComponentConfig.getAllServiceResourceInfos("model")) {
-                futures.add(ExecutionPool.GLOBAL_FORK_JOIN.submit(createServiceReaderCallable(componentResourceInfo.createResourceHandler())));
+                handlers.add(componentResourceInfo.createResourceHandler());
             }
-            for (Map<String, ModelService> servicesMap: ExecutionPool.getAllFutures(futures)) {
-                if (servicesMap != null) {
-                    serviceMap.putAll(servicesMap);
-                }
+            if (UtilProperties.getPropertyAsBoolean("service", "servicedef.lazy.load", false)) {
+                serviceIndex = ModelServiceIndex.index(handlers, this.getDelegator());
+            } else {
+                serviceIndex = ModelServiceIndex.load(handlers, this.getDelegator());
             }
 
-            Map<String, ModelService> cachedServiceMap = modelServiceMapByModel.putIfAbsentAndGet(this.model, serviceMap);
-            if (cachedServiceMap == serviceMap) { // same object: this means that the object created by this thread was actually added to the cache
+            ModelServiceIndex cachedServiceIndex = modelServiceMapByModel.putIfAbsentAndGet(this.model, serviceIndex);
+            if (cachedServiceIndex == serviceIndex) { // same object: this means that the object created by this thread was actually added to the cache
                 ServiceEcaUtil.reloadConfig();
+                if (serviceIndex.isLazy()) {
+                    warmUpServices();
+                }
+            }
+            serviceIndex = cachedServiceIndex;
+        }
+        return serviceIndex;
+    }
+
+    /** Loads the services listed in the servicedef.lazy.warmup property, so that their first calls do not parse them */
+    private void warmUpServices() {
+        String warmUpServices = UtilProperties.getPropertyValue("service", "servicedef.lazy.warmup");
+        if (UtilValidate.isEmpty(warmUpServices)) {
+            return;
+        }
+        for (String serviceName : StringUtil.split(warmUpServices, ", ")) {
+            try {
+                getModelService(serviceName);
+            } catch (GenericServiceException e) {
+                Debug.logWarning("Could not warm up service [" + serviceName + "]: " + e.getMessage(), module);
             }
         }
-        return serviceMap;
     }
 }
@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.service;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
+import org.apache.ofbiz.base.config.GenericConfigException;
+import org.apache.ofbiz.base.config.ResourceHandler;
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilTimer;
+import org.apache.ofbiz.entity.Delegator;
+
+/**
+ * The service definitions of an entity model, as used by {@link DispatchContext}.
+ * <p>
+ * In eager mode all the service definition resources are parsed when the index is created. In lazy mode
+ * the resources are only scanned for the names of their services, and a resource is parsed the first time
+ * one of its services is looked up; a service defined in several resources comes from the last one, as in
+ * eager mode.
+ */
+final class ModelServiceIndex {
+
+    public static final String module = ModelServiceIndex.class.getName();
+
+    private final Map<String, ModelService> modelServices = new ConcurrentHashMap<>();
+    private final Delegator delegator;
+    /** for each service name the resource it is read from; null in eager mode */
+    private final Map<String, ResourceHandler> serviceResources;
+    private final Map<ResourceHandler, Boolean> parsedResources = new ConcurrentHashMap<>();
+
+    private ModelServiceIndex(Delegator delegator, Map<String, ResourceHandler> serviceResources) {
+        this.delegator = delegator;
+        this.serviceResources = serviceResources;
+    }
+
+    /** Parses all of the resources, in parallel. */
+    static ModelServiceIndex load(List<ResourceHandler> handlers, Delegator delegator) {
+        ModelServiceIndex serviceIndex = new ModelServiceIndex(delegator, null);
+        List<Future<Map<String, ModelService>>> futures = new LinkedList<>();
+        for (ResourceHandler handler : handlers) {
+            futures.add(ExecutionPool.GLOBAL_FORK_JOIN.submit(createServiceReaderCallable(handler, delegator)));
+        }
+        for (Map<String, ModelService> servicesMap : ExecutionPool.getAllFutures(futures)) {
+            if (servicesMap != null) {
+                serviceIndex.modelServices.putAll(servicesMap);
+            }
+        }
+        return serviceIndex;
+    }
+
+    /** Only indexes the service names of the resources, in parallel; the definitions are parsed on first use. */
+    static ModelServiceIndex index(List<ResourceHandler> handlers, Delegator delegator) {
+        UtilTimer utilTimer = new UtilTimer();
+        List<Future<List<String>>> futures = new LinkedList<>();
+        for (ResourceHandler handler : handlers) {
+            futures.add(ExecutionPool.GLOBAL_FORK_JOIN.submit(createServiceNamesCallable(handler)));
+        }
+        // the futures are in resource order, so a later definition of a service replaces an earlier one
+        Map<String, ResourceHandler> serviceResources = new HashMap<>();
+        Iterator<ResourceHandler> handlerIter = handlers.iterator();
+        for (Future<List<String>> future : futures) {
+            ResourceHandler handler = handlerIter.next();
+            List<String> serviceNames = null;
+            try {
+                serviceNames = future.get();
+            } catch (ExecutionException | InterruptedException e) {
+                Debug.logError(e, "Error indexing service definitions from " + handler, module);
+            }
+            if (serviceNames != null) {
+                for (String serviceName : serviceNames) {
+                    serviceResources.put(serviceName, handler);
+                }
+            }
+        }
+        if (Debug.infoOn()) {
+            Debug.logInfo("Indexed [" + serviceResources.size() + "] services from [" + handlers.size() + "] resources in "
+                    + utilTimer.timeSinceStart() + "ms; definitions will be loaded on first use", module);
+        }
+        return new ModelServiceIndex(delegator, Collections.unmodifiableMap(serviceResources));
+    }
+
+    private static Callable<Map<String, ModelService>> createServiceReaderCallable(final ResourceHandler handler, final Delegator delegator) {
+        return () -> ModelServiceReader.getModelServiceMap(handler, delegator);
+    }
+
+    private static Callable<List<String>> createServiceNamesCallable(final ResourceHandler handler) {
+        return () -> {
+            try {
+                return ModelServiceReader.getServiceNames(handler);
+            } catch (GenericConfigException e) {
+                Debug.logError(e, "Error indexing service definitions from " + handler, module);
+                return null;
+            }
+        };
+    }
+
+    boolean isLazy() {
+        return serviceResources != null;
+    }
+
+    /** Returns the service definition, parsing its resource first in lazy mode; returns null if there is no such service. */
+    ModelService getModelService(String serviceName) {
+        ModelService modelService = modelServices.get(serviceName);
+        if (modelService == null && serviceResources != null) {
+            ResourceHandler handler = serviceResources.get(serviceName);
+            if (handler != null) {
+                // a resource is parsed only once, concurrent lookups of its services wait for it
+                parsedResources.computeIfAbsent(handler, this::parseResource);
+                modelService = modelServices.get(serviceName);
+            }
+        }
+        return modelService;
+    }
+
+    private Boolean parseResource(ResourceHandler handler) {
+        Map<String, ModelService> servicesMap = ModelServiceReader.getModelServiceMap(handler, delegator);
+        if (servicesMap != null) {
+            for (Map.Entry<String, ModelService> entry : servicesMap.entrySet()) {
+                // skip the services that are overridden by a definition in another resource
+                if (serviceResources.get(entry.getKey()) == handler) {
+                    modelServices.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        return Boolean.TRUE;
+    }
+
+    Set<String> getServiceNames() {
+        return serviceResources != null ? serviceResources.keySet() : modelServices.keySet();
+    }
+}
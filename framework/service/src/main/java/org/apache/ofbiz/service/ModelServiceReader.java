@@ -19,6 +19,7 @@
 package org.apache.ofbiz.service;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
 import java.net.URL;
 import java.util.HashMap;
@@ -29,6 +30,10 @@ import java.util.List;
 import java.util.Map;
 
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.apache.ofbiz.base.config.GenericConfigException;
 import org.apache.ofbiz.base.config.ResourceHandler;
@@ -79,6 +84,40 @@ public class ModelServiceReader implements Serializable {
         return reader.getModelServices();
     }
 
+    /**
+     * Returns the names of the services defined in the resource, in document order, without building them;
+     * the resource is only scanned with a streaming parser, which is much cheaper than reading the definitions.
+     */
+    public static List<String> getServiceNames(ResourceHandler handler) throws GenericConfigException {
+        List<String> serviceNames = new LinkedList<>();
+        XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        try (InputStream in = handler.getStream()) {
+            XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+            try {
+                int depth = 0;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        depth++;
+                        // only the service elements that are children of the document element define services
+                        if (depth == 2 && "service".equals(reader.getLocalName())) {
+                            serviceNames.add(UtilXml.checkEmpty(reader.getAttributeValue(null, "name")));
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        depth--;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException | XMLStreamException e) {
+            throw new GenericConfigException("Error scanning the service names of " + handler, e);
+        }
+        return serviceNames;
+    }
+
     private ModelServiceReader(boolean isFromURL, URL readerURL, ResourceHandler handler, Delegator delegator) {
         this.isFromURL = isFromURL;
         this.readerURL = readerURL;
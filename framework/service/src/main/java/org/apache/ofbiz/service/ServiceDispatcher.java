@@ -46,6 +46,7 @@ import org.apache.ofbiz.entity.transaction.TransactionUtil;
 import org.apache.ofbiz.security.Security;
 import org.apache.ofbiz.security.SecurityConfigurationException;
 import org.apache.ofbiz.security.SecurityFactory;
+import org.apache.ofbiz.service.ServicePhaseMetrics.ServicePhaseTimer;
 import org.apache.ofbiz.service.config.ServiceConfigUtil;
 import org.apache.ofbiz.service.config.model.StartupService;
 import org.apache.ofbiz.service.eca.ServiceEcaRule;
@@ -265,6 +266,16 @@ public class ServiceDispatcher {
      * @throws GenericServiceException
      */
     public Map<String, Object> runSync(String localName, ModelService modelService, Map<String, ? extends Object> params, boolean validateOut) throws ServiceAuthException, ServiceValidationException, GenericServiceException {
+        ServicePhaseTimer timer = ServicePhaseMetrics.getTimer(modelService.name);
+        long timerStartTime = timer.start();
+        try {
+            return runSync(localName, modelService, params, validateOut, timer);
+        } finally {
+            timer.stop(ServicePhaseMetrics.PHASE_TOTAL, timerStartTime);
+        }
+    }
+
+    private Map<String, Object> runSync(String localName, ModelService modelService, Map<String, ? extends Object> params, boolean validateOut, ServicePhaseTimer timer) throws ServiceAuthException, ServiceValidationException, GenericServiceException {
         long serviceStartTime = System.currentTimeMillis();
         Map<String, Object> result = new HashMap<>();
         ServiceSemaphore lock = null;
@@ -280,8 +291,13 @@ public class ServiceDispatcher {
         try {
             // check for semaphore and acquire a lock
             if ("wait".equals(modelService.semaphore) || "fail".equals(modelService.semaphore)) {
+                long semaphoreStartTime = timer.start();
                 lock = new ServiceSemaphore(delegator, modelService);
-                lock.acquire();
+                try {
+                    lock.acquire();
+                } finally {
+                    timer.stop(ServicePhaseMetrics.PHASE_SEMAPHORE, semaphoreStartTime);
+                }
             }
 
             if (Debug.verboseOn() || modelService.debug) {
@@ -352,15 +368,15 @@ public class ServiceDispatcher {
 
                     // setup global transaction ECA listeners to execute later
                     if (eventMap != null) {
-                        ServiceEcaUtil.evalRules(modelService.name, eventMap, "global-rollback", ctx, context, result, isError, isFailure);
+                        evalRules(timer, modelService.name, eventMap, "global-rollback", ctx, context, result, isError, isFailure);
                     }
                     if (eventMap != null) {
-                        ServiceEcaUtil.evalRules(modelService.name, eventMap, "global-commit", ctx, context, result, isError, isFailure);
+                        evalRules(timer, modelService.name, eventMap, "global-commit", ctx, context, result, isError, isFailure);
                     }
 
                     // pre-auth ECA
                     if (eventMap != null) {
-                        ServiceEcaUtil.evalRules(modelService.name, eventMap, "auth", ctx, context, result, isError, isFailure);
+                        evalRules(timer, modelService.name, eventMap, "auth", ctx, context, result, isError, isFailure);
                     }
 
                     // check for pre-auth failure/errors
@@ -382,7 +398,7 @@ public class ServiceDispatcher {
 
                     // pre-validate ECA
                     if (eventMap != null) {
-                        ServiceEcaUtil.evalRules(modelService.name, eventMap, "in-validate", ctx, context, result, isError, isFailure);
+                        evalRules(timer, modelService.name, eventMap, "in-validate", ctx, context, result, isError, isFailure);
                     }
 
                     // check for pre-validate failure/errors
@@ -391,18 +407,21 @@ public class ServiceDispatcher {
 
                     // validate the context
                     if (modelService.validate && !isError && !isFailure) {
+                        long validateStartTime = timer.start();
                         try {
                             modelService.validate(context, ModelService.IN_PARAM, locale);
                         } catch (ServiceValidationException e) {
                             Debug.logError(e, "Incoming context (in runSync : " + modelService.name + ") does not match expected requirements", module);
                             rs.setEndStamp();
                             throw e;
+                        } finally {
+                            timer.stop(ServicePhaseMetrics.PHASE_VALIDATE_IN, validateStartTime);
                         }
                     }
 
                     // pre-invoke ECA
                     if (eventMap != null) {
-                        ServiceEcaUtil.evalRules(modelService.name, eventMap, "invoke", ctx, context, result, isError, isFailure);
+                        evalRules(timer, modelService.name, eventMap, "invoke", ctx, context, result, isError, isFailure);
                     }
 
                     // check for pre-invoke failure/errors
@@ -412,7 +431,12 @@ public class ServiceDispatcher {
                     // ===== invoke the service =====
                     if (!isError && !isFailure) {
                         Map<String, Object> invokeResult = null;
-                        invokeResult = engine.runSync(localName, modelService, context);
+                        long invokeStartTime = timer.start();
+                        try {
+                            invokeResult = engine.runSync(localName, modelService, context);
+                        } finally {
+                            timer.stop(ServicePhaseMetrics.PHASE_INVOKE, invokeStartTime);
+                        }
                         engine.sendCallbacks(modelService, context, invokeResult, GenericEngine.SYNC_MODE);
                         if (invokeResult != null) {
                             result.putAll(invokeResult);
@@ -499,19 +523,22 @@ public class ServiceDispatcher {
                 if (modelService.validate && validateOut) {
                     // pre-out-validate ECA
                     if (eventMap != null) {
-                        ServiceEcaUtil.evalRules(modelService.name, eventMap, "out-validate", ctx, ecaContext, result, isError, isFailure);
+                        evalRules(timer, modelService.name, eventMap, "out-validate", ctx, ecaContext, result, isError, isFailure);
                     }
+                    long validateStartTime = timer.start();
                     try {
                         modelService.validate(result, ModelService.OUT_PARAM, locale);
                     } catch (ServiceValidationException e) {
                         rs.setEndStamp();
                         throw new GenericServiceException("Outgoing result (in runSync : " + modelService.name + ") does not match expected requirements", e);
+                    } finally {
+                        timer.stop(ServicePhaseMetrics.PHASE_VALIDATE_OUT, validateStartTime);
                     }
                 }
 
                 // pre-commit ECA
                 if (eventMap != null) {
-                    ServiceEcaUtil.evalRules(modelService.name, eventMap, "commit", ctx, ecaContext, result, isError, isFailure);
+                    evalRules(timer, modelService.name, eventMap, "commit", ctx, ecaContext, result, isError, isFailure);
                 }
 
                 // check for pre-commit failure/errors
@@ -520,7 +547,7 @@ public class ServiceDispatcher {
 
                 // global-commit-post-run ECA, like global-commit but gets the context after the service is run
                 if (eventMap != null) {
-                    ServiceEcaUtil.evalRules(modelService.name, eventMap, "global-commit-post-run", ctx, ecaContext, result, isError, isFailure);
+                    evalRules(timer, modelService.name, eventMap, "global-commit-post-run", ctx, ecaContext, result, isError, isFailure);
                 }
 
                 // check for failure and log on info level; this is used for debugging
@@ -562,6 +589,7 @@ public class ServiceDispatcher {
                     }
                 } else {
                     // commit the transaction
+                    long commitStartTime = timer.start();
                     try {
                         TransactionUtil.commit(beganTrans);
                     } catch (GenericTransactionException e) {
@@ -573,6 +601,8 @@ public class ServiceDispatcher {
                         }
                         rs.setEndStamp();
                         throw new GenericServiceException(errMsg);
+                    } finally {
+                        timer.stop(ServicePhaseMetrics.PHASE_COMMIT, commitStartTime);
                     }
                 }
 
@@ -610,7 +640,7 @@ public class ServiceDispatcher {
 
         // pre-return ECA
         if (eventMap != null) {
-            ServiceEcaUtil.evalRules(modelService.name, eventMap, "return", ctx, ecaContext, result, isError, isFailure);
+            evalRules(timer, modelService.name, eventMap, "return", ctx, ecaContext, result, isError, isFailure);
         }
 
         rs.setEndStamp();
@@ -653,6 +683,7 @@ public class ServiceDispatcher {
         if (Debug.timingOn()) {
             UtilTimer.timerLog(localName + " / " + service.name, "ASync service started...", module);
         }
+        ServicePhaseTimer timer = ServicePhaseMetrics.getTimer(service.name);
         if (Debug.verboseOn() || service.debug) {
             if (Debug.verboseOn()) Debug.logVerbose("[ServiceDispatcher.runAsync] : preparing service " + service.name + " [" + service.location + "/" + service.invoke +
                 "] (" + service.engineName + ")", module);
@@ -711,7 +742,7 @@ public class ServiceDispatcher {
 
                 // pre-auth ECA
                 if (eventMap != null) {
-                    ServiceEcaUtil.evalRules(service.name, eventMap, "auth", ctx, context, result, isError, isFailure);
+                    evalRules(timer, service.name, eventMap, "auth", ctx, context, result, isError, isFailure);
                 }
 
                 context = checkAuth(localName, context, service);
@@ -723,7 +754,7 @@ public class ServiceDispatcher {
 
                 // pre-validate ECA
                 if (eventMap != null) {
-                    ServiceEcaUtil.evalRules(service.name, eventMap, "in-validate", ctx, context, result, isError, isFailure);
+                    evalRules(timer, service.name, eventMap, "in-validate", ctx, context, result, isError, isFailure);
                 }
 
                 // check for pre-validate failure/errors
@@ -732,20 +763,28 @@ public class ServiceDispatcher {
 
                 // validate the context
                 if (service.validate && !isError && !isFailure) {
+                    long validateStartTime = timer.start();
                     try {
                         service.validate(context, ModelService.IN_PARAM, locale);
                     } catch (ServiceValidationException e) {
                         Debug.logError(e, "Incoming service context (in runAsync: " + service.name + ") does not match expected requirements", module);
                         throw e;
+                    } finally {
+                        timer.stop(ServicePhaseMetrics.PHASE_VALIDATE_IN, validateStartTime);
                     }
                 }
 
                 // run the service
                 if (!isError && !isFailure) {
-                    if (requester != null) {
-                        engine.runAsync(localName, service, context, requester, persist);
-                    } else {
-                        engine.runAsync(localName, service, context, persist);
+                    long invokeStartTime = timer.start();
+                    try {
+                        if (requester != null) {
+                            engine.runAsync(localName, service, context, requester, persist);
+                        } else {
+                            engine.runAsync(localName, service, context, persist);
+                        }
+                    } finally {
+                        timer.stop(ServicePhaseMetrics.PHASE_INVOKE, invokeStartTime);
                     }
                     engine.sendCallbacks(service, context, GenericEngine.ASYNC_MODE);
                 }
@@ -776,11 +815,14 @@ public class ServiceDispatcher {
                 }
             } finally {
                 // always try to commit the transaction since we don't know in this case if its was an error or not
+                long commitStartTime = timer.start();
                 try {
                     TransactionUtil.commit(beganTrans);
                 } catch (GenericTransactionException e) {
                     Debug.logError(e, "Could not commit transaction", module);
                     throw new GenericServiceException("Commit transaction failed");
+                } finally {
+                    timer.stop(ServicePhaseMetrics.PHASE_COMMIT, commitStartTime);
                 }
             }
         } catch (GenericTransactionException se) {
@@ -1053,6 +1095,17 @@ public class ServiceDispatcher {
         return servicesScheduled;
     }
 
+    // Evaluates the ECA rules of a service event and records the time spent in the service phase timings
+    private static void evalRules(ServicePhaseTimer timer, String serviceName, Map<String, List<ServiceEcaRule>> eventMap, String event, DispatchContext dctx,
+            Map<String, Object> context, Map<String, Object> result, boolean isError, boolean isFailure) throws GenericServiceException {
+        long startTime = timer.start();
+        try {
+            ServiceEcaUtil.evalRules(serviceName, eventMap, event, dctx, context, result, isError, isFailure);
+        } finally {
+            timer.stopEca(event, startTime);
+        }
+    }
+
     private RunningService logService(String localName, ModelService modelService, int mode) {
         // set up the running service log
         RunningService rs = new RunningService(localName, modelService, mode);
@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.service;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.ofbiz.base.lang.ThreadSafe;
+import org.apache.ofbiz.base.metrics.LatencyHistogram;
+import org.apache.ofbiz.base.util.UtilProperties;
+
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+
+/**
+ * Per-service phase timings. When enabled with the <code>service.phase.metrics.enabled</code>
+ * property in service.properties, {@link ServiceDispatcher} records how long each service call
+ * spends in each phase - semaphore acquisition, ECA evaluation per event, parameter validation,
+ * engine invocation and transaction commit - in a {@link LatencyHistogram} per service and phase.
+ * Values are in microseconds. A phase is recorded whether it completes or fails.
+ * <p>Each phase histogram takes about 2.5 KB per window, so timings are only kept for the
+ * <code>service.phase.metrics.max.services</code> most recently called services.</p>
+ * <p>When disabled, {@link #getTimer(String)} returns a timer that does nothing and
+ * does not read the clock.</p>
+ */
+@ThreadSafe
+public final class ServicePhaseMetrics {
+
+    public static final String PHASE_SEMAPHORE = "semaphore";
+    public static final String PHASE_VALIDATE_IN = "validate-in";
+    public static final String PHASE_INVOKE = "invoke";
+    public static final String PHASE_VALIDATE_OUT = "validate-out";
+    public static final String PHASE_COMMIT = "commit";
+    public static final String PHASE_TOTAL = "total";
+    /** Prefix of the ECA phases, followed by the ECA event name. */
+    public static final String PHASE_ECA_PREFIX = "eca:";
+
+    private static final boolean enabled = UtilProperties.propertyValueEqualsIgnoreCase("service", "service.phase.metrics.enabled", "true");
+    private static final Registry registry = new Registry(UtilProperties.getPropertyAsInteger("service", "service.phase.metrics.max.services", 100),
+            UtilProperties.getPropertyAsInteger("serverstats", "metrics.histogram.window.count", 6),
+            UtilProperties.getPropertyAsLong("serverstats", "metrics.histogram.window.time", 10000));
+    private static final ServicePhaseTimer disabledTimer = new ServicePhaseTimer();
+
+    private ServicePhaseMetrics() {}
+
+    /** Returns <code>true</code> if phase timings are recorded. */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Returns the phase timer of the service <code>serviceName</code>. */
+    public static ServicePhaseTimer getTimer(String serviceName) {
+        if (!enabled) {
+            return disabledTimer;
+        }
+        return registry.getTimer(serviceName);
+    }
+
+    /** Returns the names of the services that have recorded timings, sorted by name. */
+    public static Set<String> getServiceNames() {
+        return registry.getServiceNames();
+    }
+
+    /**
+     * Returns the timings of the service <code>serviceName</code> during the sliding window,
+     * keyed by phase name. Returns an empty map if the service has not recorded timings.
+     */
+    public static Map<String, LatencyHistogram.Snapshot> getPhaseSnapshots(String serviceName) {
+        return registry.getPhaseSnapshots(serviceName);
+    }
+
+    /** Clears all recorded timings. */
+    public static void reset() {
+        registry.reset();
+    }
+
+    /** The phase timers, bounded to the most recently used services. */
+    @ThreadSafe
+    static final class Registry {
+        private final ConcurrentMap<String, ServicePhaseTimer> timers;
+        private final int windowCount;
+        private final long windowTime;
+
+        Registry(int maxServices, int windowCount, long windowTime) {
+            this.timers = new ConcurrentLinkedHashMap.Builder<String, ServicePhaseTimer>().maximumWeightedCapacity(maxServices).build();
+            this.windowCount = windowCount;
+            this.windowTime = windowTime;
+        }
+
+        ServicePhaseTimer getTimer(String serviceName) {
+            ServicePhaseTimer timer = timers.get(serviceName);
+            if (timer == null) {
+                ServicePhaseTimer newTimer = new ServicePhaseTimer(serviceName, windowCount, windowTime);
+                timer = timers.putIfAbsent(serviceName, newTimer);
+                if (timer == null) {
+                    timer = newTimer;
+                }
+            }
+            return timer;
+        }
+
+        Set<String> getServiceNames() {
+            return Collections.unmodifiableSet(new TreeMap<>(timers).keySet());
+        }
+
+        Map<String, LatencyHistogram.Snapshot> getPhaseSnapshots(String serviceName) {
+            ServicePhaseTimer timer = timers.get(serviceName);
+            if (timer == null) {
+                return Collections.emptyMap();
+            }
+            Map<String, LatencyHistogram.Snapshot> snapshots = new TreeMap<>();
+            for (Map.Entry<String, LatencyHistogram> entry : timer.histograms.entrySet()) {
+                snapshots.put(entry.getKey(), entry.getValue().getSnapshot());
+            }
+            return snapshots;
+        }
+
+        void reset() {
+            timers.clear();
+        }
+    }
+
+    /**
+     * Records the phase timings of one service.
+     * <p>Usage: <code>long startTime = timer.start(); ...; timer.stop(phase, startTime);</code></p>
+     */
+    @ThreadSafe
+    public static final class ServicePhaseTimer {
+        private final String serviceName;
+        private final ConcurrentHashMap<String, LatencyHistogram> histograms;
+        private final int windowCount;
+        private final long windowTime;
+
+        private ServicePhaseTimer() {
+            this.serviceName = null;
+            this.histograms = null;
+            this.windowCount = 0;
+            this.windowTime = 0;
+        }
+
+        private ServicePhaseTimer(String serviceName, int windowCount, long windowTime) {
+            this.serviceName = serviceName;
+            this.histograms = new ConcurrentHashMap<>();
+            this.windowCount = windowCount;
+            this.windowTime = windowTime;
+        }
+
+        public String getServiceName() {
+            return serviceName;
+        }
+
+        /** Returns the start time of a phase, or zero if timings are disabled. */
+        public long start() {
+            return histograms == null ? 0 : System.nanoTime();
+        }
+
+        /** Records the phase <code>phase</code> that started at <code>startTime</code>. */
+        public void stop(String phase, long startTime) {
+            if (histograms == null) {
+                return;
+            }
+            long elapsed = (System.nanoTime() - startTime) / 1000;
+            LatencyHistogram histogram = histograms.get(phase);
+            if (histogram == null) {
+                histogram = new LatencyHistogram(windowCount, windowTime);
+                histograms.putIfAbsent(phase, histogram);
+                histogram = histograms.get(phase);
+            }
+            histogram.record(elapsed, 1);
+        }
+
+        /** Records the ECA evaluation of the event <code>event</code> that started at <code>startTime</code>. */
+        public void stopEca(String event, long startTime) {
+            if (histograms == null) {
+                return;
+            }
+            stop(PHASE_ECA_PREFIX + event, startTime);
+        }
+    }
+}
@@ -36,7 +36,10 @@ public final class ThreadPool {
 
     private static final String module = ThreadPool.class.getName();
 
+    public static final String CLAIM_STRATEGY = "batch";
+    public static final String EXECUTOR_MODE = "platform";
     public static final int FAILED_RETRY_MIN = 30;
+    public static final int MAX_CONCURRENT_JOBS = 100;
     public static final int MIN_THREADS = 1; // Must be no less than one or the executor will shut down.
     public static final int MAX_THREADS = Runtime.getRuntime().availableProcessors() + 1; // See https://stackoverflow.com/questions/13834692/threads-configuration-based-on-no-of-cpu-cores for more
     public static final int POLL_WAIT = 30000; // Database polling interval - 30 seconds.
@@ -44,8 +47,11 @@ public final class ThreadPool {
     public static final int QUEUE_SIZE = 100;
     public static final int THREAD_TTL = 120000; // Idle thread lifespan - 2 minutes.
 
+    private final String claimStrategy;
+    private final String executorMode;
     private final int failedRetryMin;
     private final int jobs;
+    private final int maxConcurrentJobs;
     private final int maxThreads;
     private final int minThreads;
     private final int pollDbMillis;
@@ -54,6 +60,7 @@ public final class ThreadPool {
     private final List<RunFromPool> runFromPools;
     private final String sendToPool;
     private final int ttl;
+    private final boolean wakeOnSchedule;
 
     ThreadPool(Element poolElement) throws ServiceConfigException, NumberFormatException {
         String sendToPool = poolElement.getAttribute("send-to-pool").intern();
@@ -144,7 +151,36 @@ public final class ThreadPool {
                 throw new ServiceConfigException("<thread-pool> element max-threads attribute value is invalid");
             }
         }
+        String executorMode = poolElement.getAttribute("executor-mode").intern();
+        if (executorMode.isEmpty()) {
+            this.executorMode = EXECUTOR_MODE;
+        } else if ("platform".equals(executorMode) || "virtual".equals(executorMode)) {
+            this.executorMode = executorMode;
+        } else {
+            throw new ServiceConfigException("<thread-pool> element executor-mode attribute value is invalid");
+        }
+        String maxConcurrentJobs = poolElement.getAttribute("max-concurrent-jobs").intern();
+        if (maxConcurrentJobs.isEmpty()) {
+            this.maxConcurrentJobs = MAX_CONCURRENT_JOBS;
+        } else {
+            try {
+                this.maxConcurrentJobs = Integer.parseInt(maxConcurrentJobs);
+                if (this.maxConcurrentJobs < 1) {
+                    throw new ServiceConfigException("<thread-pool> element max-concurrent-jobs attribute value is invalid");
+                }
+            } catch (NumberFormatException | ServiceConfigException e) {
+                Debug.logError(e, module);
+                throw new ServiceConfigException("<thread-pool> element max-concurrent-jobs attribute value is invalid");
+            }
+        }
         this.pollEnabled = !"false".equals(poolElement.getAttribute("poll-enabled"));
+        this.wakeOnSchedule = !"false".equals(poolElement.getAttribute("wake-on-schedule"));
+        String claimStrategy = poolElement.getAttribute("claim-strategy").intern();
+        if (claimStrategy.isEmpty()) {
+            this.claimStrategy = CLAIM_STRATEGY;
+        } else {
+            this.claimStrategy = claimStrategy;
+        }
         String pollDbMillis = poolElement.getAttribute("poll-db-millis").intern();
         if (pollDbMillis.isEmpty()) {
             this.pollDbMillis = POLL_WAIT;
@@ -171,6 +207,14 @@ public final class ThreadPool {
         }
     }
 
+    public String getClaimStrategy() {
+        return claimStrategy;
+    }
+
+    public String getExecutorMode() {
+        return executorMode;
+    }
+
     public int getFailedRetryMin() {
         return failedRetryMin;
     }
@@ -179,6 +223,10 @@ public final class ThreadPool {
         return jobs;
     }
 
+    public int getMaxConcurrentJobs() {
+        return maxConcurrentJobs;
+    }
+
     public int getMaxThreads() {
         return maxThreads;
     }
@@ -210,4 +258,8 @@ public final class ThreadPool {
     public int getTtl() {
         return ttl;
     }
+
+    public boolean getWakeOnSchedule() {
+        return wakeOnSchedule;
+    }
 }
@@ -131,6 +131,10 @@ public abstract class GenericAsyncEngine extends AbstractEngine {
             }
 
             Debug.logInfo("Persisted job queued : " + jobV.getString("jobName"), module);
+            JobManager jMgr = dispatcher.getJobManager();
+            if (jMgr != null) {
+                jMgr.jobScheduled(jobV);
+            }
         } else {
             JobManager jMgr = dispatcher.getJobManager();
             if (jMgr != null) {
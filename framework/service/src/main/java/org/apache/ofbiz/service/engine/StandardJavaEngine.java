@@ -18,10 +18,13 @@
  */
 package org.apache.ofbiz.service.engine;
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.UtilGenerics;
@@ -37,6 +40,12 @@ public final class StandardJavaEngine extends GenericAsyncEngine {
 
     public static final String module = StandardJavaEngine.class.getName();
 
+    private static final MethodType STATIC_SERVICE_TYPE = MethodType.methodType(Object.class, DispatchContext.class, Map.class);
+    private static final MethodType INSTANCE_SERVICE_TYPE = MethodType.methodType(Object.class, Object.class, DispatchContext.class, Map.class);
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+    /** The resolved service methods, by location and invoke: the dispatcher runs copies of the ModelService instances */
+    private static final Map<String, ServiceInvoker> serviceInvokers = new ConcurrentHashMap<>();
+
     public StandardJavaEngine(ServiceDispatcher dispatcher) {
         super(dispatcher);
     }
@@ -62,6 +71,22 @@ public final class StandardJavaEngine extends GenericAsyncEngine {
         return UtilGenerics.checkMap(result);
     }
 
+    /**
+     * Clears the resolved service methods; called when the service definitions are reloaded, since the service
+     * classes may have been reloaded too.
+     */
+    public static void clearServiceInvokers() {
+        serviceInvokers.clear();
+    }
+
+    /**
+     * Returns the number of resolved service methods.
+     * @return the number of service methods in the cache
+     */
+    public static int getServiceInvokerCount() {
+        return serviceInvokers.size();
+    }
+
     // Invoke the static java method service.
     private Object serviceInvoker(String localName, ModelService modelService, Map<String, Object> context) throws GenericServiceException {
         // static java service methods should be: public Map<String, Object> methodName(DispatchContext dctx, Map<String, Object> context)
@@ -77,8 +102,6 @@ public final class StandardJavaEngine extends GenericAsyncEngine {
             Debug.logError("ERROR: Null Service Context.", module);
         }
 
-        Object result = null;
-
         // check the package and method names
         if (modelService.location == null || modelService.invoke == null) {
             throw new GenericServiceException("Service [" + modelService.name + "] is missing location and/or invoke values which are required for execution.");
@@ -93,14 +116,25 @@ public final class StandardJavaEngine extends GenericAsyncEngine {
             cl = dctx.getClassLoader();
         }
 
+        String invokerKey = this.getLocation(modelService) + "#" + modelService.invoke;
+        ServiceInvoker invoker = serviceInvokers.get(invokerKey);
+        if (invoker == null || invoker.classLoader != cl) {
+            invoker = createServiceInvoker(modelService, cl);
+            serviceInvokers.put(invokerKey, invoker);
+        }
+        return invoker.invoke(modelService, dctx, context);
+    }
+
+    private ServiceInvoker createServiceInvoker(ModelService modelService, ClassLoader cl) throws GenericServiceException {
         try {
             Class<?> c = cl.loadClass(this.getLocation(modelService));
             Method m = c.getMethod(modelService.invoke, DispatchContext.class, Map.class);
+            MethodHandle methodHandle = MethodHandles.lookup().unreflect(m);
             if (Modifier.isStatic(m.getModifiers())) {
-                result = m.invoke(null, dctx, context);
-            } else {
-                result = m.invoke(c.getDeclaredConstructor().newInstance(), dctx, context);
+                return new ServiceInvoker(cl, methodHandle.asType(STATIC_SERVICE_TYPE), null);
             }
+            MethodHandle constructorHandle = MethodHandles.lookup().unreflectConstructor(c.getDeclaredConstructor());
+            return new ServiceInvoker(cl, methodHandle.asType(INSTANCE_SERVICE_TYPE), constructorHandle.asType(CONSTRUCTOR_TYPE));
         } catch (ClassNotFoundException cnfe) {
             throw new GenericServiceException("Cannot find service [" + modelService.name + "] location class", cnfe);
         } catch (NoSuchMethodException nsme) {
@@ -109,19 +143,39 @@ public final class StandardJavaEngine extends GenericAsyncEngine {
             throw new GenericServiceException("Service [" + modelService.name + "] Access denied", se);
         } catch (IllegalAccessException iae) {
             throw new GenericServiceException("Service [" + modelService.name + "] Method not accessible", iae);
-        } catch (IllegalArgumentException iarge) {
-            throw new GenericServiceException("Service [" + modelService.name + "] Invalid parameter match", iarge);
-        } catch (InvocationTargetException ite) {
-            throw new GenericServiceException("Service [" + modelService.name + "] target threw an unexpected exception", ite.getTargetException());
-        } catch (NullPointerException npe) {
-            throw new GenericServiceException("Service [" + modelService.name + "] ran into an unexpected null object", npe);
         } catch (ExceptionInInitializerError eie) {
             throw new GenericServiceException("Service [" + modelService.name + "] Initialization failed", eie);
         } catch (Throwable th) {
             throw new GenericServiceException("Service [" + modelService.name + "] Error or unknown exception", th);
         }
+    }
+
+    /** The resolved method of a service, with the constructor to call for a non static method */
+    private static final class ServiceInvoker {
+        private final ClassLoader classLoader;
+        private final MethodHandle serviceHandle;
+        private final MethodHandle constructorHandle;
+
+        private ServiceInvoker(ClassLoader classLoader, MethodHandle serviceHandle, MethodHandle constructorHandle) {
+            this.classLoader = classLoader;
+            this.serviceHandle = serviceHandle;
+            this.constructorHandle = constructorHandle;
+        }
 
-        return result;
+        private Object invoke(ModelService modelService, DispatchContext dctx, Map<String, Object> context) throws GenericServiceException {
+            try {
+                if (constructorHandle == null) {
+                    return (Object) serviceHandle.invokeExact(dctx, context);
+                }
+                // a new instance for each call, as non static service methods have always been run
+                Object instance = (Object) constructorHandle.invokeExact();
+                return (Object) serviceHandle.invokeExact(instance, dctx, context);
+            } catch (ExceptionInInitializerError eie) {
+                throw new GenericServiceException("Service [" + modelService.name + "] Initialization failed", eie);
+            } catch (Throwable th) {
+                // the method handle does not wrap the exceptions thrown by the service itself
+                throw new GenericServiceException("Service [" + modelService.name + "] target threw an unexpected exception", th);
+            }
+        }
     }
 }
-
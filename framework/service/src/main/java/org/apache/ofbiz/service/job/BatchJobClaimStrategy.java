@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.service.job;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+
+/**
+ * Claims jobs in one statement. Up to <code>limit</code> candidate IDs are selected,
+ * then all of them are claimed with a single
+ * <code>UPDATE ... WHERE jobId IN (...) AND runByInstanceId IS NULL</code> statement.
+ * Candidates that another instance claimed in between are simply not updated - the
+ * claimed rows are read back by <code>runByInstanceId</code>.
+ * <p>This strategy works on every supported database.</p>
+ */
+public final class BatchJobClaimStrategy implements JobClaimStrategy {
+
+    @Override
+    public List<GenericValue> claim(Delegator delegator, EntityCondition condition, int limit, JobClaimStatistics statistics) throws GenericEntityException {
+        List<GenericValue> candidates = EntityQuery.use(delegator).select("jobId").from("JobSandbox").where(condition).orderBy("runTime").maxRows(limit).queryList();
+        if (candidates.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> jobIds = new ArrayList<>(Math.min(candidates.size(), limit));
+        for (GenericValue candidate : candidates) {
+            jobIds.add(candidate.getString("jobId"));
+            if (jobIds.size() == limit) {
+                break;
+            }
+        }
+        return claimJobIds(delegator, jobIds, statistics);
+    }
+
+    /**
+     * Claims the specified jobs and returns the ones this instance now owns.
+     */
+    static List<GenericValue> claimJobIds(Delegator delegator, List<String> jobIds, JobClaimStatistics statistics) throws GenericEntityException {
+        EntityCondition updateCondition = EntityCondition.makeCondition(UtilMisc.toList(
+                EntityCondition.makeCondition("jobId", EntityOperator.IN, jobIds),
+                EntityCondition.makeCondition("runByInstanceId", EntityOperator.EQUALS, null)));
+        int rowsUpdated = delegator.storeByCondition("JobSandbox", UtilMisc.toMap("runByInstanceId", JobManager.instanceId), updateCondition);
+        if (rowsUpdated < jobIds.size()) {
+            statistics.recordContention(jobIds.size() - rowsUpdated);
+        }
+        if (rowsUpdated == 0) {
+            return Collections.emptyList();
+        }
+        EntityCondition claimedCondition = EntityCondition.makeCondition(UtilMisc.toList(
+                EntityCondition.makeCondition("jobId", EntityOperator.IN, jobIds),
+                EntityCondition.makeCondition("runByInstanceId", EntityOperator.EQUALS, JobManager.instanceId),
+                EntityCondition.makeCondition("startDateTime", EntityOperator.EQUALS, null)));
+        return EntityQuery.use(delegator).from("JobSandbox").where(claimedCondition).orderBy("runTime").queryList();
+    }
+}
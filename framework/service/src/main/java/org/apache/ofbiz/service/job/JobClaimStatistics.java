@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.service.job;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ofbiz.base.lang.ThreadSafe;
+import org.apache.ofbiz.base.metrics.Metrics;
+import org.apache.ofbiz.base.metrics.MetricsFactory;
+import org.apache.ofbiz.base.util.UtilProperties;
+
+/**
+ * Job claim statistics. Tracks how long it takes to claim jobs from the
+ * <code>JobSandbox</code> entity and how many candidate jobs were lost to
+ * other instances (contention).
+ */
+@ThreadSafe
+public final class JobClaimStatistics {
+
+    private final Metrics claimLatency;
+    private final AtomicLong claimAttempts = new AtomicLong();
+    private final AtomicLong claimFailures = new AtomicLong();
+    private final AtomicLong claimedJobs = new AtomicLong();
+    private final AtomicLong contendedJobs = new AtomicLong();
+
+    JobClaimStatistics(String metricsName) {
+        this.claimLatency = MetricsFactory.getInstance(metricsName,
+                UtilProperties.getPropertyAsInteger("serverstats", "metrics.estimation.size", 100),
+                UtilProperties.getPropertyAsLong("serverstats", "metrics.estimation.time", 1000),
+                UtilProperties.getPropertyNumber("serverstats", "metrics.smoothing.factor", 0.7), 0.0);
+    }
+
+    /** Records a completed claim attempt that claimed <code>claimed</code> jobs in <code>time</code> milliseconds. */
+    void recordClaim(int claimed, long time) {
+        claimAttempts.incrementAndGet();
+        claimedJobs.addAndGet(claimed);
+        claimLatency.recordServiceRate(1, time);
+    }
+
+    /** Records a claim attempt that failed with an exception. */
+    void recordFailure() {
+        claimAttempts.incrementAndGet();
+        claimFailures.incrementAndGet();
+    }
+
+    /** Records <code>count</code> candidate jobs that were claimed by another instance first. */
+    public void recordContention(int count) {
+        contendedJobs.addAndGet(count);
+    }
+
+    /** Returns a moving average of the claim latency in milliseconds. */
+    public double getAverageClaimTime() {
+        return claimLatency.getServiceRate();
+    }
+
+    public long getClaimAttempts() {
+        return claimAttempts.get();
+    }
+
+    public long getClaimFailures() {
+        return claimFailures.get();
+    }
+
+    public long getClaimedJobs() {
+        return claimedJobs.get();
+    }
+
+    public long getContendedJobs() {
+        return contendedJobs.get();
+    }
+
+    /**
+     * Returns a <code>Map</code> containing the statistics, suitable for the
+     * {@link JobPoller#getPoolState()} map.
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("claimAttempts", getClaimAttempts());
+        result.put("claimFailures", getClaimFailures());
+        result.put("claimedJobs", getClaimedJobs());
+        result.put("contendedJobs", getContendedJobs());
+        result.put("averageClaimTimeInMillis", getAverageClaimTime());
+        return result;
+    }
+}
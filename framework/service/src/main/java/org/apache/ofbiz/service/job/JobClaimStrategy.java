@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.service.job;
+
+import java.util.List;
+
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+
+/**
+ * Reserves due <code>JobSandbox</code> rows for this OFBiz instance. A claimed row has
+ * its <code>runByInstanceId</code> field set to {@link JobManager#instanceId}, so other
+ * instances polling the same table will not run it.
+ * <p>The strategy is selected with the <code>claim-strategy</code> attribute of the
+ * <code>&lt;thread-pool&gt;</code> element. Implementations must be thread-safe and
+ * have a public no-argument constructor.</p>
+ */
+public interface JobClaimStrategy {
+
+    /**
+     * Claims up to <code>limit</code> jobs matching <code>condition</code>, earliest
+     * <code>runTime</code> first, and returns the claimed <code>JobSandbox</code> values.
+     * This method is called by the {@link JobPoller} polling thread inside a transaction.
+     * Rows that were selected but claimed by another instance first should be reported
+     * with {@link JobClaimStatistics#recordContention(int)}.
+     */
+    List<GenericValue> claim(Delegator delegator, EntityCondition condition, int limit, JobClaimStatistics statistics) throws GenericEntityException;
+}
@@ -28,6 +28,9 @@ import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.RejectedExecutionException;
 
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
 import org.apache.ofbiz.base.config.GenericConfigException;
 import org.apache.ofbiz.base.util.Assert;
 import org.apache.ofbiz.base.util.Debug;
@@ -44,6 +47,7 @@ import org.apache.ofbiz.entity.condition.EntityJoinOperator;
 import org.apache.ofbiz.entity.condition.EntityOperator;
 import org.apache.ofbiz.entity.serialize.SerializeException;
 import org.apache.ofbiz.entity.serialize.XmlSerializer;
+import org.apache.ofbiz.entity.transaction.GenericTransactionException;
 import org.apache.ofbiz.entity.transaction.TransactionUtil;
 import org.apache.ofbiz.entity.util.EntityListIterator;
 import org.apache.ofbiz.entity.util.EntityQuery;
@@ -54,6 +58,7 @@ import org.apache.ofbiz.service.calendar.RecurrenceInfo;
 import org.apache.ofbiz.service.calendar.RecurrenceInfoException;
 import org.apache.ofbiz.service.config.ServiceConfigUtil;
 import org.apache.ofbiz.service.config.model.RunFromPool;
+import org.apache.ofbiz.service.config.model.ThreadPool;
 
 import com.ibm.icu.util.Calendar;
 
@@ -72,6 +77,8 @@ public final class JobManager {
     public static final String module = JobManager.class.getName();
     public static final String instanceId = UtilProperties.getPropertyValue("general", "unique.instanceId", "ofbiz0");
     private static final ConcurrentHashMap<String, JobManager> registeredManagers = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, JobClaimStrategy> claimStrategies = new ConcurrentHashMap<>();
+    private static final JobClaimStatistics claimStatistics = new JobClaimStatistics("JobManager.claim");
     private static boolean isShutDown = false;
 
     private static void assertIsRunning() {
@@ -101,6 +108,13 @@ public final class JobManager {
         return jm;
     }
 
+    /**
+     * Returns the statistics of all JobSandbox claim attempts made by this instance.
+     */
+    public static JobClaimStatistics getClaimStatistics() {
+        return claimStatistics;
+    }
+
     /**
      * Shuts down all job managers. This method is called when OFBiz shuts down.
      */
@@ -167,6 +181,30 @@ public final class JobManager {
         return readPools;
     }
 
+    private static JobClaimStrategy getClaimStrategy() throws GenericConfigException {
+        String claimStrategyName = ServiceConfigUtil.getServiceEngine().getThreadPool().getClaimStrategy();
+        JobClaimStrategy claimStrategy = claimStrategies.get(claimStrategyName);
+        if (claimStrategy == null) {
+            if ("single".equals(claimStrategyName)) {
+                claimStrategy = new SingleRowJobClaimStrategy();
+            } else if ("batch".equals(claimStrategyName)) {
+                claimStrategy = new BatchJobClaimStrategy();
+            } else if ("skip-locked".equals(claimStrategyName)) {
+                claimStrategy = new SkipLockedJobClaimStrategy();
+            } else {
+                try {
+                    ClassLoader loader = Thread.currentThread().getContextClassLoader();
+                    claimStrategy = (JobClaimStrategy) loader.loadClass(claimStrategyName).newInstance();
+                } catch (ReflectiveOperationException | ClassCastException e) {
+                    throw new GenericConfigException("Invalid <thread-pool> claim-strategy attribute value: " + claimStrategyName, e);
+                }
+            }
+            claimStrategies.putIfAbsent(claimStrategyName, claimStrategy);
+            claimStrategy = claimStrategies.get(claimStrategyName);
+        }
+        return claimStrategy;
+    }
+
     /**
      * Scans the JobSandbox entity and returns a list of jobs that are due to run.
      * Returns an empty list if there are no jobs due to run.
@@ -189,10 +227,12 @@ public final class JobManager {
                 EntityCondition.makeCondition("runByInstanceId", EntityOperator.EQUALS, null));
         // limit to just defined pools
         List<String> pools = null;
+        JobClaimStrategy claimStrategy = null;
         try {
             pools = getRunPools();
+            claimStrategy = getClaimStrategy();
         } catch (GenericConfigException e) {
-            Debug.logWarning(e, "Unable to get run pools - not running job: ", module);
+            Debug.logWarning(e, "Unable to get run pools or claim strategy - not running job: ", module);
             return Collections.emptyList();
         }
         List<EntityExpr> poolsExpr = UtilMisc.toList(EntityCondition.makeCondition("poolId", EntityOperator.EQUALS, null));
@@ -213,21 +253,15 @@ public final class JobManager {
                 Debug.logWarning("Unable to poll JobSandbox for jobs; unable to begin transaction.", module);
                 return poll;
             }
-            try (EntityListIterator jobsIterator = EntityQuery.use(delegator).from("JobSandbox").where(mainCondition).orderBy("runTime").queryIterator()) {
-                GenericValue jobValue = jobsIterator.next();
-                while (jobValue != null) {
-                    // Claim ownership of this value. Using storeByCondition to avoid a race condition.
-                    List<EntityExpr> updateExpression = UtilMisc.toList(EntityCondition.makeCondition("jobId", EntityOperator.EQUALS, jobValue.get("jobId")), EntityCondition.makeCondition("runByInstanceId", EntityOperator.EQUALS, null));
-                    int rowsUpdated = delegator.storeByCondition("JobSandbox", UtilMisc.toMap("runByInstanceId", instanceId), EntityCondition.makeCondition(updateExpression));
-                    if (rowsUpdated == 1) {
-                        poll.add(new PersistedServiceJob(dctx, jobValue, null));
-                        if (poll.size() == limit) {
-                            break;
-                        }
-                    }
-                    jobValue = jobsIterator.next();
+            try {
+                long claimStartTime = System.currentTimeMillis();
+                List<GenericValue> claimedJobs = claimStrategy.claim(delegator, mainCondition, limit, claimStatistics);
+                claimStatistics.recordClaim(claimedJobs.size(), System.currentTimeMillis() - claimStartTime);
+                for (GenericValue jobValue : claimedJobs) {
+                    poll.add(new PersistedServiceJob(dctx, jobValue, null));
                 }
             } catch (GenericEntityException e) {
+                claimStatistics.recordFailure();
                 Debug.logWarning(e, module);
             }
             TransactionUtil.commit(beganTransaction);
@@ -356,6 +390,57 @@ public final class JobManager {
         crashedJobsReloaded = true;
     }
 
+    /**
+     * Signals the job poller that a job has been written to the JobSandbox entity.
+     * If the job is due before the next regular poll and it will be run by this
+     * instance, the job poller is woken up when the job is due. When a transaction
+     * is in place, the job poller is woken up after the transaction commits.
+     *
+     * @param jobValue The new <code>JobSandbox</code> value.
+     */
+    public void jobScheduled(GenericValue jobValue) {
+        Timestamp runTime = jobValue.getTimestamp("runTime");
+        String poolId = jobValue.getString("poolId");
+        try {
+            ThreadPool threadPool = ServiceConfigUtil.getServiceEngine().getThreadPool();
+            if (!threadPool.getPollEnabled() || !threadPool.getWakeOnSchedule() || runTime == null) {
+                return;
+            }
+            if (runTime.getTime() - System.currentTimeMillis() > threadPool.getPollDbMillis()) {
+                // The regular poll will pick it up
+                return;
+            }
+            if (poolId != null && !getRunPools().contains(poolId)) {
+                return;
+            }
+        } catch (GenericConfigException e) {
+            Debug.logWarning(e, "Unable to get <thread-pool> configuration - not waking up the job poller: ", module);
+            return;
+        }
+        final long wakeUpTime = runTime.getTime();
+        try {
+            if (TransactionUtil.isTransactionInPlace()) {
+                TransactionUtil.registerSynchronization(new Synchronization() {
+                    @Override
+                    public void beforeCompletion() {
+                    }
+
+                    @Override
+                    public void afterCompletion(int status) {
+                        if (status == Status.STATUS_COMMITTED) {
+                            JobPoller.getInstance().wakeUp(wakeUpTime);
+                        }
+                    }
+                });
+                return;
+            }
+        } catch (GenericTransactionException e) {
+            Debug.logWarning(e, "Unable to register the job poller wake-up with the current transaction: ", module);
+            return;
+        }
+        JobPoller.getInstance().wakeUp(wakeUpTime);
+    }
+
     /** Queues a Job to run now.
      * @throws IllegalStateException if the Job Manager is shut down.
      * @throws RejectedExecutionException if the poller is stopped.
@@ -577,5 +662,6 @@ public final class JobManager {
         } catch (GenericEntityException e) {
             throw new JobManagerException(e.getMessage(), e);
         }
+        jobScheduled(jobV);
     }
 }
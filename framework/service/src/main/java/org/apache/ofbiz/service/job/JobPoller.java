@@ -26,6 +26,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
@@ -33,6 +34,7 @@ import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
 import org.apache.ofbiz.base.config.GenericConfigException;
 import org.apache.ofbiz.base.start.Start;
 import org.apache.ofbiz.base.util.Assert;
@@ -50,7 +52,7 @@ public final class JobPoller implements ServiceConfigListener {
     public static final String module = JobPoller.class.getName();
     private static final AtomicInteger created = new AtomicInteger();
     private static final ConcurrentHashMap<String, JobManager> jobManagers = new ConcurrentHashMap<>();
-    private static final ThreadPoolExecutor executor = createThreadPoolExecutor();
+    private static final ExecutorService executor = createExecutor();
     private static final JobPoller instance = new JobPoller();
 
     /**
@@ -60,9 +62,17 @@ public final class JobPoller implements ServiceConfigListener {
         return instance;
     }
 
-    private static ThreadPoolExecutor createThreadPoolExecutor() {
+    private static ExecutorService createExecutor() {
         try {
             ThreadPool threadPool = ServiceConfigUtil.getServiceEngine(ServiceConfigUtil.getEngine()).getThreadPool();
+            if ("virtual".equals(threadPool.getExecutorMode())) {
+                ThreadFactory virtualThreadFactory = ExecutionPool.getVirtualThreadFactory("OFBiz-JobQueue");
+                if (virtualThreadFactory != null) {
+                    // Virtual threads are cheap, so every job gets its own and only the number of concurrent jobs is limited
+                    return new VirtualJobExecutor(virtualThreadFactory, threadPool.getMaxConcurrentJobs(), threadPool.getJobs());
+                }
+                Debug.logWarning("<thread-pool> executor-mode is \"virtual\" but virtual threads are not supported by this JVM, using platform threads", module);
+            }
             return new ThreadPoolExecutor(threadPool.getMinThreads(), threadPool.getMaxThreads(), threadPool.getTtl(),
                     TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(threadPool.getJobs()), new JobInvokerThreadFactory(), new ThreadPoolExecutor.AbortPolicy());
         } catch (GenericConfigException e) {
@@ -72,6 +82,18 @@ public final class JobPoller implements ServiceConfigListener {
         }
     }
 
+    // Returns true if jobs are run on virtual threads.
+    private static boolean usesVirtualThreads() {
+        return executor instanceof VirtualJobExecutor;
+    }
+
+    private static BlockingQueue<Runnable> getQueue() {
+        if (usesVirtualThreads()) {
+            return ((VirtualJobExecutor) executor).getQueue();
+        }
+        return ((ThreadPoolExecutor) executor).getQueue();
+    }
+
     private static int pollWaitTime() {
         try {
             ThreadPool threadPool = ServiceConfigUtil.getServiceEngine(ServiceConfigUtil.getEngine()).getThreadPool();
@@ -96,6 +118,9 @@ public final class JobPoller implements ServiceConfigListener {
     // -------------------------------------- //
 
     private final Thread jobManagerPollerThread;
+    private final Object pollLock = new Object();
+    // The time a scheduled job is due to run, if it is earlier than the next regular poll. Guarded by pollLock.
+    private long wakeUpTime = Long.MAX_VALUE;
 
     private JobPoller() {
         if (pollEnabled()) {
@@ -113,14 +138,29 @@ public final class JobPoller implements ServiceConfigListener {
      */
     public Map<String, Object> getPoolState() {
         Map<String, Object> poolState = new HashMap<>();
-        poolState.put("keepAliveTimeInSeconds", executor.getKeepAliveTime(TimeUnit.SECONDS));
-        poolState.put("numberOfCoreInvokerThreads", executor.getCorePoolSize());
-        poolState.put("currentNumberOfInvokerThreads", executor.getPoolSize());
-        poolState.put("numberOfActiveInvokerThreads", executor.getActiveCount());
-        poolState.put("maxNumberOfInvokerThreads", executor.getMaximumPoolSize());
-        poolState.put("greatestNumberOfInvokerThreads", executor.getLargestPoolSize());
-        poolState.put("numberOfCompletedTasks", executor.getCompletedTaskCount());
-        BlockingQueue<Runnable> queue = executor.getQueue();
+        if (usesVirtualThreads()) {
+            VirtualJobExecutor virtualExecutor = (VirtualJobExecutor) executor;
+            poolState.put("currentNumberOfInvokerThreads", virtualExecutor.getThreadCount());
+            poolState.put("numberOfActiveInvokerThreads", virtualExecutor.getActiveCount());
+            poolState.put("maxConcurrentJobs", virtualExecutor.getMaxConcurrentJobs());
+            poolState.put("availablePermits", virtualExecutor.getAvailablePermits());
+            poolState.put("numberOfCompletedTasks", virtualExecutor.getCompletedTaskCount());
+            poolState.put("executorMode", "virtual");
+        } else {
+            ThreadPoolExecutor threadPoolExecutor = (ThreadPoolExecutor) executor;
+            poolState.put("keepAliveTimeInSeconds", threadPoolExecutor.getKeepAliveTime(TimeUnit.SECONDS));
+            poolState.put("numberOfCoreInvokerThreads", threadPoolExecutor.getCorePoolSize());
+            poolState.put("currentNumberOfInvokerThreads", threadPoolExecutor.getPoolSize());
+            poolState.put("numberOfActiveInvokerThreads", threadPoolExecutor.getActiveCount());
+            poolState.put("maxNumberOfInvokerThreads", threadPoolExecutor.getMaximumPoolSize());
+            poolState.put("greatestNumberOfInvokerThreads", threadPoolExecutor.getLargestPoolSize());
+            poolState.put("numberOfCompletedTasks", threadPoolExecutor.getCompletedTaskCount());
+            poolState.put("executorMode", "platform");
+        }
+        BlockingQueue<Runnable> queue = getQueue();
+        poolState.put("numberOfQueuedTasks", queue.size());
+        poolState.put("remainingQueueCapacity", queue.remainingCapacity());
+        poolState.putAll(JobManager.getClaimStatistics().toMap());
         List<Map<String, Object>> taskList = new ArrayList<>();
         Map<String, Object> taskInfo = null;
         for (Runnable task : queue) {
@@ -145,9 +185,14 @@ public final class JobPoller implements ServiceConfigListener {
     public void onServiceConfigChange(ServiceConfig serviceConfig) {
         if (!executor.isShutdown()) {
             ThreadPool threadPool = serviceConfig.getServiceEngine(ServiceConfigUtil.getEngine()).getThreadPool();
-            executor.setCorePoolSize(threadPool.getMinThreads());
-            executor.setMaximumPoolSize(threadPool.getMaxThreads());
-            executor.setKeepAliveTime(threadPool.getTtl(), TimeUnit.MILLISECONDS);
+            if (usesVirtualThreads()) {
+                ((VirtualJobExecutor) executor).setMaxConcurrentJobs(threadPool.getMaxConcurrentJobs());
+            } else {
+                ThreadPoolExecutor threadPoolExecutor = (ThreadPoolExecutor) executor;
+                threadPoolExecutor.setCorePoolSize(threadPool.getMinThreads());
+                threadPoolExecutor.setMaximumPoolSize(threadPool.getMaxThreads());
+                threadPoolExecutor.setKeepAliveTime(threadPool.getTtl(), TimeUnit.MILLISECONDS);
+            }
         }
     }
 
@@ -174,6 +219,40 @@ public final class JobPoller implements ServiceConfigListener {
         }
     }
 
+    /**
+     * Makes the polling thread poll the job managers no later than <code>time</code>,
+     * instead of waiting for the regular poll interval to elapse. This method is called
+     * when a job that is due before the next regular poll has been written to the JobSandbox entity.
+     *
+     * @param time The time in milliseconds the job is due to run.
+     */
+    public void wakeUp(long time) {
+        if (jobManagerPollerThread == null) {
+            return;
+        }
+        synchronized (pollLock) {
+            if (time < wakeUpTime) {
+                wakeUpTime = time;
+                pollLock.notifyAll();
+            }
+        }
+    }
+
+    // Waits for the regular poll interval to elapse, or until a wake-up time is reached.
+    private void waitForNextPoll() throws InterruptedException {
+        synchronized (pollLock) {
+            long pollTime = System.currentTimeMillis() + pollWaitTime();
+            long waitTime = Math.min(pollTime, wakeUpTime) - System.currentTimeMillis();
+            while (waitTime > 0) {
+                pollLock.wait(waitTime);
+                waitTime = Math.min(pollTime, wakeUpTime) - System.currentTimeMillis();
+            }
+            if (wakeUpTime <= System.currentTimeMillis()) {
+                wakeUpTime = Long.MAX_VALUE;
+            }
+        }
+    }
+
     /**
      * Stops the <code>JobPoller</code>. This method is called when OFBiz shuts down.
      * The <code>JobPoller</code> cannot be restarted.
@@ -214,7 +293,7 @@ public final class JobPoller implements ServiceConfigListener {
                     Thread.sleep(1000);
                 }
                 while (!executor.isShutdown()) {
-                    int remainingCapacity = executor.getQueue().remainingCapacity();
+                    int remainingCapacity = getQueue().remainingCapacity();
                     if (remainingCapacity > 0) {
                         // Build "list of lists"
                         Collection<JobManager> jmCollection = jobManagers.values();
@@ -251,7 +330,7 @@ public final class JobPoller implements ServiceConfigListener {
                             }
                         }
                     }
-                    Thread.sleep(pollWaitTime());
+                    waitForNextPoll();
                 }
             } catch (InterruptedException e) {
                 // Happens when JobPoller shuts down - nothing to do.
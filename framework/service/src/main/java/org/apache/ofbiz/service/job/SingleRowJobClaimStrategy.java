@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.service.job;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityExpr;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.util.EntityListIterator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+
+/**
+ * Claims jobs one row at a time. Each candidate is claimed with its own
+ * <code>UPDATE ... WHERE jobId = ? AND runByInstanceId IS NULL</code> statement.
+ * This was the only strategy available before claim strategies were made pluggable.
+ */
+public final class SingleRowJobClaimStrategy implements JobClaimStrategy {
+
+    @Override
+    public List<GenericValue> claim(Delegator delegator, EntityCondition condition, int limit, JobClaimStatistics statistics) throws GenericEntityException {
+        List<GenericValue> claimed = new ArrayList<>(limit);
+        try (EntityListIterator jobsIterator = EntityQuery.use(delegator).from("JobSandbox").where(condition).orderBy("runTime").queryIterator()) {
+            GenericValue jobValue = jobsIterator.next();
+            while (jobValue != null) {
+                // Claim ownership of this value. Using storeByCondition to avoid a race condition.
+                List<EntityExpr> updateExpression = UtilMisc.toList(EntityCondition.makeCondition("jobId", EntityOperator.EQUALS, jobValue.get("jobId")), EntityCondition.makeCondition("runByInstanceId", EntityOperator.EQUALS, null));
+                int rowsUpdated = delegator.storeByCondition("JobSandbox", UtilMisc.toMap("runByInstanceId", JobManager.instanceId), EntityCondition.makeCondition(updateExpression));
+                if (rowsUpdated == 1) {
+                    claimed.add(jobValue);
+                    if (claimed.size() == limit) {
+                        break;
+                    }
+                } else {
+                    statistics.recordContention(1);
+                }
+                jobValue = jobsIterator.next();
+            }
+        }
+        return claimed;
+    }
+}
@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.service.job;
+
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityConditionParam;
+import org.apache.ofbiz.entity.config.model.Datasource;
+import org.apache.ofbiz.entity.config.model.EntityConfig;
+import org.apache.ofbiz.entity.datasource.GenericHelperInfo;
+import org.apache.ofbiz.entity.jdbc.SQLProcessor;
+import org.apache.ofbiz.entity.jdbc.SqlJdbcUtil;
+import org.apache.ofbiz.entity.model.ModelEntity;
+import org.apache.ofbiz.entity.model.ModelFieldTypeReader;
+
+/**
+ * Claims jobs with <code>SELECT ... FOR UPDATE SKIP LOCKED</code>. Candidate rows are
+ * locked by the poll transaction, and rows already locked by another instance are skipped
+ * instead of waited on, so concurrent pollers reserve disjoint sets of jobs. The locked
+ * rows are then claimed with a single <code>UPDATE ... WHERE jobId IN (...)</code> statement.
+ * <p>SKIP LOCKED is supported by PostgreSQL (9.5+), MySQL (8.0+), MariaDB (10.6+) and
+ * Oracle. On other databases this strategy falls back to {@link BatchJobClaimStrategy}.</p>
+ */
+public final class SkipLockedJobClaimStrategy implements JobClaimStrategy {
+
+    public static final String module = SkipLockedJobClaimStrategy.class.getName();
+
+    private final JobClaimStrategy fallback = new BatchJobClaimStrategy();
+    // null until the database product has been checked
+    private volatile Boolean skipLockedSupported = null;
+
+    @Override
+    public List<GenericValue> claim(Delegator delegator, EntityCondition condition, int limit, JobClaimStatistics statistics) throws GenericEntityException {
+        if (Boolean.FALSE.equals(skipLockedSupported)) {
+            return fallback.claim(delegator, condition, limit, statistics);
+        }
+        ModelEntity modelEntity = delegator.getModelEntity("JobSandbox");
+        GenericHelperInfo helperInfo = delegator.getGroupHelperInfo(delegator.getEntityGroupName("JobSandbox"));
+        Datasource datasourceInfo = EntityConfig.getDatasource(helperInfo.getHelperBaseName());
+        ModelFieldTypeReader modelFieldTypeReader = delegator.getModelFieldTypeReader(modelEntity);
+        List<String> jobIds = new ArrayList<>(limit);
+        try (SQLProcessor sqlP = new SQLProcessor(delegator, helperInfo)) {
+            if (skipLockedSupported == null) {
+                skipLockedSupported = isSkipLockedSupported(sqlP);
+                if (!skipLockedSupported) {
+                    Debug.logWarning("The JobSandbox datasource does not support SELECT ... FOR UPDATE SKIP LOCKED, falling back to the batch claim strategy", module);
+                    return fallback.claim(delegator, condition, limit, statistics);
+                }
+            }
+            List<EntityConditionParam> whereConditionParams = new LinkedList<>();
+            StringBuilder sqlBuffer = new StringBuilder("SELECT ");
+            sqlBuffer.append(modelEntity.getField("jobId").getColName());
+            sqlBuffer.append(SqlJdbcUtil.makeFromClause(modelEntity, modelFieldTypeReader, datasourceInfo));
+            sqlBuffer.append(" WHERE ").append(condition.makeWhereString(modelEntity, whereConditionParams, datasourceInfo));
+            sqlBuffer.append(SqlJdbcUtil.makeOrderByClause(modelEntity, UtilMisc.toList("runTime"), datasourceInfo));
+            // Oracle does not allow FETCH FIRST with FOR UPDATE, the statement max rows limits the rows locked there
+            if ("limit".equals(datasourceInfo.getOffsetStyle())) {
+                sqlBuffer.append(" LIMIT ").append(limit);
+            }
+            sqlBuffer.append(" FOR UPDATE SKIP LOCKED");
+            sqlP.prepareStatement(sqlBuffer.toString(), false, 0, 0, limit, limit);
+            for (EntityConditionParam whereConditionParam : whereConditionParams) {
+                SqlJdbcUtil.setValue(sqlP, whereConditionParam.getModelField(), modelEntity.getEntityName(), whereConditionParam.getFieldValue(), modelFieldTypeReader);
+            }
+            sqlP.executeQuery();
+            while (jobIds.size() < limit && sqlP.next()) {
+                jobIds.add(sqlP.getResultSet().getString(1));
+            }
+        } catch (SQLException e) {
+            throw new GenericEntityException("Error reading locked JobSandbox rows", e);
+        }
+        if (jobIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // The rows are locked by this transaction, so the update cannot lose any of them
+        return BatchJobClaimStrategy.claimJobIds(delegator, jobIds, statistics);
+    }
+
+    private static boolean isSkipLockedSupported(SQLProcessor sqlP) throws GenericEntityException {
+        try {
+            DatabaseMetaData metaData = sqlP.getConnection().getMetaData();
+            String productName = metaData.getDatabaseProductName().toLowerCase(Locale.ROOT);
+            int majorVersion = metaData.getDatabaseMajorVersion();
+            int minorVersion = metaData.getDatabaseMinorVersion();
+            if (productName.contains("postgresql")) {
+                return majorVersion > 9 || (majorVersion == 9 && minorVersion >= 5);
+            }
+            if (productName.contains("mariadb")) {
+                return majorVersion > 10 || (majorVersion == 10 && minorVersion >= 6);
+            }
+            if (productName.contains("mysql")) {
+                return majorVersion >= 8;
+            }
+            return productName.contains("oracle");
+        } catch (SQLException e) {
+            throw new GenericEntityException("Unable to read the JobSandbox database product name", e);
+        }
+    }
+}
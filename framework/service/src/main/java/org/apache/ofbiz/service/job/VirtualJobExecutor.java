@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.service.job;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executor used by the job poller in "virtual" executor mode. Every task gets its own
+ * (virtual) thread, and a semaphore with <code>max-concurrent-jobs</code> permits limits
+ * the number of tasks running at the same time. Tasks waiting for a permit stay in a
+ * bounded queue, so the job poller can size its polls and list or dequeue them on shutdown.
+ */
+final class VirtualJobExecutor extends AbstractExecutorService {
+
+    private final ThreadFactory threadFactory;
+    private final BlockingQueue<Runnable> queue;
+    private final ResizableSemaphore permits;
+    private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicLong completedTaskCount = new AtomicLong();
+    private int maxConcurrentJobs; // Guarded by this
+    private volatile boolean shutdown = false;
+
+    VirtualJobExecutor(ThreadFactory threadFactory, int maxConcurrentJobs, int queueSize) {
+        this.threadFactory = threadFactory;
+        this.queue = new LinkedBlockingQueue<>(queueSize);
+        this.permits = new ResizableSemaphore(maxConcurrentJobs);
+        this.maxConcurrentJobs = maxConcurrentJobs;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        if (shutdown || !queue.offer(task)) {
+            throw new RejectedExecutionException("Job " + task + " rejected from " + this);
+        }
+        Thread thread = threadFactory.newThread(() -> runTask(task));
+        threads.add(thread);
+        thread.start();
+    }
+
+    private void runTask(Runnable task) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            // Only happens on shutdownNow, which has already taken the task off the queue
+            queue.remove(task);
+            threads.remove(Thread.currentThread());
+            return;
+        }
+        try {
+            // The task is gone if shutdownNow returned it while this thread waited for a permit
+            if (queue.remove(task)) {
+                activeCount.incrementAndGet();
+                try {
+                    task.run();
+                } finally {
+                    activeCount.decrementAndGet();
+                    completedTaskCount.incrementAndGet();
+                }
+            }
+        } finally {
+            permits.release();
+            threads.remove(Thread.currentThread());
+        }
+    }
+
+    /**
+     * Changes the number of tasks allowed to run at the same time. Running tasks are not
+     * affected, a lower limit applies as they finish.
+     */
+    synchronized void setMaxConcurrentJobs(int maxConcurrentJobs) {
+        int delta = maxConcurrentJobs - this.maxConcurrentJobs;
+        if (delta > 0) {
+            permits.release(delta);
+        } else if (delta < 0) {
+            permits.reducePermits(-delta);
+        }
+        this.maxConcurrentJobs = maxConcurrentJobs;
+    }
+
+    synchronized int getMaxConcurrentJobs() {
+        return maxConcurrentJobs;
+    }
+
+    /** Returns the number of permits not taken by a running task, negative while a lowered limit is pending. */
+    int getAvailablePermits() {
+        return permits.availablePermits();
+    }
+
+    int getActiveCount() {
+        return activeCount.get();
+    }
+
+    /** Returns the number of threads started and not finished yet, running or waiting for a permit. */
+    int getThreadCount() {
+        return threads.size();
+    }
+
+    long getCompletedTaskCount() {
+        return completedTaskCount.get();
+    }
+
+    BlockingQueue<Runnable> getQueue() {
+        return queue;
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown = true;
+        List<Runnable> queuedTasks = new ArrayList<>();
+        queue.drainTo(queuedTasks);
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        return queuedTasks;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return shutdown && threads.isEmpty();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!isTerminated()) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            Iterator<Thread> threadIterator = threads.iterator();
+            if (threadIterator.hasNext()) {
+                TimeUnit.NANOSECONDS.timedJoin(threadIterator.next(), remaining);
+            }
+        }
+        return true;
+    }
+
+    // Semaphore.reducePermits is protected, it is the supported way to lower the limit.
+    @SuppressWarnings("serial")
+    private static final class ResizableSemaphore extends Semaphore {
+
+        private ResizableSemaphore(int permits) {
+            super(permits);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+}
@@ -22,6 +22,7 @@ import java.util.Map;
 
 import org.apache.ofbiz.base.util.UtilMisc;
 import org.apache.ofbiz.service.ModelService;
+import org.apache.ofbiz.service.engine.StandardJavaEngine;
 import org.apache.ofbiz.service.testtools.OFBizTestCase;
 
 public class ServiceEngineTests extends OFBizTestCase {
@@ -42,4 +43,15 @@ public class ServiceEngineTests extends OFBizTestCase {
         Map<String, Object> result = dispatcher.runSync("testScv", UtilMisc.toMap("message", "Unit Test"));
         assertEquals("Service result success", ModelService.RESPOND_SUCCESS, result.get(ModelService.RESPONSE_MESSAGE));
     }
+
+    public void testJavaInvocationInNewTransaction() throws Exception {
+        // the dispatcher runs a copy of the service definition for each call in a new transaction
+        dispatcher.runSync("testScv", UtilMisc.toMap("message", "Unit Test"), 60, true);
+        int invokerCount = StandardJavaEngine.getServiceInvokerCount();
+        for (int i = 0; i < 10; i++) {
+            Map<String, Object> result = dispatcher.runSync("testScv", UtilMisc.toMap("message", "Unit Test"), 60, true);
+            assertEquals("Service result success", ModelService.RESPOND_SUCCESS, result.get(ModelService.RESPONSE_MESSAGE));
+        }
+        assertEquals("Resolved service methods", invokerCount, StandardJavaEngine.getServiceInvokerCount());
+    }
 }
@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.ofbiz.base.config.GenericConfigException;
+import org.apache.ofbiz.base.config.ResourceHandler;
+import org.apache.ofbiz.base.util.UtilXml;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+
+public class ModelServiceIndexTests {
+
+    private final TestResourceHandler firstResource = new TestResourceHandler("first",
+            "<services>"
+            + "<service name=\"serviceA\" engine=\"java\" location=\"first\" invoke=\"run\"/>"
+            + "<service name=\"serviceB\" engine=\"java\" location=\"first\" invoke=\"run\"/>"
+            + "</services>");
+    private final TestResourceHandler secondResource = new TestResourceHandler("second",
+            "<services>"
+            + "<service name=\"serviceA\" engine=\"java\" location=\"second\" invoke=\"run\"/>"
+            + "<service name=\"serviceC\" engine=\"java\" location=\"second\" invoke=\"run\"/>"
+            + "</services>");
+
+    @Test
+    public void lazyIndexResolvesServicesLikeEagerLoad() {
+        for (List<ResourceHandler> handlers : Arrays.<List<ResourceHandler>>asList(Arrays.asList(firstResource, secondResource),
+                Arrays.asList(secondResource, firstResource))) {
+            ModelServiceIndex eagerIndex = ModelServiceIndex.load(handlers, null);
+            ModelServiceIndex lazyIndex = ModelServiceIndex.index(handlers, null);
+            assertFalse(eagerIndex.isLazy());
+            assertTrue(lazyIndex.isLazy());
+            assertEquals(new HashSet<>(Arrays.asList("serviceA", "serviceB", "serviceC")), eagerIndex.getServiceNames());
+            assertEquals(eagerIndex.getServiceNames(), lazyIndex.getServiceNames());
+            // a service defined in several resources comes from the last one
+            String lastLocation = ((TestResourceHandler) handlers.get(handlers.size() - 1)).getLocation();
+            assertEquals(lastLocation, eagerIndex.getModelService("serviceA").location);
+            for (String serviceName : eagerIndex.getServiceNames()) {
+                assertEquals(serviceName, eagerIndex.getModelService(serviceName).location, lazyIndex.getModelService(serviceName).location);
+            }
+            // looking the services up does not change the names
+            assertEquals(eagerIndex.getServiceNames(), lazyIndex.getServiceNames());
+            assertNull(lazyIndex.getModelService("serviceD"));
+        }
+    }
+
+    @Test
+    public void lazyIndexParsesResourcesOnFirstUse() {
+        ModelServiceIndex lazyIndex = ModelServiceIndex.index(Arrays.asList(firstResource, secondResource), null);
+        assertEquals(0, firstResource.documentCount.get());
+        assertEquals(0, secondResource.documentCount.get());
+        assertEquals("second", lazyIndex.getModelService("serviceC").location);
+        assertEquals("second", lazyIndex.getModelService("serviceA").location);
+        assertEquals(0, firstResource.documentCount.get());
+        assertEquals(1, secondResource.documentCount.get());
+        assertEquals("first", lazyIndex.getModelService("serviceB").location);
+        assertEquals("second", lazyIndex.getModelService("serviceA").location);
+        assertEquals(1, firstResource.documentCount.get());
+        assertEquals(1, secondResource.documentCount.get());
+    }
+
+    @SuppressWarnings("serial")
+    private static final class TestResourceHandler implements ResourceHandler {
+        private final String location;
+        private final String content;
+        private final AtomicInteger documentCount = new AtomicInteger();
+
+        private TestResourceHandler(String location, String content) {
+            this.location = location;
+            this.content = content;
+        }
+
+        @Override
+        public String getLoaderName() {
+            return "test";
+        }
+
+        @Override
+        public String getLocation() {
+            return location;
+        }
+
+        @Override
+        public Document getDocument() throws GenericConfigException {
+            documentCount.incrementAndGet();
+            try {
+                return UtilXml.readXmlDocument(content, false);
+            } catch (SAXException | ParserConfigurationException | IOException e) {
+                throw new GenericConfigException(e);
+            }
+        }
+
+        @Override
+        public InputStream getStream() throws GenericConfigException {
+            return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public URL getURL() throws GenericConfigException {
+            try {
+                return new URL("file:/" + location + ".xml");
+            } catch (MalformedURLException e) {
+                throw new GenericConfigException(e);
+            }
+        }
+
+        @Override
+        public boolean isFileResource() throws GenericConfigException {
+            return false;
+        }
+
+        @Override
+        public String getFullLocation() throws GenericConfigException {
+            return location;
+        }
+    }
+}
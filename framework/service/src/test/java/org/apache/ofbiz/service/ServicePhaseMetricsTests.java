@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.apache.ofbiz.base.metrics.LatencyHistogram;
+import org.apache.ofbiz.service.ServicePhaseMetrics.ServicePhaseTimer;
+import org.junit.Test;
+
+public class ServicePhaseMetricsTests {
+
+    @Test
+    public void timersAreSharedPerService() {
+        ServicePhaseMetrics.Registry registry = new ServicePhaseMetrics.Registry(10, 6, 10000);
+        ServicePhaseTimer timer = registry.getTimer("serviceA");
+        assertSame(timer, registry.getTimer("serviceA"));
+        assertNotSame(timer, registry.getTimer("serviceB"));
+        assertEquals("serviceA", timer.getServiceName());
+    }
+
+    @Test
+    public void phasesAreRecordedPerName() {
+        ServicePhaseMetrics.Registry registry = new ServicePhaseMetrics.Registry(10, 6, 10000);
+        ServicePhaseTimer timer = registry.getTimer("serviceA");
+        long startTime = timer.start();
+        timer.stop(ServicePhaseMetrics.PHASE_INVOKE, startTime);
+        timer.stop(ServicePhaseMetrics.PHASE_INVOKE, startTime);
+        timer.stopEca("commit", startTime);
+        Map<String, LatencyHistogram.Snapshot> snapshots = registry.getPhaseSnapshots("serviceA");
+        assertEquals(new HashSet<>(Arrays.asList(ServicePhaseMetrics.PHASE_INVOKE, ServicePhaseMetrics.PHASE_ECA_PREFIX + "commit")), snapshots.keySet());
+        assertEquals(2, snapshots.get(ServicePhaseMetrics.PHASE_INVOKE).getCount());
+        assertEquals(1, snapshots.get(ServicePhaseMetrics.PHASE_ECA_PREFIX + "commit").getCount());
+        assertTrue(registry.getPhaseSnapshots("serviceB").isEmpty());
+    }
+
+    @Test
+    public void leastRecentlyUsedServicesAreDropped() {
+        ServicePhaseMetrics.Registry registry = new ServicePhaseMetrics.Registry(2, 6, 10000);
+        registry.getTimer("serviceA");
+        registry.getTimer("serviceB");
+        registry.getTimer("serviceA");
+        registry.getTimer("serviceC");
+        assertEquals(new HashSet<>(Arrays.asList("serviceA", "serviceC")), registry.getServiceNames());
+        for (int i = 0; i < 100; i++) {
+            registry.getTimer("service" + i);
+        }
+        assertEquals(2, registry.getServiceNames().size());
+    }
+
+    @Test
+    public void resetDropsAllTimings() {
+        ServicePhaseMetrics.Registry registry = new ServicePhaseMetrics.Registry(10, 6, 10000);
+        ServicePhaseTimer timer = registry.getTimer("serviceA");
+        timer.stop(ServicePhaseMetrics.PHASE_TOTAL, timer.start());
+        registry.reset();
+        assertTrue(registry.getServiceNames().isEmpty());
+        assertTrue(registry.getPhaseSnapshots("serviceA").isEmpty());
+    }
+}
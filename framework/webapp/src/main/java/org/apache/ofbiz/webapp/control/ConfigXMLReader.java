@@ -143,11 +143,7 @@ public class ConfigXMLReader {
     }
 
     public static ControllerConfig getControllerConfig(URL url) throws WebAppConfigurationException {
-        ControllerConfig controllerConfig = controllerCache.get(url);
-        if (controllerConfig == null) {
-            controllerConfig = controllerCache.putIfAbsentAndGet(url, new ControllerConfig(url));
-        }
-        return controllerConfig;
+        return controllerCache.get(url, ControllerConfig::new);
     }
 
     public static URL getControllerConfigURL(ServletContext context) {
@@ -238,6 +234,16 @@ public class ConfigXMLReader {
             return null;
         }
 
+        /** Returns this controller followed by all of the controllers it includes, directly or not. */
+        public List<ControllerConfig> getControllerConfigs() throws WebAppConfigurationException {
+            List<ControllerConfig> controllerConfigs = new ArrayList<ControllerConfig>();
+            controllerConfigs.add(this);
+            for (URL include : includes) {
+                controllerConfigs.addAll(getControllerConfig(include).getControllerConfigs());
+            }
+            return controllerConfigs;
+        }
+
         public Map<String, Event> getAfterLoginEventList() throws WebAppConfigurationException {
             return pushIncludes(ccfg -> ccfg.afterLoginEventList);
         }
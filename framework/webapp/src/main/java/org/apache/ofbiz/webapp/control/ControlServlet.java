@@ -77,6 +77,17 @@ public class ControlServlet extends HttpServlet {
         // Initialize the request handler.
         RequestHandler.getRequestHandler(ctx);
     }
+
+    /**
+     * @see javax.servlet.GenericServlet#destroy()
+     */
+    @Override
+    public void destroy() {
+        // write what the background stats writers still hold before the server stops
+        ServerHitBin.flushPendingHits();
+        VisitHandler.flushPendingVisits();
+        super.destroy();
+    }
     /**
      * @see javax.servlet.http.HttpServlet#doPost(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
      */
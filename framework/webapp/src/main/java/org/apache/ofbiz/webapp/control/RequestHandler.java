@@ -25,10 +25,12 @@ import java.io.Serializable;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -83,29 +85,62 @@ public class RequestHandler {
     private final boolean trackServerHit;
     private final boolean trackVisit;
     private final List<String> hostHeadersAllowed;
-    private ControllerConfig ccfg;
+    private volatile ControllerConfig routingSnapshot;
 
+    /**
+     * An immutable snapshot of the routing part of a controller, with the request maps, view maps and events of all
+     * of its includes already resolved. It is built once per controller and replaced when one of the controller
+     * files it was built from is reloaded.
+     */
     static class ControllerConfig {
+        private final List<ConfigXMLReader.ControllerConfig> sources;
         private final MultivaluedMapContext<String, RequestMap> requestMapMap;
         private final Map<String, ConfigXMLReader.ViewMap> viewMapMap;
-        private String statusCodeString;
+        private final String statusCodeString;
+        private final String statusCode;
+        private final String errorpage;
         private final String defaultRequest;
         private final Map<String, ConfigXMLReader.Event> firstVisitEventList;
         private final Map<String, ConfigXMLReader.Event> preprocessorEventList;
         private final Map<String, ConfigXMLReader.Event> postprocessorEventList;
+        private final Map<String, ConfigXMLReader.Event> afterLoginEventList;
+        private final Map<String, ConfigXMLReader.Event> beforeLogoutEventList;
         private final String protectView;
 
         ControllerConfig(ConfigXMLReader.ControllerConfig ccfg) throws WebAppConfigurationException {
-            preprocessorEventList = ccfg.getPreprocessorEventList();
-            postprocessorEventList = ccfg.getPostprocessorEventList();
-            requestMapMap = ccfg.getRequestMapMultiMap();
-            viewMapMap = ccfg.getViewMapMap();
+            sources = Collections.unmodifiableList(ccfg.getControllerConfigs());
+            preprocessorEventList = flatten(ccfg.getPreprocessorEventList());
+            postprocessorEventList = flatten(ccfg.getPostprocessorEventList());
+            firstVisitEventList = flatten(ccfg.getFirstVisitEventList());
+            afterLoginEventList = flatten(ccfg.getAfterLoginEventList());
+            beforeLogoutEventList = flatten(ccfg.getBeforeLogoutEventList());
+            viewMapMap = Collections.unmodifiableMap(new HashMap<>(ccfg.getViewMapMap()));
+            // a single context holding the request maps as resolved across the includes
+            MultivaluedMapContext<String, RequestMap> includedRequestMaps = ccfg.getRequestMapMultiMap();
+            requestMapMap = new MultivaluedMapContext<>();
+            for (String uri : includedRequestMaps.keySet()) {
+                requestMapMap.put(uri, Collections.unmodifiableList(new ArrayList<>(includedRequestMaps.get(uri))));
+            }
             defaultRequest = ccfg.getDefaultRequest();
-            firstVisitEventList = ccfg.getFirstVisitEventList();
             protectView = ccfg.getProtectView();
+            errorpage = ccfg.getErrorpage();
 
-            String status = ccfg.getStatusCode();
-            statusCodeString = UtilValidate.isEmpty(status) ? defaultStatusCodeString : status;
+            statusCode = ccfg.getStatusCode();
+            statusCodeString = UtilValidate.isEmpty(statusCode) ? defaultStatusCodeString : statusCode;
+        }
+
+        private static Map<String, ConfigXMLReader.Event> flatten(Map<String, ConfigXMLReader.Event> events) {
+            return Collections.unmodifiableMap(new LinkedHashMap<>(events));
+        }
+
+        /** Returns false when one of the controller files this snapshot was built from has been reloaded since. */
+        boolean isCurrent() throws WebAppConfigurationException {
+            for (ConfigXMLReader.ControllerConfig source : sources) {
+                if (ConfigXMLReader.getControllerConfig(source.url) != source) {
+                    return false;
+                }
+            }
+            return true;
         }
 
         public MultivaluedMapContext<String, RequestMap> getRequestMapMap() {
@@ -120,12 +155,16 @@ public class RequestHandler {
             return statusCodeString;
         }
 
-        public String getDefaultRequest() {
-            return defaultRequest;
+        public String getStatusCode() {
+            return statusCode;
         }
 
-        public void setStatusCodeString(String statusCodeString) {
-            this.statusCodeString = statusCodeString;
+        public String getErrorpage() {
+            return errorpage;
+        }
+
+        public String getDefaultRequest() {
+            return defaultRequest;
         }
 
         public Map<String, ConfigXMLReader.Event> getFirstVisitEventList() {
@@ -140,6 +179,14 @@ public class RequestHandler {
             return postprocessorEventList;
         }
 
+        public Map<String, ConfigXMLReader.Event> getAfterLoginEventList() {
+            return afterLoginEventList;
+        }
+
+        public Map<String, ConfigXMLReader.Event> getBeforeLogoutEventList() {
+            return beforeLogoutEventList;
+        }
+
         public String getProtectView() {
             return protectView;
         }
@@ -173,6 +220,20 @@ public class RequestHandler {
 
     }
 
+    /**
+     * Returns the routing snapshot of this webapp controller, building a new one the first time and after the
+     * controller or one of its includes has been reloaded.
+     */
+    ControllerConfig getRoutingSnapshot() throws WebAppConfigurationException {
+        ControllerConfig snapshot = this.routingSnapshot;
+        if (snapshot == null || !snapshot.isCurrent()) {
+            // concurrent rebuilds give equivalent snapshots, the last one wins
+            snapshot = new ControllerConfig(ConfigXMLReader.getControllerConfig(this.controllerConfigURL));
+            this.routingSnapshot = snapshot;
+        }
+        return snapshot;
+    }
+
     public ConfigXMLReader.ControllerConfig getControllerConfig() {
         try {
             return ConfigXMLReader.getControllerConfig(this.controllerConfigURL);
@@ -252,8 +313,9 @@ public class RequestHandler {
         HttpSession session = request.getSession();
 
         // Parse controller config.
+        ControllerConfig ccfg;
         try {
-            ccfg = new ControllerConfig(getControllerConfig());
+            ccfg = getRoutingSnapshot();
         } catch (WebAppConfigurationException e) {
             Debug.logError(e, "Exception thrown while parsing controller.xml file: ", module);
             throw new RequestHandlerException(e);
@@ -694,31 +756,32 @@ public class RequestHandler {
                 }
             }
 
+            String statusCodeString = ccfg.getStatusCodeString();
             String responseStatusCode  = nextRequestResponse.statusCode;
             if(UtilValidate.isNotEmpty(responseStatusCode))
-                ccfg.setStatusCodeString(responseStatusCode);
+                statusCodeString = responseStatusCode;
             
             if ("url".equals(nextRequestResponse.type)) {
                 if (Debug.verboseOn()) Debug.logVerbose("[RequestHandler.doRequest]: Response is a URL redirect." + showSessionId(request), module);
-                callRedirect(nextRequestResponse.value, response, request, ccfg.getStatusCodeString());
+                callRedirect(nextRequestResponse.value, response, request, statusCodeString);
             } else if ("url-redirect".equals(nextRequestResponse.type)) {
                 // check for a cross-application redirect
                 if (Debug.verboseOn())
                     Debug.logVerbose("[RequestHandler.doRequest]: Response is a URL redirect with redirect parameters."
                             + showSessionId(request), module);
                 callRedirect(nextRequestResponse.value + this.makeQueryString(request, nextRequestResponse), response,
-                        request, ccfg.getStatusCodeString());
+                        request, statusCodeString);
             } else if ("cross-redirect".equals(nextRequestResponse.type)) {
                 // check for a cross-application redirect
                 if (Debug.verboseOn()) Debug.logVerbose("[RequestHandler.doRequest]: Response is a Cross-Application redirect." + showSessionId(request), module);
                 String url = nextRequestResponse.value.startsWith("/") ? nextRequestResponse.value : "/" + nextRequestResponse.value;
-                callRedirect(url + this.makeQueryString(request, nextRequestResponse), response, request, ccfg.getStatusCodeString());
+                callRedirect(url + this.makeQueryString(request, nextRequestResponse), response, request, statusCodeString);
             } else if ("request-redirect".equals(nextRequestResponse.type)) {
                 if (Debug.verboseOn()) Debug.logVerbose("[RequestHandler.doRequest]: Response is a Request redirect." + showSessionId(request), module);
-                callRedirect(makeLinkWithQueryString(request, response, "/" + nextRequestResponse.value, nextRequestResponse), response, request, ccfg.getStatusCodeString());
+                callRedirect(makeLinkWithQueryString(request, response, "/" + nextRequestResponse.value, nextRequestResponse), response, request, statusCodeString);
             } else if ("request-redirect-noparam".equals(nextRequestResponse.type)) {
                 if (Debug.verboseOn()) Debug.logVerbose("[RequestHandler.doRequest]: Response is a Request redirect with no parameters." + showSessionId(request), module);
-                callRedirect(makeLink(request, response, nextRequestResponse.value), response, request, ccfg.getStatusCodeString());
+                callRedirect(makeLink(request, response, nextRequestResponse.value), response, request, statusCodeString);
             } else if ("view".equals(nextRequestResponse.type)) {
                 if (Debug.verboseOn()) Debug.logVerbose("[RequestHandler.doRequest]: Response is a view." + showSessionId(request), module);
 
@@ -817,7 +880,7 @@ public class RequestHandler {
     public String getDefaultErrorPage(HttpServletRequest request) {
         URL errorPage = null;
         try {
-            String errorPageLocation = getControllerConfig().getErrorpage();
+            String errorPageLocation = getRoutingSnapshot().getErrorpage();
             errorPage = FlexibleLocation.resolveLocation(errorPageLocation);
         } catch (WebAppConfigurationException | MalformedURLException e) {
             Debug.logError(e, "Exception thrown while parsing controller.xml file: ", module);
@@ -832,7 +895,7 @@ public class RequestHandler {
     public String getStatusCode(HttpServletRequest request) {
         String statusCode = null;
         try {
-            statusCode = getControllerConfig().getStatusCode();
+            statusCode = getRoutingSnapshot().getStatusCode();
         } catch (WebAppConfigurationException e) {
             Debug.logError(e, "Exception thrown while parsing controller.xml file: ", module);
         }
@@ -981,7 +1044,7 @@ public class RequestHandler {
 
         ConfigXMLReader.ViewMap viewMap = null;
         try {
-            viewMap = (view == null ? null : getControllerConfig().getViewMapMap().get(view));
+            viewMap = (view == null ? null : getRoutingSnapshot().getViewMapMap().get(view));
         } catch (WebAppConfigurationException e) {
             Debug.logError(e, "Exception thrown while parsing controller.xml file: ", module);
             throw new RequestHandlerException(e);
@@ -1147,7 +1210,7 @@ public class RequestHandler {
         ConfigXMLReader.RequestMap requestMap = null;
         if (requestUri != null) {
             try {
-                requestMap = getControllerConfig().getRequestMapMap().get(requestUri);
+                requestMap = getRoutingSnapshot().getRequestMapMap().getFirst(requestUri);
             } catch (WebAppConfigurationException e) {
                 // If we can't read the controller.xml file, then there is no point in continuing.
                 Debug.logError(e, "Exception thrown while parsing controller.xml file: ", module);
@@ -1273,7 +1336,7 @@ public class RequestHandler {
      * @param resp the response to run the events with
      */
     public void runAfterLoginEvents(HttpServletRequest req, HttpServletResponse resp) {
-        EventCollectionProducer prod = () -> getControllerConfig().getAfterLoginEventList().values();
+        EventCollectionProducer prod = () -> getRoutingSnapshot().getAfterLoginEventList().values();
         runEvents(req, resp, prod, "after-login");
     }
 
@@ -1284,7 +1347,7 @@ public class RequestHandler {
      * @param resp the response to run the events with
      */
     public void runBeforeLogoutEvents(HttpServletRequest req, HttpServletResponse resp) {
-        EventCollectionProducer prod = () -> getControllerConfig().getBeforeLogoutEventList().values();
+        EventCollectionProducer prod = () -> getRoutingSnapshot().getBeforeLogoutEventList().values();
         runEvents(req, resp, prod, "before-logout");
     }
 
@@ -1296,9 +1359,10 @@ public class RequestHandler {
             }
             ConfigXMLReader.RequestMap requestMap = null;
             try {
-                requestMap = getControllerConfig().getRequestMapMap().get(uriString);
+                ControllerConfig ccfg = getRoutingSnapshot();
+                requestMap = ccfg.getRequestMapMap().getFirst(uriString);
                 if (requestMap == null) {
-                    requestMap = getControllerConfig().getRequestMapMap().get(getControllerConfig().getDefaultRequest());
+                    requestMap = ccfg.getRequestMapMap().getFirst(ccfg.getDefaultRequest());
                     if (requestMap == null) {
                         return false;
                     }
@@ -1320,9 +1384,10 @@ public class RequestHandler {
             }
             ConfigXMLReader.RequestMap requestMap = null;
             try {
-                requestMap = getControllerConfig().getRequestMapMap().get(uriString);
+                ControllerConfig ccfg = getRoutingSnapshot();
+                requestMap = ccfg.getRequestMapMap().getFirst(uriString);
                 if (requestMap == null) {
-                    requestMap = getControllerConfig().getRequestMapMap().get(getControllerConfig().getDefaultRequest());
+                    requestMap = ccfg.getRequestMapMap().getFirst(ccfg.getDefaultRequest());
                     if (requestMap == null) {
                         return false;
                     }
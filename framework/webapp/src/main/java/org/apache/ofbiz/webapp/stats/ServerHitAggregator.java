@@ -0,0 +1,384 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.webapp.stats;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+
+/**
+ * Aggregates the hits counted by {@link ServerHitBin} in a background thread.
+ * <p>Request threads only append an immutable {@link Hit} to a bounded lock-free ring buffer.
+ * A single daemon thread drains the buffer, rolls the bins and writes the ServerHit and
+ * ServerHitBin rows in batches. When the buffer is full the hit is dropped rather than
+ * blocking the request; the dropped hits are counted in {@link ServerHitBin#getDroppedHitCount()}
+ * and reported in a warning at most once per minute. {@link #shutdown()} writes the hits
+ * still buffered and pending when the webapps stop.</p>
+ * <p>The buffer size, the maximum number of rows per batch and the flush interval are set
+ * with the <code>stats.buffer.size</code>, <code>stats.batch.size</code> and
+ * <code>stats.flush.interval.millis</code> properties in serverstats.properties.</p>
+ */
+final class ServerHitAggregator implements Runnable {
+
+    public static final String module = ServerHitAggregator.class.getName();
+
+    private static final ServerHitAggregator instance = new ServerHitAggregator();
+
+    private final HitRingBuffer buffer;
+    private final int batchSize;
+    private final long flushInterval;
+    private final AtomicLong droppedHits = new AtomicLong();
+    // the dropped hits already reported, and when; only used by the aggregator thread
+    private long reportedDroppedHits = 0;
+    private long lastDroppedHitsWarning = 0;
+    // the values waiting to be written, by delegator name; only used by the aggregator thread
+    private final Map<String, List<GenericValue>> pendingHitBins = new HashMap<>();
+    private final Map<String, List<GenericValue>> pendingHits = new HashMap<>();
+    private final Map<String, Delegator> delegators = new HashMap<>();
+    private int pendingCount = 0;
+    private volatile Thread thread;
+
+    private ServerHitAggregator() {
+        int bufferSize = UtilProperties.getPropertyAsInteger("serverstats", "stats.buffer.size", 8192);
+        this.buffer = new HitRingBuffer(bufferSize > 0 ? bufferSize : 8192);
+        int batchSize = UtilProperties.getPropertyAsInteger("serverstats", "stats.batch.size", 500);
+        this.batchSize = batchSize > 0 ? batchSize : 500;
+        long flushInterval = UtilProperties.getPropertyAsLong("serverstats", "stats.flush.interval.millis", 1000);
+        this.flushInterval = flushInterval > 0 ? flushInterval : 1000;
+    }
+
+    static ServerHitAggregator getInstance() {
+        return instance;
+    }
+
+    /** Queues a hit for aggregation, starting the aggregator thread if needed. */
+    void offer(Hit hit) {
+        if (thread == null) {
+            startThread();
+        }
+        if (!buffer.offer(hit)) {
+            droppedHits.incrementAndGet();
+        }
+    }
+
+    /** Returns the number of hits dropped because the buffer was full. */
+    long getDroppedHits() {
+        return droppedHits.get();
+    }
+
+    /** Queues a ServerHitBin value to be written in the next batch. Called by the aggregator thread. */
+    void addHitBin(GenericValue serverHitBin) {
+        addPending(pendingHitBins, serverHitBin);
+    }
+
+    /** Queues a ServerHit value to be written in the next batch. Called by the aggregator thread. */
+    void addHit(GenericValue serverHit) {
+        addPending(pendingHits, serverHit);
+    }
+
+    private void addPending(Map<String, List<GenericValue>> pending, GenericValue value) {
+        Delegator delegator = value.getDelegator();
+        delegators.put(delegator.getDelegatorName(), delegator);
+        List<GenericValue> values = pending.get(delegator.getDelegatorName());
+        if (values == null) {
+            values = new LinkedList<>();
+            pending.put(delegator.getDelegatorName(), values);
+        }
+        values.add(value);
+        pendingCount++;
+    }
+
+    private synchronized void startThread() {
+        if (thread == null) {
+            Thread aggregatorThread = new Thread(this, "OFBiz-ServerHitAggregator");
+            aggregatorThread.setDaemon(true);
+            thread = aggregatorThread;
+            aggregatorThread.start();
+        }
+    }
+
+    /**
+     * Stops the aggregator thread, then aggregates the buffered hits and writes the pending values in
+     * the calling thread. The aggregator thread is started again if hits are offered afterwards.
+     */
+    synchronized void shutdown() {
+        Thread aggregatorThread = thread;
+        if (aggregatorThread == null) {
+            return;
+        }
+        thread = null;
+        try {
+            // the pending values belong to the aggregator thread until it is done
+            aggregatorThread.join(flushInterval + 10000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (aggregatorThread.isAlive()) {
+            Debug.logWarning("The server hit aggregator did not stop in time, the pending server hits are not saved", module);
+            return;
+        }
+        try {
+            Hit hit;
+            while ((hit = buffer.poll()) != null) {
+                ServerHitBin.aggregateHit(hit);
+            }
+            flush();
+            warnDroppedHits(true);
+        } catch (Throwable t) {
+            Debug.logError(t, "Error saving the pending server hits: ", module);
+        }
+    }
+
+    @Override
+    public void run() {
+        Thread current = Thread.currentThread();
+        long nextFlush = System.currentTimeMillis() + flushInterval;
+        // runs until interrupted or replaced, after shutdown
+        while (thread == current && !current.isInterrupted()) {
+            try {
+                Hit hit = buffer.poll();
+                if (hit != null) {
+                    ServerHitBin.aggregateHit(hit);
+                    if (pendingCount >= batchSize) {
+                        flush();
+                        nextFlush = System.currentTimeMillis() + flushInterval;
+                    }
+                    continue;
+                }
+                long now = System.currentTimeMillis();
+                if (now >= nextFlush) {
+                    flush();
+                    warnDroppedHits(false);
+                    nextFlush = now + flushInterval;
+                } else {
+                    // nothing to do, check again shortly; hits don't need to be seen sooner than the flush interval
+                    LockSupport.parkNanos(Math.min(nextFlush - now, 50) * 1000000L);
+                }
+            } catch (Throwable t) {
+                Debug.logError(t, "Error aggregating server hits: ", module);
+            }
+        }
+    }
+
+    private void warnDroppedHits(boolean force) {
+        long dropped = droppedHits.get();
+        long now = System.currentTimeMillis();
+        if (dropped > reportedDroppedHits && (force || now - lastDroppedHitsWarning >= 60000)) {
+            Debug.logWarning((dropped - reportedDroppedHits) + " server hits were dropped because the buffer was full, " + dropped
+                    + " since the server started; increase stats.buffer.size in serverstats.properties", module);
+            reportedDroppedHits = dropped;
+            lastDroppedHitsWarning = now;
+        }
+    }
+
+    private void flush() {
+        if (pendingCount == 0) {
+            return;
+        }
+        for (Map.Entry<String, List<GenericValue>> entry : pendingHitBins.entrySet()) {
+            Delegator delegator = delegators.get(entry.getKey());
+            List<GenericValue> values = entry.getValue();
+            for (GenericValue value : values) {
+                value.setNextSeqId();
+            }
+            createAll(delegator, values);
+        }
+        if (!pendingHits.isEmpty() && VisitPersistenceQueue.getInstance().isEnabled()) {
+            // the visits of the hits may still be queued, write them first
+            VisitPersistenceQueue.getInstance().flush();
+        }
+        for (Map.Entry<String, List<GenericValue>> entry : pendingHits.entrySet()) {
+            Delegator delegator = delegators.get(entry.getKey());
+            List<GenericValue> values;
+            try {
+                values = filterExistingVisits(delegator, entry.getValue());
+            } catch (GenericEntityException e) {
+                Debug.logWarning("Error saving " + entry.getValue().size() + " ServerHit values: " + e.toString(), module);
+                continue;
+            }
+            createAll(delegator, values);
+        }
+        pendingHitBins.clear();
+        pendingHits.clear();
+        pendingCount = 0;
+    }
+
+    // the ServerHit and ServerHitBin rows are always new, when the batch fails the rows are saved one by one
+    // so that a single bad row doesn't lose the others
+    private static void createAll(Delegator delegator, List<GenericValue> values) {
+        if (values.isEmpty()) {
+            return;
+        }
+        try {
+            delegator.createAll(values);
+        } catch (GenericEntityException e) {
+            Debug.logWarning("Could not save " + values.size() + " " + values.get(0).getEntityName() + " values in one batch, saving them one by one: " + e.toString(), module);
+            for (GenericValue value : values) {
+                try {
+                    delegator.create(value);
+                } catch (GenericEntityException e2) {
+                    Debug.logError(e2, "Could not save " + value.getEntityName() + " value " + value.getPrimaryKey() + ":", module);
+                }
+            }
+        }
+    }
+
+    // only keep the hits of the visits which exist in the database, looking them up with a single query
+    private static List<GenericValue> filterExistingVisits(Delegator delegator, List<GenericValue> serverHits) throws GenericEntityException {
+        Set<String> visitIds = new HashSet<>();
+        for (GenericValue serverHit : serverHits) {
+            visitIds.add(serverHit.getString("visitId"));
+        }
+        Set<String> existingVisitIds = new HashSet<>();
+        List<GenericValue> visits = EntityQuery.use(delegator).select("visitId").from("Visit")
+                .where(EntityCondition.makeCondition("visitId", EntityOperator.IN, visitIds)).queryList();
+        for (GenericValue visit : visits) {
+            existingVisitIds.add(visit.getString("visitId"));
+        }
+        List<GenericValue> values = new ArrayList<>(serverHits.size());
+        for (GenericValue serverHit : serverHits) {
+            if (existingVisitIds.contains(serverHit.getString("visitId"))) {
+                values.add(serverHit);
+            } else {
+                // GenericValue stored in client session does not exist in database.
+                Debug.logInfo("The Visit [" + serverHit.getString("visitId") + "] does not exist in the database, not storing server hit.", module);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * A hit as counted by a request thread. Holds everything needed to aggregate
+     * and persist the hit once the request is gone.
+     */
+    static final class Hit {
+        final String id;
+        final int type;
+        final Delegator delegator;
+        final long startTime;
+        final long runningTime;
+        // only set when the hit itself is persisted
+        final String visitId;
+        final String userLoginId;
+        final String partyId;
+        final String requestUrl;
+        final String referrerUrl;
+
+        Hit(String id, int type, Delegator delegator, long startTime, long runningTime, String visitId, String userLoginId,
+                String partyId, String requestUrl, String referrerUrl) {
+            this.id = id;
+            this.type = type;
+            this.delegator = delegator;
+            this.startTime = startTime;
+            this.runningTime = runningTime;
+            this.visitId = visitId;
+            this.userLoginId = userLoginId;
+            this.partyId = partyId;
+            this.requestUrl = requestUrl;
+            this.referrerUrl = referrerUrl;
+        }
+
+        Timestamp getStartTimestamp() {
+            return new Timestamp(startTime);
+        }
+    }
+
+    /**
+     * A bounded multi-producer lock-free queue on a ring of slots, each slot carrying
+     * a sequence number that tells producers and the consumer whose turn it is.
+     */
+    static final class HitRingBuffer {
+        private final int mask;
+        private final AtomicReferenceArray<Hit> slots;
+        private final AtomicLongArray sequences;
+        private final AtomicLong tail = new AtomicLong();
+        private final AtomicLong head = new AtomicLong();
+
+        HitRingBuffer(int minCapacity) {
+            int capacity = Integer.highestOneBit(minCapacity);
+            if (capacity < minCapacity) {
+                capacity <<= 1;
+            }
+            this.mask = capacity - 1;
+            this.slots = new AtomicReferenceArray<>(capacity);
+            this.sequences = new AtomicLongArray(capacity);
+            for (int i = 0; i < capacity; i++) {
+                sequences.set(i, i);
+            }
+        }
+
+        int capacity() {
+            return mask + 1;
+        }
+
+        /** Adds a hit, returns <code>false</code> if the buffer is full. */
+        boolean offer(Hit hit) {
+            while (true) {
+                long position = tail.get();
+                int index = (int) position & mask;
+                long difference = sequences.get(index) - position;
+                if (difference == 0) {
+                    if (tail.compareAndSet(position, position + 1)) {
+                        slots.set(index, hit);
+                        sequences.set(index, position + 1);
+                        return true;
+                    }
+                } else if (difference < 0) {
+                    return false;
+                }
+            }
+        }
+
+        /** Removes the oldest hit, returns <code>null</code> if the buffer is empty. */
+        Hit poll() {
+            while (true) {
+                long position = head.get();
+                int index = (int) position & mask;
+                long difference = sequences.get(index) - (position + 1);
+                if (difference == 0) {
+                    if (head.compareAndSet(position, position + 1)) {
+                        Hit hit = slots.getAndSet(index, null);
+                        sequences.set(index, position + mask + 1);
+                        return hit;
+                    }
+                } else if (difference < 0) {
+                    return null;
+                }
+            }
+        }
+    }
+}
@@ -44,6 +44,8 @@ import com.ibm.icu.util.Calendar;
  * <p>Counts server hits and tracks statistics for request, events and views
  * <p>Handles total stats since the server started and binned
  *  stats according to settings in the serverstats.properties file.
+ * <p>The hits are aggregated and persisted asynchronously by the {@link ServerHitAggregator},
+ *  so the bins and the persisted data may lag behind the counted hits by up to the flush interval.
  */
 public class ServerHitBin {
     // Debug module name
@@ -91,10 +93,60 @@ public class ServerHitBin {
         countHit(id, SERVICE, request, startTime, runningTime, userLogin);
     }
 
+    /**
+     * Returns the number of hits dropped since the server started because the aggregator buffer was full.
+     * Dropped hits are neither in the bins nor persisted.
+     */
+    public static long getDroppedHitCount() {
+        return ServerHitAggregator.getInstance().getDroppedHits();
+    }
+
+    /**
+     * Aggregates the hits counted so far and writes the pending ServerHit and ServerHitBin values.
+     * Called when a webapp stops, as the aggregator thread doesn't outlive the JVM.
+     */
+    public static void flushPendingHits() {
+        ServerHitAggregator.getInstance().shutdown();
+    }
+
     private static void countHit(String id, int type, HttpServletRequest request, long startTime, long runningTime, GenericValue userLogin) {
         // only count hits if enabled, if not specified defaults to false
         if (!"true".equals(UtilProperties.getPropertyValue("serverstats", "stats.enable." + typeIds[type]))) return;
-        countHit(id, type, request, startTime, runningTime, userLogin, true);
+        Delegator delegator = (Delegator) request.getAttribute("delegator");
+        if (delegator == null) {
+            String delegatorName = (String) request.getSession().getAttribute("delegatorName");
+            delegator = DelegatorFactory.getDelegator(delegatorName);
+        }
+        if (delegator == null) {
+            throw new IllegalArgumentException("In countHit could not find a delegator or delegatorName to work from");
+        }
+
+        // collect what is needed from the request to persist the hit, the aggregator runs after the request is gone
+        String visitId = null;
+        String userLoginId = null;
+        String partyId = null;
+        String requestUrl = null;
+        String referrerUrl = null;
+        if (EntityUtilProperties.propertyValueEqualsIgnoreCase("serverstats", "stats.persist." + ServerHitBin.typeIds[type] + ".hit", "true", delegator)) {
+            GenericValue visit = VisitHandler.getVisit(request.getSession());
+            if (visit == null) {
+                // no visit info stored, so don't store the ServerHit
+                Debug.logWarning("Could not find a visitId, so not storing ServerHit. This is probably a configuration error. If you turn off persistance of visits you should also turn off persistence of hits.", module);
+            } else {
+                visitId = visit.getString("visitId");
+                if (userLogin != null) {
+                    userLoginId = userLogin.getString("userLoginId");
+                    ModelEntity modelUserLogin = userLogin.getModelEntity();
+                    if (modelUserLogin.isField("partyId")) {
+                        partyId = userLogin.getString("partyId");
+                    }
+                }
+                requestUrl = UtilHttp.getFullRequestUrl(request);
+                referrerUrl = request.getHeader("Referer") != null ? request.getHeader("Referer") : "";
+            }
+        }
+        ServerHitAggregator.getInstance().offer(new ServerHitAggregator.Hit(id, type, delegator, startTime, runningTime, visitId, userLoginId, partyId,
+                requestUrl, referrerUrl));
     }
 
     private static String makeIdTenantAware(String id, Delegator delegator) {
@@ -134,16 +186,16 @@ public class ServerHitBin {
         return cal.getTime().getTime();
     }
 
-    private static void countHit(String baseId, int type, HttpServletRequest request, long startTime, long runningTime, GenericValue userLogin, boolean isOriginal) {
-        Delegator delegator = (Delegator) request.getAttribute("delegator");
-        if (delegator == null) {
-            String delegatorName = (String) request.getSession().getAttribute("delegatorName");
-            delegator = DelegatorFactory.getDelegator(delegatorName);
-        }
-        if (delegator == null) {
-            throw new IllegalArgumentException("In countHit could not find a delegator or delegatorName to work from");
-        }
-        
+    /** Counts a hit in the bins. Only called by the {@link ServerHitAggregator} thread. */
+    static void aggregateHit(ServerHitAggregator.Hit hit) {
+        aggregateHit(hit.id, hit, true);
+    }
+
+    private static void aggregateHit(String baseId, ServerHitAggregator.Hit hit, boolean isOriginal) {
+        Delegator delegator = hit.delegator;
+        int type = hit.type;
+        long startTime = hit.startTime;
+        long runningTime = hit.runningTime;
         String id = makeIdTenantAware(baseId, delegator);
 
         ServerHitBin bin = null;
@@ -228,11 +280,7 @@ public class ServerHitBin {
                         serverHitBin.set("serverIpAddress", VisitHandler.address.getHostAddress());
                         serverHitBin.set("serverHostName", VisitHandler.address.getHostName());
                     }
-                    try {
-                        delegator.createSetNextSeqId(serverHitBin);
-                    } catch (GenericEntityException e) {
-                        Debug.logError(e, "Could not save ServerHitBin:", module);
-                    }
+                    ServerHitAggregator.getInstance().addHitBin(serverHitBin);
                 }
             } else {
                 binList.pollFirst();
@@ -242,9 +290,9 @@ public class ServerHitBin {
         }
 
         bin.addHit(runningTime);
-        if (isOriginal) {
+        if (isOriginal && hit.visitId != null) {
             try {
-                bin.saveHit(request, startTime, runningTime, userLogin);
+                bin.saveHit(hit);
             } catch (GenericEntityException e) {
                 Debug.logWarning("Error saving ServerHit: " + e.toString(), module);
             }
@@ -260,11 +308,11 @@ public class ServerHitBin {
 
         // also count hits up the hierarchy if the id contains a '.'
         if (id.indexOf('.') > 0) {
-            countHit(id.substring(0, id.lastIndexOf('.')), type, request, startTime, runningTime, userLogin, false);
+            aggregateHit(id.substring(0, id.lastIndexOf('.')), hit, false);
         }
 
         if (isOriginal) {
-            countHit("GLOBAL", type, request, startTime, runningTime, userLogin, false);
+            aggregateHit("GLOBAL", hit, false);
         }
     }
 
@@ -463,71 +511,47 @@ public class ServerHitBin {
             this.maxTime = runningTime;
     }
 
-    private void saveHit(HttpServletRequest request, long startTime, long runningTime, GenericValue userLogin) throws GenericEntityException {
-        // persist record of hit in ServerHit entity if option turned on
-    	Delegator delegator = (Delegator) request.getAttribute("delegator");
-        if (EntityUtilProperties.propertyValueEqualsIgnoreCase("serverstats", "stats.persist." + ServerHitBin.typeIds[type] + ".hit", "true", delegator)) {
-            // if the hit type is ENTITY and the name contains "ServerHit" don't
-            // persist; avoids the infinite loop and a bunch of annoying data
-            if (this.type == ENTITY && this.id.indexOf("ServerHit") > 0) {
-                return;
-            }
-
-            // check for type data before running.
-            GenericValue serverHitType = null;
-
-            serverHitType = EntityQuery.use(delegator).from("ServerHitType").where("hitTypeId", ServerHitBin.typeIds[this.type]).cache().queryOne();
-            if (serverHitType == null) {
-                // datamodel data not loaded; not storing hit.
-                Debug.logWarning("The datamodel data has not been loaded; cannot find hitTypeId '" + ServerHitBin.typeIds[this.type] + " not storing ServerHit.", module);
-                return;
-            }
-
-            GenericValue visit = VisitHandler.getVisit(request.getSession());
-            if (visit == null) {
-                // no visit info stored, so don't store the ServerHit
-                Debug.logWarning("Could not find a visitId, so not storing ServerHit. This is probably a configuration error. If you turn off persistance of visits you should also turn off persistence of hits.", module);
-                return;
-            }
-            String visitId = visit.getString("visitId");
-            visit = EntityQuery.use(delegator).from("Visit").where("visitId", visitId).queryOne();
-            if (visit == null) {
-                // GenericValue stored in client session does not exist in database.
-                Debug.logInfo("The Visit GenericValue stored in the client session does not exist in the database, not storing server hit.", module);
-                return;
-            }
-            
-            Debug.logInfo("Visit delegatorName=" + visit.getDelegator().getDelegatorName() + ", ServerHitBin delegatorName=" + this.delegator.getDelegatorName(), module);
-            
-            GenericValue serverHit = delegator.makeValue("ServerHit");
-
-            serverHit.set("visitId", visitId);
-            serverHit.set("hitStartDateTime", new java.sql.Timestamp(startTime));
-            serverHit.set("hitTypeId", ServerHitBin.typeIds[this.type]);
-            if (userLogin != null) {
-                serverHit.set("userLoginId", userLogin.get("userLoginId"));
-                ModelEntity modelUserLogin = userLogin.getModelEntity();
-                if (modelUserLogin.isField("partyId")) {
-                    serverHit.set("partyId", userLogin.get("partyId"));
-                }
-            }
-            serverHit.set("contentId", this.id);
-            serverHit.set("runningTimeMillis", runningTime);
+    private void saveHit(ServerHitAggregator.Hit hit) throws GenericEntityException {
+        // persist record of hit in ServerHit entity, the option was checked when the hit was counted
+        // if the hit type is ENTITY and the name contains "ServerHit" don't
+        // persist; avoids the infinite loop and a bunch of annoying data
+        if (this.type == ENTITY && this.id.indexOf("ServerHit") > 0) {
+            return;
+        }
 
-            String fullRequestUrl = UtilHttp.getFullRequestUrl(request);
+        // check for type data before running.
+        GenericValue serverHitType = null;
 
-            serverHit.set("requestUrl", fullRequestUrl);
-            String referrerUrl = request.getHeader("Referer") != null ? request.getHeader("Referer") : "";
+        serverHitType = EntityQuery.use(delegator).from("ServerHitType").where("hitTypeId", ServerHitBin.typeIds[this.type]).cache().queryOne();
+        if (serverHitType == null) {
+            // datamodel data not loaded; not storing hit.
+            Debug.logWarning("The datamodel data has not been loaded; cannot find hitTypeId '" + ServerHitBin.typeIds[this.type] + " not storing ServerHit.", module);
+            return;
+        }
 
-            serverHit.set("referrerUrl", referrerUrl);
+        GenericValue serverHit = delegator.makeValue("ServerHit");
 
-            // get localhost ip address and hostname to store
-            if (VisitHandler.address != null) {
-                serverHit.set("serverIpAddress", VisitHandler.address.getHostAddress());
-                serverHit.set("serverHostName", VisitHandler.address.getHostName());
+        // the existence of the visit is checked when the batch is written
+        serverHit.set("visitId", hit.visitId);
+        serverHit.set("hitStartDateTime", hit.getStartTimestamp());
+        serverHit.set("hitTypeId", ServerHitBin.typeIds[this.type]);
+        if (hit.userLoginId != null) {
+            serverHit.set("userLoginId", hit.userLoginId);
+            if (hit.partyId != null) {
+                serverHit.set("partyId", hit.partyId);
             }
-
-            serverHit.create();
         }
+        serverHit.set("contentId", this.id);
+        serverHit.set("runningTimeMillis", hit.runningTime);
+        serverHit.set("requestUrl", hit.requestUrl);
+        serverHit.set("referrerUrl", hit.referrerUrl);
+
+        // get localhost ip address and hostname to store
+        if (VisitHandler.address != null) {
+            serverHit.set("serverIpAddress", VisitHandler.address.getHostAddress());
+            serverHit.set("serverHostName", VisitHandler.address.getHostName());
+        }
+
+        ServerHitAggregator.getInstance().addHit(serverHit);
     }
 }
@@ -69,7 +69,11 @@ public class VisitHandler {
                 visitor.set("partyId", userLogin.get("partyId"));
             }
             try {
-                visitor.store();
+                if (VisitPersistenceQueue.getInstance().isEnabled()) {
+                    VisitPersistenceQueue.getInstance().store(visitor);
+                } else {
+                    visitor.store();
+                }
             } catch (GenericEntityException e) {
                 Debug.logError(e, "Could not update visitor: ", module);
             }
@@ -89,13 +93,27 @@ public class VisitHandler {
             }
 
             try {
-                visit.store();
+                if (VisitPersistenceQueue.getInstance().isEnabled()) {
+                    VisitPersistenceQueue.getInstance().store(visit);
+                } else {
+                    visit.store();
+                }
             } catch (GenericEntityException e) {
                 Debug.logError(e, "Could not update visit: ", module);
             }
         }
     }
 
+    /**
+     * Writes the Visit and Visitor values still queued when they are written in the background.
+     * Called when a webapp stops, as the background writer doesn't outlive the JVM.
+     */
+    public static void flushPendingVisits() {
+        if (VisitPersistenceQueue.getInstance().isEnabled()) {
+            VisitPersistenceQueue.getInstance().shutdown();
+        }
+    }
+
     public static String getVisitId(HttpSession session) {
         GenericValue visit = getVisit(session);
         if (visit != null) {
@@ -167,7 +185,10 @@ public class VisitHandler {
                                 // sometimes these values get stale, so check it before we use it
                                 try {
                                     GenericValue checkVisitor = EntityQuery.use(delegator).from("Visitor").where("visitorId", visitorId).queryOne();
-                                    if (checkVisitor == null) {
+                                    // a queued visitor may not be written yet, re-queuing it is harmless
+                                    if (checkVisitor == null && VisitPersistenceQueue.getInstance().isEnabled()) {
+                                        VisitPersistenceQueue.getInstance().store(visitor);
+                                    } else if (checkVisitor == null) {
                                         GenericValue newVisitor = delegator.create("Visitor", "visitorId", visitorId);
                                         session.setAttribute("visitor", newVisitor);
                                     }
@@ -184,7 +205,11 @@ public class VisitHandler {
                             }
 
                             try {
-                                visit = delegator.createSetNextSeqId(visit);
+                                if (VisitPersistenceQueue.getInstance().isEnabled()) {
+                                    visit = VisitPersistenceQueue.getInstance().create(visit);
+                                } else {
+                                    visit = delegator.createSetNextSeqId(visit);
+                                }
                                 session.setAttribute("visit", visit);
                             } catch (GenericEntityException e) {
                                 Debug.logError(e, "Could not create new visit:", module);
@@ -242,7 +267,11 @@ public class VisitHandler {
                                 // no visitor cookie? create visitor and send back cookie too
                                 visitor = delegator.makeValue("Visitor");
                                 try {
-                                    delegator.createSetNextSeqId(visitor);
+                                    if (VisitPersistenceQueue.getInstance().isEnabled()) {
+                                        VisitPersistenceQueue.getInstance().create(visitor);
+                                    } else {
+                                        delegator.createSetNextSeqId(visitor);
+                                    }
                                 } catch (GenericEntityException e) {
                                     Debug.logError(e, "Could not create new visitor:", module);
                                     visitor = null;
@@ -253,7 +282,11 @@ public class VisitHandler {
                                     if (visitor == null) {
                                         // looks like we have an ID that doesn't exist in our database, so we'll create a new one
                                         visitor = delegator.makeValue("Visitor");
-                                        visitor = delegator.createSetNextSeqId(visitor);
+                                        if (VisitPersistenceQueue.getInstance().isEnabled()) {
+                                            visitor = VisitPersistenceQueue.getInstance().create(visitor);
+                                        } else {
+                                            visitor = delegator.createSetNextSeqId(visitor);
+                                        }
                                         if (Debug.infoOn()) {
                                             String visitorId = visitor != null ? visitor.getString("visitorId") : "empty visitor";
                                             Debug.logInfo("The visitorId [" + cookieVisitorId + "] found in cookie was invalid, creating new Visitor with ID [" + visitorId + "]", module);
@@ -0,0 +1,273 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.webapp.stats;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericPK;
+import org.apache.ofbiz.entity.GenericValue;
+
+/**
+ * Write-behind persistence of the Visit and Visitor values created and updated by {@link VisitHandler}.
+ * <p>Enabled with the <code>stats.persist.visit.async</code> property in serverstats.properties.
+ * The IDs are assigned from the sequence bank right away, so the values can be used in the session
+ * before they are written. A daemon thread writes the queued values with one <code>storeAll</code>
+ * call - and transaction - per delegator and batch, at most every
+ * <code>stats.persist.visit.async.flush.interval.millis</code> milliseconds, which bounds the
+ * loss window if the server stops. Only the latest copy of a value is kept in the queue. When the queue
+ * is full, the request thread waits up to <code>stats.persist.visit.async.offer.timeout.millis</code>
+ * milliseconds and then writes the value itself, after the batch being written. When a batch
+ * cannot be written, its values are written one by one so that a single bad value doesn't lose the
+ * others. {@link #shutdown()} writes the values still queued when the webapps stop.</p>
+ */
+final class VisitPersistenceQueue implements Runnable {
+
+    public static final String module = VisitPersistenceQueue.class.getName();
+
+    private static final VisitPersistenceQueue instance = new VisitPersistenceQueue();
+
+    private final boolean enabled;
+    // the latest copy of each queued value by primary key, in the order the keys were first queued
+    private final Map<GenericPK, GenericValue> pending = new LinkedHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    // held while draining and writing values, so that the batches are written in the order they were drained
+    private final Object writeMonitor = new Object();
+    private final int queueSize;
+    private final int batchSize;
+    private final long flushInterval;
+    private final long offerTimeout;
+    private volatile Thread thread;
+
+    private VisitPersistenceQueue() {
+        this.enabled = UtilProperties.propertyValueEqualsIgnoreCase("serverstats", "stats.persist.visit.async", "true");
+        int queueSize = UtilProperties.getPropertyAsInteger("serverstats", "stats.persist.visit.async.queue.size", 10000);
+        this.queueSize = queueSize > 0 ? queueSize : 10000;
+        int batchSize = UtilProperties.getPropertyAsInteger("serverstats", "stats.persist.visit.async.batch.size", 200);
+        this.batchSize = batchSize > 0 ? batchSize : 200;
+        long flushInterval = UtilProperties.getPropertyAsLong("serverstats", "stats.persist.visit.async.flush.interval.millis", 1000);
+        this.flushInterval = flushInterval > 0 ? flushInterval : 1000;
+        this.offerTimeout = Math.max(0, UtilProperties.getPropertyAsLong("serverstats", "stats.persist.visit.async.offer.timeout.millis", 50));
+    }
+
+    static VisitPersistenceQueue getInstance() {
+        return instance;
+    }
+
+    /** Returns <code>true</code> if Visit and Visitor values are written in the background. */
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Creates <code>value</code> with the next sequence ID and queues it to be written.
+     * Returns the value with its ID set.
+     */
+    GenericValue create(GenericValue value) throws GenericEntityException {
+        value.setNextSeqId();
+        store(value);
+        return value;
+    }
+
+    /** Queues a copy of <code>value</code> to be created or updated, replacing the queued copy of the same value if any. */
+    void store(GenericValue value) throws GenericEntityException {
+        // the session keeps changing its value, queue a copy that only the writer will see
+        GenericValue copy = (GenericValue) value.clone();
+        GenericPK primaryKey = copy.getPrimaryKey();
+        if (thread == null) {
+            startThread();
+        }
+        boolean queued = false;
+        lock.lock();
+        try {
+            long nanos = TimeUnit.MILLISECONDS.toNanos(offerTimeout);
+            while (!pending.containsKey(primaryKey) && pending.size() >= queueSize && nanos > 0) {
+                nanos = notFull.awaitNanos(nanos);
+            }
+            if (pending.containsKey(primaryKey) || pending.size() < queueSize) {
+                pending.put(primaryKey, copy);
+                notEmpty.signal();
+                queued = true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+        if (!queued) {
+            // back-pressure: the writer is behind, write this one in the request thread once the batch
+            // being written, which may hold an older copy of the value, is done
+            synchronized (writeMonitor) {
+                if (!isPending(primaryKey)) {
+                    copy.getDelegator().createOrStore(copy);
+                } // else a newer copy was queued meanwhile and will be written instead
+            }
+        }
+    }
+
+    private boolean isPending(GenericPK primaryKey) {
+        lock.lock();
+        try {
+            return pending.containsKey(primaryKey);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // removes up to max values from the queue, the oldest first
+    private List<GenericValue> drain(int max) {
+        List<GenericValue> batch = new ArrayList<>(Math.min(max, batchSize));
+        lock.lock();
+        try {
+            Iterator<GenericValue> it = pending.values().iterator();
+            while (it.hasNext() && batch.size() < max) {
+                batch.add(it.next());
+                it.remove();
+            }
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        return batch;
+    }
+
+    private synchronized void startThread() {
+        if (thread == null) {
+            Thread writerThread = new Thread(this, "OFBiz-VisitPersistenceQueue");
+            writerThread.setDaemon(true);
+            thread = writerThread;
+            writerThread.start();
+        }
+    }
+
+    /**
+     * Stops the writer thread and writes all the queued values. The writer thread is started again
+     * if values are queued afterwards.
+     */
+    void shutdown() {
+        Thread writerThread;
+        synchronized (this) {
+            writerThread = thread;
+            thread = null;
+        }
+        if (writerThread != null) {
+            // wake the writer up so that it sees it was stopped
+            lock.lock();
+            try {
+                notEmpty.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+        flush();
+    }
+
+    /**
+     * Writes all the queued values, after the batch the writer thread may be writing.
+     * May be called from any thread.
+     */
+    void flush() {
+        synchronized (writeMonitor) {
+            List<GenericValue> batch;
+            while (!(batch = drain(batchSize)).isEmpty()) {
+                write(batch);
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        Thread current = Thread.currentThread();
+        // runs until interrupted or replaced, after shutdown
+        while (thread == current && !current.isInterrupted()) {
+            try {
+                lock.lock();
+                try {
+                    while (pending.isEmpty() && thread == current) {
+                        notEmpty.await();
+                    }
+                    // give the batch up to the flush interval to fill up
+                    long nanos = TimeUnit.MILLISECONDS.toNanos(flushInterval);
+                    while (pending.size() < batchSize && nanos > 0 && thread == current) {
+                        nanos = notEmpty.awaitNanos(nanos);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                synchronized (writeMonitor) {
+                    List<GenericValue> batch = drain(batchSize);
+                    if (!batch.isEmpty()) {
+                        write(batch);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable t) {
+                Debug.logError(t, "Error writing Visit and Visitor values: ", module);
+            }
+        }
+    }
+
+    private static void write(List<GenericValue> batch) {
+        // write the values of each delegator in one transaction, in the order they were queued
+        Map<String, List<GenericValue>> valuesByDelegator = new HashMap<>();
+        Map<String, Delegator> delegators = new HashMap<>();
+        for (GenericValue value : batch) {
+            Delegator delegator = value.getDelegator();
+            List<GenericValue> values = valuesByDelegator.get(delegator.getDelegatorName());
+            if (values == null) {
+                values = new LinkedList<>();
+                valuesByDelegator.put(delegator.getDelegatorName(), values);
+                delegators.put(delegator.getDelegatorName(), delegator);
+            }
+            values.add(value);
+        }
+        for (Map.Entry<String, List<GenericValue>> entry : valuesByDelegator.entrySet()) {
+            Delegator delegator = delegators.get(entry.getKey());
+            List<GenericValue> values = entry.getValue();
+            try {
+                delegator.storeAll(values);
+            } catch (GenericEntityException e) {
+                // the batch was rolled back, save the values one by one so that a single bad value doesn't lose the others
+                Debug.logWarning("Could not save " + values.size() + " Visit and Visitor values in one batch, saving them one by one: " + e.toString(), module);
+                for (GenericValue value : values) {
+                    try {
+                        delegator.createOrStore(value);
+                    } catch (GenericEntityException e2) {
+                        Debug.logError(e2, "Could not save " + value.getEntityName() + " value " + value.getPrimaryKey() + ":", module);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -22,24 +22,33 @@ import static org.hamcrest.CoreMatchers.both;
 import static org.hamcrest.CoreMatchers.hasItem;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.io.File;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
+import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
 
+import org.apache.ofbiz.base.util.cache.UtilCache;
 import org.apache.ofbiz.base.util.collections.MultivaluedMapContext;
 import org.apache.ofbiz.webapp.control.ConfigXMLReader.RequestMap;
 import org.apache.ofbiz.webapp.control.ConfigXMLReader.ViewMap;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.w3c.dom.Element;
 
 public class RequestHandlerTests {
@@ -197,4 +206,47 @@ public class RequestHandlerTests {
             assertTrue(RequestHandler.resolveMethod("delete", rmaps).isPresent());
         }
     }
+
+    public static class RoutingSnapshotTests {
+        @Rule
+        public TemporaryFolder folder = new TemporaryFolder();
+
+        private static void writeController(File file, String content) throws Exception {
+            Files.write(file.toPath(), ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<site-conf>\n" + content + "</site-conf>\n")
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+
+        private static String requestMap(String uri) {
+            return "<request-map uri=\"" + uri + "\"><response name=\"success\" type=\"none\"/></request-map>\n";
+        }
+
+        @Test
+        public void routingSnapshotRebuiltOnIncludeReload() throws Exception {
+            File included = folder.newFile("included-controller.xml");
+            writeController(included, requestMap("foo"));
+            File controller = folder.newFile("controller.xml");
+            URL includedUrl = included.toURI().toURL();
+            writeController(controller, "<include location=\"" + includedUrl + "\"/>\n" + requestMap("main"));
+            ServletContext servletContext = mock(ServletContext.class);
+            when(servletContext.getResource(ConfigXMLReader.controllerXmlFileName)).thenReturn(controller.toURI().toURL());
+            RequestHandler requestHandler = RequestHandler.getRequestHandler(servletContext);
+
+            RequestHandler.ControllerConfig snapshot = requestHandler.getRoutingSnapshot();
+            assertThat(snapshot.getRequestMapMap().keySet(), both(hasItem("main")).and(hasItem("foo")));
+            assertTrue(snapshot.isCurrent());
+            assertThat(requestHandler.getRoutingSnapshot(), sameInstance(snapshot));
+
+            // replace the cached config of the included controller, as its reload does
+            writeController(included, requestMap("foo") + requestMap("bar"));
+            UtilCache.findCache("webapp.ControllerConfig").remove(includedUrl);
+            ConfigXMLReader.getControllerConfig(includedUrl);
+            assertFalse(snapshot.isCurrent());
+            RequestHandler.ControllerConfig rebuilt = requestHandler.getRoutingSnapshot();
+            assertThat(rebuilt, not(sameInstance(snapshot)));
+            assertTrue(rebuilt.isCurrent());
+            assertThat(rebuilt.getRequestMapMap().keySet(), hasItem("bar"));
+            assertThat(snapshot.getRequestMapMap().keySet(), not(hasItem("bar")));
+            assertThat(requestHandler.getRoutingSnapshot(), sameInstance(rebuilt));
+        }
+    }
 }
@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.webapp.stats;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ofbiz.webapp.stats.ServerHitAggregator.Hit;
+import org.apache.ofbiz.webapp.stats.ServerHitAggregator.HitRingBuffer;
+import org.junit.Test;
+
+public class HitRingBufferTests {
+
+    private static Hit hit(String id) {
+        return new Hit(id, ServerHitBin.REQUEST, null, 0, 0, null, null, null, null, null);
+    }
+
+    @Test
+    public void capacityRoundedUpToPowerOfTwo() {
+        assertThat(new HitRingBuffer(3).capacity(), is(4));
+        assertThat(new HitRingBuffer(4).capacity(), is(4));
+        assertThat(new HitRingBuffer(1000).capacity(), is(1024));
+    }
+
+    @Test
+    public void offerPollWraparound() {
+        HitRingBuffer buffer = new HitRingBuffer(4);
+        assertThat(buffer.poll(), is(nullValue()));
+        int next = 0;
+        int expected = 0;
+        // go around the ring several times with the slots partly filled
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 3; i++) {
+                assertTrue(buffer.offer(hit(Integer.toString(next++))));
+            }
+            for (int i = 0; i < 3; i++) {
+                assertThat(buffer.poll().id, is(Integer.toString(expected++)));
+            }
+            assertThat(buffer.poll(), is(nullValue()));
+        }
+    }
+
+    @Test
+    public void offerToFullBufferDropsHit() {
+        HitRingBuffer buffer = new HitRingBuffer(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(hit(Integer.toString(i))));
+        }
+        assertFalse(buffer.offer(hit("dropped")));
+        assertFalse(buffer.offer(hit("dropped")));
+        // a polled slot can be used again, the dropped hits are not in the buffer
+        assertThat(buffer.poll().id, is("0"));
+        assertTrue(buffer.offer(hit("4")));
+        assertFalse(buffer.offer(hit("dropped")));
+        for (int i = 1; i <= 4; i++) {
+            assertThat(buffer.poll().id, is(Integer.toString(i)));
+        }
+        assertThat(buffer.poll(), is(nullValue()));
+    }
+
+    @Test
+    public void concurrentOffersToFullBuffer() throws Exception {
+        HitRingBuffer buffer = new HitRingBuffer(256);
+        int threadCount = 8;
+        int hitsPerThread = 100;
+        AtomicInteger accepted = new AtomicInteger();
+        AtomicInteger dropped = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            String prefix = t + "-";
+            threads[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < hitsPerThread; i++) {
+                    if (buffer.offer(hit(prefix + i))) {
+                        accepted.incrementAndGet();
+                    } else {
+                        dropped.incrementAndGet();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(accepted.get(), is(256));
+        assertThat(dropped.get(), is(threadCount * hitsPerThread - 256));
+        // each accepted hit is polled once
+        Set<String> ids = new HashSet<>();
+        Hit hit;
+        while ((hit = buffer.poll()) != null) {
+            assertTrue(ids.add(hit.id));
+        }
+        assertThat(ids.size(), is(256));
+    }
+}
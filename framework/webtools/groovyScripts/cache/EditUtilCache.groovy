@@ -38,7 +38,11 @@ if (cacheName) {
         cache.missCountSoftRef = UtilFormatOut.formatQuantity(utilCache.getMissCountSoftRef())
         cache.removeHitCount = UtilFormatOut.formatQuantity(utilCache.getRemoveHitCount())
         cache.removeMissCount = UtilFormatOut.formatQuantity(utilCache.getRemoveMissCount())
+        cache.loadCount = UtilFormatOut.formatQuantity(utilCache.getLoadCount())
+        cache.loadExceptionCount = UtilFormatOut.formatQuantity(utilCache.getLoadExceptionCount())
+        cache.averageLoadTime = UtilFormatOut.formatQuantity(utilCache.getAverageLoadTime())
         cache.maxInMemory = UtilFormatOut.formatQuantity(utilCache.getMaxInMemory())
+        cache.maxBytes = utilCache.getMaxBytes()
         cache.expireTime = UtilFormatOut.formatQuantity(utilCache.getExpireTime())
         cache.useSoftReference = utilCache.getUseSoftReference().toString()
 
@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.webtools;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.ofbiz.base.metrics.LatencyHistogram;
+import org.apache.ofbiz.base.metrics.Metrics;
+import org.apache.ofbiz.base.metrics.MetricsFactory;
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.service.ServicePhaseMetrics;
+
+/**
+ * Contains events for the {@link MetricsFactory} metrics.
+ */
+public final class MetricsEvents {
+
+    public static final String module = MetricsEvents.class.getName();
+    private static final double[] QUANTILES = {0.5, 0.95, 0.99};
+
+    private MetricsEvents() {}
+
+    /**
+     * Writes all metrics in the Prometheus text exposition format (version 0.0.4).
+     * Each metric is exported with its name in the <code>name</code> label. When enabled, the
+     * {@link ServicePhaseMetrics} service phase timings are exported as well.
+     * @param request The HTTP request object for the current request.
+     * @param response The HTTP response object for the current request.
+     * @return "success" if the metrics were written, "error" otherwise
+     */
+    public static String prometheusMetrics(HttpServletRequest request, HttpServletResponse response) {
+        response.setContentType("text/plain; version=0.0.4; charset=UTF-8");
+        response.setCharacterEncoding("UTF-8");
+        try {
+            Writer writer = response.getWriter();
+            writePrometheusText(MetricsFactory.getMetrics(), writer);
+            if (ServicePhaseMetrics.isEnabled()) {
+                writeServicePhaseText(writer);
+            }
+            writer.flush();
+        } catch (IOException e) {
+            Debug.logError(e, "Unable to write the metrics: ", module);
+            return "error";
+        }
+        return "success";
+    }
+
+    static void writePrometheusText(Collection<Metrics> metricsList, Writer writer) throws IOException {
+        writer.write("# HELP ofbiz_metric_latency_milliseconds Service time per event.\n");
+        writer.write("# TYPE ofbiz_metric_latency_milliseconds summary\n");
+        for (Metrics metrics : metricsList) {
+            String name = escapeLabelValue(metrics.getName());
+            LatencyHistogram.Snapshot latency = metrics.getLatencySnapshot();
+            for (double quantile : QUANTILES) {
+                writer.write("ofbiz_metric_latency_milliseconds{name=\"" + name + "\",quantile=\"" + quantile + "\"} " + latency.getValueAtQuantile(quantile) + "\n");
+            }
+            writer.write("ofbiz_metric_latency_milliseconds_sum{name=\"" + name + "\"} " + metrics.getTotalServiceTime() + "\n");
+            writer.write("ofbiz_metric_latency_milliseconds_count{name=\"" + name + "\"} " + metrics.getTotalEvents() + "\n");
+        }
+        writer.write("# HELP ofbiz_metric_latency_max_milliseconds Longest service time per event during the sliding window.\n");
+        writer.write("# TYPE ofbiz_metric_latency_max_milliseconds gauge\n");
+        for (Metrics metrics : metricsList) {
+            writer.write("ofbiz_metric_latency_max_milliseconds{name=\"" + escapeLabelValue(metrics.getName()) + "\"} " + metrics.getLatencySnapshot().getMax() + "\n");
+        }
+        writer.write("# HELP ofbiz_metric_service_rate_milliseconds Moving average of the service time per event.\n");
+        writer.write("# TYPE ofbiz_metric_service_rate_milliseconds gauge\n");
+        for (Metrics metrics : metricsList) {
+            writer.write("ofbiz_metric_service_rate_milliseconds{name=\"" + escapeLabelValue(metrics.getName()) + "\"} " + metrics.getServiceRate() + "\n");
+        }
+    }
+
+    static void writeServicePhaseText(Writer writer) throws IOException {
+        writer.write("# HELP ofbiz_service_phase_microseconds Time spent per service phase during the sliding window.\n");
+        writer.write("# TYPE ofbiz_service_phase_microseconds summary\n");
+        for (String serviceName : ServicePhaseMetrics.getServiceNames()) {
+            String service = escapeLabelValue(serviceName);
+            for (Map.Entry<String, LatencyHistogram.Snapshot> entry : ServicePhaseMetrics.getPhaseSnapshots(serviceName).entrySet()) {
+                String labels = "service=\"" + service + "\",phase=\"" + escapeLabelValue(entry.getKey()) + "\"";
+                LatencyHistogram.Snapshot snapshot = entry.getValue();
+                for (double quantile : QUANTILES) {
+                    writer.write("ofbiz_service_phase_microseconds{" + labels + ",quantile=\"" + quantile + "\"} " + snapshot.getValueAtQuantile(quantile) + "\n");
+                }
+                writer.write("ofbiz_service_phase_microseconds_count{" + labels + "} " + snapshot.getCount() + "\n");
+            }
+        }
+    }
+
+    private static String escapeLabelValue(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
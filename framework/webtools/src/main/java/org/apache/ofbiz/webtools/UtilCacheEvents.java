@@ -247,15 +247,20 @@ public final class UtilCacheEvents {
             return "error";
         }
         String maxInMemoryStr = request.getParameter("UTIL_CACHE_MAX_IN_MEMORY");
+        String maxBytesStr = request.getParameter("UTIL_CACHE_MAX_BYTES");
         String expireTimeStr = request.getParameter("UTIL_CACHE_EXPIRE_TIME");
         String useSoftReferenceStr = request.getParameter("UTIL_CACHE_USE_SOFT_REFERENCE");
 
         Integer maxInMemory = null;
+        Long maxBytes = null;
         Long expireTime = null;
 
         try {
             maxInMemory = Integer.valueOf(maxInMemoryStr);
         } catch (Exception e) {}
+        try {
+            maxBytes = Long.valueOf(maxBytesStr);
+        } catch (Exception e) {}
         try {
             expireTime = Long.valueOf(expireTimeStr);
         } catch (Exception e) {}
@@ -265,6 +270,8 @@ public final class UtilCacheEvents {
         if (utilCache != null) {
             if (maxInMemory != null)
                 utilCache.setMaxInMemory(maxInMemory);
+            if (maxBytes != null)
+                utilCache.setMaxBytes(maxBytes);
             if (expireTime != null)
                 utilCache.setExpireTime(expireTime);
             if (useSoftReferenceStr != null) {
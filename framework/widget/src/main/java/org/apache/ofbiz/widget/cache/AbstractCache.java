@@ -18,10 +18,16 @@
  *******************************************************************************/
 package org.apache.ofbiz.widget.cache;
 
+import org.apache.ofbiz.base.util.cache.ObjectWeigher;
 import org.apache.ofbiz.base.util.cache.UtilCache;
 
 public abstract class AbstractCache {
 
+    static {
+        // the outputs count for their encoded size when the caches are bounded by maxBytes
+        ObjectWeigher.registerWeigher(GenericWidgetOutput.class, output -> 64 + output.size());
+    }
+
     protected String id;
 
     protected AbstractCache(String id) {
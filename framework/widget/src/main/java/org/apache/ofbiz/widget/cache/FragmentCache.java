@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.widget.cache;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.cache.CacheInvalidationListener;
+import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.entity.cache.Cache;
+import org.apache.ofbiz.entity.cache.EntityChangeListener;
+
+/**
+ * Cache of rendered screen fragments (sections, containers and included screens declaring
+ * a <code>cache-key</code>).
+ * <p>
+ * Each fragment gets its own UtilCache, named after the fragment, holding the outputs by
+ * cache key. The caches of the fragments depending on an entity are cleared when the
+ * entity cache of that entity is cleared.
+ * <p>
+ * The caches are bounded by the <code>widgetcache.fragment</code> settings of cache.properties,
+ * which can be overridden for each fragment cache. An output rendered while its fragment cache
+ * was cleared is not cached, as it may have been built from the data being changed.
+ */
+public final class FragmentCache extends AbstractCache {
+
+    public static final String module = FragmentCache.class.getName();
+    private static final FragmentCache instance = new FragmentCache();
+    private static final String settingsName = "widgetcache.fragment";
+    private static final int DEFAULT_MAX_SIZE = 1000;
+    private static final Map<String, Set<String>> fragmentsByEntity = new ConcurrentHashMap<>();
+    private static final Map<String, FragmentGeneration> generations = new ConcurrentHashMap<>();
+
+    static {
+        Cache.addEntityChangeListener(new FragmentInvalidator());
+    }
+
+    private FragmentCache() {
+        super("fragment");
+    }
+
+    public static FragmentCache getInstance() {
+        return instance;
+    }
+
+    public GenericWidgetOutput get(String fragmentName, String cacheKey) {
+        UtilCache<String, GenericWidgetOutput> fragmentCache = getCache(fragmentName);
+        if (fragmentCache == null) {
+            return null;
+        }
+        return fragmentCache.get(cacheKey);
+    }
+
+    /**
+     * Returns the invalidation generation of a fragment, to be read before rendering the fragment
+     * and passed to {@link #put(String, String, GenericWidgetOutput, long)} with the output.
+     * @param fragmentName the unique name of the fragment
+     * @param expireTime the time to live of the outputs in milliseconds, 0 for no expiration
+     * @param entityNames the entities whose changes invalidate the fragment
+     * @return the generation, incremented each time the fragment cache or one of its outputs is removed
+     */
+    public long getGeneration(String fragmentName, long expireTime, Collection<String> entityNames) {
+        String cacheName = getCacheName(fragmentName);
+        for (String entityName : entityNames) {
+            fragmentsByEntity.computeIfAbsent(entityName, k -> ConcurrentHashMap.newKeySet()).add(cacheName);
+        }
+        return generations.computeIfAbsent(cacheName, k -> {
+            // the size of the cache is bounded in cache.properties, maxSize is the fallback
+            UtilCache<String, GenericWidgetOutput> fragmentCache = UtilCache.getOrCreateUtilCache(cacheName, DEFAULT_MAX_SIZE, 0, expireTime, true,
+                    cacheName, settingsName);
+            FragmentGeneration generation = new FragmentGeneration();
+            fragmentCache.addInvalidationListener(generation);
+            return generation;
+        }).get();
+    }
+
+    /**
+     * Puts a rendered fragment in the cache, unless the fragment was invalidated while it was rendered.
+     * @param fragmentName the unique name of the fragment
+     * @param cacheKey the expanded cache key
+     * @param output the rendered output
+     * @param generation the generation of the fragment read before rendering it
+     * @return <code>true</code> if the output was cached
+     */
+    public boolean put(String fragmentName, String cacheKey, GenericWidgetOutput output, long generation) {
+        String cacheName = getCacheName(fragmentName);
+        FragmentGeneration currentGeneration = generations.get(cacheName);
+        UtilCache<String, GenericWidgetOutput> fragmentCache = getCache(fragmentName);
+        if (currentGeneration == null || fragmentCache == null || currentGeneration.get() != generation) {
+            return false;
+        }
+        fragmentCache.put(cacheKey, output);
+        if (currentGeneration.get() != generation) {
+            // invalidated between the check and the put
+            fragmentCache.remove(cacheKey);
+            return false;
+        }
+        return true;
+    }
+
+    /** Counts the invalidations of a fragment cache */
+    private static class FragmentGeneration implements CacheInvalidationListener<String> {
+        private final AtomicLong count = new AtomicLong();
+
+        long get() {
+            return count.get();
+        }
+
+        @Override
+        public void noteKeyInvalidation(UtilCache<String, ?> cache, String key) {
+            count.incrementAndGet();
+        }
+
+        @Override
+        public void noteCacheInvalidation(UtilCache<String, ?> cache) {
+            count.incrementAndGet();
+        }
+    }
+
+    private static class FragmentInvalidator implements EntityChangeListener {
+        @Override
+        public void entityChanged(String delegatorName, String entityName) {
+            if (entityName == null) {
+                for (Set<String> cacheNames : fragmentsByEntity.values()) {
+                    clearCaches(cacheNames, null);
+                }
+                return;
+            }
+            Set<String> cacheNames = fragmentsByEntity.get(entityName);
+            if (cacheNames != null) {
+                clearCaches(cacheNames, entityName);
+            }
+        }
+
+        private static void clearCaches(Set<String> cacheNames, String entityName) {
+            for (String cacheName : cacheNames) {
+                if (Debug.verboseOn()) {
+                    Debug.logVerbose("Clearing fragment cache [" + cacheName + "] on change of entity [" + entityName + "]", module);
+                }
+                UtilCache.clearCache(cacheName);
+            }
+        }
+    }
+}
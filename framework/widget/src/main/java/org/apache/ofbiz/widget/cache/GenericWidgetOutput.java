@@ -18,18 +18,85 @@
  *******************************************************************************/
 package org.apache.ofbiz.widget.cache;
 
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.ofbiz.base.util.UtilProperties;
+
+/**
+ * Rendered widget output kept in a cache.
+ * <p>
+ * The output is stored UTF-8 encoded, which halves the footprint of mostly ASCII markup
+ * compared to a String, either on the heap or, when <code>widget.cache.offheap</code> is
+ * set in widget.properties, in a direct buffer outside of the heap. The cached output is
+ * decoded by chunks straight into the writer of the response.
+ */
 public class GenericWidgetOutput {
 
     public static final String module = GenericWidgetOutput.class.getName();
+    private static final boolean offHeap = "true".equals(UtilProperties.getPropertyValue("widget", "widget.cache.offheap", "false"));
+    private static final int chunkSize = 8192;
 
-    protected String output;
+    protected final ByteBuffer output;
 
     public GenericWidgetOutput(String output) {
-        this.output = output;
+        byte[] bytes = output.getBytes(StandardCharsets.UTF_8);
+        if (offHeap) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+            buffer.put(bytes);
+            buffer.flip();
+            this.output = buffer.asReadOnlyBuffer();
+        } else {
+            this.output = ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+        }
+    }
+
+    /**
+     * Returns the size of the encoded output.
+     * @return the size in bytes
+     */
+    public int size() {
+        return this.output.remaining();
+    }
+
+    /**
+     * Writes the output to the given writer without building an intermediate String.
+     * @param writer the writer to write to
+     * @throws IOException if the writer fails
+     */
+    public void writeTo(Appendable writer) throws IOException {
+        ByteBuffer in = this.output.duplicate();
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+        CharBuffer chunk = CharBuffer.allocate(Math.min(chunkSize, Math.max(in.remaining(), 1)));
+        boolean endOfInput = false;
+        while (true) {
+            CoderResult result = endOfInput ? decoder.flush(chunk) : decoder.decode(in, chunk, true);
+            if (result.isError()) {
+                result.throwException();
+            }
+            chunk.flip();
+            if (writer instanceof Writer) {
+                ((Writer) writer).write(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+            } else {
+                writer.append(chunk);
+            }
+            chunk.clear();
+            if (result.isUnderflow()) {
+                if (endOfInput) {
+                    break;
+                }
+                endOfInput = true;
+            }
+        }
     }
 
     @Override
     public String toString() {
-        return this.output;
+        return StandardCharsets.UTF_8.decode(this.output.duplicate()).toString();
     }
 }
@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.widget.model;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.GeneralException;
+import org.apache.ofbiz.base.util.StringUtil;
+import org.apache.ofbiz.base.util.string.FlexibleStringExpander;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.widget.cache.FragmentCache;
+import org.apache.ofbiz.widget.cache.GenericWidgetOutput;
+import org.apache.ofbiz.widget.renderer.ScreenStringRenderer;
+import org.w3c.dom.Element;
+
+/**
+ * Fragment cache settings of a screen widget (<code>cache-key</code>, <code>cache-ttl</code>
+ * and <code>cache-entities</code> attributes).
+ * <p>
+ * The cache key is expanded against the context at render time; the delegator, the locale
+ * and the renderer name are always part of the key. An empty expanded key disables the cache
+ * for that rendering. On a cache hit the widget is not evaluated at all, so the actions of a
+ * cached widget must not set values used outside of it.
+ */
+public final class ModelFragmentCache {
+
+    public static final String module = ModelFragmentCache.class.getName();
+
+    private final String fragmentName;
+    private final FlexibleStringExpander cacheKeyExdr;
+    private final String ttl;
+    private final long expireTime;
+    private final List<String> entityNames;
+
+    private ModelFragmentCache(ModelScreenWidget widget, Element widgetElement) {
+        ModelScreen modelScreen = widget.getModelScreen();
+        this.fragmentName = modelScreen.getSourceLocation() + "#" + modelScreen.getName() + "#" + widgetElement.getTagName() + "@" + widget.getStartLine();
+        this.cacheKeyExdr = FlexibleStringExpander.getInstance(widgetElement.getAttribute("cache-key"));
+        this.ttl = widgetElement.getAttribute("cache-ttl");
+        long expireTime = 0;
+        if (!ttl.isEmpty()) {
+            try {
+                expireTime = Long.parseLong(ttl) * 1000;
+            } catch (NumberFormatException e) {
+                Debug.logWarning("Invalid cache-ttl [" + ttl + "] in fragment [" + fragmentName + "], the fragment will not expire", module);
+            }
+        }
+        this.expireTime = expireTime;
+        List<String> entityNames = StringUtil.split(widgetElement.getAttribute("cache-entities"), ", ");
+        this.entityNames = entityNames != null ? Collections.unmodifiableList(entityNames) : Collections.<String>emptyList();
+    }
+
+    /**
+     * Returns the fragment cache settings of a widget element.
+     * @param widget the widget being built from the element
+     * @param widgetElement the element
+     * @return the settings, or <code>null</code> if the element does not declare a <code>cache-key</code>
+     */
+    public static ModelFragmentCache fromElement(ModelScreenWidget widget, Element widgetElement) {
+        if (widgetElement.getAttribute("cache-key").isEmpty()) {
+            return null;
+        }
+        return new ModelFragmentCache(widget, widgetElement);
+    }
+
+    /**
+     * Writes the cached output of the fragment, or renders the fragment and caches its output.
+     * @param writer the writer to write to
+     * @param context the rendering context
+     * @param screenStringRenderer the screen renderer, its name is part of the cache key
+     * @param fragmentRenderer renders the fragment on a cache miss
+     */
+    public void render(Appendable writer, Map<String, Object> context, ScreenStringRenderer screenStringRenderer, FragmentRenderer fragmentRenderer) throws GeneralException, IOException {
+        String cacheKey = cacheKeyExdr.expandString(context);
+        if (cacheKey.isEmpty()) {
+            fragmentRenderer.render(writer);
+            return;
+        }
+        Delegator delegator = (Delegator) context.get("delegator");
+        StringBuilder sb = new StringBuilder();
+        sb.append(delegator != null ? delegator.getDelegatorName() : "");
+        sb.append("::").append(context.get("locale"));
+        sb.append("::").append(screenStringRenderer.getRendererName());
+        sb.append("::").append(cacheKey);
+        cacheKey = sb.toString();
+
+        FragmentCache fragmentCache = FragmentCache.getInstance();
+        GenericWidgetOutput output = fragmentCache.get(fragmentName, cacheKey);
+        if (output != null) {
+            output.writeTo(writer);
+            return;
+        }
+        long generation = fragmentCache.getGeneration(fragmentName, expireTime, entityNames);
+        StringWriter sw = new StringWriter();
+        fragmentRenderer.render(sw);
+        String rendered = sw.toString();
+        if (!fragmentCache.put(fragmentName, cacheKey, new GenericWidgetOutput(rendered), generation) && Debug.verboseOn()) {
+            Debug.logVerbose("Fragment [" + fragmentName + "] was invalidated while rendered, its output is not cached", module);
+        }
+        writer.append(rendered);
+    }
+
+    public String getFragmentName() {
+        return fragmentName;
+    }
+
+    public FlexibleStringExpander getCacheKeyExdr() {
+        return cacheKeyExdr;
+    }
+
+    public String getTtl() {
+        return ttl;
+    }
+
+    public List<String> getEntityNames() {
+        return entityNames;
+    }
+
+    /**
+     * Renders the fragment to the given writer.
+     */
+    @FunctionalInterface
+    public interface FragmentRenderer {
+        void render(Appendable writer) throws GeneralException, IOException;
+    }
+}
@@ -212,6 +212,7 @@ public abstract class ModelScreenWidget extends ModelWidget {
         private final List<ModelScreenWidget> subWidgets;
         private final List<ModelScreenWidget> failWidgets;
         private final boolean isMainSection;
+        private final ModelFragmentCache fragmentCache;
 
         public Section(ModelScreen modelScreen, Element sectionElement) {
             this(modelScreen, sectionElement, false);
@@ -255,6 +256,7 @@ public abstract class ModelScreenWidget extends ModelWidget {
                 this.failWidgets = Collections.emptyList();
             }
             this.isMainSection = isMainSection;
+            this.fragmentCache = ModelFragmentCache.fromElement(this, sectionElement);
         }
 
         @Override
@@ -264,6 +266,14 @@ public abstract class ModelScreenWidget extends ModelWidget {
 
         @Override
         public void renderWidgetString(Appendable writer, Map<String, Object> context, ScreenStringRenderer screenStringRenderer) throws GeneralException, IOException {
+            if (this.fragmentCache != null) {
+                this.fragmentCache.render(writer, context, screenStringRenderer, fragmentWriter -> renderSection(fragmentWriter, context, screenStringRenderer));
+            } else {
+                renderSection(writer, context, screenStringRenderer);
+            }
+        }
+
+        private void renderSection(Appendable writer, Map<String, Object> context, ScreenStringRenderer screenStringRenderer) throws GeneralException, IOException {
             // check the condition, if there is one
             boolean condTrue = true;
             if (this.condition != null) {
@@ -335,6 +345,10 @@ public abstract class ModelScreenWidget extends ModelWidget {
         public ModelCondition getCondition() {
             return condition;
         }
+
+        public ModelFragmentCache getFragmentCache() {
+            return fragmentCache;
+        }
     }
 
     public static final class ColumnContainer extends ModelScreenWidget {
@@ -439,6 +453,7 @@ public abstract class ModelScreenWidget extends ModelWidget {
         private final FlexibleStringExpander autoUpdateTargetExdr;
         private final FlexibleStringExpander autoUpdateInterval;
         private final List<ModelScreenWidget> subWidgets;
+        private final ModelFragmentCache fragmentCache;
 
         public Container(ModelScreen modelScreen, Element containerElement) {
             super(modelScreen, containerElement);
@@ -454,10 +469,19 @@ public abstract class ModelScreenWidget extends ModelWidget {
             // read sub-widgets
             List<? extends Element> subElementList = UtilXml.childElementList(containerElement);
             this.subWidgets = ModelScreenWidget.readSubWidgets(getModelScreen(), subElementList);
+            this.fragmentCache = ModelFragmentCache.fromElement(this, containerElement);
         }
 
         @Override
         public void renderWidgetString(Appendable writer, Map<String, Object> context, ScreenStringRenderer screenStringRenderer) throws GeneralException, IOException {
+            if (this.fragmentCache != null) {
+                this.fragmentCache.render(writer, context, screenStringRenderer, fragmentWriter -> renderContainer(fragmentWriter, context, screenStringRenderer));
+            } else {
+                renderContainer(writer, context, screenStringRenderer);
+            }
+        }
+
+        private void renderContainer(Appendable writer, Map<String, Object> context, ScreenStringRenderer screenStringRenderer) throws GeneralException, IOException {
             try {
                 screenStringRenderer.renderContainerBegin(writer, context, this);
 
@@ -520,6 +544,10 @@ public abstract class ModelScreenWidget extends ModelWidget {
         public FlexibleStringExpander getAutoUpdateInterval() {
             return autoUpdateInterval;
         }
+
+        public ModelFragmentCache getFragmentCache() {
+            return fragmentCache;
+        }
     }
 
     public static final class Screenlet extends ModelScreenWidget {
@@ -753,16 +781,26 @@ public abstract class ModelScreenWidget extends ModelWidget {
         private final FlexibleStringExpander nameExdr;
         private final FlexibleStringExpander locationExdr;
         private final FlexibleStringExpander shareScopeExdr;
+        private final ModelFragmentCache fragmentCache;
 
         public IncludeScreen(ModelScreen modelScreen, Element includeScreenElement) {
             super(modelScreen, includeScreenElement);
             this.nameExdr = FlexibleStringExpander.getInstance(includeScreenElement.getAttribute("name"));
             this.locationExdr = FlexibleStringExpander.getInstance(includeScreenElement.getAttribute("location"));
             this.shareScopeExdr = FlexibleStringExpander.getInstance(includeScreenElement.getAttribute("share-scope"));
+            this.fragmentCache = ModelFragmentCache.fromElement(this, includeScreenElement);
         }
 
         @Override
         public void renderWidgetString(Appendable writer, Map<String, Object> context, ScreenStringRenderer screenStringRenderer) throws GeneralException, IOException {
+            if (this.fragmentCache != null) {
+                this.fragmentCache.render(writer, context, screenStringRenderer, fragmentWriter -> renderIncludedScreen(fragmentWriter, context, screenStringRenderer));
+            } else {
+                renderIncludedScreen(writer, context, screenStringRenderer);
+            }
+        }
+
+        private void renderIncludedScreen(Appendable writer, Map<String, Object> context, ScreenStringRenderer screenStringRenderer) throws GeneralException, IOException {
             // if we are not sharing the scope, protect it using the MapStack
             boolean protectScope = !shareScope(context);
             if (protectScope) {
@@ -831,6 +869,10 @@ public abstract class ModelScreenWidget extends ModelWidget {
         public FlexibleStringExpander getShareScopeExdr() {
             return shareScopeExdr;
         }
+
+        public ModelFragmentCache getFragmentCache() {
+            return fragmentCache;
+        }
     }
 
     public static final class DecoratorScreen extends ModelScreenWidget {
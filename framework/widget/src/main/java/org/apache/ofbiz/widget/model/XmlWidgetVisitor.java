@@ -21,6 +21,7 @@ package org.apache.ofbiz.widget.model;
 import java.util.Collection;
 import java.util.Map;
 
+import org.apache.ofbiz.base.util.StringUtil;
 import org.apache.ofbiz.widget.model.HtmlWidget.HtmlTemplate;
 import org.apache.ofbiz.widget.model.HtmlWidget.HtmlTemplateDecorator;
 import org.apache.ofbiz.widget.model.HtmlWidget.HtmlTemplateDecoratorSection;
@@ -96,6 +97,7 @@ public class XmlWidgetVisitor extends XmlAbstractWidgetVisitor implements ModelW
         visitAttribute("auto-update-target", container.getAutoUpdateTargetExdr());
         visitAttribute("id", container.getIdExdr());
         visitAttribute("style", container.getStyleExdr());
+        visitFragmentCache(container.getFragmentCache());
         writer.append(">");
         visitSubWidgets(container.getSubWidgets());
         writer.append("</container>");
@@ -199,6 +201,7 @@ public class XmlWidgetVisitor extends XmlAbstractWidgetVisitor implements ModelW
         visitModelWidget(includeScreen);
         visitAttribute("location", includeScreen.getLocationExdr());
         visitAttribute("share-scope", includeScreen.getShareScopeExdr());
+        visitFragmentCache(includeScreen.getFragmentCache());
         writer.append("/>");
     }
 
@@ -500,6 +503,7 @@ public class XmlWidgetVisitor extends XmlAbstractWidgetVisitor implements ModelW
     public void visit(Section section) throws Exception {
         writer.append("<section");
         visitModelWidget(section);
+        visitFragmentCache(section.getFragmentCache());
         writer.append(">");
         if (section.getCondition() != null) {
             writer.append("<condition>");
@@ -539,6 +543,14 @@ public class XmlWidgetVisitor extends XmlAbstractWidgetVisitor implements ModelW
         }
     }
 
+    private void visitFragmentCache(ModelFragmentCache fragmentCache) throws Exception {
+        if (fragmentCache != null) {
+            visitAttribute("cache-key", fragmentCache.getCacheKeyExdr());
+            visitAttribute("cache-ttl", fragmentCache.getTtl());
+            visitAttribute("cache-entities", StringUtil.join(fragmentCache.getEntityNames(), ","));
+        }
+    }
+
     public void visitModelForm(ModelForm modelForm) throws Exception {
         visitModelWidget(modelForm);
         if (modelForm.getParentModelForm() != null) {
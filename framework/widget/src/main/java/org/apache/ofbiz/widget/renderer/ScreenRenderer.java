@@ -129,11 +129,11 @@ public class ScreenRenderer {
             if (gwo == null) {
                 Writer sw = new StringWriter();
                 modelScreen.renderScreenString(sw, context, screenStringRenderer);
-                gwo = new GenericWidgetOutput(sw.toString());
-                screenCache.put(screenCombinedName, wcck, gwo);
-                writer.append(gwo.toString());
+                String output = sw.toString();
+                screenCache.put(screenCombinedName, wcck, new GenericWidgetOutput(output));
+                writer.append(output);
             } else {
-                writer.append(gwo.toString());
+                gwo.writeTo(writer);
             }
         } else {
             context.put("renderFormSeqNumber", String.valueOf(renderFormSeqNumber));
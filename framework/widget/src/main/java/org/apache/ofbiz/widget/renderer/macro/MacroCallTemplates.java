@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.widget.renderer.macro;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+
+import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.base.util.template.FreeMarkerWorker;
+
+import freemarker.core.Environment;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+
+/**
+ * Compiled call-site templates shared by the macro renderers.
+ * <p>
+ * The renderers invoke the macros of their library by including a small FTL snippet
+ * (<code>&lt;@macroName ... /&gt;</code>) in a reused {@link Environment}. Parsing that
+ * snippet is far more expensive than executing it, so the parsed {@link Template}s are
+ * cached. The snippet only holds the macro name and the parameter names: the values are
+ * never inlined in the FTL text but passed as variables of the environment, so there is
+ * one template per macro signature whatever the values are, and no rendered data is kept
+ * in the cache.
+ */
+final class MacroCallTemplates {
+
+    public static final String module = MacroCallTemplates.class.getName();
+    private static final String ARGUMENT_PREFIX = "_macroArg_";
+    private static final UtilCache<String, Template> callTemplateCache = UtilCache.createUtilCache("widget.macro.callTemplate", 5000, 0);
+
+    private MacroCallTemplates() { }
+
+    /**
+     * Executes a macro with the given parameters in the given environment. The parameter
+     * values are passed as is: strings are not interpreted as FTL string literals. A
+     * <code>null</code> value is passed as an empty string.
+     * @param environment the environment holding the macro library
+     * @param macroName the name of the macro to call
+     * @param parameters the macro parameters, may be <code>null</code>
+     * @throws TemplateException if the macro fails
+     * @throws IOException if the output cannot be written
+     */
+    static void execute(Environment environment, String macroName, Map<String, Object> parameters) throws TemplateException, IOException {
+        Template template = getTemplate(toMacroCall(macroName, parameters));
+        if (parameters == null) {
+            environment.include(template);
+            return;
+        }
+        for (Map.Entry<String, Object> parameter : parameters.entrySet()) {
+            Object value = parameter.getValue() != null ? parameter.getValue() : "";
+            environment.setVariable(ARGUMENT_PREFIX + parameter.getKey(), FreeMarkerWorker.autoWrap(value, environment));
+        }
+        try {
+            environment.include(template);
+        } finally {
+            // Drop the references to the values, the environment lives as long as its writer
+            for (String parameterName : parameters.keySet()) {
+                environment.getCurrentNamespace().remove(ARGUMENT_PREFIX + parameterName);
+            }
+        }
+    }
+
+    private static Template getTemplate(String macroCall) throws IOException {
+        Template template = callTemplateCache.get(macroCall);
+        if (template == null) {
+            template = new Template(module, new StringReader(macroCall), FreeMarkerWorker.getDefaultOfbizConfig());
+            template = callTemplateCache.putIfAbsentAndGet(macroCall, template);
+        }
+        return template;
+    }
+
+    private static String toMacroCall(String macroName, Map<String, Object> parameters) {
+        StringBuilder sb = new StringBuilder("<@");
+        sb.append(macroName);
+        if (parameters != null) {
+            for (Map.Entry<String, Object> parameter : parameters.entrySet()) {
+                sb.append(' ');
+                sb.append(parameter.getKey());
+                sb.append('=');
+                sb.append(ARGUMENT_PREFIX);
+                sb.append(parameter.getKey());
+            }
+        }
+        sb.append(" />");
+        return sb.toString();
+    }
+}
@@ -19,13 +19,12 @@
 package org.apache.ofbiz.widget.renderer.macro;
 
 import java.io.IOException;
-import java.io.Reader;
-import java.io.StringReader;
 import java.io.StringWriter;
-import java.rmi.server.UID;
 import java.sql.Timestamp;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
@@ -142,17 +141,14 @@ public final class MacroFormRenderer implements FormStringRenderer {
         this.renderPagination = renderPagination;
     }
 
-    private void executeMacro(Appendable writer, String macro) {
+    private void executeMacro(Appendable writer, String macroName, Map<String, Object> parameters) {
         try {
             Environment environment = getEnvironment(writer);
             environment.setVariable("visualTheme", FreeMarkerWorker.autoWrap(visualTheme, environment));
             environment.setVariable("modelTheme", FreeMarkerWorker.autoWrap(visualTheme.getModelTheme(), environment));
-            Reader templateReader = new StringReader(macro);
-            Template template = new Template(new UID().toString(), templateReader, FreeMarkerWorker.getDefaultOfbizConfig());
-            templateReader.close();
-            environment.include(template);
+            MacroCallTemplates.execute(environment, macroName, parameters);
         } catch (TemplateException | IOException e) {
-            Debug.logError(e, "Error rendering screen thru ftl, macro: " + macro, module);
+            Debug.logError(e, "Error rendering screen thru ftl, macro: " + macroName, module);
         }
     }
 
@@ -179,23 +175,15 @@ public final class MacroFormRenderer implements FormStringRenderer {
         return value;
     }
 
-    private static String encodeDoubleQuotes(String htmlString) {
-        return htmlString.replaceAll("\"", "\\\\\"");
-    }
-
     public void renderLabel(Appendable writer, Map<String, Object> context, ModelScreenWidget.Label label) {
         String labelText = label.getText(context);
         if (UtilValidate.isEmpty(labelText)) {
             // nothing to render
             return;
         }
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderLabel ");
-        sr.append("text=\"");
-        sr.append(labelText);
-        sr.append("\"");
-        sr.append(" />");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("text", labelText);
+        executeMacro(writer, "renderLabel", parameters);
     }
 
     public void renderDisplayField(Appendable writer, Map<String, Object> context, DisplayField displayField) throws IOException {
@@ -219,22 +207,15 @@ public final class MacroFormRenderer implements FormStringRenderer {
             title = description;
             description = description.substring(0, size - 8) + "..." + description.substring(description.length() - 5);
         }
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderDisplayField ");
-        sr.append("type=\"");
-        sr.append(type);
-        sr.append("\" imageLocation=\"");
-        sr.append(imageLocation);
-        sr.append("\" idName=\"");
-        sr.append(idName);
-        sr.append("\" description=\"");
-        sr.append(encodeDoubleQuotes(description));
-        sr.append("\" title=\"");
-        sr.append(title);
-        sr.append("\" class=\"");
-        sr.append(modelFormField.getWidgetStyle());
-        sr.append("\" alert=\"");
-        sr.append(modelFormField.shouldBeRed(context) ? "true" : "false");
+        // Called for every cell of list forms: pass the values as parameters so that the call template is compiled only once
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("type", type);
+        parameters.put("imageLocation", imageLocation);
+        parameters.put("idName", idName);
+        parameters.put("description", description);
+        parameters.put("title", title);
+        parameters.put("class", modelFormField.getWidgetStyle());
+        parameters.put("alert", modelFormField.shouldBeRed(context) ? "true" : "false");
         if (ajaxEnabled) {
             String url = inPlaceEditor.getUrl(context);
             StringBuffer extraParameterBuffer = new StringBuffer();
@@ -256,9 +237,7 @@ public final class MacroFormRenderer implements FormStringRenderer {
             }
             extraParameterBuffer.append("}");
             extraParameter = extraParameterBuffer.toString();
-            sr.append("\" inPlaceEditorUrl=\"");
-            sr.append(url);
-            sr.append("\" inPlaceEditorParams=\"");
+            parameters.put("inPlaceEditorUrl", url);
             StringWriter inPlaceEditorParams = new StringWriter();
             inPlaceEditorParams.append("{name: '");
             if (UtilValidate.isNotEmpty(inPlaceEditor.getParamName())) {
@@ -307,10 +286,9 @@ public final class MacroFormRenderer implements FormStringRenderer {
                 inPlaceEditorParams.append(", cols: '" + inPlaceEditor.getCols() + "'");
             }
             inPlaceEditorParams.append("}");
-            sr.append(inPlaceEditorParams.toString());
+            parameters.put("inPlaceEditorParams", inPlaceEditorParams.toString());
         }
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        executeMacro(writer, "renderDisplayField", parameters);
         if (displayField instanceof DisplayEntityField) {
             makeHyperlinkString(writer, ((DisplayEntityField) displayField).getSubHyperlink(), context);
         }
@@ -388,50 +366,26 @@ public final class MacroFormRenderer implements FormStringRenderer {
         boolean disabled = textField.getDisabled();
         boolean readonly = textField.getReadonly();
         String tabindex = modelFormField.getTabindex();
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderTextField ");
-        sr.append("name=\"");
-        sr.append(name);
-        sr.append("\" className=\"");
-        sr.append(className);
-        sr.append("\" alert=\"");
-        sr.append(alert);
-        sr.append("\" value=\"");
-        sr.append(value);
-        sr.append("\" textSize=\"");
-        sr.append(textSize);
-        sr.append("\" maxlength=\"");
-        sr.append(maxlength);
-        sr.append("\" id=\"");
-        sr.append(id);
-        sr.append("\" event=\"");
-        if (event != null) {
-            sr.append(event);
-        }
-        sr.append("\" action=\"");
-        if (action != null) {
-            sr.append(action);
-        }
-        sr.append("\" disabled=");
-        sr.append(Boolean.toString(disabled));
-        sr.append(" readonly=");
-        sr.append(Boolean.toString(readonly));
-        sr.append(" clientAutocomplete=\"");
-        sr.append(clientAutocomplete);
-        sr.append("\" ajaxUrl=\"");
-        sr.append(ajaxUrl);
-        sr.append("\" ajaxEnabled=");
-        sr.append(Boolean.toString(ajaxEnabled));
-        sr.append(" mask=\"");
-        sr.append(mask);
-        sr.append("\" placeholder=\"");
-        sr.append(placeholder);
-        sr.append("\" tabindex=\"");
-        sr.append(tabindex);
-        sr.append("\" delegatorName=\"");
-        sr.append(((HttpSession)context.get("session")).getAttribute("delegatorName").toString());
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("name", name);
+        parameters.put("className", className);
+        parameters.put("alert", alert);
+        parameters.put("value", value);
+        parameters.put("textSize", textSize);
+        parameters.put("maxlength", maxlength);
+        parameters.put("id", id);
+        parameters.put("event", event == null ? "" : event);
+        parameters.put("action", action == null ? "" : action);
+        parameters.put("disabled", disabled);
+        parameters.put("readonly", readonly);
+        parameters.put("clientAutocomplete", clientAutocomplete);
+        parameters.put("ajaxUrl", ajaxUrl);
+        parameters.put("ajaxEnabled", ajaxEnabled);
+        parameters.put("mask", mask);
+        parameters.put("placeholder", placeholder);
+        parameters.put("tabindex", tabindex);
+        parameters.put("delegatorName", ((HttpSession)context.get("session")).getAttribute("delegatorName").toString());
+        executeMacro(writer, "renderTextField", parameters);
         ModelFormField.SubHyperlink subHyperlink = textField.getSubHyperlink();
         if (subHyperlink != null && subHyperlink.shouldUse(context)) {
             makeHyperlinkString(writer, subHyperlink, context);
@@ -490,36 +444,21 @@ public final class MacroFormRenderer implements FormStringRenderer {
         }
         String tabindex = modelFormField.getTabindex();
         String value = modelFormField.getEntry(context, textareaField.getDefaultValue(context));
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderTextareaField ");
-        sr.append("name=\"");
-        sr.append(name);
-        sr.append("\" className=\"");
-        sr.append(className);
-        sr.append("\" alert=\"");
-        sr.append(alert);
-        sr.append("\" value=\"");
-        sr.append(value);
-        sr.append("\" cols=\"");
-        sr.append(cols);
-        sr.append("\" rows=\"");
-        sr.append(rows);
-        sr.append("\" maxlength=\"");
-        sr.append(maxlength);
-        sr.append("\" id=\"");
-        sr.append(id);
-        sr.append("\" readonly=\"");
-        sr.append(readonly);
-        sr.append("\" visualEditorEnable=\"");
-        sr.append(visualEditorEnable);
-        sr.append("\" language=\"");
-        sr.append(language);
-        sr.append("\" buttons=\"");
-        sr.append(buttons);
-        sr.append("\" tabindex=\"");
-        sr.append(tabindex);
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("name", name);
+        parameters.put("className", className);
+        parameters.put("alert", alert);
+        parameters.put("value", value);
+        parameters.put("cols", cols);
+        parameters.put("rows", rows);
+        parameters.put("maxlength", maxlength);
+        parameters.put("id", id);
+        parameters.put("readonly", readonly);
+        parameters.put("visualEditorEnable", visualEditorEnable);
+        parameters.put("language", language);
+        parameters.put("buttons", buttons);
+        parameters.put("tabindex", tabindex);
+        executeMacro(writer, "renderTextareaField", parameters);
         this.addAsterisks(writer, context, modelFormField);
         this.appendTooltip(writer, context, modelFormField);
     }
@@ -698,74 +637,40 @@ public final class MacroFormRenderer implements FormStringRenderer {
             }
         }
         String tabindex = modelFormField.getTabindex();
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderDateTimeField ");
-        sr.append("name=\"");
-        sr.append(name);
-        sr.append("\" className=\"");
-        sr.append(className);
-        sr.append("\" alert=\"");
-        sr.append(alert);
-        sr.append("\" value=\"");
-        sr.append(value);
-        sr.append("\" title=\"");
-        sr.append(localizedInputTitle);
-        sr.append("\" size=\"");
-        sr.append(Integer.toString(size));
-        sr.append("\" maxlength=\"");
-        sr.append(Integer.toString(maxlength));
-        sr.append("\" step=\"");
-        sr.append(Integer.toString(step));
-        sr.append("\" timeValues=\"");
-        sr.append(timeValues.toString());
-        sr.append("\" id=\"");
-        sr.append(id);
-        sr.append("\" event=\"");
-        sr.append(event);
-        sr.append("\" action=\"");
-        sr.append(action);
-        sr.append("\" dateType=\"");
-        sr.append(dateTimeField.getType());
-        sr.append("\" shortDateInput=");
-        sr.append(Boolean.toString(shortDateInput));
-        sr.append(" timeDropdownParamName=\"");
-        sr.append(timeDropdownParamName);
-        sr.append("\" defaultDateTimeString=\"");
-        sr.append(defaultDateTimeString);
-        sr.append("\" localizedIconTitle=\"");
-        sr.append(localizedIconTitle);
-        sr.append("\" timeDropdown=\"");
-        sr.append(timeDropdown);
-        sr.append("\" timeHourName=\"");
-        sr.append(timeHourName);
-        sr.append("\" classString=\"");
-        sr.append(classString);
-        sr.append("\" hour1=");
-        sr.append(Integer.toString(hour1));
-        sr.append(" hour2=");
-        sr.append(Integer.toString(hour2));
-        sr.append(" timeMinutesName=\"");
-        sr.append(timeMinutesName);
-        sr.append("\" minutes=");
-        sr.append(Integer.toString(minutes));
-        sr.append(" isTwelveHour=");
-        sr.append(Boolean.toString(isTwelveHour));
-        sr.append(" ampmName=\"");
-        sr.append(ampmName);
-        sr.append("\" amSelected=\"");
-        sr.append(amSelected);
-        sr.append("\" pmSelected=\"");
-        sr.append(pmSelected);
-        sr.append("\" compositeType=\"");
-        sr.append(compositeType);
-        sr.append("\" formName=\"");
-        sr.append(formName);
-        sr.append("\" mask=\"");
-        sr.append(formattedMask);
-        sr.append("\" tabindex=\"");
-        sr.append(tabindex);
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("name", name);
+        parameters.put("className", className);
+        parameters.put("alert", alert);
+        parameters.put("value", value);
+        parameters.put("title", localizedInputTitle);
+        parameters.put("size", Integer.toString(size));
+        parameters.put("maxlength", Integer.toString(maxlength));
+        parameters.put("step", Integer.toString(step));
+        parameters.put("timeValues", timeValues.toString());
+        parameters.put("id", id);
+        parameters.put("event", event);
+        parameters.put("action", action);
+        parameters.put("dateType", dateTimeField.getType());
+        parameters.put("shortDateInput", shortDateInput);
+        parameters.put("timeDropdownParamName", timeDropdownParamName);
+        parameters.put("defaultDateTimeString", defaultDateTimeString);
+        parameters.put("localizedIconTitle", localizedIconTitle);
+        parameters.put("timeDropdown", timeDropdown);
+        parameters.put("timeHourName", timeHourName);
+        parameters.put("classString", classString);
+        parameters.put("hour1", hour1);
+        parameters.put("hour2", hour2);
+        parameters.put("timeMinutesName", timeMinutesName);
+        parameters.put("minutes", minutes);
+        parameters.put("isTwelveHour", isTwelveHour);
+        parameters.put("ampmName", ampmName);
+        parameters.put("amSelected", amSelected);
+        parameters.put("pmSelected", pmSelected);
+        parameters.put("compositeType", compositeType);
+        parameters.put("formName", formName);
+        parameters.put("mask", formattedMask);
+        parameters.put("tabindex", tabindex);
+        executeMacro(writer, "renderDateTimeField", parameters);
         this.addAsterisks(writer, context, modelFormField);
         this.appendTooltip(writer, context, modelFormField);
     }
@@ -803,7 +708,7 @@ public final class MacroFormRenderer implements FormStringRenderer {
         String firstInList = "";
         String explicitDescription = "";
         String allowEmpty = "";
-        StringBuilder options = new StringBuilder();
+        List<Map<String, String>> options = new LinkedList<>();
         StringBuilder ajaxOptions = new StringBuilder();
         if (UtilValidate.isNotEmpty(modelFormField.getWidgetStyle())) {
             className = modelFormField.getWidgetStyle();
@@ -861,36 +766,21 @@ public final class MacroFormRenderer implements FormStringRenderer {
                 currentValueList = UtilMisc.toList(currentValue);
             }
         }
-        options.append("[");
         Iterator<ModelFormField.OptionValue> optionValueIter = allOptionValues.iterator();
         int count = 0;
         while (optionValueIter.hasNext()) {
             ModelFormField.OptionValue optionValue = optionValueIter.next();
-            if (options.length() > 1) {
-                options.append(",");
-            }
-            options.append("{'key':'");
-            String key = encode(optionValue.getKey(), modelFormField, context);
-            options.append(key);
-            options.append("'");
-            options.append(",'description':'");
+            Map<String, String> option = new HashMap<>();
+            option.put("key", encode(optionValue.getKey(), modelFormField, context));
             String description = optionValue.getDescription();
             if (textSize > 0 && description.length() > textSize) {
                 description = description.substring(0, textSize - 8) + "..." + description.substring(description.length() - 5);
             }
-            options.append(encode(description.replaceAll("'", "\\\\\'"), modelFormField, context));  // replaceAll("'", "\\\\\'") related to OFBIZ-6504
-
+            option.put("description", encode(description, modelFormField, context));
             if (UtilValidate.isNotEmpty(currentValueList)) {
-                options.append("'");
-                options.append(",'selected':'");
-                if (currentValueList.contains(optionValue.getKey())) {
-                    options.append("selected");
-                } else {
-                    options.append("");
-                }
+                option.put("selected", currentValueList.contains(optionValue.getKey()) ? "selected" : "");
             }
-
-            options.append("'}");
+            options.add(option);
             if (ajaxEnabled) {
                 count++;
                 ajaxOptions.append(optionValue.getKey()).append(": ");
@@ -900,7 +790,6 @@ public final class MacroFormRenderer implements FormStringRenderer {
                 }
             }
         }
-        options.append("]");
         String noCurrentSelectedKey = dropDownField.getNoCurrentSelectedKey(context);
         String otherValue = "", fieldName = "";
         // Adapted from work by Yucca Korpela
@@ -933,80 +822,41 @@ public final class MacroFormRenderer implements FormStringRenderer {
             fullSearch = autoComplete.getFullSearch();
         }
         String tabindex = modelFormField.getTabindex();
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderDropDownField ");
-        sr.append("name=\"");
-        sr.append(name);
-        sr.append("\" className=\"");
-        sr.append(className);
-        sr.append("\" alert=\"");
-        sr.append(alert);
-        sr.append("\" id=\"");
-        sr.append(id);
-        sr.append("\" multiple=\"");
-        sr.append(multiple);
-        sr.append("\" formName=\"");
-        sr.append(formName);
-        sr.append("\" otherFieldName=\"");
-        sr.append(otherFieldName);
-        sr.append("\" event=\"");
-        if (event != null) {
-            sr.append(event);
-        }
-        sr.append("\" action=\"");
-        if (action != null) {
-            sr.append(action);
-        }
-        sr.append("\" size=\"");
-        sr.append(size);
-        sr.append("\" firstInList=\"");
-        sr.append(firstInList);
-        sr.append("\" currentValue=\"");
-        sr.append(currentValue);
-        sr.append("\" explicitDescription=\"");
-        sr.append(explicitDescription);
-        sr.append("\" allowEmpty=\"");
-        sr.append(allowEmpty);
-        sr.append("\" options=");
-        sr.append(options.toString());
-        sr.append(" fieldName=\"");
-        sr.append(fieldName);
-        sr.append("\" otherFieldName=\"");
-        sr.append(otherFieldName);
-        sr.append("\" otherValue=\"");
-        sr.append(otherValue);
-        sr.append("\" otherFieldSize=");
-        sr.append(Integer.toString(otherFieldSize));
-        sr.append(" dDFCurrent=\"");
-        sr.append(dDFCurrent);
-        sr.append("\" ajaxEnabled=");
-        sr.append(Boolean.toString(ajaxEnabled));
-        sr.append(" noCurrentSelectedKey=\"");
-        sr.append(noCurrentSelectedKey);
-        sr.append("\" ajaxOptions=\"");
-        sr.append(ajaxOptions.toString());
-        sr.append("\" frequency=\"");
-        sr.append(frequency);
-        sr.append("\" minChars=\"");
-        sr.append(minChars);
-        sr.append("\" choices=\"");
-        sr.append(choices);
-        sr.append("\" autoSelect=\"");
-        sr.append(autoSelect);
-        sr.append("\" partialSearch=\"");
-        sr.append(partialSearch);
-        sr.append("\" partialChars=\"");
-        sr.append(partialChars);
-        sr.append("\" ignoreCase=\"");
-        sr.append(ignoreCase);
-        sr.append("\" fullSearch=\"");
-        sr.append(fullSearch);
-        sr.append("\" conditionGroup=\"");
-        sr.append(conditionGroup);
-        sr.append("\" tabindex=\"");
-        sr.append(tabindex);
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("name", name);
+        parameters.put("className", className);
+        parameters.put("alert", alert);
+        parameters.put("id", id);
+        parameters.put("multiple", multiple);
+        parameters.put("formName", formName);
+        parameters.put("otherFieldName", otherFieldName);
+        parameters.put("event", event == null ? "" : event);
+        parameters.put("action", action == null ? "" : action);
+        parameters.put("size", size);
+        parameters.put("firstInList", firstInList);
+        parameters.put("currentValue", currentValue);
+        parameters.put("explicitDescription", explicitDescription);
+        parameters.put("allowEmpty", allowEmpty);
+        parameters.put("options", options);
+        parameters.put("fieldName", fieldName);
+        parameters.put("otherFieldName", otherFieldName);
+        parameters.put("otherValue", otherValue);
+        parameters.put("otherFieldSize", otherFieldSize);
+        parameters.put("dDFCurrent", dDFCurrent);
+        parameters.put("ajaxEnabled", ajaxEnabled);
+        parameters.put("noCurrentSelectedKey", noCurrentSelectedKey);
+        parameters.put("ajaxOptions", ajaxOptions.toString());
+        parameters.put("frequency", frequency);
+        parameters.put("minChars", minChars);
+        parameters.put("choices", choices);
+        parameters.put("autoSelect", autoSelect);
+        parameters.put("partialSearch", partialSearch);
+        parameters.put("partialChars", partialChars);
+        parameters.put("ignoreCase", ignoreCase);
+        parameters.put("fullSearch", fullSearch);
+        parameters.put("conditionGroup", conditionGroup);
+        parameters.put("tabindex", tabindex);
+        executeMacro(writer, "renderDropDownField", parameters);
         ModelFormField.SubHyperlink subHyperlink = dropDownField.getSubHyperlink();
         if (subHyperlink != null && subHyperlink.shouldUse(context)) {
             makeHyperlinkString(writer, subHyperlink, context);
@@ -1026,7 +876,7 @@ public final class MacroFormRenderer implements FormStringRenderer {
         String name = modelFormField.getParameterName(context);
         String event = modelFormField.getEvent();
         String action = modelFormField.getAction(context);
-        StringBuilder items = new StringBuilder();
+        List<Map<String, String>> items = new LinkedList<>();
         if (UtilValidate.isNotEmpty(modelFormField.getWidgetStyle())) {
             className = modelFormField.getWidgetStyle();
             if (modelFormField.shouldBeRed(context)) {
@@ -1035,49 +885,23 @@ public final class MacroFormRenderer implements FormStringRenderer {
         }
         String tabindex = modelFormField.getTabindex();
         List<ModelFormField.OptionValue> allOptionValues = checkField.getAllOptionValues(context, WidgetWorker.getDelegator(context));
-        items.append("[");
         for (ModelFormField.OptionValue optionValue : allOptionValues) {
-            if (items.length() > 1) {
-                items.append(",");
-            }
-            items.append("{'value':'");
-            items.append(optionValue.getKey());
-            items.append("', 'description':'" + encode(optionValue.getDescription(), modelFormField, context));
-            items.append("'}");
-        }
-        items.append("]");
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderCheckField ");
-        sr.append("items=");
-        sr.append(items.toString());
-        sr.append(" className=\"");
-        sr.append(className);
-        sr.append("\" alert=\"");
-        sr.append(alert);
-        sr.append("\" id=\"");
-        sr.append(id);
-        sr.append("\" conditionGroup=\"");
-        sr.append(conditionGroup);
-        sr.append("\" allChecked=");
-        sr.append((allChecked != null ? Boolean.toString(allChecked) : "\"\""));
-        sr.append(" currentValue=\"");
-        sr.append(currentValue);
-        sr.append("\" name=\"");
-        sr.append(name);
-        sr.append("\" event=\"");
-        if (event != null) {
-            sr.append(event);
-        }
-        sr.append("\" action=\"");
-        if (action != null) {
-            sr.append(action);
-        }
-        sr.append("\" tabindex=\"");
-        sr.append(tabindex);
-        sr.append("\" disabled=");
-        sr.append(Boolean.toString(disabled));
-        sr.append(" />");
-        executeMacro(writer, sr.toString());
+            items.add(UtilMisc.toMap("value", optionValue.getKey(), "description", encode(optionValue.getDescription(), modelFormField, context)));
+        }
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("items", items);
+        parameters.put("className", className);
+        parameters.put("alert", alert);
+        parameters.put("id", id);
+        parameters.put("conditionGroup", conditionGroup);
+        parameters.put("allChecked", allChecked != null ? allChecked : "");
+        parameters.put("currentValue", currentValue);
+        parameters.put("name", name);
+        parameters.put("event", event == null ? "" : event);
+        parameters.put("action", action == null ? "" : action);
+        parameters.put("tabindex", tabindex);
+        parameters.put("disabled", disabled);
+        executeMacro(writer, "renderCheckField", parameters);
         this.appendTooltip(writer, context, modelFormField);
     }
 
@@ -1091,7 +915,7 @@ public final class MacroFormRenderer implements FormStringRenderer {
         String name = modelFormField.getParameterName(context);
         String event = modelFormField.getEvent();
         String action = modelFormField.getAction(context);
-        StringBuilder items = new StringBuilder();
+        List<Map<String, String>> items = new LinkedList<>();
         if (UtilValidate.isNotEmpty(modelFormField.getWidgetStyle())) {
             className = modelFormField.getWidgetStyle();
             if (modelFormField.shouldBeRed(context)) {
@@ -1100,45 +924,21 @@ public final class MacroFormRenderer implements FormStringRenderer {
         }
         String noCurrentSelectedKey = radioField.getNoCurrentSelectedKey(context);
         String tabindex = modelFormField.getTabindex();
-        items.append("[");
         for (ModelFormField.OptionValue optionValue : allOptionValues) {
-            if (items.length() > 1) {
-                items.append(",");
-            }
-            items.append("{'key':'");
-            items.append(optionValue.getKey());
-            items.append("', 'description':'" + encode(optionValue.getDescription(), modelFormField, context));
-            items.append("'}");
-        }
-        items.append("]");
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderRadioField ");
-        sr.append("items=");
-        sr.append(items.toString());
-        sr.append(" className=\"");
-        sr.append(className);
-        sr.append("\" alert=\"");
-        sr.append(alert);
-        sr.append("\" currentValue=\"");
-        sr.append(currentValue);
-        sr.append("\" noCurrentSelectedKey=\"");
-        sr.append(noCurrentSelectedKey);
-        sr.append("\" name=\"");
-        sr.append(name);
-        sr.append("\" event=\"");
-        if (event != null) {
-            sr.append(event);
-        }
-        sr.append("\" action=\"");
-        if (action != null) {
-            sr.append(action);
-        }
-        sr.append("\" conditionGroup=\"");
-        sr.append(conditionGroup);
-        sr.append("\" tabindex=\"");
-        sr.append(tabindex);
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+            items.add(UtilMisc.toMap("key", optionValue.getKey(), "description", encode(optionValue.getDescription(), modelFormField, context)));
+        }
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("items", items);
+        parameters.put("className", className);
+        parameters.put("alert", alert);
+        parameters.put("currentValue", currentValue);
+        parameters.put("noCurrentSelectedKey", noCurrentSelectedKey);
+        parameters.put("name", name);
+        parameters.put("event", event == null ? "" : event);
+        parameters.put("action", action == null ? "" : action);
+        parameters.put("conditionGroup", conditionGroup);
+        parameters.put("tabindex", tabindex);
+        executeMacro(writer, "renderRadioField", parameters);
         this.appendTooltip(writer, context, modelFormField);
     }
 
@@ -1178,44 +978,21 @@ public final class MacroFormRenderer implements FormStringRenderer {
             ajaxUrl = createAjaxParamsFromUpdateAreas(updateAreas, "", context);
         }
         String tabindex = modelFormField.getTabindex();
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderSubmitField ");
-        sr.append("buttonType=\"");
-        sr.append(buttonType);
-        sr.append("\" className=\"");
-        sr.append(className);
-        sr.append("\" alert=\"");
-        sr.append(alert);
-        sr.append("\" formName=\"");
-        sr.append(formName);
-        sr.append("\" title=\"");
-        sr.append(encode(title, modelFormField, context));
-        sr.append("\" name=\"");
-        sr.append(name);
-        sr.append("\" event=\"");
-        if (event != null) {
-            sr.append(event);
-        }
-        sr.append("\" action=\"");
-        if (action != null) {
-            sr.append(action);
-        }
-        sr.append("\" imgSrc=\"");
-        sr.append(imgSrc);
-        sr.append("\" containerId=\"");
-        if (ajaxEnabled) {
-            sr.append(formId);
-        }
-        sr.append("\" confirmation =\"");
-        sr.append(confirmation);
-        sr.append("\" ajaxUrl=\"");
-        if (ajaxEnabled) {
-            sr.append(ajaxUrl);
-        }
-        sr.append("\" tabindex=\"");
-        sr.append(tabindex);
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("buttonType", buttonType);
+        parameters.put("className", className);
+        parameters.put("alert", alert);
+        parameters.put("formName", formName);
+        parameters.put("title", encode(title, modelFormField, context));
+        parameters.put("name", name);
+        parameters.put("event", event == null ? "" : event);
+        parameters.put("action", action == null ? "" : action);
+        parameters.put("imgSrc", imgSrc);
+        parameters.put("containerId", ajaxEnabled ? formId : "");
+        parameters.put("confirmation", confirmation);
+        parameters.put("ajaxUrl", ajaxEnabled ? ajaxUrl : "");
+        parameters.put("tabindex", tabindex);
+        executeMacro(writer, "renderSubmitField", parameters);
         this.appendTooltip(writer, context, modelFormField);
     }
 
@@ -1231,18 +1008,12 @@ public final class MacroFormRenderer implements FormStringRenderer {
             }
         }
         String title = modelFormField.getTitle(context);
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderResetField ");
-        sr.append(" className=\"");
-        sr.append(className);
-        sr.append("\" alert=\"");
-        sr.append(alert);
-        sr.append("\" name=\"");
-        sr.append(name);
-        sr.append("\" title=\"");
-        sr.append(title);
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("className", className);
+        parameters.put("alert", alert);
+        parameters.put("name", name);
+        parameters.put("title", title);
+        executeMacro(writer, "renderResetField", parameters);
         this.appendTooltip(writer, context, modelFormField);
     }
 
@@ -1258,26 +1029,14 @@ public final class MacroFormRenderer implements FormStringRenderer {
         String conditionGroup = modelFormField.getConditionGroup();
         String event = modelFormField.getEvent();
         String id = modelFormField.getCurrentContainerId(context);
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderHiddenField ");
-        sr.append(" name=\"");
-        sr.append(name);
-        sr.append("\" conditionGroup=\"");
-        sr.append(conditionGroup);
-        sr.append("\" value=\"");
-        sr.append(value);
-        sr.append("\" id=\"");
-        sr.append(id);
-        sr.append("\" event=\"");
-        if (event != null) {
-            sr.append(event);
-        }
-        sr.append("\" action=\"");
-        if (action != null) {
-            sr.append(action);
-        }
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("name", name);
+        parameters.put("conditionGroup", conditionGroup);
+        parameters.put("value", value);
+        parameters.put("id", id);
+        parameters.put("event", event == null ? "" : event);
+        parameters.put("action", action == null ? "" : action);
+        executeMacro(writer, "renderHiddenField", parameters);
     }
 
     public void renderIgnoredField(Appendable writer, Map<String, Object> context, IgnoredField ignoredField) {
@@ -1291,7 +1050,7 @@ public final class MacroFormRenderer implements FormStringRenderer {
         StringBuilder sb = new StringBuilder();
         if (UtilValidate.isNotEmpty(titleText)) {
             if (" ".equals(titleText)) {
-                executeMacro(writer, "<@renderFormatEmptySpace />");
+                executeMacro(writer, "renderFormatEmptySpace", null);
             } else {
                 titleText = UtilHttp.encodeAmpersands(titleText);
                 titleText = encode(titleText, modelFormField, context);
@@ -1307,26 +1066,18 @@ public final class MacroFormRenderer implements FormStringRenderer {
                     }
                     StringWriter sr = new StringWriter();
                     makeHyperlinkString(sr, modelFormField.getHeaderLinkStyle(), targetType, targetBuffer.toString(), null, titleText, "", modelFormField, this.request, this.response, context, "");
-                    String title = sr.toString().replace("\"", "\'");
-                    sr = new StringWriter();
-                    sr.append("<@renderHyperlinkTitle ");
-                    sr.append(" name=\"");
-                    sr.append(modelFormField.getModelForm().getName());
-                    sr.append("\" title=\"");
-                    sr.append(encodeDoubleQuotes(title));
-                    sr.append("\" />");
-                    executeMacro(writer, sr.toString());
+                    Map<String, Object> parameters = new LinkedHashMap<>();
+                    parameters.put("name", modelFormField.getModelForm().getName());
+                    parameters.put("title", sr.toString());
+                    executeMacro(writer, "renderHyperlinkTitle", parameters);
                 } else if (modelFormField.isSortField()) {
                     renderSortField(writer, context, modelFormField, titleText);
                 } else if (modelFormField.isRowSubmit()) {
-                    StringWriter sr = new StringWriter();
-                    sr.append("<@renderHyperlinkTitle ");
-                    sr.append(" name=\"");
-                    sr.append(modelFormField.getModelForm().getName());
-                    sr.append("\" title=\"");
-                    sr.append(titleText);
-                    sr.append("\" showSelectAll=\"Y\"/>");
-                    executeMacro(writer, sr.toString());
+                    Map<String, Object> parameters = new LinkedHashMap<>();
+                    parameters.put("name", modelFormField.getModelForm().getName());
+                    parameters.put("title", titleText);
+                    parameters.put("showSelectAll", "Y");
+                    executeMacro(writer, "renderHyperlinkTitle", parameters);
                 } else {
                     sb.append(titleText);
                 }
@@ -1340,10 +1091,8 @@ public final class MacroFormRenderer implements FormStringRenderer {
                     style = requiredStyle;
                 }
             }
-            StringWriter sr = new StringWriter();
-            sr.append("<@renderFieldTitle ");
-            sr.append(" style=\"");
-            sr.append(style);
+            Map<String, Object> parameters = new LinkedHashMap<>();
+            parameters.put("style", style);
             String displayHelpText = UtilProperties.getPropertyValue("widget", "widget.form.displayhelpText");
             if ("Y".equals(displayHelpText)) {
                 Delegator delegator = WidgetWorker.getDelegator(context);
@@ -1352,21 +1101,15 @@ public final class MacroFormRenderer implements FormStringRenderer {
                 String fieldName = modelFormField.getFieldName();
                 String helpText = UtilHelpText.getEntityFieldDescription(entityName, fieldName, delegator, locale);
 
-                sr.append("\" fieldHelpText=\"");
-                sr.append(encodeDoubleQuotes(helpText));
+                parameters.put("fieldHelpText", helpText);
             }
-            sr.append("\" title=\"");
-            sr.append(sb.toString());
+            parameters.put("title", sb.toString());
             if (UtilValidate.isNotEmpty(id)) {
-                sr.append("\" id=\"");
-                sr.append(id);
-                sr.append("_title");
+                parameters.put("id", id + "_title");
                 // Render "for"
-                sr.append("\" for=\"");
-                sr.append(id);
+                parameters.put("for", id);
             }
-            sr.append("\" />");
-            executeMacro(writer, sr.toString());
+            executeMacro(writer, "renderFieldTitle", parameters);
         }
     }
 
@@ -1409,44 +1152,26 @@ public final class MacroFormRenderer implements FormStringRenderer {
             }
         }
         String focusFieldName = modelForm.getFocusFieldName();
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormOpen ");
-        sr.append(" linkUrl=\"");
-        sr.append(linkUrl);
-        sr.append("\" formType=\"");
-        sr.append(formType);
-        sr.append("\" targetWindow=\"");
-        sr.append(targetWindow);
-        sr.append("\" containerId=\"");
-        sr.append(containerId);
-        sr.append("\" containerStyle=\"");
-        sr.append(containerStyle);
-        sr.append("\" autocomplete=\"");
-        sr.append(autocomplete);
-        sr.append("\" name=\"");
-        sr.append(name);
-        sr.append("\" focusFieldName=\"");
-        sr.append(focusFieldName);
-        sr.append("\" hasRequiredField=\"");
-        sr.append(hasRequiredField);
-        sr.append("\" viewIndexField=\"");
-        sr.append(viewIndexField);
-        sr.append("\" viewSizeField=\"");
-        sr.append(viewSizeField);
-        sr.append("\" viewIndex=\"");
-        sr.append(Integer.toString(viewIndex));
-        sr.append("\" viewSize=\"");
-        sr.append(Integer.toString(viewSize));
-        sr.append("\" useRowSubmit=");
-        sr.append(Boolean.toString(useRowSubmit));
-        sr.append(" />");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("linkUrl", linkUrl.toString());
+        parameters.put("formType", formType);
+        parameters.put("targetWindow", targetWindow);
+        parameters.put("containerId", containerId);
+        parameters.put("containerStyle", containerStyle);
+        parameters.put("autocomplete", autocomplete);
+        parameters.put("name", name);
+        parameters.put("focusFieldName", focusFieldName);
+        parameters.put("hasRequiredField", hasRequiredField);
+        parameters.put("viewIndexField", viewIndexField);
+        parameters.put("viewSizeField", viewSizeField);
+        parameters.put("viewIndex", Integer.toString(viewIndex));
+        parameters.put("viewSize", Integer.toString(viewSize));
+        parameters.put("useRowSubmit", useRowSubmit);
+        executeMacro(writer, "renderFormOpen", parameters);
     }
 
     public void renderFormClose(Appendable writer, Map<String, Object> context, ModelForm modelForm) throws IOException {
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormClose />");
-        executeMacro(writer, sr.toString());
+        executeMacro(writer, "renderFormClose", null);
         if (modelForm instanceof ModelSingleForm) {
             renderEndingBoundaryComment(writer, "Form Widget - Form Element", modelForm);
         } else {
@@ -1473,9 +1198,7 @@ public final class MacroFormRenderer implements FormStringRenderer {
                 // this.renderFormatItemRowCellClose(writer, context, modelForm, submitField);
             }
         }
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderMultiFormClose />");
-        executeMacro(writer, sr.toString());
+        executeMacro(writer, "renderMultiFormClose", null);
         // see if there is anything that needs to be added outside of the multi-form
         Map<String, Object> wholeFormContext = UtilGenerics.checkMap(context.get("wholeFormContext"));
         Appendable postMultiFormWriter = wholeFormContext != null ? (Appendable) wholeFormContext.get("postMultiFormWriter") : null;
@@ -1529,39 +1252,23 @@ public final class MacroFormRenderer implements FormStringRenderer {
                 fieldNameList.add(childField.getName());
             }
         }
-        columnStyleList = StringUtil.quoteStrList(columnStyleList);
-        String columnStyleListString = StringUtil.join(columnStyleList, ", ");
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatListWrapperOpen ");
-        sr.append(" formName=\"");
-        sr.append(modelForm.getName());
-        sr.append("\" style=\"");
-        sr.append(FlexibleStringExpander.expandString(modelForm.getDefaultTableStyle(), context));
-        sr.append("\" columnStyles=[");
-        if (UtilValidate.isNotEmpty(columnStyleListString)) {
-            // this is a fix for forms with no fields
-            sr.append(columnStyleListString);
-        }
-        sr.append("] />");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("formName", modelForm.getName());
+        parameters.put("style", FlexibleStringExpander.expandString(modelForm.getDefaultTableStyle(), context));
+        parameters.put("columnStyles", columnStyleList);
+        executeMacro(writer, "renderFormatListWrapperOpen", parameters);
 
     }
     public void renderEmptyFormDataMessage(Appendable writer, Map<String, Object> context, ModelForm modelForm) throws IOException {
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderEmptyFormDataMessage");
-        sr.append(" message=\"");
-        sr.append(modelForm.getEmptyFormDataMessage(context));
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("message", modelForm.getEmptyFormDataMessage(context));
+        executeMacro(writer, "renderEmptyFormDataMessage", parameters);
     }
 
     public void renderFormatListWrapperClose(Appendable writer, Map<String, Object> context, ModelForm modelForm) throws IOException {
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatListWrapperClose");
-        sr.append(" formName=\"");
-        sr.append(modelForm.getName());
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("formName", modelForm.getName());
+        executeMacro(writer, "renderFormatListWrapperClose", parameters);
         if (this.renderPagination) {
             this.renderNextPrev(writer, context, modelForm);
         }
@@ -1573,79 +1280,53 @@ public final class MacroFormRenderer implements FormStringRenderer {
     }
 
     public void renderFormatHeaderOpen(Appendable writer, Map<String, Object> context, ModelForm modelForm) throws IOException {
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatHeaderOpen ");
-        sr.append(" />");
-        executeMacro(writer, sr.toString());
+        executeMacro(writer, "renderFormatHeaderOpen", null);
     }
 
     public void renderFormatHeaderClose(Appendable writer, Map<String, Object> context, ModelForm modelForm) throws IOException {
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatHeaderClose");
-        sr.append(" />");
-        executeMacro(writer, sr.toString());
+        executeMacro(writer, "renderFormatHeaderClose", null);
     }
 
     public void renderFormatHeaderRowOpen(Appendable writer, Map<String, Object> context, ModelForm modelForm) throws IOException {
         String headerStyle = FlexibleStringExpander.expandString(modelForm.getHeaderRowStyle(), context);
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatHeaderRowOpen ");
-        sr.append(" style=\"");
-        sr.append(headerStyle);
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("style", headerStyle);
+        executeMacro(writer, "renderFormatHeaderRowOpen", parameters);
     }
 
     public void renderFormatHeaderRowClose(Appendable writer, Map<String, Object> context, ModelForm modelForm) throws IOException {
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatHeaderRowClose />");
-        executeMacro(writer, sr.toString());
+        executeMacro(writer, "renderFormatHeaderRowClose", null);
     }
 
     public void renderFormatHeaderRowCellOpen(Appendable writer, Map<String, Object> context, ModelForm modelForm, ModelFormField modelFormField, int positionSpan) throws IOException {
         String areaStyle = modelFormField.getTitleAreaStyle();
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatHeaderRowCellOpen ");
-        sr.append(" style=\"");
-        sr.append(areaStyle);
-        sr.append("\" positionSpan=");
-        sr.append(Integer.toString(positionSpan));
-        sr.append(" />");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("style", areaStyle);
+        parameters.put("positionSpan", positionSpan);
+        executeMacro(writer, "renderFormatHeaderRowCellOpen", parameters);
     }
 
     public void renderFormatHeaderRowCellClose(Appendable writer, Map<String, Object> context, ModelForm modelForm, ModelFormField modelFormField) throws IOException {
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatHeaderRowCellClose />");
-        executeMacro(writer, sr.toString());
+        executeMacro(writer, "renderFormatHeaderRowCellClose", null);
     }
 
     public void renderFormatHeaderRowFormCellOpen(Appendable writer, Map<String, Object> context, ModelForm modelForm) throws IOException {
         String areaStyle = modelForm.getFormTitleAreaStyle();
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatHeaderRowFormCellOpen ");
-        sr.append(" style=\"");
-        sr.append(areaStyle);
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("style", areaStyle);
+        executeMacro(writer, "renderFormatHeaderRowFormCellOpen", parameters);
     }
 
     public void renderFormatHeaderRowFormCellClose(Appendable writer, Map<String, Object> context, ModelForm modelForm) throws IOException {
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatHeaderRowFormCellClose />");
-        executeMacro(writer, sr.toString());
+        executeMacro(writer, "renderFormatHeaderRowFormCellClose", null);
     }
 
     public void renderFormatHeaderRowFormCellTitleSeparator(Appendable writer, Map<String, Object> context, ModelForm modelForm, ModelFormField modelFormField, boolean isLast) throws IOException {
         String titleStyle = modelFormField.getTitleStyle();
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatHeaderRowFormCellTitleSeparator ");
-        sr.append(" style=\"");
-        sr.append(titleStyle);
-        sr.append("\" isLast=");
-        sr.append(Boolean.toString(isLast));
-        sr.append(" />");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("style", titleStyle);
+        parameters.put("isLast", isLast);
+        executeMacro(writer, "renderFormatHeaderRowFormCellTitleSeparator", parameters);
     }
 
     public void renderFormatItemRowOpen(Appendable writer, Map<String, Object> context, ModelForm modelForm) throws IOException {
@@ -1661,117 +1342,78 @@ public final class MacroFormRenderer implements FormStringRenderer {
                 oddRowStyle = FlexibleStringExpander.expandString(modelForm.getOddRowStyle(), context);
             }
         }
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatItemRowOpen ");
-        sr.append(" formName=\"");
-        sr.append(modelForm.getName());
-        sr.append("\" itemIndex=");
-        sr.append(String.valueOf(itemIndex));
-        sr.append(" altRowStyles=\"");
-        sr.append(altRowStyles);
-        sr.append("\" evenRowStyle=\"");
-        sr.append(evenRowStyle);
-        sr.append("\" oddRowStyle=\"");
-        sr.append(oddRowStyle);
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("formName", modelForm.getName());
+        parameters.put("itemIndex", itemIndex);
+        parameters.put("altRowStyles", altRowStyles);
+        parameters.put("evenRowStyle", evenRowStyle);
+        parameters.put("oddRowStyle", oddRowStyle);
+        executeMacro(writer, "renderFormatItemRowOpen", parameters);
     }
 
     public void renderFormatItemRowClose(Appendable writer, Map<String, Object> context, ModelForm modelForm) throws IOException {
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatItemRowClose ");
-        sr.append(" formName=\"");
-        sr.append(modelForm.getName());
-        sr.append("\"/>");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("formName", modelForm.getName());
+        executeMacro(writer, "renderFormatItemRowClose", parameters);
     }
 
     public void renderFormatItemRowCellOpen(Appendable writer, Map<String, Object> context, ModelForm modelForm, ModelFormField modelFormField, int positionSpan) throws IOException {
         String areaStyle = modelFormField.getWidgetAreaStyle();
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatItemRowCellOpen ");
-        sr.append(" fieldName=\"");
-        sr.append(modelFormField.getName());
-        sr.append("\" style=\"");
-        sr.append(areaStyle);
-        sr.append("\" positionSpan=");
-        sr.append(Integer.toString(positionSpan));
-        sr.append(" />");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("fieldName", modelFormField.getName());
+        parameters.put("style", areaStyle);
+        parameters.put("positionSpan", positionSpan);
+        executeMacro(writer, "renderFormatItemRowCellOpen", parameters);
     }
 
     public void renderFormatItemRowCellClose(Appendable writer, Map<String, Object> context, ModelForm modelForm, ModelFormField modelFormField) throws IOException {
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatItemRowCellClose");
-        sr.append(" fieldName=\"");
-        sr.append(modelFormField.getName());
-        sr.append("\"/>");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("fieldName", modelFormField.getName());
+        executeMacro(writer, "renderFormatItemRowCellClose", parameters);
     }
 
     public void renderFormatItemRowFormCellOpen(Appendable writer, Map<String, Object> context, ModelForm modelForm) throws IOException {
         String areaStyle = modelForm.getFormTitleAreaStyle();
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatItemRowFormCellOpen ");
-        sr.append(" style=\"");
-        sr.append(areaStyle);
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("style", areaStyle);
+        executeMacro(writer, "renderFormatItemRowFormCellOpen", parameters);
     }
 
     public void renderFormatItemRowFormCellClose(Appendable writer, Map<String, Object> context, ModelForm modelForm) throws IOException {
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatItemRowFormCellClose />");
-        executeMacro(writer, sr.toString());
+        executeMacro(writer, "renderFormatItemRowFormCellClose", null);
     }
 
     public void renderFormatSingleWrapperOpen(Appendable writer, Map<String, Object> context, ModelForm modelForm) throws IOException {
         String style = FlexibleStringExpander.expandString(modelForm.getDefaultTableStyle(), context);
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatSingleWrapperOpen ");
-        sr.append(" formName=\"");
-        sr.append(modelForm.getName());
-        sr.append("\" style=\"");
-        sr.append(style);
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("formName", modelForm.getName());
+        parameters.put("style", style);
+        executeMacro(writer, "renderFormatSingleWrapperOpen", parameters);
     }
 
     public void renderFormatSingleWrapperClose(Appendable writer, Map<String, Object> context, ModelForm modelForm) throws IOException {
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatSingleWrapperClose");
-        sr.append(" formName=\"");
-        sr.append(modelForm.getName());
-        sr.append("\"/>");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("formName", modelForm.getName());
+        executeMacro(writer, "renderFormatSingleWrapperClose", parameters);
     }
 
     public void renderFormatFieldRowOpen(Appendable writer, Map<String, Object> context, ModelForm modelForm) throws IOException {
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatFieldRowOpen />");
-        executeMacro(writer, sr.toString());
+        executeMacro(writer, "renderFormatFieldRowOpen", null);
     }
 
     public void renderFormatFieldRowClose(Appendable writer, Map<String, Object> context, ModelForm modelForm) throws IOException {
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatFieldRowClose />");
-        executeMacro(writer, sr.toString());
+        executeMacro(writer, "renderFormatFieldRowClose", null);
     }
 
     public void renderFormatFieldRowTitleCellOpen(Appendable writer, Map<String, Object> context, ModelFormField modelFormField) throws IOException {
         String style = modelFormField.getTitleAreaStyle();
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatFieldRowTitleCellOpen ");
-        sr.append(" style=\"");
-        sr.append(style);
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("style", style);
+        executeMacro(writer, "renderFormatFieldRowTitleCellOpen", parameters);
     }
 
     public void renderFormatFieldRowTitleCellClose(Appendable writer, Map<String, Object> context, ModelFormField modelFormField) throws IOException {
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatFieldRowTitleCellClose />");
-        executeMacro(writer, sr.toString());
+        executeMacro(writer, "renderFormatFieldRowTitleCellClose", null);
     }
 
     public void renderFormatFieldRowSpacerCell(Appendable writer, Map<String, Object> context, ModelFormField modelFormField) throws IOException {
@@ -1779,26 +1421,18 @@ public final class MacroFormRenderer implements FormStringRenderer {
 
     public void renderFormatFieldRowWidgetCellOpen(Appendable writer, Map<String, Object> context, ModelFormField modelFormField, int positions, int positionSpan, Integer nextPositionInRow) throws IOException {
         String areaStyle = modelFormField.getWidgetAreaStyle();
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatFieldRowWidgetCellOpen ");
-        sr.append(" positionSpan=");
-        sr.append(Integer.toString(positionSpan));
-        sr.append(" style=\"");
-        sr.append(areaStyle);
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("positionSpan", positionSpan);
+        parameters.put("style", areaStyle);
+        executeMacro(writer, "renderFormatFieldRowWidgetCellOpen", parameters);
     }
 
     public void renderFormatFieldRowWidgetCellClose(Appendable writer, Map<String, Object> context, ModelFormField modelFormField, int positions, int positionSpan, Integer nextPositionInRow) throws IOException {
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatFieldRowWidgetCellClose />");
-        executeMacro(writer, sr.toString());
+        executeMacro(writer, "renderFormatFieldRowWidgetCellClose", null);
     }
 
     public void renderFormatEmptySpace(Appendable writer, Map<String, Object> context, ModelForm modelForm) throws IOException {
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatEmptySpace />");
-        executeMacro(writer, sr.toString());
+        executeMacro(writer, "renderFormatEmptySpace", null);
     }
 
     public void renderTextFindField(Appendable writer, Map<String, Object> context, TextFindField textFindField) throws IOException {
@@ -1848,48 +1482,27 @@ public final class MacroFormRenderer implements FormStringRenderer {
         boolean ignCase = textFindField.getIgnoreCase(context);
         boolean hideIgnoreCase = textFindField.getHideIgnoreCase();
         String tabindex = modelFormField.getTabindex();
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderTextFindField ");
-        sr.append(" name=\"");
-        sr.append(name);
-        sr.append("\" value=\"");
-        sr.append(value);
-        sr.append("\" defaultOption=\"");
-        sr.append(defaultOption);
-        sr.append("\" opEquals=\"");
-        sr.append(opEquals);
-        sr.append("\" opBeginsWith=\"");
-        sr.append(opBeginsWith);
-        sr.append("\" opContains=\"");
-        sr.append(opContains);
-        sr.append("\" opIsEmpty=\"");
-        sr.append(opIsEmpty);
-        sr.append("\" opNotEqual=\"");
-        sr.append(opNotEqual);
-        sr.append("\" className=\"");
-        sr.append(className);
-        sr.append("\" alert=\"");
-        sr.append(alert);
-        sr.append("\" size=\"");
-        sr.append(size);
-        sr.append("\" maxlength=\"");
-        sr.append(maxlength);
-        sr.append("\" autocomplete=\"");
-        sr.append(autocomplete);
-        sr.append("\" titleStyle=\"");
-        sr.append(titleStyle);
-        sr.append("\" hideIgnoreCase=");
-        sr.append(Boolean.toString(hideIgnoreCase));
-        sr.append(" ignCase=");
-        sr.append(Boolean.toString(ignCase));
-        sr.append(" ignoreCase=\"");
-        sr.append(ignoreCase);
-        sr.append("\" tabindex=\"");
-        sr.append(tabindex);
-        sr.append("\" conditionGroup=\"");
-        sr.append(conditionGroup);
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("name", name);
+        parameters.put("value", value);
+        parameters.put("defaultOption", defaultOption);
+        parameters.put("opEquals", opEquals);
+        parameters.put("opBeginsWith", opBeginsWith);
+        parameters.put("opContains", opContains);
+        parameters.put("opIsEmpty", opIsEmpty);
+        parameters.put("opNotEqual", opNotEqual);
+        parameters.put("className", className);
+        parameters.put("alert", alert);
+        parameters.put("size", size);
+        parameters.put("maxlength", maxlength);
+        parameters.put("autocomplete", autocomplete);
+        parameters.put("titleStyle", titleStyle);
+        parameters.put("hideIgnoreCase", hideIgnoreCase);
+        parameters.put("ignCase", ignCase);
+        parameters.put("ignoreCase", ignoreCase);
+        parameters.put("tabindex", tabindex);
+        parameters.put("conditionGroup", conditionGroup);
+        executeMacro(writer, "renderTextFindField", parameters);
         this.appendTooltip(writer, context, modelFormField);
     }
 
@@ -1934,48 +1547,26 @@ public final class MacroFormRenderer implements FormStringRenderer {
         }
         String defaultOptionThru = rangeFindField.getDefaultOptionThru();
         String tabindex = modelFormField.getTabindex();
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderRangeFindField ");
-        sr.append(" className=\"");
-        sr.append(className);
-        sr.append("\" alert=\"");
-        sr.append(alert);
-        sr.append("\" name=\"");
-        sr.append(name);
-        sr.append("\" value=\"");
-        sr.append(value);
-        sr.append("\" size=\"");
-        sr.append(size);
-        sr.append("\" maxlength=\"");
-        if (maxlength != null) {
-            sr.append(Integer.toString(maxlength));
-        }
-        sr.append("\" autocomplete=\"");
-        sr.append(autocomplete);
-        sr.append("\" titleStyle=\"");
-        sr.append(titleStyle);
-        sr.append("\" defaultOptionFrom=\"");
-        sr.append(defaultOptionFrom);
-        sr.append("\" opEquals=\"");
-        sr.append(opEquals);
-        sr.append("\" opGreaterThan=\"");
-        sr.append(opGreaterThan);
-        sr.append("\" opGreaterThanEquals=\"");
-        sr.append(opGreaterThanEquals);
-        sr.append("\" opLessThan=\"");
-        sr.append(opLessThan);
-        sr.append("\" opLessThanEquals=\"");
-        sr.append(opLessThanEquals);
-        sr.append("\" value2=\"");
-        sr.append(value2);
-        sr.append("\" defaultOptionThru=\"");
-        sr.append(defaultOptionThru);
-        sr.append("\" conditionGroup=\"");
-        sr.append(conditionGroup);
-        sr.append("\" tabindex=\"");
-        sr.append(tabindex);
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("className", className);
+        parameters.put("alert", alert);
+        parameters.put("name", name);
+        parameters.put("value", value);
+        parameters.put("size", size);
+        parameters.put("maxlength", maxlength != null ? Integer.toString(maxlength) : "");
+        parameters.put("autocomplete", autocomplete);
+        parameters.put("titleStyle", titleStyle);
+        parameters.put("defaultOptionFrom", defaultOptionFrom);
+        parameters.put("opEquals", opEquals);
+        parameters.put("opGreaterThan", opGreaterThan);
+        parameters.put("opGreaterThanEquals", opGreaterThanEquals);
+        parameters.put("opLessThan", opLessThan);
+        parameters.put("opLessThanEquals", opLessThanEquals);
+        parameters.put("value2", value2);
+        parameters.put("defaultOptionThru", defaultOptionThru);
+        parameters.put("conditionGroup", conditionGroup);
+        parameters.put("tabindex", tabindex);
+        executeMacro(writer, "renderRangeFindField", parameters);
         this.appendTooltip(writer, context, modelFormField);
     }
 
@@ -2064,66 +1655,36 @@ public final class MacroFormRenderer implements FormStringRenderer {
         }
         String id = modelFormField.getCurrentContainerId(context);
         String tabindex = modelFormField.getTabindex();
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderDateFindField ");
-        sr.append(" className=\"");
-        sr.append(className);
-        sr.append("\" alert=\"");
-        sr.append(alert);
-        sr.append("\" id=\"");
-        sr.append(id);
-        sr.append("\" name=\"");
-        sr.append(name);
-        sr.append("\" localizedInputTitle=\"");
-        sr.append(localizedInputTitle);
-        sr.append("\" value=\"");
-        sr.append(value);
-        sr.append("\" value2=\"");
-        sr.append(value2);
-        sr.append("\" size=\"");
-        sr.append(Integer.toString(size));
-        sr.append("\" maxlength=\"");
-        sr.append(Integer.toString(maxlength));
-        sr.append("\" dateType=\"");
-        sr.append(dateType);
-        sr.append("\" formName=\"");
-        sr.append(formName);
-        sr.append("\" defaultDateTimeString=\"");
-        sr.append(defaultDateTimeString);
-        sr.append("\" imgSrc=\"");
-        sr.append(imgSrc.toString());
-        sr.append("\" conditionGroup=\"");
-        sr.append(conditionGroup);
-        sr.append("\" localizedIconTitle=\"");
-        sr.append(localizedIconTitle);
-        sr.append("\" titleStyle=\"");
-        sr.append(titleStyle);
-        sr.append("\" defaultOptionFrom=\"");
-        sr.append(defaultOptionFrom);
-        sr.append("\" defaultOptionThru=\"");
-        sr.append(defaultOptionThru);
-        sr.append("\" opEquals=\"");
-        sr.append(opEquals);
-        sr.append("\" opSameDay=\"");
-        sr.append(opSameDay);
-        sr.append("\" opGreaterThanFromDayStart=\"");
-        sr.append(opGreaterThanFromDayStart);
-        sr.append("\" opGreaterThan=\"");
-        sr.append(opGreaterThan);
-        sr.append("\" opGreaterThan=\"");
-        sr.append(opGreaterThan);
-        sr.append("\" opLessThan=\"");
-        sr.append(opLessThan);
-        sr.append("\" opUpToDay=\"");
-        sr.append(opUpToDay);
-        sr.append("\" opUpThruDay=\"");
-        sr.append(opUpThruDay);
-        sr.append("\" opIsEmpty=\"");
-        sr.append(opIsEmpty);
-        sr.append("\" tabindex=\"");
-        sr.append(tabindex);
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("className", className);
+        parameters.put("alert", alert);
+        parameters.put("id", id);
+        parameters.put("name", name);
+        parameters.put("localizedInputTitle", localizedInputTitle);
+        parameters.put("value", value);
+        parameters.put("value2", value2);
+        parameters.put("size", Integer.toString(size));
+        parameters.put("maxlength", Integer.toString(maxlength));
+        parameters.put("dateType", dateType);
+        parameters.put("formName", formName);
+        parameters.put("defaultDateTimeString", defaultDateTimeString);
+        parameters.put("imgSrc", imgSrc.toString());
+        parameters.put("conditionGroup", conditionGroup);
+        parameters.put("localizedIconTitle", localizedIconTitle);
+        parameters.put("titleStyle", titleStyle);
+        parameters.put("defaultOptionFrom", defaultOptionFrom);
+        parameters.put("defaultOptionThru", defaultOptionThru);
+        parameters.put("opEquals", opEquals);
+        parameters.put("opSameDay", opSameDay);
+        parameters.put("opGreaterThanFromDayStart", opGreaterThanFromDayStart);
+        parameters.put("opGreaterThan", opGreaterThan);
+        parameters.put("opGreaterThan", opGreaterThan);
+        parameters.put("opLessThan", opLessThan);
+        parameters.put("opUpToDay", opUpToDay);
+        parameters.put("opUpThruDay", opUpThruDay);
+        parameters.put("opIsEmpty", opIsEmpty);
+        parameters.put("tabindex", tabindex);
+        executeMacro(writer, "renderDateFindField", parameters);
         this.appendTooltip(writer, context, modelFormField);
     }
 
@@ -2187,20 +1748,8 @@ public final class MacroFormRenderer implements FormStringRenderer {
         if (UtilValidate.isEmpty(formName)) {
             formName = FormRenderer.getCurrentFormName(modelForm, context);
         }
-        StringBuilder targetParameterIter = new StringBuilder();
         StringBuilder imgSrc = new StringBuilder();
-        // FIXME: refactor using the StringUtils methods
         List<String> targetParameterList = lookupField.getTargetParameterList(context);
-        targetParameterIter.append("[");
-        for (String targetParameter : targetParameterList) {
-            if (targetParameterIter.length() > 1) {
-                targetParameterIter.append(",");
-            }
-            targetParameterIter.append("'");
-            targetParameterIter.append(targetParameter);
-            targetParameterIter.append("'");
-        }
-        targetParameterIter.append("]");
         this.appendContentUrl(imgSrc, "/images/fieldlookup.gif");
         String ajaxUrl = "";
         if (ajaxEnabled) {
@@ -2239,80 +1788,44 @@ public final class MacroFormRenderer implements FormStringRenderer {
         }
         lastViewName = UtilHttp.getEncodedParameter(lastViewName);
         String tabindex = modelFormField.getTabindex();
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderLookupField ");
-        sr.append(" className=\"");
-        sr.append(className);
-        sr.append("\" alert=\"");
-        sr.append(alert);
-        sr.append("\" name=\"");
-        sr.append(name);
-        sr.append("\" value=\"");
-        sr.append(value);
-        sr.append("\" size=\"");
-        sr.append(size);
-        sr.append("\" maxlength=\"");
-        sr.append((maxlength != null ? Integer.toString(maxlength) : ""));
-        sr.append("\" id=\"");
-        sr.append(id);
-        sr.append("\" event=\"");
-        if (event != null) {
-            sr.append(event);
-        }
-        sr.append("\" action=\"");
-        if (action != null) {
-            sr.append(action);
-        }
-        sr.append("\" readonly=");
-        sr.append(Boolean.toString(readonly));
-        sr.append(" autocomplete=\"");
-        sr.append(autocomplete);
-        sr.append("\" descriptionFieldName=\"");
-        sr.append(descriptionFieldName);
-        sr.append("\" formName=\"");
-        sr.append(formName);
-        sr.append("\" fieldFormName=\"");
-        sr.append(lookupFieldFormName);
-        sr.append("\" targetParameterIter=");
-        sr.append(targetParameterIter.toString());
-        sr.append(" imgSrc=\"");
-        sr.append(imgSrc.toString());
-        sr.append("\" ajaxUrl=\"");
-        sr.append(ajaxUrl);
-        sr.append("\" ajaxEnabled=");
-        sr.append(Boolean.toString(ajaxEnabled));
-        sr.append(" presentation=\"");
-        sr.append(lookupPresentation);
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("className", className);
+        parameters.put("alert", alert);
+        parameters.put("name", name);
+        parameters.put("value", value);
+        parameters.put("size", size);
+        parameters.put("maxlength", maxlength != null ? Integer.toString(maxlength) : "");
+        parameters.put("id", id);
+        parameters.put("event", event == null ? "" : event);
+        parameters.put("action", action == null ? "" : action);
+        parameters.put("readonly", readonly);
+        parameters.put("autocomplete", autocomplete);
+        parameters.put("descriptionFieldName", descriptionFieldName);
+        parameters.put("formName", formName);
+        parameters.put("fieldFormName", lookupFieldFormName);
+        parameters.put("targetParameterIter", targetParameterList);
+        parameters.put("imgSrc", imgSrc.toString());
+        parameters.put("ajaxUrl", ajaxUrl);
+        parameters.put("ajaxEnabled", ajaxEnabled);
+        parameters.put("presentation", lookupPresentation);
         if (UtilValidate.isNotEmpty(lookupHeight)) {
-            sr.append("\" height=\"");
-            sr.append(lookupHeight);
+            parameters.put("height", lookupHeight);
         }
         if (UtilValidate.isNotEmpty(lookupWidth)) {
-            sr.append("\" width=\"");
-            sr.append(lookupWidth);
+            parameters.put("width", lookupWidth);
         }
         if (UtilValidate.isNotEmpty(lookupPosition)) {
-            sr.append("\" position=\"");
-            sr.append(lookupPosition);
-        }
-        sr.append("\" fadeBackground=\"");
-        sr.append(fadeBackground);
-        sr.append("\" clearText=\"");
-        sr.append(clearText);
-        sr.append("\" showDescription=\"");
-        sr.append(Boolean.toString(showDescription));
-        sr.append("\" initiallyCollapsed=\"");
-        sr.append(Boolean.toString(isInitiallyCollapsed));
-        sr.append("\" lastViewName=\"");
-        sr.append(lastViewName);
-        sr.append("\" conditionGroup=\"");
-        sr.append(conditionGroup);
-        sr.append("\" tabindex=\"");
-        sr.append(tabindex);
-        sr.append("\" delegatorName=\"");
-        sr.append(((HttpSession)context.get("session")).getAttribute("delegatorName").toString());
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+            parameters.put("position", lookupPosition);
+        }
+        parameters.put("fadeBackground", fadeBackground);
+        parameters.put("clearText", clearText);
+        parameters.put("showDescription", Boolean.toString(showDescription));
+        parameters.put("initiallyCollapsed", Boolean.toString(isInitiallyCollapsed));
+        parameters.put("lastViewName", lastViewName);
+        parameters.put("conditionGroup", conditionGroup);
+        parameters.put("tabindex", tabindex);
+        parameters.put("delegatorName", ((HttpSession)context.get("session")).getAttribute("delegatorName").toString());
+        executeMacro(writer, "renderLookupField", parameters);
         this.addAsterisks(writer, context, modelFormField);
         this.makeHyperlinkString(writer, lookupField.getSubHyperlink(), context);
         this.appendTooltip(writer, context, modelFormField);
@@ -2480,74 +1993,40 @@ public final class MacroFormRenderer implements FormStringRenderer {
                 selectSizeUrl = rh.makeLink(this.request, this.response, urlPath + linkText);
             }
         }
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderNextPrev ");
-        sr.append(" paginateStyle=\"");
-        sr.append(paginateStyle);
-        sr.append("\" paginateFirstStyle=\"");
-        sr.append(paginateFirstStyle);
-        sr.append("\" viewIndex=");
-        sr.append(Integer.toString(viewIndex));
-        sr.append(" highIndex=");
-        sr.append(Integer.toString(highIndex));
-        sr.append(" listSize=");
-        sr.append(Integer.toString(listSize));
-        sr.append(" viewSize=");
-        sr.append(Integer.toString(viewSize));
-        sr.append(" ajaxEnabled=");
-        sr.append(Boolean.toString(ajaxEnabled));
-        sr.append(" javaScriptEnabled=");
-        sr.append(Boolean.toString(javaScriptEnabled));
-        sr.append(" ajaxFirstUrl=\"");
-        sr.append(ajaxFirstUrl);
-        sr.append("\" ajaxFirstUrl=\"");
-        sr.append(ajaxFirstUrl);
-        sr.append("\" ajaxFirstUrl=\"");
-        sr.append(ajaxFirstUrl);
-        sr.append("\" firstUrl=\"");
-        sr.append(firstUrl);
-        sr.append("\" paginateFirstLabel=\"");
-        sr.append(paginateFirstLabel);
-        sr.append("\" paginatePreviousStyle=\"");
-        sr.append(paginatePreviousStyle);
-        sr.append("\" ajaxPreviousUrl=\"");
-        sr.append(ajaxPreviousUrl);
-        sr.append("\" previousUrl=\"");
-        sr.append(previousUrl);
-        sr.append("\" paginatePreviousLabel=\"");
-        sr.append(paginatePreviousLabel);
-        sr.append("\" pageLabel=\"");
-        sr.append(pageLabel);
-        sr.append("\" ajaxSelectUrl=\"");
-        sr.append(ajaxSelectUrl);
-        sr.append("\" selectUrl=\"");
-        sr.append(selectUrl);
-        sr.append("\" ajaxSelectSizeUrl=\"");
-        sr.append(ajaxSelectSizeUrl);
-        sr.append("\" selectSizeUrl=\"");
-        sr.append(selectSizeUrl);
-        sr.append("\" commonDisplaying=\"");
-        sr.append(commonDisplaying);
-        sr.append("\" paginateNextStyle=\"");
-        sr.append(paginateNextStyle);
-        sr.append("\" ajaxNextUrl=\"");
-        sr.append(ajaxNextUrl);
-        sr.append("\" nextUrl=\"");
-        sr.append(nextUrl);
-        sr.append("\" paginateNextLabel=\"");
-        sr.append(paginateNextLabel);
-        sr.append("\" paginateLastStyle=\"");
-        sr.append(paginateLastStyle);
-        sr.append("\" ajaxLastUrl=\"");
-        sr.append(ajaxLastUrl);
-        sr.append("\" lastUrl=\"");
-        sr.append(lastUrl);
-        sr.append("\" paginateLastLabel=\"");
-        sr.append(paginateLastLabel);
-        sr.append("\" paginateViewSizeLabel=\"");
-        sr.append(paginateViewSizeLabel);
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("paginateStyle", paginateStyle);
+        parameters.put("paginateFirstStyle", paginateFirstStyle);
+        parameters.put("viewIndex", viewIndex);
+        parameters.put("highIndex", highIndex);
+        parameters.put("listSize", listSize);
+        parameters.put("viewSize", viewSize);
+        parameters.put("ajaxEnabled", ajaxEnabled);
+        parameters.put("javaScriptEnabled", javaScriptEnabled);
+        parameters.put("ajaxFirstUrl", ajaxFirstUrl);
+        parameters.put("ajaxFirstUrl", ajaxFirstUrl);
+        parameters.put("ajaxFirstUrl", ajaxFirstUrl);
+        parameters.put("firstUrl", firstUrl);
+        parameters.put("paginateFirstLabel", paginateFirstLabel);
+        parameters.put("paginatePreviousStyle", paginatePreviousStyle);
+        parameters.put("ajaxPreviousUrl", ajaxPreviousUrl);
+        parameters.put("previousUrl", previousUrl);
+        parameters.put("paginatePreviousLabel", paginatePreviousLabel);
+        parameters.put("pageLabel", pageLabel);
+        parameters.put("ajaxSelectUrl", ajaxSelectUrl);
+        parameters.put("selectUrl", selectUrl);
+        parameters.put("ajaxSelectSizeUrl", ajaxSelectSizeUrl);
+        parameters.put("selectSizeUrl", selectSizeUrl);
+        parameters.put("commonDisplaying", commonDisplaying);
+        parameters.put("paginateNextStyle", paginateNextStyle);
+        parameters.put("ajaxNextUrl", ajaxNextUrl);
+        parameters.put("nextUrl", nextUrl);
+        parameters.put("paginateNextLabel", paginateNextLabel);
+        parameters.put("paginateLastStyle", paginateLastStyle);
+        parameters.put("ajaxLastUrl", ajaxLastUrl);
+        parameters.put("lastUrl", lastUrl);
+        parameters.put("paginateLastLabel", paginateLastLabel);
+        parameters.put("paginateViewSizeLabel", paginateViewSizeLabel);
+        executeMacro(writer, "renderNextPrev", parameters);
     }
 
     public void renderFileField(Appendable writer, Map<String, Object> context, FileField textField) throws IOException {
@@ -2575,26 +2054,16 @@ public final class MacroFormRenderer implements FormStringRenderer {
             autocomplete = "off";
         }
         String tabindex = modelFormField.getTabindex();
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFileField ");
-        sr.append(" className=\"");
-        sr.append(className);
-        sr.append("\" alert=\"");
-        sr.append(alert);
-        sr.append("\" name=\"");
-        sr.append(name);
-        sr.append("\" value=\"");
-        sr.append(value);
-        sr.append("\" size=\"");
-        sr.append(size);
-        sr.append("\" maxlength=\"");
-        sr.append(maxlength);
-        sr.append("\" autocomplete=\"");
-        sr.append(autocomplete);
-        sr.append("\" tabindex=\"");
-        sr.append(tabindex);
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("className", className);
+        parameters.put("alert", alert);
+        parameters.put("name", name);
+        parameters.put("value", value);
+        parameters.put("size", size);
+        parameters.put("maxlength", maxlength);
+        parameters.put("autocomplete", autocomplete);
+        parameters.put("tabindex", tabindex);
+        executeMacro(writer, "renderFileField", parameters);
         this.makeHyperlinkString(writer, textField.getSubHyperlink(), context);
         this.appendTooltip(writer, context, modelFormField);
     }
@@ -2642,28 +2111,17 @@ public final class MacroFormRenderer implements FormStringRenderer {
         }
 
         String tabindex = modelFormField.getTabindex();
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderPasswordField ");
-        sr.append(" className=\"");
-        sr.append(className);
-        sr.append("\" alert=\"");
-        sr.append(alert);
-        sr.append("\" name=\"");
-        sr.append(name);
-        sr.append("\" value=\"");
-        sr.append(value);
-        sr.append("\" size=\"");
-        sr.append(size);
-        sr.append("\" maxlength=\"");
-        sr.append(maxlength);
-        sr.append("\" id=\"");
-        sr.append(id);
-        sr.append("\" autocomplete=\"");
-        sr.append(autocomplete);
-        sr.append("\" tabindex=\"");
-        sr.append(tabindex);
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("className", className);
+        parameters.put("alert", alert);
+        parameters.put("name", name);
+        parameters.put("value", value);
+        parameters.put("size", size);
+        parameters.put("maxlength", maxlength);
+        parameters.put("id", id);
+        parameters.put("autocomplete", autocomplete);
+        parameters.put("tabindex", tabindex);
+        executeMacro(writer, "renderPasswordField", parameters);
         this.addAsterisks(writer, context, modelFormField);
         this.makeHyperlinkString(writer, passwordField.getSubHyperlink(), context);
         this.appendTooltip(writer, context, modelFormField);
@@ -2693,22 +2151,14 @@ public final class MacroFormRenderer implements FormStringRenderer {
         }
         String event = modelFormField.getEvent();
         String action = modelFormField.getAction(context);
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderImageField ");
-        sr.append(" value=\"");
-        sr.append(value);
-        sr.append("\" description=\"");
-        sr.append(encode(description, modelFormField, context));
-        sr.append("\" alternate=\"");
-        sr.append(encode(alternate, modelFormField, context));
-        sr.append("\" style=\"");
-        sr.append(style);
-        sr.append("\" event=\"");
-        sr.append(event == null ? "" : event);
-        sr.append("\" action=\"");
-        sr.append(action == null ? "" : action);
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("value", value);
+        parameters.put("description", encode(description, modelFormField, context));
+        parameters.put("alternate", encode(alternate, modelFormField, context));
+        parameters.put("style", style);
+        parameters.put("event", event == null ? "" : event);
+        parameters.put("action", action == null ? "" : action);
+        executeMacro(writer, "renderImageField", parameters);
         this.makeHyperlinkString(writer, imageField.getSubHyperlink(), context);
         this.appendTooltip(writer, context, modelFormField);
     }
@@ -2732,28 +2182,16 @@ public final class MacroFormRenderer implements FormStringRenderer {
                 }
             }
         }
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFieldGroupOpen ");
-        sr.append(" style=\"");
-        if (style != null) {
-            sr.append(style);
-        }
-        sr.append("\" id=\"");
-        sr.append(id);
-        sr.append("\" title=\"");
-        sr.append(title);
-        sr.append("\" collapsed=");
-        sr.append(Boolean.toString(collapsed));
-        sr.append(" collapsibleAreaId=\"");
-        sr.append(collapsibleAreaId);
-        sr.append("\" collapsible=");
-        sr.append(Boolean.toString(collapsible));
-        sr.append(" expandToolTip=\"");
-        sr.append(expandToolTip);
-        sr.append("\" collapseToolTip=\"");
-        sr.append(collapseToolTip);
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("style", style == null ? "" : style);
+        parameters.put("id", id);
+        parameters.put("title", title);
+        parameters.put("collapsed", collapsed);
+        parameters.put("collapsibleAreaId", collapsibleAreaId);
+        parameters.put("collapsible", collapsible);
+        parameters.put("expandToolTip", expandToolTip);
+        parameters.put("collapseToolTip", collapseToolTip);
+        executeMacro(writer, "renderFieldGroupOpen", parameters);
     }
 
     public void renderFieldGroupClose(Appendable writer, Map<String, Object> context, ModelForm.FieldGroup fieldGroup) throws IOException {
@@ -2761,22 +2199,11 @@ public final class MacroFormRenderer implements FormStringRenderer {
         String id = fieldGroup.getId();
         FlexibleStringExpander titleNotExpanded = FlexibleStringExpander.getInstance(fieldGroup.getTitle());
         String title = titleNotExpanded.expandString(context);
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFieldGroupClose ");
-        sr.append(" style=\"");
-        if (style != null) {
-            sr.append(style);
-        }
-        sr.append("\" id=\"");
-        if (id != null) {
-            sr.append(id);
-        }
-        sr.append("\" title=\"");
-        if (title != null) {
-            sr.append(title);
-        }
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("style", style == null ? "" : style);
+        parameters.put("id", id == null ? "" : id);
+        parameters.put("title", title == null ? "" : title);
+        executeMacro(writer, "renderFieldGroupClose", parameters);
     }
 
     public void renderBanner(Appendable writer, Map<String, Object> context, ModelForm.Banner banner) throws IOException {
@@ -2801,22 +2228,14 @@ public final class MacroFormRenderer implements FormStringRenderer {
         if (rightText == null) {
             rightText = "";
         }
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderBanner ");
-        sr.append(" style=\"");
-        sr.append(style);
-        sr.append("\" leftStyle=\"");
-        sr.append(leftStyle);
-        sr.append("\" rightStyle=\"");
-        sr.append(rightStyle);
-        sr.append("\" leftText=\"");
-        sr.append(leftText);
-        sr.append("\" text=\"");
-        sr.append(text);
-        sr.append("\" rightText=\"");
-        sr.append(rightText);
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("style", style);
+        parameters.put("leftStyle", leftStyle);
+        parameters.put("rightStyle", rightStyle);
+        parameters.put("leftText", leftText);
+        parameters.put("text", text);
+        parameters.put("rightText", rightText);
+        executeMacro(writer, "renderBanner", parameters);
     }
 
     /**
@@ -2827,16 +2246,11 @@ public final class MacroFormRenderer implements FormStringRenderer {
      */
     public void renderBeginningBoundaryComment(Appendable writer, String widgetType, ModelWidget modelWidget) {
         if (this.widgetCommentsEnabled) {
-            StringWriter sr = new StringWriter();
-            sr.append("<@formatBoundaryComment ");
-            sr.append(" boundaryType=\"");
-            sr.append("Begin");
-            sr.append("\" widgetType=\"");
-            sr.append(widgetType);
-            sr.append("\" widgetName=\"");
-            sr.append(modelWidget.getBoundaryCommentName());
-            sr.append("\" />");
-            executeMacro(writer, sr.toString());
+            Map<String, Object> parameters = new LinkedHashMap<>();
+            parameters.put("boundaryType", "Begin");
+            parameters.put("widgetType", widgetType);
+            parameters.put("widgetName", modelWidget.getBoundaryCommentName());
+            executeMacro(writer, "formatBoundaryComment", parameters);
         }
     }
 
@@ -2848,16 +2262,11 @@ public final class MacroFormRenderer implements FormStringRenderer {
      */
     public void renderEndingBoundaryComment(Appendable writer, String widgetType, ModelWidget modelWidget) {
         if (this.widgetCommentsEnabled) {
-            StringWriter sr = new StringWriter();
-            sr.append("<@formatBoundaryComment ");
-            sr.append(" boundaryType=\"");
-            sr.append("End");
-            sr.append("\" widgetType=\"");
-            sr.append(widgetType);
-            sr.append("\" widgetName=\"");
-            sr.append(modelWidget.getBoundaryCommentName());
-            sr.append("\" />");
-            executeMacro(writer, sr.toString());
+            Map<String, Object> parameters = new LinkedHashMap<>();
+            parameters.put("boundaryType", "End");
+            parameters.put("widgetType", widgetType);
+            parameters.put("widgetName", modelWidget.getBoundaryCommentName());
+            executeMacro(writer, "formatBoundaryComment", parameters);
         }
     }
 
@@ -2923,22 +2332,16 @@ public final class MacroFormRenderer implements FormStringRenderer {
             String urlPath = UtilHttp.removeQueryStringFromTarget(paginateTarget);
             linkUrl = rh.makeLink(this.request, this.response, urlPath.concat(newQueryString));
         }
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderSortField ");
-        sr.append(" style=\"");
-        sr.append(sortFieldStyle);
-        sr.append("\" title=\"");
-        sr.append(titleText);
-        sr.append("\" linkUrl=r\"");
-        sr.append(linkUrl);
-        sr.append("\" ajaxEnabled=");
-        sr.append(Boolean.toString(ajaxEnabled));
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("style", sortFieldStyle);
+        parameters.put("title", titleText);
+        parameters.put("linkUrl", linkUrl);
+        parameters.put("ajaxEnabled", ajaxEnabled);
         String tooltip = modelFormField.getSortFieldHelpText(context);
         if (!tooltip.isEmpty()) {
-            sr.append(" tooltip=\"").append(tooltip).append("\"");
+            parameters.put("tooltip", tooltip);
         }
-        sr.append(" />");
-        executeMacro(writer, sr.toString());
+        executeMacro(writer, "renderSortField", parameters);
     }
 
     /** Create an ajaxXxxx JavaScript CSV string from a list of UpdateArea objects. See
@@ -3058,14 +2461,10 @@ public final class MacroFormRenderer implements FormStringRenderer {
     public void appendTooltip(Appendable writer, Map<String, Object> context, ModelFormField modelFormField) {
         // render the tooltip, in other methods too
         String tooltip = modelFormField.getTooltip(context);
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderTooltip ");
-        sr.append("tooltip=\"");
-        sr.append(encodeDoubleQuotes(tooltip));
-        sr.append("\" tooltipStyle=\"");
-        sr.append(modelFormField.getTooltipStyle());
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("tooltip", tooltip);
+        parameters.put("tooltipStyle", modelFormField.getTooltipStyle());
+        executeMacro(writer, "renderTooltip", parameters);
     }
 
     public void makeHyperlinkString(Appendable writer, ModelFormField.SubHyperlink subHyperlink, Map<String, Object> context) throws IOException {
@@ -3094,14 +2493,10 @@ public final class MacroFormRenderer implements FormStringRenderer {
             requiredField = "true";
             requiredStyle = modelFormField.getRequiredFieldStyle();
         }
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderAsterisks ");
-        sr.append("requiredField=\"");
-        sr.append(requiredField);
-        sr.append("\" requiredStyle=\"");
-        sr.append(requiredStyle);
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("requiredField", requiredField);
+        parameters.put("requiredStyle", requiredStyle);
+        executeMacro(writer, "renderAsterisks", parameters);
     }
 
     public void appendContentUrl(Appendable writer, String location) throws IOException {
@@ -3232,42 +2627,24 @@ public final class MacroFormRenderer implements FormStringRenderer {
                 }
                 targetParameters.append("}");
             }
-            StringWriter sr = new StringWriter();
-            sr.append("<@makeHyperlinkString ");
-            sr.append("linkStyle=\"");
-            sr.append(linkStyle == null ? "" : linkStyle);
-            sr.append("\" hiddenFormName=\"");
-            sr.append(hiddenFormName);
-            sr.append("\" event=\"");
-            sr.append(event);
-            sr.append("\" action=\"");
-            sr.append(action);
-            sr.append("\" imgSrc=\"");
-            sr.append(imgSrc);
-            sr.append("\" title=\"");
-            sr.append(imgTitle);
-            sr.append("\" alternate=\"");
-            sr.append(alt);
-            sr.append("\" targetParameters=\"");
-            sr.append(targetParameters.toString());
-            sr.append("\" linkUrl=\"");
-            sr.append(linkUrl.toString());
-            sr.append("\" targetWindow=\"");
-            sr.append(targetWindow);
-            sr.append("\" description=\"");
-            sr.append(description);
-            sr.append("\" confirmation =\"");
-            sr.append(confirmation);
-            sr.append("\" uniqueItemName=\"");
-            sr.append(uniqueItemName);
-            sr.append("\" height=\"");
-            sr.append(height);
-            sr.append("\" width=\"");
-            sr.append(width);
-            sr.append("\" id=\"");
-            sr.append(id);
-            sr.append("\" />");
-            executeMacro(writer, sr.toString());
+            Map<String, Object> parameters = new LinkedHashMap<>();
+            parameters.put("linkStyle", linkStyle == null ? "" : linkStyle);
+            parameters.put("hiddenFormName", hiddenFormName);
+            parameters.put("event", event);
+            parameters.put("action", action);
+            parameters.put("imgSrc", imgSrc);
+            parameters.put("title", imgTitle);
+            parameters.put("alternate", alt);
+            parameters.put("targetParameters", targetParameters.toString());
+            parameters.put("linkUrl", linkUrl.toString());
+            parameters.put("targetWindow", targetWindow);
+            parameters.put("description", description);
+            parameters.put("confirmation", confirmation);
+            parameters.put("uniqueItemName", uniqueItemName);
+            parameters.put("height", height);
+            parameters.put("width", width);
+            parameters.put("id", id);
+            executeMacro(writer, "makeHyperlinkString", parameters);
         }
     }
 
@@ -3284,24 +2661,15 @@ public final class MacroFormRenderer implements FormStringRenderer {
             if (UtilValidate.isNotEmpty(request.getAttribute("image"))) {
                 imgSrc = request.getAttribute("image").toString();
             }
-            StringWriter sr = new StringWriter();
-            sr.append("<@makeHiddenFormLinkAnchor ");
-            sr.append("linkStyle=\"");
-            sr.append(linkStyle == null ? "" : linkStyle);
-            sr.append("\" hiddenFormName=\"");
-            sr.append(hiddenFormName);
-            sr.append("\" event=\"");
-            sr.append(event);
-            sr.append("\" action=\"");
-            sr.append(action);
-            sr.append("\" imgSrc=\"");
-            sr.append(imgSrc);
-            sr.append("\" description=\"");
-            sr.append(description);
-            sr.append("\" confirmation =\"");
-            sr.append(confirmation);
-            sr.append("\" />");
-            executeMacro(writer, sr.toString());
+            Map<String, Object> parameters = new LinkedHashMap<>();
+            parameters.put("linkStyle", linkStyle == null ? "" : linkStyle);
+            parameters.put("hiddenFormName", hiddenFormName);
+            parameters.put("event", event);
+            parameters.put("action", action);
+            parameters.put("imgSrc", imgSrc);
+            parameters.put("description", description);
+            parameters.put("confirmation", confirmation);
+            executeMacro(writer, "makeHiddenFormLinkAnchor", parameters);
         }
     }
 
@@ -3309,44 +2677,24 @@ public final class MacroFormRenderer implements FormStringRenderer {
         StringBuilder actionUrl = new StringBuilder();
         WidgetWorker.buildHyperlinkUrl(actionUrl, target, targetType, null, null, false, false, true, request, response, context);
         String name = WidgetWorker.makeLinkHiddenFormName(context, modelFormField);
-        StringBuilder parameters = new StringBuilder();
-        parameters.append("[");
+        List<Map<String, String>> hiddenParameters = new LinkedList<>();
         for (CommonWidgetModels.Parameter parameter : parameterList) {
-            if (parameters.length() > 1) {
-                parameters.append(",");
-            }
-            parameters.append("{'name':'");
-            parameters.append(parameter.getName());
-            parameters.append("'");
-            parameters.append(",'value':'");
-            parameters.append(UtilCodec.getEncoder("html").encode(parameter.getValue(context)));
-            parameters.append("'}");
-        }
-        parameters.append("]");
-        StringWriter sr = new StringWriter();
-        sr.append("<@makeHiddenFormLinkForm ");
-        sr.append("actionUrl=\"");
-        sr.append(actionUrl.toString());
-        sr.append("\" name=\"");
-        sr.append(name);
-        sr.append("\" parameters=");
-        sr.append(parameters.toString());
-        sr.append(" targetWindow=\"");
-        sr.append(targetWindow);
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+            hiddenParameters.add(UtilMisc.toMap("name", parameter.getName(), "value", UtilCodec.getEncoder("html").encode(parameter.getValue(context))));
+        }
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("actionUrl", actionUrl.toString());
+        parameters.put("name", name);
+        parameters.put("parameters", hiddenParameters);
+        parameters.put("targetWindow", targetWindow);
+        executeMacro(writer, "makeHiddenFormLinkForm", parameters);
     }
 
     public void renderContainerFindField(Appendable writer, Map<String, Object> context, ContainerField containerField) throws IOException {
         String id = containerField.getModelFormField().getIdName();
         String className = UtilFormatOut.checkNull(containerField.getModelFormField().getWidgetStyle());
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderContainerField ");
-        sr.append("id=\"");
-        sr.append(id);
-        sr.append("\" className=\"");
-        sr.append(className);
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("id", id);
+        parameters.put("className", className);
+        executeMacro(writer, "renderContainerField", parameters);
     }
 }
@@ -19,11 +19,10 @@
 package org.apache.ofbiz.widget.renderer.macro;
 
 import java.io.IOException;
-import java.io.Reader;
-import java.io.StringReader;
 import java.io.StringWriter;
 import java.math.BigDecimal;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
@@ -56,7 +55,6 @@ import freemarker.template.TemplateException;
 public class MacroMenuRenderer implements MenuStringRenderer {
 
     public static final String module = MacroMenuRenderer.class.getName();
-    private int macroCount = 999;
     private final Map<Appendable, Environment> environments = new HashMap<>();
     private final Template macroLibrary;
     private final HttpServletRequest request;
@@ -99,40 +97,13 @@ public class MacroMenuRenderer implements MenuStringRenderer {
         return parameters;
     }
 
-    private void executeMacro(Appendable writer, String macro) throws IOException, TemplateException {
-        Environment environment = getEnvironment(writer);
-        environment.setVariable("visualTheme", FreeMarkerWorker.autoWrap(visualTheme, environment));
-        Reader templateReader = new StringReader(macro);
-        macroCount++;
-        String templateName = toString().concat("_") + macroCount;
-        Template template = new Template(templateName, templateReader, FreeMarkerWorker.getDefaultOfbizConfig());
-        templateReader.close();
-        environment.include(template);
-    }
-
     private void executeMacro(Appendable writer, String macroName, Map<String, Object> macroParameters) throws IOException, TemplateException {
-        StringBuilder sb = new StringBuilder("<@");
-        sb.append(macroName);
-        if (macroParameters != null) {
-            for (Map.Entry<String, Object> parameter : macroParameters.entrySet()) {
-                sb.append(' ');
-                sb.append(parameter.getKey());
-                sb.append("=");
-                Object value = parameter.getValue();
-                if (value instanceof String) {
-                    sb.append('"');
-                    sb.append(((String) value).replaceAll("\"", "\\\\\""));
-                    sb.append('"');
-                } else {
-                    sb.append(value);
-                }
-            }
-        }
-        sb.append(" />");
         if (Debug.verboseOn()) {
-            Debug.logVerbose("Executing macro: " + sb, module);
+            Debug.logVerbose("Executing macro: " + macroName + " " + macroParameters, module);
         }
-        executeMacro(writer, sb.toString());
+        Environment environment = getEnvironment(writer);
+        environment.setVariable("visualTheme", FreeMarkerWorker.autoWrap(visualTheme, environment));
+        MacroCallTemplates.execute(environment, macroName, macroParameters);
     }
 
     private Environment getEnvironment(Appendable writer) throws TemplateException, IOException {
@@ -232,28 +203,16 @@ public class MacroMenuRenderer implements MenuStringRenderer {
         parameters.put("linkType", linkType);
         String linkUrl = "";
         String actionUrl = "";
-        StringBuilder targetParameters = new StringBuilder();
+        Object targetParameters = "";
         if ("hidden-form".equals(linkType) || "layered-modal".equals(linkType)) {
             StringBuilder sb = new StringBuilder();
             WidgetWorker.buildHyperlinkUrl(sb, target, link.getUrlMode(), null, link.getPrefix(context), link.getFullPath(), link.getSecure(), link.getEncode(), request, response, context);
             actionUrl = sb.toString();
-            targetParameters.append("[");
+            List<Map<String, String>> parameterList = new LinkedList<>();
             for (Map.Entry<String, String> parameter : link.getParameterMap(context).entrySet()) {
-                if (targetParameters.length() > 1) {
-                    targetParameters.append(",");
-                }
-                targetParameters.append("{'name':'");
-                targetParameters.append(parameter.getKey());
-                targetParameters.append("'");
-                targetParameters.append(",'value':'");
-                targetParameters.append(parameter.getValue());
-                targetParameters.append("'}");
+                parameterList.add(UtilMisc.toMap("name", parameter.getKey(), "value", parameter.getValue()));
             }
-            targetParameters.append("]");
-
-        }
-        if (targetParameters.length() == 0) {
-            targetParameters.append("\"\"");
+            targetParameters = parameterList;
         }
         if (UtilValidate.isNotEmpty(target)) {
             if (!"hidden-form".equals(linkType)) {
@@ -19,9 +19,8 @@
 package org.apache.ofbiz.widget.renderer.macro;
 
 import java.io.IOException;
-import java.io.Reader;
-import java.io.StringReader;
 import java.io.StringWriter;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -65,14 +64,9 @@ public class MacroTreeRenderer implements TreeStringRenderer {
         this.environment = FreeMarkerWorker.renderTemplate(this.macroLibrary, input, writer);
     }
 
-    private void executeMacro(String macro) {
+    private void executeMacro(String macroName, Map<String, Object> parameters) {
         try {
-            Reader templateReader = new StringReader(macro);
-            // FIXME: I am using a Date as an hack to provide a unique name for the template...
-            Template template = new Template((new java.util.Date()).toString(), templateReader,
-                    FreeMarkerWorker.getDefaultOfbizConfig());
-            templateReader.close();
-            this.environment.include(template);
+            MacroCallTemplates.execute(this.environment, macroName, parameters);
         } catch (TemplateException | IOException e) {
             Debug.logError(e, "Error rendering tree thru ftl", module);
         }
@@ -85,16 +79,11 @@ public class MacroTreeRenderer implements TreeStringRenderer {
      * @param modelWidget The widget
      */
     public void renderBeginningBoundaryComment(Appendable writer, String widgetType, ModelWidget modelWidget) {
-        StringWriter sr = new StringWriter();
-        sr.append("<@formatBoundaryComment ");
-        sr.append(" boundaryType=\"");
-        sr.append("Begin");
-        sr.append("\" widgetType=\"");
-        sr.append(widgetType);
-        sr.append("\" widgetName=\"");
-        sr.append(modelWidget.getBoundaryCommentName());
-        sr.append("\" />");
-        executeMacro(sr.toString());
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("boundaryType", "Begin");
+        parameters.put("widgetType", widgetType);
+        parameters.put("widgetName", modelWidget.getBoundaryCommentName());
+        executeMacro("formatBoundaryComment", parameters);
     }
 
     /**
@@ -104,16 +93,11 @@ public class MacroTreeRenderer implements TreeStringRenderer {
      * @param modelWidget The widget
      */
     public void renderEndingBoundaryComment(Appendable writer, String widgetType, ModelWidget modelWidget) {
-        StringWriter sr = new StringWriter();
-        sr.append("<@formatBoundaryComment ");
-        sr.append(" boundaryType=\"");
-        sr.append("End");
-        sr.append("\" widgetType=\"");
-        sr.append(widgetType);
-        sr.append("\" widgetName=\"");
-        sr.append(modelWidget.getBoundaryCommentName());
-        sr.append("\" />");
-        executeMacro(sr.toString());
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("boundaryType", "End");
+        parameters.put("widgetType", widgetType);
+        parameters.put("widgetName", modelWidget.getBoundaryCommentName());
+        executeMacro("formatBoundaryComment", parameters);
     }
 
     public void renderNodeBegin(Appendable writer, Map<String, Object> context, ModelTree.ModelNode node, int depth) throws IOException {
@@ -128,12 +112,9 @@ public class MacroTreeRenderer implements TreeStringRenderer {
             style = "basic-tree";
         }
 
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderNodeBegin ");
-        sr.append(" style=\"");
-        sr.append(style);
-        sr.append("\" />");
-        executeMacro(sr.toString());
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("style", style);
+        executeMacro("renderNodeBegin", parameters);
 
         String pkName = node.getPkName(context);
         String entityId = null;
@@ -203,14 +184,10 @@ public class MacroTreeRenderer implements TreeStringRenderer {
 
     public void renderNodeEnd(Appendable writer, Map<String, Object> context, ModelTree.ModelNode node) throws IOException {
         Boolean processChildren = (Boolean) context.get("processChildren");
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderNodeEnd ");
-        sr.append(" processChildren=");
-        sr.append(Boolean.toString(processChildren));
-        sr.append(" isRootNode=");
-        sr.append(Boolean.toString(node.isRootNode()));
-        sr.append(" />");
-        executeMacro(sr.toString());
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("processChildren", processChildren);
+        parameters.put("isRootNode", node.isRootNode());
+        executeMacro("renderNodeEnd", parameters);
         if (node.isRootNode()) {
             if (ModelWidget.widgetBoundaryCommentsEnabled(context)) {
                 renderEndingBoundaryComment(writer, "Tree Widget", node.getModelTree());
@@ -221,12 +198,9 @@ public class MacroTreeRenderer implements TreeStringRenderer {
     public void renderLastElement(Appendable writer, Map<String, Object> context, ModelTree.ModelNode node) throws IOException {
         Boolean processChildren = (Boolean) context.get("processChildren");
         if (processChildren) {
-            StringWriter sr = new StringWriter();
-            sr.append("<@renderLastElement ");
-            sr.append("style=\"");
-            sr.append("basic-tree");
-            sr.append("\" />");
-            executeMacro(sr.toString());
+            Map<String, Object> parameters = new HashMap<>();
+            parameters.put("style", "basic-tree");
+            executeMacro("renderLastElement", parameters);
         }
     }
 
@@ -235,16 +209,11 @@ public class MacroTreeRenderer implements TreeStringRenderer {
         String style = label.getStyle(context);
         String labelText = label.getText(context);
 
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderLabel ");
-        sr.append("id=\"");
-        sr.append(id);
-        sr.append("\" style=\"");
-        sr.append(style);
-        sr.append("\" labelText=\"");
-        sr.append(labelText);
-        sr.append("\" />");
-        executeMacro(sr.toString());
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("id", id);
+        parameters.put("style", style);
+        parameters.put("labelText", labelText);
+        executeMacro("renderLabel", parameters);
     }
 
     public void renderLink(Appendable writer, Map<String, Object> context, ModelTree.ModelNode.Link link) throws IOException {
@@ -273,26 +242,16 @@ public class MacroTreeRenderer implements TreeStringRenderer {
             imgStr = sw.toString();
         }
 
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderLink ");
-        sr.append("id=\"");
-        sr.append(id);
-        sr.append("\" style=\"");
-        sr.append(style);
-        sr.append("\" name=\"");
-        sr.append(name);
-        sr.append("\" title=\"");
-        sr.append(title);
-        sr.append("\" targetWindow=\"");
-        sr.append(targetWindow);
-        sr.append("\" linkUrl=\"");
-        sr.append(linkUrl);
-        sr.append("\" linkText=\"");
-        sr.append(linkText);
-        sr.append("\" imgStr=\"");
-        sr.append(imgStr.replaceAll("\"", "\\\\\""));
-        sr.append("\" />");
-        executeMacro(sr.toString().replace("|", "%7C")); // Fix for OFBIZ-9191
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("id", id);
+        parameters.put("style", style);
+        parameters.put("name", name);
+        parameters.put("title", title);
+        parameters.put("targetWindow", targetWindow);
+        parameters.put("linkUrl", linkUrl.toString().replace("|", "%7C")); // Fix for OFBIZ-9191
+        parameters.put("linkText", linkText);
+        parameters.put("imgStr", imgStr);
+        executeMacro("renderLink", parameters);
     }
 
     public void renderImage(Appendable writer, Map<String, Object> context, ModelTree.ModelNode.Image image) throws IOException {
@@ -334,26 +293,16 @@ public class MacroTreeRenderer implements TreeStringRenderer {
         } else {
             urlString = src;
         }
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderImage ");
-        sr.append("src=\"");
-        sr.append(src);
-        sr.append("\" id=\"");
-        sr.append(id);
-        sr.append("\" style=\"");
-        sr.append(style);
-        sr.append("\" wid=\"");
-        sr.append(wid);
-        sr.append("\" hgt=\"");
-        sr.append(hgt);
-        sr.append("\" border=\"");
-        sr.append(border);
-        sr.append("\" alt=\"");
-        sr.append(alt);
-        sr.append("\" urlString=\"");
-        sr.append(urlString);
-        sr.append("\" />");
-        executeMacro(sr.toString());
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("src", src);
+        parameters.put("id", id);
+        parameters.put("style", style);
+        parameters.put("wid", wid);
+        parameters.put("hgt", hgt);
+        parameters.put("border", border);
+        parameters.put("alt", alt);
+        parameters.put("urlString", urlString);
+        executeMacro("renderImage", parameters);
     }
 
     public ScreenStringRenderer getScreenStringRenderer(Map<String, Object> context) {
@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.widget.cache;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+public class GenericWidgetOutputTest {
+
+    private static String repeat(String str, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append(str);
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void writeToWriter() throws IOException {
+        String html = "<div class=\"product\">Café crème € 3.50 😀</div>";
+        StringWriter writer = new StringWriter();
+        new GenericWidgetOutput(html).writeTo(writer);
+        assertThat(writer.toString(), is(html));
+    }
+
+    @Test
+    public void writeToAppendableAcrossChunks() throws IOException {
+        // multi-byte characters straddling the decoding chunk boundaries
+        String html = repeat("<p>été 中文 😀</p>", 2000);
+        StringBuilder sb = new StringBuilder();
+        GenericWidgetOutput output = new GenericWidgetOutput(html);
+        output.writeTo(sb);
+        assertThat(sb.toString(), is(html));
+        // the output can be written any number of times
+        sb.setLength(0);
+        output.writeTo(sb);
+        assertThat(sb.toString(), is(html));
+        assertThat(output.toString(), is(html));
+    }
+
+    @Test
+    public void writeEmptyOutput() throws IOException {
+        StringWriter writer = new StringWriter();
+        GenericWidgetOutput output = new GenericWidgetOutput("");
+        output.writeTo(writer);
+        assertThat(writer.toString(), is(""));
+        assertThat(output.size(), is(0));
+    }
+}
@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.widget.model;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.widget.cache.FragmentCache;
+import org.apache.ofbiz.widget.renderer.ScreenStringRenderer;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Element;
+
+public class ModelFragmentCacheTest {
+    private static final AtomicInteger screenCount = new AtomicInteger();
+
+    private ModelFragmentCache fragmentCache;
+    private ScreenStringRenderer screenStringRenderer;
+    private Map<String, Object> context;
+    private AtomicInteger renderCount;
+
+    @Before
+    public void setUp() {
+        ModelScreen modelScreen = mock(ModelScreen.class);
+        when(modelScreen.getSourceLocation()).thenReturn("component://widget/testdef/FragmentScreens.xml");
+        when(modelScreen.getName()).thenReturn("FragmentScreen" + screenCount.incrementAndGet());
+        ModelScreenWidget widget = mock(ModelScreenWidget.class);
+        when(widget.getModelScreen()).thenReturn(modelScreen);
+        when(widget.getStartLine()).thenReturn(12);
+        Element element = mock(Element.class);
+        when(element.getTagName()).thenReturn("section");
+        when(element.getAttribute("cache-key")).thenReturn("${productId}");
+        when(element.getAttribute("cache-ttl")).thenReturn("");
+        when(element.getAttribute("cache-entities")).thenReturn("Product, ProductPrice");
+        fragmentCache = ModelFragmentCache.fromElement(widget, element);
+        screenStringRenderer = mock(ScreenStringRenderer.class);
+        when(screenStringRenderer.getRendererName()).thenReturn("html");
+        context = new HashMap<>();
+        context.put("locale", Locale.ENGLISH);
+        context.put("productId", "WG-1111");
+        renderCount = new AtomicInteger();
+    }
+
+    private String render() throws Exception {
+        StringWriter writer = new StringWriter();
+        fragmentCache.render(writer, context, screenStringRenderer,
+                w -> w.append("<div>").append((String) context.get("productId")).append(" #").append(Integer.toString(renderCount.incrementAndGet())).append("</div>"));
+        return writer.toString();
+    }
+
+    @Test
+    public void fromElementWithoutCacheKey() {
+        Element element = mock(Element.class);
+        when(element.getAttribute("cache-key")).thenReturn("");
+        assertThat(ModelFragmentCache.fromElement(mock(ModelScreenWidget.class), element), is(nullValue()));
+    }
+
+    @Test
+    public void renderCachesOutput() throws Exception {
+        assertThat(render(), is("<div>WG-1111 #1</div>"));
+        assertThat(render(), is("<div>WG-1111 #1</div>"));
+        assertThat(renderCount.get(), is(1));
+        assertThat(fragmentCache.getEntityNames().size(), is(2));
+    }
+
+    @Test
+    public void renderByCacheKey() throws Exception {
+        assertThat(render(), is("<div>WG-1111 #1</div>"));
+        context.put("productId", "WG-2222");
+        assertThat(render(), is("<div>WG-2222 #2</div>"));
+        context.put("locale", Locale.FRENCH);
+        assertThat(render(), is("<div>WG-2222 #3</div>"));
+        when(screenStringRenderer.getRendererName()).thenReturn("xml");
+        assertThat(render(), is("<div>WG-2222 #4</div>"));
+        context.put("productId", "WG-1111");
+        context.put("locale", Locale.ENGLISH);
+        when(screenStringRenderer.getRendererName()).thenReturn("html");
+        assertThat(render(), is("<div>WG-1111 #1</div>"));
+    }
+
+    @Test
+    public void renderEmptyCacheKey() throws Exception {
+        context.put("productId", "");
+        assertThat(render(), is("<div> #1</div>"));
+        assertThat(render(), is("<div> #2</div>"));
+    }
+
+    @Test
+    public void renderAfterInvalidation() throws Exception {
+        assertThat(render(), is("<div>WG-1111 #1</div>"));
+        FragmentCache.getInstance().remove(fragmentCache.getFragmentName());
+        assertThat(render(), is("<div>WG-1111 #2</div>"));
+        assertThat(render(), is("<div>WG-1111 #2</div>"));
+        UtilCache.clearAllCaches();
+        assertThat(render(), is("<div>WG-1111 #3</div>"));
+    }
+
+    @Test
+    public void renderOverlappingInvalidation() throws Exception {
+        StringWriter writer = new StringWriter();
+        fragmentCache.render(writer, context, screenStringRenderer, w -> {
+            w.append("<div>stale</div>");
+            FragmentCache.getInstance().remove(fragmentCache.getFragmentName());
+        });
+        // the output is written but not cached
+        assertThat(writer.toString(), is("<div>stale</div>"));
+        assertThat(render(), is("<div>WG-1111 #1</div>"));
+        assertThat(render(), is("<div>WG-1111 #1</div>"));
+    }
+
+    @Test
+    public void cacheIsBounded() throws Exception {
+        render();
+        UtilCache<?, ?> cache = UtilCache.findCache(FragmentCache.getInstance().getCacheName(fragmentCache.getFragmentName()));
+        assertThat(cache.getMaxBytes(), greaterThan(0L));
+        assertThat(cache.getSizeLimit(), greaterThan(0));
+        assertThat(cache.getSizeInBytes(), greaterThan(0L));
+    }
+}
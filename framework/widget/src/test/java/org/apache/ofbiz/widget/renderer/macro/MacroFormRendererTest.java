@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.widget.renderer.macro;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import org.apache.ofbiz.base.util.UtilCodec;
+import org.apache.ofbiz.base.util.UtilXml;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.widget.model.ModelForm;
+import org.apache.ofbiz.widget.model.ModelFormField;
+import org.apache.ofbiz.widget.model.ModelFormField.CheckField;
+import org.apache.ofbiz.widget.model.ModelFormField.DropDownField;
+import org.apache.ofbiz.widget.model.ModelFormField.TextField;
+import org.apache.ofbiz.widget.model.ModelFormFieldBuilder;
+import org.apache.ofbiz.widget.model.ModelTheme;
+import org.apache.ofbiz.widget.renderer.VisualTheme;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Element;
+
+public class MacroFormRendererTest {
+    // Each macro prints its parameters as "macroName.parameter=type:value", one per line
+    private static final String MACRO_LIBRARY = String.join("\n",
+            "<#function describe value>",
+            "  <#if value?is_boolean><#return \"boolean:\" + value?c>",
+            "  <#elseif value?is_number><#return \"number:\" + value?c>",
+            "  <#elseif value?is_string><#return \"string:\" + value>",
+            "  <#elseif value?is_sequence><#local items = []>",
+            "    <#list value as item><#local items = items + [describe(item)]></#list>",
+            "    <#return \"[\" + items?join(\",\") + \"]\">",
+            "  <#elseif value?is_hash><#local entries = []>",
+            "    <#list value?keys?sort as key><#local entries = entries + [key + \"=\" + describe(value[key])]></#list>",
+            "    <#return \"{\" + entries?join(\",\") + \"}\">",
+            "  </#if>",
+            "  <#return \"unknown\">",
+            "</#function>",
+            "<#macro dump macroName args><#list args?keys?sort as key>${macroName}.${key}=${describe(args[key])}",
+            "</#list></#macro>",
+            "<#macro renderCheckField args...><@dump \"renderCheckField\" args/></#macro>",
+            "<#macro renderDropDownField args...><@dump \"renderDropDownField\" args/></#macro>",
+            "<#macro renderTextField args...><@dump \"renderTextField\" args/></#macro>",
+            "<#macro renderFormatItemRowCellOpen args...><@dump \"renderFormatItemRowCellOpen\" args/></#macro>",
+            "<#macro renderFormatHeaderRowFormCellTitleSeparator args...><@dump \"renderFormatHeaderRowFormCellTitleSeparator\" args/></#macro>",
+            "<#macro renderTooltip args...></#macro>",
+            "<#macro renderAsterisks args...></#macro>");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ModelForm modelForm;
+    private MacroFormRenderer renderer;
+    private Map<String, Object> context;
+    private StringWriter writer;
+    private UtilCodec.SimpleEncoder htmlEncoder;
+
+    @Before
+    public void setUp() throws Exception {
+        File library = folder.newFile("testFormMacroLibrary.ftl");
+        Files.write(library.toPath(), MACRO_LIBRARY.getBytes(StandardCharsets.UTF_8));
+        HttpSession session = mock(HttpSession.class);
+        when(session.getAttribute("userLogin")).thenReturn(mock(GenericValue.class));
+        when(session.getAttribute("visualTheme")).thenReturn(new VisualTheme(mock(ModelTheme.class), parse("<visual-theme id=\"TEST\"/>")));
+        when(session.getAttribute("delegatorName")).thenReturn("default");
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getSession()).thenReturn(session);
+        when(request.getAttribute("servletContext")).thenReturn(mock(ServletContext.class));
+        renderer = new MacroFormRenderer(library.toURI().toString(), request, mock(HttpServletResponse.class));
+        modelForm = mock(ModelForm.class);
+        when(modelForm.getName()).thenReturn("TestForm");
+        when(modelForm.getType()).thenReturn("single");
+        htmlEncoder = UtilCodec.getEncoder("html");
+        context = new HashMap<>();
+        context.put("session", session);
+        context.put("simpleEncoder", htmlEncoder);
+        writer = new StringWriter();
+    }
+
+    private static Element parse(String xml) throws Exception {
+        return UtilXml.readXmlDocument(xml, false).getDocumentElement();
+    }
+
+    private ModelFormField createField(String name) {
+        return ModelFormField.from(new ModelFormFieldBuilder().setModelForm(modelForm).setName(name));
+    }
+
+    @Test
+    public void checkFieldItemsArePassedAsMaps() throws Exception {
+        CheckField checkField = new CheckField(parse("<check all-checked=\"true\" disabled=\"true\">"
+                + "<option key=\"a&quot;b\\c\" description=\"&lt;b&gt;Yes &amp; no&lt;/b&gt;\"/></check>"), createField("flag"));
+        renderer.renderCheckField(writer, context, checkField);
+        String output = writer.toString();
+        assertThat(output, containsString("renderCheckField.items=[{description=string:" + htmlEncoder.encode("<b>Yes & no</b>")
+                + ",value=string:a\"b\\c}]\n"));
+        assertThat(output, containsString("renderCheckField.allChecked=boolean:true\n"));
+        assertThat(output, containsString("renderCheckField.disabled=boolean:true\n"));
+        assertThat(output, not(containsString("<b>")));
+    }
+
+    @Test
+    public void dropDownOptionsArePassedAsEncodedMaps() throws Exception {
+        DropDownField dropDownField = new DropDownField(parse("<drop-down allow-empty=\"true\" current=\"first-in-list\">"
+                + "<option key=\"A\" description=\"&lt;i&gt;Alpha&lt;/i&gt;\"/><option key=\"B\" description=\"Beta\"/></drop-down>"),
+                createField("status"));
+        context.put("status", "A");
+        renderer.renderDropDownField(writer, context, dropDownField);
+        String output = writer.toString();
+        String alpha = htmlEncoder.encode("<i>Alpha</i>");
+        assertThat(output, containsString("renderDropDownField.options=[{description=string:" + alpha
+                + ",key=string:A},{description=string:Beta,key=string:B}]\n"));
+        assertThat(output, containsString("renderDropDownField.explicitDescription=string:" + alpha + "\n"));
+        assertThat(output, containsString("renderDropDownField.currentValue=string:A\n"));
+        assertThat(output, containsString("renderDropDownField.firstInList=string:first-in-list\n"));
+        assertThat(output, containsString("renderDropDownField.allowEmpty=string:Y\n"));
+        assertThat(output, containsString("renderDropDownField.formName=string:TestForm\n"));
+        assertThat(output, containsString("renderDropDownField.otherFieldSize=number:0\n"));
+        assertThat(output, containsString("renderDropDownField.ajaxEnabled=boolean:false\n"));
+        assertThat(output, not(containsString("<i>")));
+    }
+
+    @Test
+    public void textFieldFlagsArePassedAsBooleans() throws Exception {
+        TextField textField = new TextField(parse("<text disabled=\"true\" read-only=\"true\" maxlength=\"40\"/>"), createField("comment"));
+        context.put("comment", "\"${quoted}\" & <tag>");
+        renderer.renderTextField(writer, context, textField);
+        String output = writer.toString();
+        assertThat(output, containsString("renderTextField.value=string:" + htmlEncoder.encode("\"${quoted}\" & <tag>") + "\n"));
+        assertThat(output, containsString("renderTextField.disabled=boolean:true\n"));
+        assertThat(output, containsString("renderTextField.readonly=boolean:true\n"));
+        assertThat(output, containsString("renderTextField.ajaxEnabled=boolean:false\n"));
+        assertThat(output, containsString("renderTextField.textSize=string:25\n"));
+        assertThat(output, containsString("renderTextField.maxlength=string:40\n"));
+        assertThat(output, containsString("renderTextField.delegatorName=string:default\n"));
+    }
+
+    @Test
+    public void formatParametersKeepTheirTypes() throws Exception {
+        ModelFormField field = createField("amount");
+        renderer.renderFormatItemRowCellOpen(writer, context, modelForm, field, 3);
+        renderer.renderFormatHeaderRowFormCellTitleSeparator(writer, context, modelForm, field, true);
+        String output = writer.toString();
+        assertThat(output, containsString("renderFormatItemRowCellOpen.positionSpan=number:3\n"));
+        assertThat(output, containsString("renderFormatItemRowCellOpen.fieldName=string:amount\n"));
+        assertThat(output, containsString("renderFormatHeaderRowFormCellTitleSeparator.isLast=boolean:true\n"));
+        // a null style is passed as an empty string
+        assertThat(output, containsString("renderFormatHeaderRowFormCellTitleSeparator.style=string:\n"));
+    }
+}